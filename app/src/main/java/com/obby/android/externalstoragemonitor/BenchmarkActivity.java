@@ -0,0 +1,270 @@
+package com.obby.android.externalstoragemonitor;
+
+import android.os.Bundle;
+import android.os.Environment;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.storage.StorageManager;
+import android.os.storage.StorageVolume;
+import android.text.format.DateFormat;
+import android.util.Log;
+import android.view.View;
+import android.widget.AdapterView;
+import android.widget.ArrayAdapter;
+import android.widget.Button;
+import android.widget.EditText;
+import android.widget.Spinner;
+import android.widget.TextView;
+
+import androidx.activity.EdgeToEdge;
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.appcompat.app.AppCompatActivity;
+import androidx.core.graphics.Insets;
+import androidx.core.view.ViewCompat;
+import androidx.core.view.WindowInsetsCompat;
+
+import com.google.android.material.appbar.MaterialToolbar;
+import com.obby.android.externalstoragemonitor.core.bench.BenchmarkConfig;
+import com.obby.android.externalstoragemonitor.core.bench.BenchmarkResult;
+import com.obby.android.externalstoragemonitor.core.bench.BenchmarkStore;
+import com.obby.android.externalstoragemonitor.core.bench.StorageBenchmark;
+import com.obby.android.externalstoragemonitor.utils.StorageVolumeUtils;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Runs a {@link StorageBenchmark} against the app specific directory of a mounted removable volume and stores the
+ * results with the volume id. The benchmark runs on a background thread and is cancelled when the activity is
+ * destroyed.
+ */
+public class BenchmarkActivity extends AppCompatActivity {
+    private static final String STORE_FILE_NAME = "benchmarks.tsv";
+
+    private final String mTag = "BenchmarkActivity@" + hashCode();
+
+    @NonNull
+    private final Handler mMainHandler = new Handler(Looper.getMainLooper());
+
+    @NonNull
+    private final ExecutorService mExecutor =
+        Executors.newSingleThreadExecutor(runnable -> new Thread(runnable, "benchmark-runner"));
+
+    @NonNull
+    private final List<String> mVolumeIds = new ArrayList<>();
+
+    @NonNull
+    private final List<File> mVolumeDirectories = new ArrayList<>();
+
+    @Nullable
+    private StorageBenchmark mBenchmark;
+
+    private BenchmarkStore mStore;
+
+    private Spinner mVolumeView;
+
+    private EditText mBlockSizesView;
+
+    private EditText mQueueDepthView;
+
+    private Button mStartButton;
+
+    private TextView mResultView;
+
+    @Override
+    protected void onCreate(Bundle savedInstanceState) {
+        super.onCreate(savedInstanceState);
+        EdgeToEdge.enable(this);
+        setContentView(R.layout.activity_benchmark);
+        ViewCompat.setOnApplyWindowInsetsListener(findViewById(R.id.main), (v, insets) -> {
+            Insets systemBars = insets.getInsets(WindowInsetsCompat.Type.systemBars());
+            v.setPadding(systemBars.left, systemBars.top, systemBars.right, systemBars.bottom);
+            return insets;
+        });
+
+        final MaterialToolbar appToolbar = findViewById(R.id.app_tool_bar);
+        appToolbar.setNavigationOnClickListener(v -> finish());
+        mVolumeView = findViewById(R.id.volume_view);
+        mBlockSizesView = findViewById(R.id.block_sizes_view);
+        mQueueDepthView = findViewById(R.id.queue_depth_view);
+        mStartButton = findViewById(R.id.start_button);
+        mResultView = findViewById(R.id.result_view);
+        mStore = new BenchmarkStore(new File(getFilesDir(), STORE_FILE_NAME));
+
+        mStartButton.setOnClickListener(v -> {
+            if (mBenchmark == null) {
+                startBenchmark();
+            } else {
+                mBenchmark.cancel();
+            }
+        });
+        loadVolumes();
+    }
+
+    @Override
+    protected void onDestroy() {
+        super.onDestroy();
+        if (mBenchmark != null) {
+            mBenchmark.cancel();
+            mBenchmark = null;
+        }
+        mExecutor.shutdown();
+        mMainHandler.removeCallbacksAndMessages(null);
+    }
+
+    private void loadVolumes() {
+        final StorageManager storageManager = getSystemService(StorageManager.class);
+        final List<String> labels = new ArrayList<>();
+        for (final File directory : getExternalFilesDirs(null)) {
+            if (directory == null) {
+                continue;
+            }
+
+            final StorageVolume storageVolume = storageManager.getStorageVolume(directory);
+            if (storageVolume == null || !StorageVolumeUtils.isExternalStorage(storageVolume)
+                || !Environment.MEDIA_MOUNTED.equals(storageVolume.getState())) {
+                continue;
+            }
+
+            final String volumeId = StorageVolumeUtils.getVolumeId(storageVolume);
+            mVolumeIds.add(volumeId);
+            mVolumeDirectories.add(directory);
+            labels.add(String.format("%s (%s)", storageVolume.getDescription(this), volumeId));
+        }
+
+        final ArrayAdapter<String> adapter = new ArrayAdapter<>(this, android.R.layout.simple_spinner_item, labels);
+        adapter.setDropDownViewResource(android.R.layout.simple_spinner_dropdown_item);
+        mVolumeView.setAdapter(adapter);
+        mStartButton.setEnabled(!mVolumeIds.isEmpty());
+        if (mVolumeIds.isEmpty()) {
+            mResultView.setText(R.string.external_storage_unmounted);
+        } else {
+            mVolumeView.setOnItemSelectedListener(new AdapterView.OnItemSelectedListener() {
+                @Override
+                public void onItemSelected(AdapterView<?> parent, View view, int position, long id) {
+                    if (mBenchmark == null) {
+                        showHistory(mVolumeIds.get(position));
+                    }
+                }
+
+                @Override
+                public void onNothingSelected(AdapterView<?> parent) {
+                }
+            });
+        }
+    }
+
+    @Nullable
+    private BenchmarkConfig buildConfig() {
+        try {
+            final String[] values = mBlockSizesView.getText().toString().split(",");
+            final int[] blockSizes = new int[values.length];
+            for (int i = 0; i < values.length; i++) {
+                blockSizes[i] = Integer.parseInt(values[i].trim()) << 10;
+            }
+            return new BenchmarkConfig.Builder()
+                .setBlockSizes(blockSizes)
+                .setQueueDepth(Integer.parseInt(mQueueDepthView.getText().toString().trim()))
+                .build();
+        } catch (IllegalArgumentException | IllegalStateException e) {
+            Log.w(mTag, "buildConfig: invalid config", e);
+            return null;
+        }
+    }
+
+    private void startBenchmark() {
+        final int position = mVolumeView.getSelectedItemPosition();
+        if (position < 0 || position >= mVolumeIds.size()) {
+            return;
+        }
+
+        final BenchmarkConfig config = buildConfig();
+        if (config == null) {
+            mResultView.setText(R.string.benchmark_invalid_config);
+            return;
+        }
+
+        final String volumeId = mVolumeIds.get(position);
+        final File directory = mVolumeDirectories.get(position);
+        final StorageBenchmark benchmark = new StorageBenchmark(config);
+        mBenchmark = benchmark;
+        setRunning(true);
+        final StringBuilder builder = new StringBuilder(getString(R.string.benchmark_running, volumeId));
+        mResultView.setText(builder);
+
+        Log.i(mTag, String.format("startBenchmark: volumeId = %s, %s", volumeId, config));
+        mExecutor.execute(() -> {
+            final long timeMillis = System.currentTimeMillis();
+            String message = null;
+            try {
+                final List<BenchmarkResult> results = benchmark.run(directory, result -> {
+                    Log.i(mTag, String.format("startBenchmark: %s", result));
+                    mMainHandler.post(() -> {
+                        if (mBenchmark == benchmark) {
+                            builder.append('\n').append(result);
+                            mResultView.setText(builder);
+                        }
+                    });
+                });
+                mStore.append(volumeId, timeMillis, results);
+            } catch (InterruptedIOException e) {
+                message = getString(R.string.benchmark_cancelled);
+            } catch (IOException | RuntimeException e) {
+                Log.e(mTag, "startBenchmark: benchmark failed", e);
+                message = getString(R.string.benchmark_failed, e.getMessage());
+            }
+
+            final String finalMessage = message;
+            mMainHandler.post(() -> {
+                if (mBenchmark != benchmark) {
+                    return;
+                }
+
+                mBenchmark = null;
+                setRunning(false);
+                if (finalMessage != null) {
+                    builder.append('\n').append(finalMessage);
+                    mResultView.setText(builder);
+                } else {
+                    showHistory(volumeId);
+                }
+            });
+        });
+    }
+
+    private void setRunning(final boolean isRunning) {
+        mStartButton.setText(isRunning ? R.string.benchmark_cancel : R.string.benchmark_start);
+        mVolumeView.setEnabled(!isRunning);
+        mBlockSizesView.setEnabled(!isRunning);
+        mQueueDepthView.setEnabled(!isRunning);
+    }
+
+    private void showHistory(@NonNull final String volumeId) {
+        mExecutor.execute(() -> {
+            final StringBuilder builder = new StringBuilder(getString(R.string.benchmark_history));
+            try {
+                long timeMillis = -1L;
+                for (final BenchmarkStore.Record record : mStore.read(volumeId)) {
+                    if (record.getTimeMillis() != timeMillis) {
+                        timeMillis = record.getTimeMillis();
+                        builder.append("\n\n").append(DateFormat.format("yyyy-MM-dd HH:mm", timeMillis));
+                    }
+                    builder.append('\n').append(record.getResult());
+                }
+            } catch (IOException e) {
+                Log.e(mTag, "showHistory: read results failed", e);
+            }
+            mMainHandler.post(() -> {
+                if (mBenchmark == null) {
+                    mResultView.setText(builder);
+                }
+            });
+        });
+    }
+}
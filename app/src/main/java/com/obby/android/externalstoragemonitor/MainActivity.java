@@ -15,7 +15,11 @@ import android.os.Message;
 import android.os.Messenger;
 import android.os.RemoteException;
 import android.provider.Settings;
+import android.text.format.DateUtils;
 import android.util.Log;
+import android.view.inputmethod.EditorInfo;
+import android.widget.EditText;
+import android.widget.TextView;
 
 import androidx.activity.EdgeToEdge;
 import androidx.activity.result.ActivityResultLauncher;
@@ -37,12 +41,20 @@ import com.google.android.material.appbar.MaterialToolbar;
 import com.google.android.material.color.MaterialColors;
 import com.google.android.material.dialog.MaterialAlertDialogBuilder;
 import com.google.android.material.materialswitch.MaterialSwitch;
+import com.google.android.material.textfield.TextInputLayout;
+import com.obby.android.externalstoragemonitor.core.alert.EscalationPolicy;
+import com.obby.android.externalstoragemonitor.core.journal.EventJournal;
 import com.obby.android.externalstoragemonitor.service.MonitorService;
 import com.obby.android.externalstoragemonitor.support.Constants;
 import com.obby.android.externalstoragemonitor.support.Preferences;
 import com.obby.android.externalstoragemonitor.utils.IntentUtils;
 
+import java.time.Duration;
+import java.util.Locale;
+
 public class MainActivity extends AppCompatActivity {
+    private static final long HISTORY_RANGE_MS = Duration.ofDays(30L).toMillis();
+
     private boolean mIsServiceBound;
 
     @Nullable
@@ -50,27 +62,45 @@ public class MainActivity extends AppCompatActivity {
 
     private boolean mIsMonitorRunning;
 
-    @NonNull
-    private String mExternalStorageState = Constants.EXTERNAL_STORAGE_STATE_UNKNOWN;
+    private long mSequence = -1L;
+
+    private int mExternalStorageState = Constants.EXTERNAL_STORAGE_STATE_UNKNOWN;
 
     @Nullable
     private AlertDialog mDialog;
 
     private MaterialToolbar mAppToolbar;
 
+    private TextView mHistoryView;
+
     private final String mTag = "MainActivity@" + hashCode();
 
     @NonNull
     private final Messenger mMessenger = new Messenger(new Handler(Looper.getMainLooper(), msg -> {
         switch (msg.what) {
+            case Constants.MSG_SNAPSHOT:
+                onSnapshot(msg.getData());
+                return true;
             case Constants.MSG_MONITOR_STARTED:
-                onMonitorStarted();
+                if (acceptUpdate(msg)) {
+                    onMonitorStarted();
+                }
                 return true;
             case Constants.MSG_MONITOR_STOPPED:
-                onMonitorStopped();
+                if (acceptUpdate(msg)) {
+                    onMonitorStopped();
+                }
                 return true;
             case Constants.MSG_EXTERNAL_STORAGE_STATE_CHANGED:
-                onExternalStorageStateChanged((String) msg.obj);
+                if (acceptUpdate(msg)) {
+                    onExternalStorageStateChanged(msg.arg1);
+                }
+                return true;
+            case Constants.MSG_VOLUME_STATE_CHANGED:
+                acceptUpdate(msg);
+                return true;
+            case Constants.MSG_HISTORY:
+                onHistory(msg.getData());
                 return true;
             default:
                 return false;
@@ -95,6 +125,7 @@ public class MainActivity extends AppCompatActivity {
             Log.i(mTag, String.format("mServiceConnection.onServiceDisconnected: service disconnected, name = %s",
                 name));
             mServiceMessenger = null;
+            mSequence = -1L;
             mIsMonitorRunning = false;
             mExternalStorageState = Constants.EXTERNAL_STORAGE_STATE_UNKNOWN;
             updateMonitorView();
@@ -133,6 +164,7 @@ public class MainActivity extends AppCompatActivity {
         });
 
         mAppToolbar = findViewById(R.id.app_tool_bar);
+        mHistoryView = findViewById(R.id.history_view);
 
         final MaterialSwitch enableMonitorSettingView = findViewById(R.id.enable_monitor_setting);
         enableMonitorSettingView.setChecked(Preferences.get().isMonitorEnabled());
@@ -154,6 +186,50 @@ public class MainActivity extends AppCompatActivity {
             }
         });
 
+        final MaterialSwitch enableProbeSettingView = findViewById(R.id.enable_probe_setting);
+        enableProbeSettingView.setChecked(Preferences.get().isProbeEnabled());
+        enableProbeSettingView.setOnCheckedChangeListener(
+            (buttonView, isChecked) -> Preferences.get().setProbeEnabled(isChecked));
+
+        final MaterialSwitch enableIntegritySettingView = findViewById(R.id.enable_integrity_setting);
+        enableIntegritySettingView.setChecked(Preferences.get().isIntegrityEnabled());
+        enableIntegritySettingView.setOnCheckedChangeListener(
+            (buttonView, isChecked) -> Preferences.get().setIntegrityEnabled(isChecked));
+
+        final EditText integrityDirectorySettingView = findViewById(R.id.integrity_directory_setting);
+        integrityDirectorySettingView.setText(Preferences.get().getIntegrityDirectory());
+        integrityDirectorySettingView.setOnEditorActionListener((v, actionId, event) -> {
+            if (actionId == EditorInfo.IME_ACTION_DONE) {
+                saveIntegrityDirectory(v.getText().toString());
+                v.clearFocus();
+            }
+            return false;
+        });
+        integrityDirectorySettingView.setOnFocusChangeListener((v, hasFocus) -> {
+            if (!hasFocus) {
+                saveIntegrityDirectory(integrityDirectorySettingView.getText().toString());
+            }
+        });
+
+        final TextInputLayout escalationPolicyLayout = findViewById(R.id.escalation_policy_layout);
+        final EditText escalationPolicySettingView = findViewById(R.id.escalation_policy_setting);
+        escalationPolicySettingView.setText(Preferences.get().getDefaultEscalationPolicy());
+        escalationPolicySettingView.setOnEditorActionListener((v, actionId, event) -> {
+            if (actionId == EditorInfo.IME_ACTION_DONE) {
+                saveEscalationPolicy(escalationPolicyLayout, v.getText().toString());
+                v.clearFocus();
+            }
+            return false;
+        });
+        escalationPolicySettingView.setOnFocusChangeListener((v, hasFocus) -> {
+            if (!hasFocus) {
+                saveEscalationPolicy(escalationPolicyLayout, escalationPolicySettingView.getText().toString());
+            }
+        });
+
+        findViewById(R.id.benchmark_button).setOnClickListener(
+            v -> startActivity(new Intent(this, BenchmarkActivity.class)));
+
         updateMonitorView();
 
         if (Preferences.get().isMonitorEnabled()){
@@ -177,6 +253,7 @@ public class MainActivity extends AppCompatActivity {
 
         unregisterServiceClient();
         mIsServiceBound = false;
+        mSequence = -1L;
         mServiceMessenger = null;
         unbindService(mServiceConnection);
     }
@@ -190,6 +267,88 @@ public class MainActivity extends AppCompatActivity {
         }
     }
 
+    private void saveIntegrityDirectory(@NonNull final String directory) {
+        // relative to the app's files directory on the volume, leading and trailing separators are meaningless
+        final String normalized = directory.trim().replaceAll("^/+|/+$", "");
+        if (!normalized.equals(Preferences.get().getIntegrityDirectory())) {
+            Preferences.get().setIntegrityDirectory(normalized);
+        }
+    }
+
+    private void saveEscalationPolicy(@NonNull final TextInputLayout layout, @NonNull final String spec) {
+        final EscalationPolicy policy;
+        try {
+            policy = spec.trim().isEmpty() ? null : EscalationPolicy.parse(spec);
+        } catch (IllegalArgumentException e) {
+            layout.setError(getString(R.string.escalation_policy_invalid));
+            return;
+        }
+        layout.setError(null);
+        Preferences.get().setEscalationPolicy(null, policy);
+    }
+
+    private void onSnapshot(@NonNull final Bundle data) {
+        if (data.getInt(Constants.KEY_PROTOCOL_VERSION) != Constants.PROTOCOL_VERSION) {
+            Log.w(mTag, "onSnapshot: unsupported protocol version");
+            return;
+        }
+
+        mSequence = data.getLong(Constants.KEY_SEQUENCE);
+        mIsMonitorRunning = data.getBoolean(Constants.KEY_MONITOR_RUNNING);
+        mExternalStorageState = mIsMonitorRunning
+            ? data.getInt(Constants.KEY_EXTERNAL_STORAGE_STATE) : Constants.EXTERNAL_STORAGE_STATE_UNKNOWN;
+        updateMonitorView();
+        requestHistory();
+    }
+
+    private void onHistory(@NonNull final Bundle data) {
+        final String[] volumeIds = data.getStringArray(Constants.KEY_VOLUME_IDS);
+        final double[] uptimeRatios = data.getDoubleArray(Constants.KEY_UPTIME_RATIOS);
+        final long[] unmountCounts = data.getLongArray(Constants.KEY_UNMOUNT_COUNTS);
+        final long[] meanTimesBetweenFailures = data.getLongArray(Constants.KEY_MEAN_TIMES_BETWEEN_FAILURES);
+        final long[] longestOutages = data.getLongArray(Constants.KEY_LONGEST_OUTAGES);
+        if (volumeIds == null || uptimeRatios == null || unmountCounts == null || meanTimesBetweenFailures == null
+            || longestOutages == null) {
+            return;
+        }
+
+        final StringBuilder builder = new StringBuilder(getString(R.string.history_title));
+        if (volumeIds.length == 0) {
+            builder.append('\n').append(getString(R.string.history_empty));
+        }
+        for (int i = 0; i < volumeIds.length; i++) {
+            final String volume = EventJournal.AGGREGATE_VOLUME_ID.equals(volumeIds[i])
+                ? getString(R.string.history_aggregate) : volumeIds[i];
+            final String uptime = Double.isNaN(uptimeRatios[i])
+                ? "-" : String.format(Locale.getDefault(), "%.1f%%", uptimeRatios[i] * 100.0);
+            builder.append('\n').append(getString(R.string.history_item, volume, uptime, unmountCounts[i],
+                DateUtils.formatElapsedTime(meanTimesBetweenFailures[i] / 1000L),
+                DateUtils.formatElapsedTime(longestOutages[i] / 1000L)));
+        }
+        mHistoryView.setText(builder);
+    }
+
+    private boolean acceptUpdate(@NonNull final Message msg) {
+        if (mSequence < 0L) {
+            return false;
+        }
+
+        final long sequence = msg.getData().getLong(Constants.KEY_SEQUENCE);
+        if (sequence <= mSequence) {
+            return false;
+        }
+
+        if (sequence != mSequence + 1L) {
+            Log.w(mTag, String.format("acceptUpdate: missed updates %d..%d", mSequence + 1L, sequence - 1L));
+            mSequence = -1L;
+            requestSnapshot();
+            return false;
+        }
+
+        mSequence = sequence;
+        return true;
+    }
+
     private void onMonitorStarted() {
         mIsMonitorRunning = true;
         updateMonitorView();
@@ -201,7 +360,7 @@ public class MainActivity extends AppCompatActivity {
         updateMonitorView();
     }
 
-    private void onExternalStorageStateChanged(@NonNull final String state) {
+    private void onExternalStorageStateChanged(final int state) {
         mExternalStorageState = state;
         updateMonitorView();
     }
@@ -287,6 +446,37 @@ public class MainActivity extends AppCompatActivity {
         }
     }
 
+    private void requestHistory() {
+        if (mServiceMessenger == null) {
+            return;
+        }
+
+        try {
+            final long now = System.currentTimeMillis();
+            final Message message = Message.obtain(null, Constants.MSG_REQUEST_HISTORY);
+            message.replyTo = mMessenger;
+            message.getData().putLong(Constants.KEY_FROM_TIME, now - HISTORY_RANGE_MS);
+            message.getData().putLong(Constants.KEY_TO_TIME, now);
+            mServiceMessenger.send(message);
+        } catch (RemoteException e) {
+            // ignored
+        }
+    }
+
+    private void requestSnapshot() {
+        if (mServiceMessenger == null) {
+            return;
+        }
+
+        try {
+            final Message message = Message.obtain(null, Constants.MSG_REQUEST_SNAPSHOT);
+            message.replyTo = mMessenger;
+            mServiceMessenger.send(message);
+        } catch (RemoteException e) {
+            // ignored
+        }
+    }
+
     private void unregisterServiceClient() {
         if (mServiceMessenger == null) {
             return;
@@ -0,0 +1,103 @@
+package com.obby.android.externalstoragemonitor.api;
+
+import android.net.Uri;
+import android.provider.BaseColumns;
+
+/**
+ * Contract of the read-only content provider of the monitor. Readers need the signature permission
+ * {@link #PERMISSION_READ}, or must be the shell or root, so it can be queried from a development machine without
+ * {@code adb root}:
+ *
+ * <pre>
+ * adb shell content query --uri content://com.obby.android.externalstoragemonitor.provider/state
+ * Row: 0 _id=0, volume_id=*, state=1, state_name=mounted, monitor_running=1, sequence=42, time=1760000000000
+ * Row: 1 _id=1, volume_id=1234-ABCD, state=1, state_name=mounted, monitor_running=1, sequence=42, ...
+ * adb shell content query --uri 'content://com.obby.android.externalstoragemonitor.provider/history?from=0'
+ * </pre>
+ *
+ * The history is also readable while the service does not run.
+ *
+ * Both URIs are notified when their data changes. States are the values of {@code ExternalStorageState} and the
+ * aggregated state is reported under the volume id {@code "*"}.
+ */
+public final class MonitorContract {
+    public static final String AUTHORITY = "com.obby.android.externalstoragemonitor.provider";
+
+    public static final Uri AUTHORITY_URI = Uri.parse("content://" + AUTHORITY);
+
+    public static final String PERMISSION_READ =
+        "com.obby.android.externalstoragemonitor.permission.READ_MONITOR_STATE";
+
+    private MonitorContract() {
+    }
+
+    /**
+     * Current state, answered from memory: the aggregated state first, then one row per external volume.
+     */
+    public static final class State implements BaseColumns {
+        public static final Uri CONTENT_URI = Uri.withAppendedPath(AUTHORITY_URI, "state");
+
+        public static final String CONTENT_TYPE = "vnd.android.cursor.dir/vnd.obby.externalstoragemonitor.state";
+
+        public static final String VOLUME_ID = "volume_id";
+
+        public static final String STATE = "state";
+
+        public static final String STATE_NAME = "state_name";
+
+        public static final String MONITOR_RUNNING = "monitor_running";
+
+        /**
+         * Sequence number of the last update in the state, as sent to binder clients.
+         */
+        public static final String SEQUENCE = "sequence";
+
+        /**
+         * Wall clock time of the last update, in milliseconds since the epoch.
+         */
+        public static final String TIME = "time";
+
+        private State() {
+        }
+    }
+
+    /**
+     * Journaled transitions, oldest first, read from the journal as the cursor moves. {@link #_ID} is the journal
+     * sequence number. The range is given by the {@link #PARAM_FROM} and {@link #PARAM_TO} query parameters.
+     */
+    public static final class History implements BaseColumns {
+        public static final Uri CONTENT_URI = Uri.withAppendedPath(AUTHORITY_URI, "history");
+
+        public static final String CONTENT_TYPE = "vnd.android.cursor.dir/vnd.obby.externalstoragemonitor.history";
+
+        /**
+         * Inclusive start of the range, in milliseconds since the epoch; unbounded if absent.
+         */
+        public static final String PARAM_FROM = "from";
+
+        /**
+         * Exclusive end of the range, in milliseconds since the epoch; unbounded if absent.
+         */
+        public static final String PARAM_TO = "to";
+
+        /**
+         * Wall clock time of the transition, in milliseconds since the epoch.
+         */
+        public static final String TIMESTAMP = "timestamp";
+
+        public static final String VOLUME_ID = "volume_id";
+
+        public static final String PREVIOUS_STATE = "previous_state";
+
+        public static final String STATE = "state";
+
+        public static final String TRIGGER = "trigger";
+
+        public static final String STATE_NAME = "state_name";
+
+        public static final String TRIGGER_NAME = "trigger_name";
+
+        private History() {
+        }
+    }
+}
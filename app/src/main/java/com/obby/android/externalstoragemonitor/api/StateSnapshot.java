@@ -0,0 +1,110 @@
+package com.obby.android.externalstoragemonitor.api;
+
+import android.os.Parcel;
+import android.os.Parcelable;
+
+import androidx.annotation.NonNull;
+
+/**
+ * Immutable state of the monitor service: whether the monitor runs, the aggregated external storage state and the
+ * state of every known external volume, as of the update with the given sequence number. States are the values of
+ * {@code ExternalStorageState}.
+ */
+public final class StateSnapshot implements Parcelable {
+    @NonNull
+    public static final Creator<StateSnapshot> CREATOR = new Creator<StateSnapshot>() {
+        @Override
+        public StateSnapshot createFromParcel(final Parcel source) {
+            return new StateSnapshot(source);
+        }
+
+        @Override
+        public StateSnapshot[] newArray(final int size) {
+            return new StateSnapshot[size];
+        }
+    };
+
+    private final long mSequence;
+
+    private final long mTime;
+
+    private final boolean mIsMonitorRunning;
+
+    private final int mExternalStorageState;
+
+    @NonNull
+    private final String[] mVolumeIds;
+
+    @NonNull
+    private final int[] mVolumeStates;
+
+    /**
+     * @param time wall clock time of the snapshot, in milliseconds since the epoch
+     */
+    public StateSnapshot(final long sequence, final long time, final boolean isMonitorRunning,
+        final int externalStorageState, @NonNull final String[] volumeIds, @NonNull final int[] volumeStates) {
+        if (volumeIds.length != volumeStates.length) {
+            throw new IllegalArgumentException("volume ids and states differ in length");
+        }
+
+        mSequence = sequence;
+        mTime = time;
+        mIsMonitorRunning = isMonitorRunning;
+        mExternalStorageState = externalStorageState;
+        mVolumeIds = volumeIds;
+        mVolumeStates = volumeStates;
+    }
+
+    private StateSnapshot(@NonNull final Parcel source) {
+        mSequence = source.readLong();
+        mTime = source.readLong();
+        mIsMonitorRunning = source.readInt() != 0;
+        mExternalStorageState = source.readInt();
+        mVolumeIds = source.createStringArray();
+        mVolumeStates = source.createIntArray();
+    }
+
+    public long getSequence() {
+        return mSequence;
+    }
+
+    public long getTime() {
+        return mTime;
+    }
+
+    public boolean isMonitorRunning() {
+        return mIsMonitorRunning;
+    }
+
+    public int getExternalStorageState() {
+        return mExternalStorageState;
+    }
+
+    public int getVolumeCount() {
+        return mVolumeIds.length;
+    }
+
+    @NonNull
+    public String getVolumeId(final int index) {
+        return mVolumeIds[index];
+    }
+
+    public int getVolumeState(final int index) {
+        return mVolumeStates[index];
+    }
+
+    @Override
+    public int describeContents() {
+        return 0;
+    }
+
+    @Override
+    public void writeToParcel(@NonNull final Parcel dest, final int flags) {
+        dest.writeLong(mSequence);
+        dest.writeLong(mTime);
+        dest.writeInt(mIsMonitorRunning ? 1 : 0);
+        dest.writeInt(mExternalStorageState);
+        dest.writeStringArray(mVolumeIds);
+        dest.writeIntArray(mVolumeStates);
+    }
+}
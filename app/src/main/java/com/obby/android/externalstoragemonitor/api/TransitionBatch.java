@@ -0,0 +1,166 @@
+package com.obby.android.externalstoragemonitor.api;
+
+import android.os.Parcel;
+import android.os.Parcelable;
+
+import androidx.annotation.NonNull;
+
+/**
+ * A batch of journaled state transitions, oldest first, stored as parallel arrays so that a batch is a handful of
+ * objects whatever its size. The aggregated state is recorded under the volume id {@code "*"}.
+ */
+public final class TransitionBatch implements Parcelable {
+    @NonNull
+    public static final Creator<TransitionBatch> CREATOR = new Creator<TransitionBatch>() {
+        @Override
+        public TransitionBatch createFromParcel(final Parcel source) {
+            return new TransitionBatch(source);
+        }
+
+        @Override
+        public TransitionBatch[] newArray(final int size) {
+            return new TransitionBatch[size];
+        }
+    };
+
+    private final int mSize;
+
+    @NonNull
+    private final long[] mSequences;
+
+    @NonNull
+    private final long[] mTimestamps;
+
+    @NonNull
+    private final String[] mVolumeIds;
+
+    @NonNull
+    private final int[] mPreviousStates;
+
+    @NonNull
+    private final int[] mStates;
+
+    @NonNull
+    private final int[] mTriggers;
+
+    private final long mNextSequence;
+
+    private final boolean mHasMore;
+
+    /**
+     * The arrays are owned by the batch and hold {@code size} transitions; they may be longer.
+     *
+     * @param nextSequence sequence number to continue after
+     * @param hasMore whether further transitions match the query
+     */
+    public TransitionBatch(final int size, @NonNull final long[] sequences, @NonNull final long[] timestamps,
+        @NonNull final String[] volumeIds, @NonNull final int[] previousStates, @NonNull final int[] states,
+        @NonNull final int[] triggers, final long nextSequence, final boolean hasMore) {
+        mSize = size;
+        mSequences = sequences;
+        mTimestamps = timestamps;
+        mVolumeIds = volumeIds;
+        mPreviousStates = previousStates;
+        mStates = states;
+        mTriggers = triggers;
+        mNextSequence = nextSequence;
+        mHasMore = hasMore;
+    }
+
+    private TransitionBatch(@NonNull final Parcel source) {
+        mSize = source.readInt();
+        mSequences = source.createLongArray();
+        mTimestamps = source.createLongArray();
+        mVolumeIds = source.createStringArray();
+        mPreviousStates = source.createIntArray();
+        mStates = source.createIntArray();
+        mTriggers = source.createIntArray();
+        mNextSequence = source.readLong();
+        mHasMore = source.readInt() != 0;
+    }
+
+    public int size() {
+        return mSize;
+    }
+
+    public long getSequence(final int index) {
+        return mSequences[checkIndex(index)];
+    }
+
+    /**
+     * Wall clock time of the transition, in milliseconds since the epoch.
+     */
+    public long getTimestamp(final int index) {
+        return mTimestamps[checkIndex(index)];
+    }
+
+    @NonNull
+    public String getVolumeId(final int index) {
+        return mVolumeIds[checkIndex(index)];
+    }
+
+    public int getPreviousState(final int index) {
+        return mPreviousStates[checkIndex(index)];
+    }
+
+    public int getState(final int index) {
+        return mStates[checkIndex(index)];
+    }
+
+    public int getTrigger(final int index) {
+        return mTriggers[checkIndex(index)];
+    }
+
+    public long getNextSequence() {
+        return mNextSequence;
+    }
+
+    public boolean hasMore() {
+        return mHasMore;
+    }
+
+    @Override
+    public int describeContents() {
+        return 0;
+    }
+
+    @Override
+    public void writeToParcel(@NonNull final Parcel dest, final int flags) {
+        dest.writeInt(mSize);
+        writeLongs(dest, mSequences);
+        writeLongs(dest, mTimestamps);
+        dest.writeInt(mSize);
+        for (int i = 0; i < mSize; i++) {
+            dest.writeString(mVolumeIds[i]);
+        }
+        writeInts(dest, mPreviousStates);
+        writeInts(dest, mStates);
+        writeInts(dest, mTriggers);
+        dest.writeLong(mNextSequence);
+        dest.writeInt(mHasMore ? 1 : 0);
+    }
+
+    /**
+     * Writes the first {@link #mSize} values in the layout of {@link Parcel#writeLongArray(long[])}.
+     */
+    private void writeLongs(@NonNull final Parcel dest, @NonNull final long[] values) {
+        dest.writeInt(mSize);
+        for (int i = 0; i < mSize; i++) {
+            dest.writeLong(values[i]);
+        }
+    }
+
+    private void writeInts(@NonNull final Parcel dest, @NonNull final int[] values) {
+        dest.writeInt(mSize);
+        for (int i = 0; i < mSize; i++) {
+            dest.writeInt(values[i]);
+        }
+    }
+
+    private int checkIndex(final int index) {
+        if (index < 0 || index >= mSize) {
+            throw new IndexOutOfBoundsException("index " + index + ", size " + mSize);
+        }
+        return index;
+    }
+}
@@ -0,0 +1,164 @@
+package com.obby.android.externalstoragemonitor.provider;
+
+import android.database.AbstractCursor;
+import android.database.Cursor;
+
+import androidx.annotation.NonNull;
+
+import com.obby.android.externalstoragemonitor.api.MonitorContract.History;
+import com.obby.android.externalstoragemonitor.core.ExternalStorageState;
+import com.obby.android.externalstoragemonitor.core.TransitionTrigger;
+import com.obby.android.externalstoragemonitor.core.journal.EventJournal;
+import com.obby.android.externalstoragemonitor.core.journal.JournalRecord;
+
+/**
+ * Cursor over journaled transitions given by their sequence numbers. A row is read from the journal when the
+ * cursor moves to it, into a single reused record, so a query costs the index of sequence numbers rather than the
+ * whole range; across processes the rows are copied into cursor windows as the reader advances. A row whose record
+ * has been compacted away since the query reads as nulls. A journal the cursor owns is closed with it.
+ */
+final class JournalCursor extends AbstractCursor {
+    static final String[] COLUMNS = {History._ID, History.TIMESTAMP, History.VOLUME_ID, History.PREVIOUS_STATE,
+        History.STATE, History.TRIGGER, History.STATE_NAME, History.TRIGGER_NAME};
+
+    private static final int COLUMN_ID = 0;
+
+    private static final int COLUMN_TIMESTAMP = 1;
+
+    private static final int COLUMN_VOLUME_ID = 2;
+
+    private static final int COLUMN_PREVIOUS_STATE = 3;
+
+    private static final int COLUMN_STATE = 4;
+
+    private static final int COLUMN_TRIGGER = 5;
+
+    private static final int COLUMN_STATE_NAME = 6;
+
+    private static final int COLUMN_TRIGGER_NAME = 7;
+
+    @NonNull
+    private final EventJournal mJournal;
+
+    @NonNull
+    private final long[] mSequences;
+
+    @NonNull
+    private final JournalRecord mRecord = new JournalRecord();
+
+    private final boolean mIsOwningJournal;
+
+    private boolean mIsRecordValid;
+
+    JournalCursor(@NonNull final EventJournal journal, @NonNull final long[] sequences,
+        final boolean isOwningJournal) {
+        mJournal = journal;
+        mSequences = sequences;
+        mIsOwningJournal = isOwningJournal;
+    }
+
+    @Override
+    public void close() {
+        super.close();
+        if (mIsOwningJournal) {
+            mJournal.close();
+        }
+    }
+
+    @Override
+    public int getCount() {
+        return mSequences.length;
+    }
+
+    @Override
+    public String[] getColumnNames() {
+        return COLUMNS;
+    }
+
+    @Override
+    public boolean onMove(final int oldPosition, final int newPosition) {
+        mIsRecordValid = mJournal.read(mSequences[newPosition], mRecord);
+        return true;
+    }
+
+    @Override
+    public int getType(final int column) {
+        if (!mIsRecordValid) {
+            return Cursor.FIELD_TYPE_NULL;
+        }
+
+        switch (column) {
+            case COLUMN_VOLUME_ID:
+            case COLUMN_STATE_NAME:
+            case COLUMN_TRIGGER_NAME:
+                return Cursor.FIELD_TYPE_STRING;
+            default:
+                return Cursor.FIELD_TYPE_INTEGER;
+        }
+    }
+
+    @Override
+    public boolean isNull(final int column) {
+        return !mIsRecordValid;
+    }
+
+    @Override
+    public String getString(final int column) {
+        if (!mIsRecordValid) {
+            return null;
+        }
+
+        switch (column) {
+            case COLUMN_VOLUME_ID:
+                return mRecord.getVolumeId();
+            case COLUMN_STATE_NAME:
+                return ExternalStorageState.toString(mRecord.getState());
+            case COLUMN_TRIGGER_NAME:
+                return TransitionTrigger.toString(mRecord.getTrigger());
+            default:
+                return Long.toString(getLong(column));
+        }
+    }
+
+    @Override
+    public long getLong(final int column) {
+        if (!mIsRecordValid) {
+            return 0L;
+        }
+
+        switch (column) {
+            case COLUMN_ID:
+                return mRecord.getSequence();
+            case COLUMN_TIMESTAMP:
+                return mRecord.getTimestamp();
+            case COLUMN_PREVIOUS_STATE:
+                return mRecord.getPreviousState();
+            case COLUMN_STATE:
+                return mRecord.getState();
+            case COLUMN_TRIGGER:
+                return mRecord.getTrigger();
+            default:
+                throw new IllegalArgumentException("not a numeric column: " + column);
+        }
+    }
+
+    @Override
+    public int getInt(final int column) {
+        return (int) getLong(column);
+    }
+
+    @Override
+    public short getShort(final int column) {
+        return (short) getLong(column);
+    }
+
+    @Override
+    public float getFloat(final int column) {
+        return getLong(column);
+    }
+
+    @Override
+    public double getDouble(final int column) {
+        return getLong(column);
+    }
+}
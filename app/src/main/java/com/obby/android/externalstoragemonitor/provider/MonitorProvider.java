@@ -0,0 +1,221 @@
+package com.obby.android.externalstoragemonitor.provider;
+
+import android.content.ContentProvider;
+import android.content.ContentResolver;
+import android.content.ContentValues;
+import android.content.UriMatcher;
+import android.database.Cursor;
+import android.database.MatrixCursor;
+import android.net.Uri;
+import android.os.Binder;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.Process;
+import android.os.UserHandle;
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import com.obby.android.externalstoragemonitor.api.MonitorContract;
+import com.obby.android.externalstoragemonitor.api.StateSnapshot;
+import com.obby.android.externalstoragemonitor.core.ExternalStorageState;
+import com.obby.android.externalstoragemonitor.core.journal.EventJournal;
+import com.obby.android.externalstoragemonitor.service.MonitorState;
+
+import java.io.IOException;
+
+/**
+ * Read-only provider of the monitor state and history, see {@link MonitorContract}.
+ *
+ * <p>State queries are answered from the snapshot the service publishes to {@link MonitorState}, without disk I/O.
+ * History queries index the matching journal records by sequence number and read them as the cursor moves; while
+ * the service has no journal open, the journal on disk is opened read-only for the cursor. Change notifications are
+ * sent only when the service reports a change, and a burst of changes is sent as one notification per URI.
+ *
+ * <p>The provider is exported without a manifest permission, so that {@code adb shell} can query it: the shell
+ * cannot hold the signature permission {@link MonitorContract#PERMISSION_READ}. {@link #query} checks the caller
+ * itself and lets in the app, the shell, root, and apps holding that permission.
+ */
+public class MonitorProvider extends ContentProvider {
+    private static final int MATCH_STATE = 1;
+
+    private static final int MATCH_HISTORY = 2;
+
+    /**
+     * {@code Process.SHELL_UID}, which is only public from API 29.
+     */
+    private static final int SHELL_APP_ID = 2000;
+
+    private static final int ROOT_APP_ID = 0;
+
+    private static final String[] STATE_COLUMNS = {MonitorContract.State._ID, MonitorContract.State.VOLUME_ID,
+        MonitorContract.State.STATE, MonitorContract.State.STATE_NAME, MonitorContract.State.MONITOR_RUNNING,
+        MonitorContract.State.SEQUENCE, MonitorContract.State.TIME};
+
+    @NonNull
+    private final UriMatcher mUriMatcher = new UriMatcher(UriMatcher.NO_MATCH);
+
+    private final String mTag = "MonitorProvider@" + hashCode();
+
+    @NonNull
+    private final Handler mMainHandler = new Handler(Looper.getMainLooper());
+
+    @NonNull
+    private final Runnable mNotifyStateRunnable = () -> notifyChange(MonitorContract.State.CONTENT_URI);
+
+    @NonNull
+    private final Runnable mNotifyHistoryRunnable = () -> notifyChange(MonitorContract.History.CONTENT_URI);
+
+    @NonNull
+    private final MonitorState.Observer mStateObserver = new MonitorState.Observer() {
+        @Override
+        public void onStateChanged() {
+            mMainHandler.removeCallbacks(mNotifyStateRunnable);
+            mMainHandler.post(mNotifyStateRunnable);
+        }
+
+        @Override
+        public void onHistoryChanged() {
+            mMainHandler.removeCallbacks(mNotifyHistoryRunnable);
+            mMainHandler.post(mNotifyHistoryRunnable);
+        }
+    };
+
+    @Override
+    public boolean onCreate() {
+        Log.i(mTag, "onCreate: provider created");
+        mUriMatcher.addURI(MonitorContract.AUTHORITY, "state", MATCH_STATE);
+        mUriMatcher.addURI(MonitorContract.AUTHORITY, "history", MATCH_HISTORY);
+        MonitorState.get().addObserver(mStateObserver);
+        return true;
+    }
+
+    @Nullable
+    @Override
+    public Cursor query(@NonNull final Uri uri, @Nullable final String[] projection, @Nullable final String selection,
+        @Nullable final String[] selectionArgs, @Nullable final String sortOrder) {
+        enforceReadPermission();
+
+        final Cursor cursor;
+        final Uri notificationUri;
+        switch (mUriMatcher.match(uri)) {
+            case MATCH_STATE:
+                cursor = queryState();
+                notificationUri = MonitorContract.State.CONTENT_URI;
+                break;
+            case MATCH_HISTORY:
+                cursor = queryHistory(getTimeParameter(uri, MonitorContract.History.PARAM_FROM, Long.MIN_VALUE),
+                    getTimeParameter(uri, MonitorContract.History.PARAM_TO, Long.MAX_VALUE));
+                notificationUri = MonitorContract.History.CONTENT_URI;
+                break;
+            default:
+                throw new IllegalArgumentException("unknown uri " + uri);
+        }
+
+        cursor.setNotificationUri(getContentResolver(), notificationUri);
+        return cursor;
+    }
+
+    @NonNull
+    private Cursor queryState() {
+        final StateSnapshot snapshot = MonitorState.get().getSnapshot();
+        final int isRunning = snapshot.isMonitorRunning() ? 1 : 0;
+        final MatrixCursor cursor = new MatrixCursor(STATE_COLUMNS, snapshot.getVolumeCount() + 1);
+        cursor.addRow(new Object[]{0L, EventJournal.AGGREGATE_VOLUME_ID, snapshot.getExternalStorageState(),
+            ExternalStorageState.toString(snapshot.getExternalStorageState()), isRunning, snapshot.getSequence(),
+            snapshot.getTime()});
+        for (int i = 0; i < snapshot.getVolumeCount(); i++) {
+            cursor.addRow(new Object[]{i + 1L, snapshot.getVolumeId(i), snapshot.getVolumeState(i),
+                ExternalStorageState.toString(snapshot.getVolumeState(i)), isRunning, snapshot.getSequence(),
+                snapshot.getTime()});
+        }
+        return cursor;
+    }
+
+    @NonNull
+    private Cursor queryHistory(final long fromTime, final long toTime) {
+        final EventJournal journal = MonitorState.get().getJournal();
+        if (journal != null) {
+            return new JournalCursor(journal, journal.findSequences(fromTime, toTime), false);
+        }
+
+        final EventJournal readOnlyJournal;
+        try {
+            readOnlyJournal = EventJournal.openReadOnly(MonitorState.getJournalDirectory(getContext()));
+        } catch (IOException e) {
+            Log.i(mTag, String.format("queryHistory: no journal to read, %s", e.getMessage()));
+            return new MatrixCursor(JournalCursor.COLUMNS, 0);
+        }
+        return new JournalCursor(readOnlyJournal, readOnlyJournal.findSequences(fromTime, toTime), true);
+    }
+
+    /**
+     * Lets in this app, the shell and root, and otherwise requires {@link MonitorContract#PERMISSION_READ}.
+     *
+     * @throws SecurityException if the caller may not read
+     */
+    private void enforceReadPermission() {
+        final int uid = Binder.getCallingUid();
+        final int appId = UserHandle.getAppId(uid);
+        if (uid == Process.myUid() || appId == SHELL_APP_ID || appId == ROOT_APP_ID) {
+            return;
+        }
+
+        getContext().enforceCallingPermission(MonitorContract.PERMISSION_READ,
+            "reading the monitor state requires " + MonitorContract.PERMISSION_READ);
+    }
+
+    private static long getTimeParameter(@NonNull final Uri uri, @NonNull final String key, final long defaultValue) {
+        final String value = uri.getQueryParameter(key);
+        if (value == null || value.isEmpty()) {
+            return defaultValue;
+        }
+
+        try {
+            return Long.parseLong(value);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException(String.format("bad %s in %s", key, uri), e);
+        }
+    }
+
+    private void notifyChange(@NonNull final Uri uri) {
+        getContentResolver().notifyChange(uri, null);
+    }
+
+    @NonNull
+    private ContentResolver getContentResolver() {
+        return getContext().getContentResolver();
+    }
+
+    @Nullable
+    @Override
+    public String getType(@NonNull final Uri uri) {
+        switch (mUriMatcher.match(uri)) {
+            case MATCH_STATE:
+                return MonitorContract.State.CONTENT_TYPE;
+            case MATCH_HISTORY:
+                return MonitorContract.History.CONTENT_TYPE;
+            default:
+                return null;
+        }
+    }
+
+    @Nullable
+    @Override
+    public Uri insert(@NonNull final Uri uri, @Nullable final ContentValues values) {
+        throw new UnsupportedOperationException("read-only provider");
+    }
+
+    @Override
+    public int delete(@NonNull final Uri uri, @Nullable final String selection,
+        @Nullable final String[] selectionArgs) {
+        throw new UnsupportedOperationException("read-only provider");
+    }
+
+    @Override
+    public int update(@NonNull final Uri uri, @Nullable final ContentValues values, @Nullable final String selection,
+        @Nullable final String[] selectionArgs) {
+        throw new UnsupportedOperationException("read-only provider");
+    }
+}
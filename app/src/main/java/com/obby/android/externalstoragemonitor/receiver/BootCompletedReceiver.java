@@ -3,17 +3,50 @@ package com.obby.android.externalstoragemonitor.receiver;
 import android.content.BroadcastReceiver;
 import android.content.Context;
 import android.content.Intent;
+import android.os.SystemClock;
+import android.util.Log;
 
 import androidx.core.content.ContextCompat;
 
 import com.obby.android.externalstoragemonitor.service.MonitorService;
+import com.obby.android.externalstoragemonitor.support.Constants;
 import com.obby.android.externalstoragemonitor.support.Preferences;
 
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+
+/**
+ * Starts the monitor at boot. Direct boot aware, so it runs on {@code LOCKED_BOOT_COMPLETED} before the user
+ * unlocks; the later {@code BOOT_COMPLETED} is then a no-op for the running service. Preferences are read off the
+ * main thread under {@link #goAsync()}.
+ */
 public class BootCompletedReceiver extends BroadcastReceiver {
+    private static final Executor EXECUTOR = Executors.newSingleThreadExecutor(
+        runnable -> new Thread(runnable, "boot-receiver"));
+
+    private final String mTag = "BootCompletedReceiver@" + hashCode();
+
     @Override
     public void onReceive(Context context, Intent intent) {
-        if (Intent.ACTION_BOOT_COMPLETED.equals(intent.getAction()) && Preferences.get().isMonitorEnabled()) {
-            ContextCompat.startForegroundService(context, new Intent(context, MonitorService.class));
+        final String action = intent.getAction();
+        if (!Intent.ACTION_LOCKED_BOOT_COMPLETED.equals(action) && !Intent.ACTION_BOOT_COMPLETED.equals(action)) {
+            return;
         }
+
+        final long receivedTime = SystemClock.elapsedRealtime();
+        final Context appContext = context.getApplicationContext();
+        final PendingResult pendingResult = goAsync();
+        EXECUTOR.execute(() -> {
+            try {
+                if (Preferences.get().isMonitorEnabled()) {
+                    Log.i(mTag, String.format("onReceive: %s received at %d ms, starting monitor", action,
+                        receivedTime));
+                    ContextCompat.startForegroundService(appContext, new Intent(appContext, MonitorService.class)
+                        .putExtra(Constants.EXTRA_BOOT_RECEIVED_TIME, receivedTime));
+                }
+            } finally {
+                pendingResult.finish();
+            }
+        });
     }
 }
@@ -0,0 +1,200 @@
+package com.obby.android.externalstoragemonitor.service;
+
+import android.content.Context;
+import android.graphics.PixelFormat;
+import android.os.Build;
+import android.util.Log;
+import android.view.Gravity;
+import android.view.LayoutInflater;
+import android.view.View;
+import android.view.ViewTreeObserver;
+import android.view.WindowManager;
+import android.widget.TextView;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.annotation.StringRes;
+import androidx.appcompat.view.ContextThemeWrapper;
+
+import com.obby.android.externalstoragemonitor.R;
+
+/**
+ * Shows the storage alerts in an overlay window, titled with the message of the alert.
+ *
+ * <p>The view is inflated once by {@link #prepare()} when monitoring starts and is then only attached to and
+ * detached from the window manager, so showing the alert costs a window add and one frame. The time from
+ * {@link #show(long)} until the view is first drawn, as seen by a {@link ViewTreeObserver.OnDrawListener}, is
+ * recorded separately for a warm view and for a view that had to be inflated first. All methods must be called on
+ * the main thread.
+ */
+final class AlertOverlay {
+    private final String mTag = "AlertOverlay@" + hashCode();
+
+    @NonNull
+    private final Context mContext;
+
+    @NonNull
+    private final WindowManager mWindowManager;
+
+    @NonNull
+    private final MonitorMetrics mMetrics;
+
+    @NonNull
+    private final WindowManager.LayoutParams mLayoutParams;
+
+    @Nullable
+    private View mView;
+
+    private boolean mIsShowing;
+
+    private boolean mIsViewStale;
+
+    @Nullable
+    private OnDismissListener mOnDismissListener;
+
+    AlertOverlay(@NonNull final Context context, @NonNull final MonitorMetrics metrics) {
+        mContext = context;
+        mWindowManager = context.getSystemService(WindowManager.class);
+        mMetrics = metrics;
+        mLayoutParams = new WindowManager.LayoutParams(
+            WindowManager.LayoutParams.MATCH_PARENT,
+            WindowManager.LayoutParams.WRAP_CONTENT,
+            Build.VERSION.SDK_INT < Build.VERSION_CODES.O
+                ? WindowManager.LayoutParams.TYPE_SYSTEM_ALERT : WindowManager.LayoutParams.TYPE_APPLICATION_OVERLAY,
+            WindowManager.LayoutParams.FLAG_NOT_FOCUSABLE | WindowManager.LayoutParams.FLAG_DIM_BEHIND,
+            PixelFormat.TRANSLUCENT);
+        mLayoutParams.gravity = Gravity.CENTER;
+        mLayoutParams.dimAmount = 0.32f;
+        mLayoutParams.windowAnimations = android.R.style.Animation_Dialog;
+    }
+
+    public void setOnDismissListener(@Nullable final OnDismissListener listener) {
+        mOnDismissListener = listener;
+    }
+
+    public boolean isShowing() {
+        return mIsShowing;
+    }
+
+    /**
+     * Inflates the view if it is not inflated yet.
+     */
+    public void prepare() {
+        if (mView != null) {
+            return;
+        }
+
+        final View view = LayoutInflater.from(new ContextThemeWrapper(mContext, R.style.AppTheme))
+            .inflate(R.layout.alert_overlay, null);
+        view.findViewById(R.id.alert_dismiss_button).setOnClickListener(v -> {
+            hide();
+            if (mOnDismissListener != null) {
+                mOnDismissListener.onDismissed();
+            }
+        });
+        mView = view;
+    }
+
+    /**
+     * Attaches the view to the window manager.
+     *
+     * @param requestNanos {@code System.nanoTime()} of the state change that caused the alert, or 0 if unknown
+     */
+    public void show(final long requestNanos) {
+        show(requestNanos, R.string.external_storage_unmounted_alert);
+    }
+
+    /**
+     * Attaches the view to the window manager showing {@code messageId}, or only updates the message if the view is
+     * already attached.
+     */
+    public void show(final long requestNanos, @StringRes final int messageId) {
+        final long startNanos = System.nanoTime();
+        final boolean isCold = mView == null;
+        prepare();
+        final TextView messageView = mView.findViewById(R.id.alert_message);
+        messageView.setText(messageId);
+        final String title = mContext.getString(messageId);
+        final boolean isTitleChanged = !title.contentEquals(mLayoutParams.getTitle());
+        mLayoutParams.setTitle(title);
+        if (mIsShowing) {
+            if (isTitleChanged) {
+                mWindowManager.updateViewLayout(mView, mLayoutParams);
+            }
+            return;
+        }
+
+        final View view = mView;
+        final ViewTreeObserver.OnDrawListener onDrawListener = new ViewTreeObserver.OnDrawListener() {
+            private boolean mIsDrawn;
+
+            @Override
+            public void onDraw() {
+                if (mIsDrawn) {
+                    return;
+                }
+
+                mIsDrawn = true;
+                (isCold ? mMetrics.getAlertShowColdLatency() : mMetrics.getAlertShowWarmLatency())
+                    .recordSince(startNanos);
+                if (requestNanos != 0L) {
+                    mMetrics.getStateToAlertLatency().recordSince(requestNanos);
+                }
+                // listeners cannot be removed while they are dispatched
+                view.post(() -> view.getViewTreeObserver().removeOnDrawListener(this));
+            }
+        };
+        view.getViewTreeObserver().addOnDrawListener(onDrawListener);
+        try {
+            mWindowManager.addView(view, mLayoutParams);
+        } catch (RuntimeException e) {
+            Log.e(mTag, "show: add overlay view failed", e);
+            view.getViewTreeObserver().removeOnDrawListener(onDrawListener);
+            return;
+        }
+        mIsShowing = true;
+        mMetrics.getAlertCount().incrementAndGet();
+    }
+
+    public void hide() {
+        if (!mIsShowing) {
+            return;
+        }
+
+        mIsShowing = false;
+        try {
+            mWindowManager.removeViewImmediate(mView);
+        } catch (RuntimeException e) {
+            Log.e(mTag, "hide: remove overlay view failed", e);
+        }
+        if (mIsViewStale) {
+            mIsViewStale = false;
+            mView = null;
+        }
+    }
+
+    /**
+     * Drops the inflated view so that the next {@link #prepare()} picks up a configuration change.
+     */
+    public void invalidate() {
+        if (mIsShowing) {
+            mIsViewStale = true;
+        } else {
+            mView = null;
+        }
+    }
+
+    public void release() {
+        hide();
+        mView = null;
+        mIsViewStale = false;
+    }
+
+    /**
+     * Called when the user dismisses the alert.
+     */
+    @FunctionalInterface
+    interface OnDismissListener {
+        void onDismissed();
+    }
+}
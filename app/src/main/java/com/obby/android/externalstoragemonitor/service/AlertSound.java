@@ -0,0 +1,134 @@
+package com.obby.android.externalstoragemonitor.service;
+
+import android.content.Context;
+import android.media.AudioAttributes;
+import android.media.SoundPool;
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import com.obby.android.externalstoragemonitor.R;
+
+/**
+ * Plays the external storage unmounted alert.
+ *
+ * <p>The sample is decoded by {@link #preload()} when monitoring starts and stays resident until {@link #release()},
+ * so an alert plays as soon as it is requested. The pool holds this one sample with a single stream, so the memory
+ * cost is bounded by the decoded size of the resource. A request made before decoding finishes is played when it
+ * does. All methods must be called on the main thread.
+ */
+final class AlertSound {
+    private final String mTag = "AlertSound@" + hashCode();
+
+    @NonNull
+    private final Context mContext;
+
+    @NonNull
+    private final MonitorMetrics mMetrics;
+
+    @Nullable
+    private SoundPool mSoundPool;
+
+    private int mSoundId;
+
+    private int mStreamId;
+
+    private boolean mIsLoaded;
+
+    /**
+     * {@code System.nanoTime()} of the request waiting for the sample to load, or 0.
+     */
+    private long mPendingRequestNanos;
+
+    private float mVolume = 1.0f;
+
+    AlertSound(@NonNull final Context context, @NonNull final MonitorMetrics metrics) {
+        mContext = context;
+        mMetrics = metrics;
+    }
+
+    public void preload() {
+        if (mSoundPool != null) {
+            return;
+        }
+
+        final long startNanos = System.nanoTime();
+        final SoundPool soundPool = new SoundPool.Builder()
+            .setMaxStreams(1)
+            .setAudioAttributes(new AudioAttributes.Builder()
+                .setUsage(AudioAttributes.USAGE_ALARM)
+                .setContentType(AudioAttributes.CONTENT_TYPE_SONIFICATION)
+                .build())
+            .build();
+        soundPool.setOnLoadCompleteListener((pool, sampleId, status) -> {
+            if (mSoundPool != pool || mSoundId != sampleId) {
+                return;
+            }
+
+            if (status != 0) {
+                Log.e(mTag, String.format("preload: load sound failed, status = %d", status));
+                return;
+            }
+
+            mIsLoaded = true;
+            Log.i(mTag, String.format("preload: sound loaded in %d ms", (System.nanoTime() - startNanos) / 1_000_000L));
+            if (mPendingRequestNanos != 0L) {
+                mMetrics.getAlertSoundColdCount().incrementAndGet();
+                start(mPendingRequestNanos);
+                mPendingRequestNanos = 0L;
+            }
+        });
+        mSoundPool = soundPool;
+        mSoundId = soundPool.load(mContext, R.raw.external_storage_unmounted_alert, 1);
+    }
+
+    /**
+     * Plays the alert, or plays it once loaded.
+     *
+     * @param requestNanos {@code System.nanoTime()} of the state change that caused the alert, or 0 if unknown
+     * @param volume       volume from 0 to 1
+     */
+    public void play(final long requestNanos, final float volume) {
+        mVolume = volume;
+        if (mSoundPool == null) {
+            preload();
+        }
+
+        if (mIsLoaded) {
+            stopStream();
+            start(requestNanos);
+        } else {
+            mPendingRequestNanos = requestNanos == 0L ? System.nanoTime() : requestNanos;
+        }
+    }
+
+    public void stop() {
+        mPendingRequestNanos = 0L;
+        stopStream();
+    }
+
+    private void stopStream() {
+        if (mSoundPool != null && mStreamId != 0) {
+            mSoundPool.stop(mStreamId);
+            mStreamId = 0;
+        }
+    }
+
+    public void release() {
+        stop();
+        if (mSoundPool != null) {
+            mSoundPool.release();
+            mSoundPool = null;
+        }
+        mSoundId = 0;
+        mIsLoaded = false;
+    }
+
+    private void start(final long requestNanos) {
+        mStreamId = mSoundPool.play(mSoundId, mVolume, mVolume, 0, 0, 1.0f);
+        if (mStreamId != 0 && requestNanos != 0L) {
+            mMetrics.getStateToAudioLatency().recordSince(requestNanos);
+        }
+    }
+}
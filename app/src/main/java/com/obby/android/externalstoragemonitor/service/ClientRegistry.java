@@ -0,0 +1,141 @@
+package com.obby.android.externalstoragemonitor.service;
+
+import android.os.Bundle;
+import android.os.Handler;
+import android.os.IBinder;
+import android.os.Message;
+import android.os.Messenger;
+import android.os.RemoteException;
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import com.obby.android.externalstoragemonitor.support.Constants;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Registered service clients and the sequence number of the state updates sent to them.
+ *
+ * <p>Every update broadcast through {@link #broadcast(int, int, int, Bundle)} carries the next sequence number in
+ * {@link Constants#KEY_SEQUENCE}, so a client can detect a missed update and ask for a new snapshot. The payload is
+ * built once per update and shared by all clients. Clients whose binder dies, or whose send fails, are dropped.
+ * Must only be used on the thread of the handler passed to the constructor.
+ */
+final class ClientRegistry {
+    private long mSequence;
+
+    private final String mTag = "ClientRegistry@" + hashCode();
+
+    @NonNull
+    private final Handler mHandler;
+
+    @NonNull
+    private final List<Client> mClients = new ArrayList<>();
+
+    ClientRegistry(@NonNull final Handler handler) {
+        mHandler = handler;
+    }
+
+    public boolean register(@NonNull final Messenger messenger) {
+        if (indexOf(messenger) >= 0) {
+            return false;
+        }
+
+        final Client client = new Client(messenger);
+        try {
+            messenger.getBinder().linkToDeath(client, 0);
+        } catch (RemoteException e) {
+            Log.w(mTag, "register: client already dead");
+            return false;
+        }
+
+        mClients.add(client);
+        return true;
+    }
+
+    public boolean unregister(@NonNull final Messenger messenger) {
+        final int index = indexOf(messenger);
+        if (index < 0) {
+            return false;
+        }
+
+        remove(index);
+        return true;
+    }
+
+    public int size() {
+        return mClients.size();
+    }
+
+    public long getSequence() {
+        return mSequence;
+    }
+
+    public void broadcast(final int what, final int arg1, final int arg2, @Nullable final Bundle data) {
+        final Bundle payload = data == null ? new Bundle() : data;
+        payload.putLong(Constants.KEY_SEQUENCE, ++mSequence);
+
+        for (int i = mClients.size() - 1; i >= 0; i--) {
+            final Message message = Message.obtain(null, what, arg1, arg2);
+            message.setData(payload);
+            try {
+                mClients.get(i).mMessenger.send(message);
+            } catch (RemoteException e) {
+                Log.w(mTag, "broadcast: drop unreachable client");
+                remove(i);
+            }
+        }
+    }
+
+    public void send(@NonNull final Messenger messenger, @NonNull final Message message) {
+        try {
+            messenger.send(message);
+        } catch (RemoteException e) {
+            Log.w(mTag, "send: drop unreachable client");
+            unregister(messenger);
+        }
+    }
+
+    public void clear() {
+        for (int i = mClients.size() - 1; i >= 0; i--) {
+            remove(i);
+        }
+    }
+
+    private int indexOf(@NonNull final Messenger messenger) {
+        for (int i = 0; i < mClients.size(); i++) {
+            if (mClients.get(i).mMessenger.equals(messenger)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private void remove(final int index) {
+        final Client client = mClients.remove(index);
+        client.mMessenger.getBinder().unlinkToDeath(client, 0);
+    }
+
+    private final class Client implements IBinder.DeathRecipient {
+        @NonNull
+        private final Messenger mMessenger;
+
+        private Client(@NonNull final Messenger messenger) {
+            mMessenger = messenger;
+        }
+
+        @Override
+        public void binderDied() {
+            mHandler.post(() -> {
+                final int index = mClients.indexOf(this);
+                if (index >= 0) {
+                    Log.i(mTag, "binderDied: drop dead client");
+                    remove(index);
+                }
+            });
+        }
+    }
+}
@@ -0,0 +1,121 @@
+package com.obby.android.externalstoragemonitor.service;
+
+import android.app.AlarmManager;
+import android.content.Context;
+import android.os.Debug;
+import android.os.Handler;
+import android.os.SystemClock;
+
+import androidx.annotation.NonNull;
+
+import com.obby.android.externalstoragemonitor.core.Scheduler;
+
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+/**
+ * {@link Scheduler} that runs short delays precisely on a {@link Handler} and long delays on inexact, non-wakeup
+ * alarms.
+ *
+ * <p>The monitor asks for short delays only while something is in progress: a broadcast burst being debounced, a
+ * volume still being checked, the fast polls after a change or a flapping volume about to recover. Those run on the
+ * handler, on time, while the device is awake anyway. The idle polls are a safety net for missed events, so they
+ * go to {@link AlarmManager#ELAPSED_REALTIME} alarms, which the system batches with other alarms and delivers when
+ * the device next wakes up, rather than stalling unnoticed in Doze like a handler delay or waking the CPU by
+ * themselves. Every run is counted by kind, and the thread CPU time it takes is recorded in the metrics.
+ * Must only be used on the thread of the handler.
+ */
+final class HybridScheduler implements Scheduler {
+    /**
+     * Longest delay that is still run precisely on the handler.
+     */
+    static final long PRECISE_MAX_DELAY_MS = 30_000L;
+
+    private static final String ALARM_TAG = "ExternalStorageMonitor:tick";
+
+    @NonNull
+    private final Handler mHandler;
+
+    @NonNull
+    private final AlarmManager mAlarmManager;
+
+    @NonNull
+    private final MonitorMetrics mMetrics;
+
+    @NonNull
+    private final Map<Runnable, Task> mTasks = new IdentityHashMap<>();
+
+    HybridScheduler(@NonNull final Context context, @NonNull final Handler handler,
+        @NonNull final MonitorMetrics metrics) {
+        mHandler = handler;
+        mAlarmManager = context.getSystemService(AlarmManager.class);
+        mMetrics = metrics;
+    }
+
+    @Override
+    public void schedule(@NonNull final Runnable runnable, final long delayMs) {
+        Task task = mTasks.get(runnable);
+        if (task == null) {
+            task = new Task(runnable);
+            mTasks.put(runnable, task);
+        } else {
+            task.cancel();
+        }
+
+        if (delayMs <= PRECISE_MAX_DELAY_MS) {
+            mHandler.postDelayed(task, Math.max(delayMs, 0L));
+        } else {
+            task.mIsAlarmSet = true;
+            mAlarmManager.set(AlarmManager.ELAPSED_REALTIME, SystemClock.elapsedRealtime() + delayMs, ALARM_TAG,
+                task, mHandler);
+        }
+    }
+
+    @Override
+    public void cancel(@NonNull final Runnable runnable) {
+        final Task task = mTasks.get(runnable);
+        if (task != null) {
+            task.cancel();
+        }
+    }
+
+    private final class Task implements Runnable, AlarmManager.OnAlarmListener {
+        @NonNull
+        private final Runnable mRunnable;
+
+        private boolean mIsAlarmSet;
+
+        private Task(@NonNull final Runnable runnable) {
+            mRunnable = runnable;
+        }
+
+        @Override
+        public void run() {
+            mMetrics.getPreciseRunCount().incrementAndGet();
+            runMeasured();
+        }
+
+        @Override
+        public void onAlarm() {
+            mIsAlarmSet = false;
+            mMetrics.getBatchedRunCount().incrementAndGet();
+            runMeasured();
+        }
+
+        private void cancel() {
+            mHandler.removeCallbacks(this);
+            if (mIsAlarmSet) {
+                mIsAlarmSet = false;
+                mAlarmManager.cancel(this);
+            }
+        }
+
+        private void runMeasured() {
+            final long startCpuNanos = Debug.threadCpuTimeNanos();
+            mRunnable.run();
+            if (startCpuNanos >= 0L) {
+                mMetrics.getScheduledCpuNanos().addAndGet(Debug.threadCpuTimeNanos() - startCpuNanos);
+            }
+        }
+    }
+}
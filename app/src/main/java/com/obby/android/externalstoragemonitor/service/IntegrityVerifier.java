@@ -0,0 +1,273 @@
+package com.obby.android.externalstoragemonitor.service;
+
+import android.content.Context;
+import android.os.Environment;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.Process;
+import android.os.storage.StorageManager;
+import android.os.storage.StorageVolume;
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.core.os.UserManagerCompat;
+
+import com.obby.android.externalstoragemonitor.core.integrity.FileManifest;
+import com.obby.android.externalstoragemonitor.core.integrity.IntegrityReport;
+import com.obby.android.externalstoragemonitor.core.integrity.IntegrityScanner;
+import com.obby.android.externalstoragemonitor.support.Preferences;
+import com.obby.android.externalstoragemonitor.utils.StorageVolumeUtils;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.PrintWriter;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+
+/**
+ * Verifies the configured directory of a removable volume against its {@link FileManifest} whenever the volume is
+ * mounted, and reports the {@link IntegrityReport} to the listener on the callback handler.
+ *
+ * <p>Volumes are verified one at a time on a background priority thread; walking and hashing fan out on a
+ * {@link ForkJoinPool} using half the cores, whose workers also run at background priority, so the scan scales
+ * with the device without starving the foreground app. A pass is cancelled when its volume goes away. Manifests are
+ * stored per volume and directory in the no backup files directory; the first pass over a directory builds its
+ * manifest.
+ *
+ * <p>The verified directory is always inside the app's own files directory on the volume, which the app can read
+ * without any storage permission or document tree grant; the setting only picks a subdirectory of it.
+ */
+final class IntegrityVerifier {
+    private static final String MANIFEST_DIRECTORY_NAME = "integrity";
+
+    private final String mTag = "IntegrityVerifier@" + hashCode();
+
+    @NonNull
+    private final Context mContext;
+
+    @NonNull
+    private final Handler mCallbackHandler;
+
+    @NonNull
+    private final Listener mListener;
+
+    @NonNull
+    private final StorageManager mStorageManager;
+
+    @NonNull
+    private final Map<String, IntegrityReport> mReports = new ConcurrentHashMap<>();
+
+    @Nullable
+    private HandlerThread mThread;
+
+    @Nullable
+    private Handler mHandler;
+
+    @Nullable
+    private ForkJoinPool mPool;
+
+    @Nullable
+    private volatile String mScanningVolumeId;
+
+    @Nullable
+    private volatile IntegrityScanner mScanner;
+
+    IntegrityVerifier(@NonNull final Context context, @NonNull final Handler callbackHandler,
+        @NonNull final Listener listener) {
+        mContext = context;
+        mCallbackHandler = callbackHandler;
+        mListener = listener;
+        mStorageManager = context.getSystemService(StorageManager.class);
+    }
+
+    /**
+     * Queues a pass over {@code volumeId}. May be called from any thread.
+     */
+    public void verify(@NonNull final String volumeId) {
+        schedule(volumeId, false);
+    }
+
+    /**
+     * Queues a pass over {@code volumeId} that drops the missing files from its manifest, once the user has confirmed
+     * that they were deleted on purpose. May be called from any thread.
+     */
+    public void acceptMissing(@NonNull final String volumeId) {
+        schedule(volumeId, true);
+    }
+
+    private synchronized void schedule(@NonNull final String volumeId, final boolean isAcceptingMissing) {
+        if (mThread == null) {
+            mThread = new HandlerThread("integrity", Process.THREAD_PRIORITY_BACKGROUND);
+            mThread.start();
+            mHandler = new Handler(mThread.getLooper());
+            mPool = new ForkJoinPool(Math.max(Runtime.getRuntime().availableProcessors() / 2, 1), pool -> {
+                final ForkJoinWorkerThread thread = new ForkJoinWorkerThread(pool) {
+                    @Override
+                    protected void onStart() {
+                        super.onStart();
+                        Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+                    }
+                };
+                thread.setName("integrity-" + thread.getPoolIndex());
+                return thread;
+            }, null, false);
+        }
+
+        final ForkJoinPool pool = mPool;
+        mHandler.removeCallbacksAndMessages(volumeId);
+        mHandler.postAtTime(() -> verifyVolume(volumeId, pool, isAcceptingMissing), volumeId, 0L);
+    }
+
+    /**
+     * Drops a queued pass over {@code volumeId} and cancels the one in progress. May be called from any thread.
+     */
+    public synchronized void cancel(@NonNull final String volumeId) {
+        if (mHandler != null) {
+            mHandler.removeCallbacksAndMessages(volumeId);
+        }
+
+        final IntegrityScanner scanner = mScanner;
+        if (scanner != null && volumeId.equals(mScanningVolumeId)) {
+            scanner.cancel();
+        }
+    }
+
+    /**
+     * Cancels every pass and releases the threads.
+     */
+    public synchronized void stop() {
+        if (mThread == null) {
+            return;
+        }
+
+        final IntegrityScanner scanner = mScanner;
+        if (scanner != null) {
+            scanner.cancel();
+        }
+        mHandler.removeCallbacksAndMessages(null);
+        mThread.quitSafely();
+        mPool.shutdown();
+        mThread = null;
+        mHandler = null;
+        mPool = null;
+        mReports.clear();
+    }
+
+    public void dump(@NonNull final PrintWriter writer) {
+        writer.println(String.format("Integrity: running = %b, scanning = %s", mThread != null, mScanningVolumeId));
+        for (final Map.Entry<String, IntegrityReport> entry : mReports.entrySet()) {
+            entry.getValue().dump(writer, "  " + entry.getKey() + ": ");
+        }
+    }
+
+    private void verifyVolume(@NonNull final String volumeId, @NonNull final ForkJoinPool pool,
+        final boolean isAcceptingMissing) {
+        if (!UserManagerCompat.isUserUnlocked(mContext)) {
+            Log.i(mTag, String.format("verifyVolume: skip %s while the user is locked", volumeId));
+            return;
+        }
+
+        final File directory = getDirectory(volumeId);
+        if (directory == null) {
+            Log.w(mTag, String.format("verifyVolume: no directory to verify on %s", volumeId));
+            return;
+        }
+
+        final File manifestFile = getManifestFile(volumeId, directory);
+        final IntegrityScanner scanner = new IntegrityScanner(pool);
+        synchronized (this) {
+            mScanningVolumeId = volumeId;
+            mScanner = scanner;
+        }
+        try {
+            final FileManifest manifest = readManifest(manifestFile);
+            final IntegrityReport report = scanner.verify(directory, manifest, isAcceptingMissing);
+            manifest.write(manifestFile);
+            Log.i(mTag, String.format("verifyVolume: %s %s", volumeId, report));
+            mReports.put(volumeId, report);
+            mCallbackHandler.post(() -> mListener.onIntegrityChecked(volumeId, report));
+        } catch (InterruptedIOException e) {
+            Log.i(mTag, String.format("verifyVolume: %s cancelled", volumeId));
+        } catch (IOException e) {
+            Log.e(mTag, String.format("verifyVolume: verify %s failed", volumeId), e);
+        } finally {
+            // a stop and restart may have handed the fields to a pass of a new thread already
+            synchronized (this) {
+                if (mScanner == scanner) {
+                    mScanner = null;
+                    mScanningVolumeId = null;
+                }
+            }
+        }
+    }
+
+    @NonNull
+    private FileManifest readManifest(@NonNull final File file) {
+        try {
+            return FileManifest.read(file);
+        } catch (IOException e) {
+            Log.w(mTag, "readManifest: corrupted manifest, rebuilding", e);
+            return new FileManifest();
+        }
+    }
+
+    /**
+     * Returns the configured subdirectory of the app's files directory on the mounted volume {@code volumeId}, or
+     * null if the volume is not mounted or the setting leaves the files directory.
+     */
+    @Nullable
+    private File getDirectory(@NonNull final String volumeId) {
+        final String relativePath = Preferences.get().getIntegrityDirectory();
+        for (final File filesDirectory : mContext.getExternalFilesDirs(null)) {
+            if (filesDirectory == null) {
+                continue;
+            }
+
+            final StorageVolume storageVolume = mStorageManager.getStorageVolume(filesDirectory);
+            if (storageVolume == null || !StorageVolumeUtils.isExternalStorage(storageVolume)
+                || !Environment.MEDIA_MOUNTED.equals(storageVolume.getState())
+                || !volumeId.equals(StorageVolumeUtils.getVolumeId(storageVolume))) {
+                continue;
+            }
+
+            if (relativePath.isEmpty()) {
+                return filesDirectory;
+            }
+
+            if (!isInside(filesDirectory, relativePath)) {
+                Log.w(mTag, String.format("getDirectory: %s is outside the files directory", relativePath));
+                return null;
+            }
+            return new File(filesDirectory, relativePath);
+        }
+        return null;
+    }
+
+    private static boolean isInside(@NonNull final File directory, @NonNull final String relativePath) {
+        try {
+            final String path = directory.getCanonicalPath();
+            return new File(directory, relativePath).getCanonicalPath().startsWith(path + File.separator);
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    @NonNull
+    private File getManifestFile(@NonNull final String volumeId, @NonNull final File directory) {
+        final File manifestDirectory = new File(mContext.getNoBackupFilesDir(), MANIFEST_DIRECTORY_NAME);
+        if (!manifestDirectory.isDirectory() && !manifestDirectory.mkdirs()) {
+            Log.w(mTag, "getManifestFile: create manifest directory failed");
+        }
+        return new File(manifestDirectory, String.format("%s-%08x.manifest", volumeId.replaceAll("[^\\w-]", "_"),
+            directory.getPath().hashCode()));
+    }
+
+    @FunctionalInterface
+    interface Listener {
+        void onIntegrityChecked(@NonNull String volumeId, @NonNull IntegrityReport report);
+    }
+}
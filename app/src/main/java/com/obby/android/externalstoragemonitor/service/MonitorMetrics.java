@@ -0,0 +1,228 @@
+package com.obby.android.externalstoragemonitor.service;
+
+import android.os.Process;
+import android.os.SystemClock;
+
+import androidx.annotation.NonNull;
+
+import com.obby.android.externalstoragemonitor.core.metrics.DetectionMetrics;
+import com.obby.android.externalstoragemonitor.core.metrics.LatencyHistogram;
+
+import java.io.PrintWriter;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import lombok.Getter;
+import lombok.experimental.Accessors;
+
+/**
+ * Counters and latency histograms of the detect, notify and alert stages, dumped by
+ * {@code adb shell dumpsys activity service .service.MonitorService}. Recording is lock-free and allocation-free.
+ */
+@Getter
+@Accessors(prefix = "m")
+final class MonitorMetrics {
+    /**
+     * Scans, events and detection latencies, recorded by the volume monitor.
+     */
+    @NonNull
+    private final DetectionMetrics mDetection = new DetectionMetrics();
+
+    /**
+     * From a state change to the notification being posted.
+     */
+    @NonNull
+    private final LatencyHistogram mStateToNotificationLatency = new LatencyHistogram("state_to_notification");
+
+    /**
+     * From a state change to the unmounted alert being shown.
+     */
+    @NonNull
+    private final LatencyHistogram mStateToAlertLatency = new LatencyHistogram("state_to_alert");
+
+    /**
+     * From showing the alert with an inflated view to its first frame.
+     */
+    @NonNull
+    private final LatencyHistogram mAlertShowWarmLatency = new LatencyHistogram("alert_show_warm");
+
+    /**
+     * From showing the alert without an inflated view to its first frame.
+     */
+    @NonNull
+    private final LatencyHistogram mAlertShowColdLatency = new LatencyHistogram("alert_show_cold");
+
+    /**
+     * From a state change to the alert sound starting to play.
+     */
+    @NonNull
+    private final LatencyHistogram mStateToAudioLatency = new LatencyHistogram("state_to_audio");
+
+    /**
+     * {@code SystemClock.elapsedRealtime()} of the boot broadcast that started the service, or 0.
+     */
+    @NonNull
+    private final AtomicLong mBootReceivedTime = new AtomicLong();
+
+    /**
+     * {@code SystemClock.elapsedRealtime()} of the last reset, the start of the per hour rates.
+     */
+    @NonNull
+    private final AtomicLong mResetTime = new AtomicLong(SystemClock.elapsedRealtime());
+
+    /**
+     * Scheduled monitor tasks run precisely on the monitor thread, and on batched alarms.
+     */
+    @NonNull
+    private final AtomicLong mPreciseRunCount = new AtomicLong();
+
+    @NonNull
+    private final AtomicLong mBatchedRunCount = new AtomicLong();
+
+    /**
+     * Thread CPU time spent in scheduled monitor tasks.
+     */
+    @NonNull
+    private final AtomicLong mScheduledCpuNanos = new AtomicLong();
+
+    @NonNull
+    private final AtomicLong mStateChangeCount = new AtomicLong();
+
+    @NonNull
+    private final AtomicLong mVolumeChangeCount = new AtomicLong();
+
+    /**
+     * Times a volume, or the aggregated state, started flapping.
+     */
+    @NonNull
+    private final AtomicLong mFlapCount = new AtomicLong();
+
+    /**
+     * Times a probed volume became degraded.
+     */
+    @NonNull
+    private final AtomicLong mDegradeCount = new AtomicLong();
+
+    /**
+     * Free space samples taken during scans.
+     */
+    @NonNull
+    private final AtomicLong mCapacitySampleCount = new AtomicLong();
+
+    /**
+     * Times a volume was predicted to fill up soon.
+     */
+    @NonNull
+    private final AtomicLong mNearlyFullCount = new AtomicLong();
+
+    /**
+     * Completed integrity passes, and the corrupted or unreadable files they found.
+     */
+    @NonNull
+    private final AtomicLong mIntegrityCheckCount = new AtomicLong();
+
+    @NonNull
+    private final AtomicLong mIntegrityMismatchCount = new AtomicLong();
+
+    @NonNull
+    private final AtomicLong mNotificationCount = new AtomicLong();
+
+    @NonNull
+    private final AtomicLong mNotificationSkipCount = new AtomicLong();
+
+    @NonNull
+    private final AtomicLong mNotificationDeferCount = new AtomicLong();
+
+    @NonNull
+    private final AtomicLong mAlertCount = new AtomicLong();
+
+    /**
+     * Alert sounds that had to wait for the sample to load.
+     */
+    @NonNull
+    private final AtomicLong mAlertSoundColdCount = new AtomicLong();
+
+    public void dump(@NonNull final PrintWriter writer) {
+        writer.println("Boot:");
+        writer.println("  boot broadcast received = " + formatBootTime(mBootReceivedTime.get()));
+        writer.println("  first scan = " + formatBootTime(mDetection.getFirstScanTime().get()));
+        writer.println("Counters:");
+        writer.println("  ticks = " + mDetection.getTickCount().get());
+        writer.println("  wakeups = " + mDetection.getWakeupCount().get());
+        writer.println("  broadcasts = " + mDetection.getBroadcastCount().get());
+        writer.println("  mount changes = " + mDetection.getMountChangeCount().get());
+        writer.println("  state changes = " + mStateChangeCount.get());
+        writer.println("  volume changes = " + mVolumeChangeCount.get());
+        writer.println("  flaps = " + mFlapCount.get());
+        writer.println("  degrades = " + mDegradeCount.get());
+        writer.println("  capacity samples = " + mCapacitySampleCount.get());
+        writer.println("  nearly full = " + mNearlyFullCount.get());
+        writer.println("  integrity checks = " + mIntegrityCheckCount.get());
+        writer.println("  integrity mismatches = " + mIntegrityMismatchCount.get());
+        writer.println("  notifications = " + mNotificationCount.get());
+        writer.println("  notifications skipped = " + mNotificationSkipCount.get());
+        writer.println("  notifications deferred = " + mNotificationDeferCount.get());
+        writer.println("  alerts = " + mAlertCount.get());
+        writer.println("  alert sounds played cold = " + mAlertSoundColdCount.get());
+        final double hours = Math.max(SystemClock.elapsedRealtime() - mResetTime.get(), 1L)
+            / (double) TimeUnit.HOURS.toMillis(1L);
+        final long scheduledCpuMs = TimeUnit.NANOSECONDS.toMillis(mScheduledCpuNanos.get());
+        final long processCpuMs = Process.getElapsedCpuTime();
+        writer.println(String.format(Locale.ROOT, "Scheduling (%.2f h):", hours));
+        writer.println(String.format(Locale.ROOT, "  precise runs = %d (%.1f/h)", mPreciseRunCount.get(),
+            mPreciseRunCount.get() / hours));
+        writer.println(String.format(Locale.ROOT, "  batched runs = %d (%.1f/h)", mBatchedRunCount.get(),
+            mBatchedRunCount.get() / hours));
+        writer.println(String.format(Locale.ROOT, "  scheduled cpu = %d ms (%.1f ms/h)", scheduledCpuMs,
+            scheduledCpuMs / hours));
+        writer.println(String.format(Locale.ROOT, "  process cpu since start = %d ms", processCpuMs));
+        writer.println("Latencies:");
+        for (final LatencyHistogram histogram : mDetection.getHistograms()) {
+            writer.print("  ");
+            histogram.dump(writer);
+        }
+        for (final LatencyHistogram histogram : getHistograms()) {
+            writer.print("  ");
+            histogram.dump(writer);
+        }
+    }
+
+    /**
+     * Resets counters and histograms; the boot times are kept.
+     */
+    public void reset() {
+        mDetection.reset();
+        for (final LatencyHistogram histogram : getHistograms()) {
+            histogram.reset();
+        }
+        mResetTime.set(SystemClock.elapsedRealtime());
+        mPreciseRunCount.set(0L);
+        mBatchedRunCount.set(0L);
+        mScheduledCpuNanos.set(0L);
+        mStateChangeCount.set(0L);
+        mVolumeChangeCount.set(0L);
+        mFlapCount.set(0L);
+        mDegradeCount.set(0L);
+        mCapacitySampleCount.set(0L);
+        mNearlyFullCount.set(0L);
+        mIntegrityCheckCount.set(0L);
+        mIntegrityMismatchCount.set(0L);
+        mNotificationCount.set(0L);
+        mNotificationSkipCount.set(0L);
+        mNotificationDeferCount.set(0L);
+        mAlertCount.set(0L);
+        mAlertSoundColdCount.set(0L);
+    }
+
+    @NonNull
+    private static String formatBootTime(final long time) {
+        return time == 0L ? "-" : time + " ms after boot";
+    }
+
+    @NonNull
+    private LatencyHistogram[] getHistograms() {
+        return new LatencyHistogram[]{mStateToNotificationLatency, mStateToAlertLatency, mAlertShowWarmLatency,
+            mAlertShowColdLatency, mStateToAudioLatency};
+    }
+}
@@ -0,0 +1,212 @@
+package com.obby.android.externalstoragemonitor.service;
+
+import android.annotation.SuppressLint;
+import android.app.Notification;
+import android.app.PendingIntent;
+import android.content.Context;
+import android.content.Intent;
+import android.os.Handler;
+import android.os.SystemClock;
+import android.util.SparseArray;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.core.app.NotificationChannelCompat;
+import androidx.core.app.NotificationCompat;
+import androidx.core.app.NotificationManagerCompat;
+
+import com.obby.android.externalstoragemonitor.MainActivity;
+import com.obby.android.externalstoragemonitor.R;
+import com.obby.android.externalstoragemonitor.core.TokenBucket;
+import com.obby.android.externalstoragemonitor.support.Constants;
+
+/**
+ * Posts the foreground service notification.
+ *
+ * <p>The notification for each state and its content intent are built once and cached. Updates are skipped when
+ * the visible state did not change, and are rate limited by a token bucket that stays below the platform limit of
+ * five notification updates per second; an update that has to wait replaces any update still waiting, so the last
+ * state always wins. {@link #update(int)} must be called on the thread of the handler passed to the constructor.
+ */
+final class MonitorNotifier {
+    public static final String NOTIFICATION_CHANNEL_ID = "monitor-service";
+
+    public static final int NOTIFICATION_ID = 1;
+
+    private static final int RATE_LIMIT_BURST = 4;
+
+    private static final long RATE_LIMIT_INTERVAL_MS = 250L;
+
+    /**
+     * Notification state shown while the aggregated external storage state is flapping.
+     */
+    public static final int STATE_FLAPPING = Integer.MIN_VALUE + 1;
+
+    /**
+     * Notification state shown while the external storage is mounted but a probed volume is degraded.
+     */
+    public static final int STATE_DEGRADED = Integer.MIN_VALUE + 2;
+
+    /**
+     * Notification state shown while the external storage is mounted but a volume is predicted to fill up soon.
+     */
+    public static final int STATE_NEARLY_FULL = Integer.MIN_VALUE + 3;
+
+    /**
+     * Notification state shown while the external storage is mounted but files on a volume failed verification.
+     */
+    public static final int STATE_CORRUPTED = Integer.MIN_VALUE + 4;
+
+    private static final int STATE_NONE = Integer.MIN_VALUE;
+
+    private int mPostedState = STATE_NONE;
+
+    private int mPendingState = STATE_NONE;
+
+    private long mPendingSinceNanos;
+
+    @Nullable
+    private PendingIntent mContentIntent;
+
+    @NonNull
+    private final Context mContext;
+
+    @NonNull
+    private final Handler mHandler;
+
+    @NonNull
+    private final MonitorMetrics mMetrics;
+
+    @NonNull
+    private final SparseArray<Notification> mNotifications = new SparseArray<>();
+
+    @NonNull
+    private final TokenBucket mTokenBucket = new TokenBucket(RATE_LIMIT_BURST, RATE_LIMIT_INTERVAL_MS);
+
+    @NonNull
+    private final Runnable mPostRunnable = this::post;
+
+    MonitorNotifier(@NonNull final Context context, @NonNull final Handler handler,
+        @NonNull final MonitorMetrics metrics) {
+        mContext = context;
+        mHandler = handler;
+        mMetrics = metrics;
+    }
+
+    public void createNotificationChannel() {
+        final NotificationChannelCompat notificationChannel =
+            new NotificationChannelCompat.Builder(NOTIFICATION_CHANNEL_ID, NotificationManagerCompat.IMPORTANCE_LOW)
+                .setName(mContext.getString(R.string.service_notification_channel_name))
+                .build();
+        NotificationManagerCompat.from(mContext).createNotificationChannel(notificationChannel);
+    }
+
+    /**
+     * Returns the notification for the given state, building it on first use. Safe to call from any thread.
+     */
+    @NonNull
+    public synchronized Notification getNotification(final int state) {
+        Notification notification = mNotifications.get(state);
+        if (notification == null) {
+            notification = buildNotification(state);
+            mNotifications.put(state, notification);
+        }
+        return notification;
+    }
+
+    /**
+     * Drops the cached notifications, e.g. after a locale change. The next update is always posted.
+     */
+    public synchronized void invalidate() {
+        mNotifications.clear();
+        mHandler.post(() -> mPostedState = STATE_NONE);
+    }
+
+    public void onForegroundStarted(final int state) {
+        mHandler.post(() -> mPostedState = state);
+    }
+
+    public void update(final int state) {
+        if (mPendingState != state) {
+            mPendingSinceNanos = System.nanoTime();
+        }
+        mPendingState = state;
+        mHandler.removeCallbacks(mPostRunnable);
+        post();
+    }
+
+    public void reset() {
+        mHandler.removeCallbacks(mPostRunnable);
+        mPostedState = STATE_NONE;
+        mPendingState = STATE_NONE;
+        mTokenBucket.reset();
+    }
+
+    @SuppressLint("MissingPermission")
+    private void post() {
+        if (mPendingState == STATE_NONE || mPendingState == mPostedState) {
+            mMetrics.getNotificationSkipCount().incrementAndGet();
+            return;
+        }
+
+        final long waitMs = mTokenBucket.tryAcquire(SystemClock.elapsedRealtime());
+        if (waitMs > 0L) {
+            mMetrics.getNotificationDeferCount().incrementAndGet();
+            mHandler.postDelayed(mPostRunnable, waitMs);
+            return;
+        }
+
+        NotificationManagerCompat.from(mContext).notify(NOTIFICATION_ID, getNotification(mPendingState));
+        mPostedState = mPendingState;
+        mMetrics.getNotificationCount().incrementAndGet();
+        mMetrics.getStateToNotificationLatency().recordSince(mPendingSinceNanos);
+    }
+
+    @NonNull
+    private Notification buildNotification(final int state) {
+        final String contentText;
+        switch (state) {
+            case Constants.EXTERNAL_STORAGE_STATE_MOUNTED:
+                contentText = mContext.getString(R.string.external_storage_mounted);
+                break;
+            case Constants.EXTERNAL_STORAGE_STATE_UNMOUNTED:
+                contentText = mContext.getString(R.string.external_storage_unmounted);
+                break;
+            case STATE_FLAPPING:
+                contentText = mContext.getString(R.string.external_storage_flapping);
+                break;
+            case STATE_DEGRADED:
+                contentText = mContext.getString(R.string.external_storage_degraded);
+                break;
+            case STATE_NEARLY_FULL:
+                contentText = mContext.getString(R.string.external_storage_nearly_full);
+                break;
+            case STATE_CORRUPTED:
+                contentText = mContext.getString(R.string.external_storage_corrupted);
+                break;
+            default:
+                contentText = null;
+                break;
+        }
+
+        if (mContentIntent == null) {
+            mContentIntent = PendingIntent.getActivity(mContext, 0, new Intent(mContext, MainActivity.class),
+                PendingIntent.FLAG_IMMUTABLE | PendingIntent.FLAG_UPDATE_CURRENT);
+        }
+
+        final NotificationCompat.Builder builder = new NotificationCompat.Builder(mContext, NOTIFICATION_CHANNEL_ID)
+            .setSmallIcon(R.mipmap.ic_launcher)
+            .setContentTitle(mContext.getString(R.string.service_notification_title))
+            .setContentText(contentText)
+            .setContentIntent(mContentIntent)
+            .setPriority(NotificationCompat.PRIORITY_DEFAULT)
+            .setOngoing(true)
+            .setOnlyAlertOnce(true);
+        if (state == STATE_CORRUPTED) {
+            builder.addAction(0, mContext.getString(R.string.accept_missing_files), PendingIntent.getBroadcast(
+                mContext, 0, new Intent(Constants.ACTION_ACCEPT_MISSING_FILES).setPackage(mContext.getPackageName()),
+                PendingIntent.FLAG_IMMUTABLE | PendingIntent.FLAG_UPDATE_CURRENT));
+        }
+        return builder.build();
+    }
+}
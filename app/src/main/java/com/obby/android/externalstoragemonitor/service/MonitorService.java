@@ -1,97 +1,201 @@
 package com.obby.android.externalstoragemonitor.service;
 
-import android.annotation.SuppressLint;
-import android.app.Notification;
-import android.app.PendingIntent;
+import android.app.AlarmManager;
 import android.app.Service;
 import android.content.BroadcastReceiver;
-import android.content.ContentResolver;
 import android.content.Context;
 import android.content.Intent;
 import android.content.IntentFilter;
 import android.content.pm.ServiceInfo;
-import android.media.AudioAttributes;
-import android.media.SoundPool;
+import android.content.res.Configuration;
 import android.os.Build;
-import android.os.Environment;
+import android.os.Bundle;
 import android.os.Handler;
+import android.os.HandlerThread;
 import android.os.IBinder;
 import android.os.Looper;
 import android.os.Message;
 import android.os.Messenger;
-import android.os.RemoteException;
+import android.os.Process;
+import android.os.StatFs;
 import android.os.SystemClock;
-import android.os.storage.StorageManager;
+import android.os.storage.StorageVolume;
 import android.util.Log;
-import android.view.WindowManager;
 
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
-import androidx.appcompat.app.AlertDialog;
-import androidx.appcompat.view.ContextThemeWrapper;
-import androidx.core.app.NotificationChannelCompat;
-import androidx.core.app.NotificationCompat;
-import androidx.core.app.NotificationManagerCompat;
 import androidx.core.app.ServiceCompat;
 import androidx.core.content.ContextCompat;
+import androidx.core.os.UserManagerCompat;
 
-import com.google.android.material.dialog.MaterialAlertDialogBuilder;
-import com.obby.android.externalstoragemonitor.MainActivity;
 import com.obby.android.externalstoragemonitor.R;
+import com.obby.android.externalstoragemonitor.api.IMonitorCallback;
+import com.obby.android.externalstoragemonitor.api.IMonitorService;
+import com.obby.android.externalstoragemonitor.api.StateSnapshot;
+import com.obby.android.externalstoragemonitor.api.TransitionBatch;
+import com.obby.android.externalstoragemonitor.core.ExternalStorageState;
+import com.obby.android.externalstoragemonitor.core.TransitionTrigger;
+import com.obby.android.externalstoragemonitor.core.VolumeMonitor;
+import com.obby.android.externalstoragemonitor.core.alert.EscalationPolicy;
+import com.obby.android.externalstoragemonitor.core.alert.EscalationScheduler;
+import com.obby.android.externalstoragemonitor.core.alert.TimerWheel;
+import com.obby.android.externalstoragemonitor.core.alert.UnmountedAlerts;
+import com.obby.android.externalstoragemonitor.core.capacity.CapacityTrend;
+import com.obby.android.externalstoragemonitor.core.history.UptimeHistory;
+import com.obby.android.externalstoragemonitor.core.history.UptimeStats;
+import com.obby.android.externalstoragemonitor.core.integrity.IntegrityReport;
+import com.obby.android.externalstoragemonitor.core.journal.EventJournal;
+import com.obby.android.externalstoragemonitor.core.journal.JournalRecord;
 import com.obby.android.externalstoragemonitor.support.Constants;
+import com.obby.android.externalstoragemonitor.support.Preferences;
+import com.obby.android.externalstoragemonitor.utils.StorageVolumeUtils;
 
+import java.io.File;
+import java.io.FileDescriptor;
+import java.io.IOException;
+import java.io.PrintWriter;
 import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.HashSet;
+import java.util.Iterator;
 import java.util.List;
-import java.util.Objects;
-import java.util.concurrent.CopyOnWriteArrayList;
-import java.util.stream.Collectors;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
-import lombok.Getter;
 import lombok.Setter;
 import lombok.experimental.Accessors;
 
+/**
+ * Foreground service hosting the {@link Monitor}.
+ *
+ * <p>Threading: the monitor, the monitor state, the client lists and the messenger run on the monitor thread
+ * ({@link #mMonitorHandler}); the overlay dialog and the alert sound are only touched on the main thread. Service
+ * lifecycle callbacks run on the main thread and hand work over to the monitor thread by posting to its handler.
+ * Calls to the {@link IMonitorService} binder run on binder threads; they read the state published to
+ * {@link MonitorState} and the journal, and post registrations to the monitor thread.
+ */
 public class MonitorService extends Service {
-    private static final String NOTIFICATION_CHANNEL_ID = "monitor-service";
+    private static final String ESCALATION_ALARM_TAG = "ExternalStorageMonitor:escalation";
 
-    private static final int NOTIFICATION_ID = 1;
+    private static final long ESCALATION_TICK_MS = 250L;
 
-    private static final long ALERT_INTERVAL_MS = Duration.ofMinutes(1L).toMillis();
+    /**
+     * Length of the delivery window of an escalation alarm when exact alarms may not be scheduled.
+     */
+    private static final long ESCALATION_WINDOW_MS = 5_000L;
+
+    private static final int ESCALATION_WHEEL_SIZE = 512;
+
+    private static final String DUMP_ARG_RESET = "reset";
+
+    private static final long DUMP_TIMEOUT_MS = 2_000L;
 
     @Nullable
     private Monitor mMonitor;
 
+    private boolean mIsMonitorRunning;
+
+    private volatile int mExternalStorageState = Constants.EXTERNAL_STORAGE_STATE_UNKNOWN;
+
     @NonNull
-    private String mExternalStorageState = Constants.EXTERNAL_STORAGE_STATE_UNKNOWN;
+    private final Map<String, Integer> mVolumeStates = new LinkedHashMap<>();
 
-    @Nullable
-    private SoundPool mExternalStorageUnmountedSoundPool;
+    private final String mTag = "MonitorService@" + hashCode();
+
+    private HandlerThread mMonitorThread;
+
+    private Handler mMonitorHandler;
+
+    private Messenger mMessenger;
+
+    private ClientRegistry mClients;
+
+    private RemoteClientRegistry mRemoteClients;
+
+    /**
+     * State published by the monitor thread after every update, for readers on other threads.
+     */
+    @NonNull
+    private final MonitorState mState = MonitorState.get();
+
+    private MonitorNotifier mNotifier;
+
+    private AlertSound mAlertSound;
 
-    private int mExternalStorageUnmountedSoundId = 0;
+    private AlertOverlay mAlertOverlay;
+
+    private VolumeProber mVolumeProber;
+
+    private IntegrityVerifier mIntegrityVerifier;
 
     @Nullable
-    private AlertDialog mExternalStorageUnmountedDialog;
+    private volatile EventJournal mJournal;
 
-    private final String mTag = "MonitorService@" + hashCode();
+    @NonNull
+    private final UptimeHistory mHistory = new UptimeHistory();
 
     @NonNull
-    private final Handler mMainHandler = new Handler(Looper.getMainLooper());
+    private final MonitorMetrics mMetrics = new MonitorMetrics();
+
+    private volatile long mStateChangedNanos;
 
+    /**
+     * Whether the aggregated state is flapping. Written on the monitor thread.
+     */
+    private volatile boolean mIsFlapping;
+
+    /**
+     * Volumes whose I/O probes report them as degraded. Monitor thread only.
+     */
     @NonNull
-    private final List<Messenger> mClientMessengers = new CopyOnWriteArrayList<>();
+    private final Set<String> mDegradedVolumes = new HashSet<>();
 
+    /**
+     * Volumes predicted to fill up soon. Monitor thread only.
+     */
     @NonNull
-    private final Messenger mMessenger = new Messenger(new Handler(Looper.getMainLooper(), msg -> {
-        switch (msg.what) {
-            case Constants.MSG_REGISTER_SERVICE_CLIENT:
-                registerServiceClient(msg.replyTo);
-                return true;
-            case Constants.MSG_UNREGISTER_SERVICE_CLIENT:
-                unregisterServiceClient(msg.replyTo);
-                return true;
-            default:
-                return false;
-        }
-    }));
+    private final Set<String> mNearlyFullVolumes = new HashSet<>();
+
+    /**
+     * Unmounted alerts that should escalate. Monitor thread only.
+     */
+    @NonNull
+    private final UnmountedAlerts mUnmountedAlerts = new UnmountedAlerts(EventJournal.AGGREGATE_VOLUME_ID,
+        volumeId -> Preferences.get().getEscalationPolicy(volumeId));
+
+    /**
+     * Volumes whose unmounted alert is escalating. Main thread only.
+     */
+    @NonNull
+    private final Set<String> mEscalatingVolumes = new HashSet<>();
+
+    private boolean mIsEscalationAlarmSet;
+
+    /**
+     * Volumes whose last integrity pass found corrupted or unreadable files. Monitor thread only.
+     */
+    @NonNull
+    private final Set<String> mCorruptedVolumes = new HashSet<>();
+
+    @NonNull
+    private final Preferences.Observer mPreferencesObserver = key -> {
+        if (Preferences.KEY_PROBE_ENABLED.equals(key)) {
+            updateVolumeProber();
+        } else if (Preferences.KEY_INTEGRITY_ENABLED.equals(key)
+            || Preferences.KEY_INTEGRITY_DIRECTORY.equals(key)) {
+            mMonitorHandler.post(this::updateIntegrityVerifier);
+        }
+    };
+
+    @NonNull
+    private final Handler mMainHandler = new Handler(Looper.getMainLooper());
 
     @NonNull
     private final BroadcastReceiver mBroadcastReceiver = new BroadcastReceiver() {
@@ -99,20 +203,120 @@ public class MonitorService extends Service {
         public void onReceive(Context context, Intent intent) {
             if (Constants.ACTION_STOP_SERVICE.equals(intent.getAction())) {
                 stopService();
+            } else if (Constants.ACTION_ACCEPT_MISSING_FILES.equals(intent.getAction())) {
+                mMonitorHandler.post(MonitorService.this::acceptMissingFiles);
+            }
+        }
+    };
+
+    @NonNull
+    private final ExternalStorageStateListener mExternalStorageStateListener = new ExternalStorageStateListener() {
+        @Override
+        public void onExternalStorageStateChanged(final int state, final int trigger) {
+            MonitorService.this.onExternalStorageStateChanged(state, trigger);
+        }
+
+        @Override
+        public void onVolumeStateChanged(@NonNull final String volumeId, final int previousState, final int state,
+            final int trigger) {
+            MonitorService.this.onVolumeStateChanged(volumeId, previousState, state, trigger);
+        }
+
+        @Override
+        public void onFlappingChanged(@NonNull final String volumeId, final boolean isFlapping) {
+            MonitorService.this.onFlappingChanged(volumeId, isFlapping);
+        }
+
+        @Override
+        public void onNearlyFullChanged(@NonNull final String volumeId, final boolean isNearlyFull) {
+            MonitorService.this.onNearlyFullChanged(volumeId, isNearlyFull);
+        }
+    };
+
+    @NonNull
+    private final IMonitorService.Stub mBinder = new IMonitorService.Stub() {
+        @Override
+        public StateSnapshot getSnapshot() {
+            return mState.getSnapshot();
+        }
+
+        @Override
+        public TransitionBatch getTransitions(final long fromTime, final long toTime, final long afterSequence,
+            final int maxCount) {
+            return readTransitions(fromTime, toTime, afterSequence,
+                Math.max(Math.min(maxCount, IMonitorService.MAX_BATCH_SIZE), 0));
+        }
+
+        @Override
+        public void registerCallback(final IMonitorCallback callback) {
+            if (callback != null) {
+                mMonitorHandler.post(() -> mRemoteClients.register(callback, mState.getSnapshot()));
+            }
+        }
+
+        @Override
+        public void unregisterCallback(final IMonitorCallback callback) {
+            if (callback != null) {
+                mMonitorHandler.post(() -> mRemoteClients.unregister(callback));
             }
         }
     };
 
     @NonNull
-    private final Runnable mShowExternalStorageUnmountedDialogRunnable = this::showExternalStorageUnmountedDialog;
+    private final EscalationScheduler mEscalationScheduler = new EscalationScheduler(SystemClock::elapsedRealtime,
+        new TimerWheel(ESCALATION_TICK_MS, ESCALATION_WHEEL_SIZE), this::onEscalationAlert);
+
+    @NonNull
+    private final AlarmManager.OnAlarmListener mEscalationAlarmListener = () -> {
+        mIsEscalationAlarmSet = false;
+        mEscalationScheduler.advance();
+        scheduleEscalation();
+    };
 
     @Override
     public void onCreate() {
         super.onCreate();
         Log.i(mTag, "onCreate: service created");
 
+        mMonitorThread = new HandlerThread("monitor");
+        mMonitorThread.start();
+        mMonitorHandler = new Handler(mMonitorThread.getLooper());
+        mClients = new ClientRegistry(mMonitorHandler);
+        mRemoteClients = new RemoteClientRegistry();
+        mNotifier = new MonitorNotifier(this, mMonitorHandler, mMetrics);
+        mAlertSound = new AlertSound(this, mMetrics);
+        mAlertOverlay = new AlertOverlay(this, mMetrics);
+        mAlertOverlay.setOnDismissListener(() -> {
+            mAlertSound.stop();
+            mEscalatingVolumes.forEach(mEscalationScheduler::snooze);
+            scheduleEscalation();
+        });
+        mVolumeProber = new VolumeProber(this, mMonitorHandler, this::onVolumeHealthChanged);
+        mIntegrityVerifier = new IntegrityVerifier(this, mMonitorHandler, this::onIntegrityChecked);
+        Preferences.get().addObserver(mPreferencesObserver);
+        mMessenger = new Messenger(new Handler(mMonitorThread.getLooper(), msg -> {
+            switch (msg.what) {
+                case Constants.MSG_REGISTER_SERVICE_CLIENT:
+                    registerServiceClient(msg.replyTo);
+                    return true;
+                case Constants.MSG_UNREGISTER_SERVICE_CLIENT:
+                    unregisterServiceClient(msg.replyTo);
+                    return true;
+                case Constants.MSG_REQUEST_SNAPSHOT:
+                    sendSnapshot(msg.replyTo);
+                    return true;
+                case Constants.MSG_REQUEST_HISTORY:
+                    sendHistory(msg.replyTo, msg.getData());
+                    return true;
+                default:
+                    return false;
+            }
+        }));
+        mMonitorHandler.post(this::openJournal);
+
         final IntentFilter intentFilter = new IntentFilter();
         intentFilter.addAction(Constants.ACTION_STOP_SERVICE);
+        intentFilter.addAction(Constants.ACTION_ACCEPT_MISSING_FILES);
         ContextCompat.registerReceiver(this, mBroadcastReceiver, intentFilter, ContextCompat.RECEIVER_NOT_EXPORTED);
     }
 
@@ -122,13 +326,71 @@ public class MonitorService extends Service {
         Log.i(mTag, "onDestroy: service destroyed");
 
         unregisterReceiver(mBroadcastReceiver);
+        Preferences.get().removeObserver(mPreferencesObserver);
+        mVolumeProber.stop();
+        mIntegrityVerifier.stop();
+        mAlertOverlay.release();
+        mAlertSound.release();
+        mMonitorHandler.post(() -> {
+            mClients.clear();
+            mRemoteClients.clear();
+            closeJournal();
+        });
+        mMonitorThread.quitSafely();
+    }
+
+    @Override
+    public void onConfigurationChanged(@NonNull Configuration newConfig) {
+        super.onConfigurationChanged(newConfig);
+        mNotifier.invalidate();
+        mAlertOverlay.invalidate();
+        if (mMonitor != null) {
+            mAlertOverlay.prepare();
+        }
+        mMonitorHandler.post(() -> {
+            if (mIsMonitorRunning) {
+                mNotifier.update(getNotificationState());
+            }
+        });
+    }
+
+    @Override
+    protected void dump(FileDescriptor fd, PrintWriter writer, String[] args) {
+        if (args != null && args.length > 0 && DUMP_ARG_RESET.equals(args[0])) {
+            mMetrics.reset();
+            writer.println("metrics reset");
+            return;
+        }
+
+        // the monitor state is confined to the monitor thread, so the summary is built there
+        final FutureTask<String> summary = new FutureTask<>(() -> String.format(
+            "MonitorService: running = %b, state = %s, volumes = %d, clients = %d + %d remote", mIsMonitorRunning,
+            ExternalStorageState.toString(mExternalStorageState), mVolumeStates.size(), mClients.size(),
+            mRemoteClients.size()));
+        mMonitorHandler.post(summary);
+        try {
+            writer.println(summary.get(DUMP_TIMEOUT_MS, TimeUnit.MILLISECONDS));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return;
+        } catch (ExecutionException | TimeoutException e) {
+            writer.println(String.format("MonitorService: monitor thread did not answer within %d ms",
+                DUMP_TIMEOUT_MS));
+        }
+        mMetrics.dump(writer);
+        mVolumeProber.dump(writer);
+        mIntegrityVerifier.dump(writer);
+        final Monitor monitor = mMonitor;
+        if (monitor != null) {
+            monitor.dumpCapacity(writer);
+        }
     }
 
     @Nullable
     @Override
     public IBinder onBind(Intent intent) {
-        Log.i(mTag, "onBind: service bound");
-        return mMessenger.getBinder();
+        Log.i(mTag, String.format("onBind: action = %s", intent.getAction()));
+        return IMonitorService.ACTION_BIND.equals(intent.getAction()) ? mBinder : mMessenger.getBinder();
     }
 
     @Override
@@ -136,8 +398,9 @@ public class MonitorService extends Service {
         Log.i(mTag, String.format("onStartCommand: startId = %d", startId));
 
         if (mMonitor != null) {
+            // the system keeps the result of the last start, e.g. BOOT_COMPLETED after LOCKED_BOOT_COMPLETED
             Log.w(mTag, "onStartCommand: monitor already running");
-            return START_NOT_STICKY;
+            return START_STICKY;
         }
 
         if (intent == null) {
@@ -145,26 +408,41 @@ public class MonitorService extends Service {
             return START_NOT_STICKY;
         }
 
-        createNotificationChannel();
+        final long bootReceivedTime = intent.getLongExtra(Constants.EXTRA_BOOT_RECEIVED_TIME, 0L);
+        if (bootReceivedTime > 0L) {
+            mMetrics.getBootReceivedTime().compareAndSet(0L, bootReceivedTime);
+        }
+
+        mNotifier.createNotificationChannel();
 
+        final int state = mExternalStorageState;
         try {
             if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.UPSIDE_DOWN_CAKE) {
-                startForeground(NOTIFICATION_ID, buildNotification(),
+                startForeground(MonitorNotifier.NOTIFICATION_ID, mNotifier.getNotification(state),
                     ServiceInfo.FOREGROUND_SERVICE_TYPE_REMOTE_MESSAGING);
             } else {
-                startForeground(NOTIFICATION_ID, buildNotification());
+                startForeground(MonitorNotifier.NOTIFICATION_ID, mNotifier.getNotification(state));
             }
+            mNotifier.onForegroundStarted(state);
+            mAlertSound.preload();
+            mAlertOverlay.prepare();
         } catch (Exception e) {
             Log.e(mTag, "onStartCommand: start foreground failed", e);
             stopService();
             return START_NOT_STICKY;
         }
 
-        mMonitor = new Monitor(this);
-        mMonitor.setExternalStorageStateListener(this::onExternalStorageStateChanged);
-        mMonitor.start();
-
-        mClientMessengers.forEach(this::notifyMonitorStarted);
+        final Monitor monitor = new Monitor(this, mMonitorHandler.getLooper(), mMetrics);
+        monitor.setExternalStorageStateListener(mExternalStorageStateListener);
+        mMonitor = monitor;
+        updateVolumeProber();
+        mMonitorHandler.post(() -> {
+            monitor.start();
+            mIsMonitorRunning = true;
+            mClients.broadcast(Constants.MSG_MONITOR_STARTED, 0, 0, null);
+            mRemoteClients.broadcastMonitorRunningChanged(true, mClients.getSequence());
+            publishSnapshot();
+        });
 
         return START_STICKY;
     }
@@ -172,315 +450,714 @@ public class MonitorService extends Service {
     private void stopService() {
         Log.i(mTag, "stopService: stop service");
 
-        mExternalStorageState = Constants.EXTERNAL_STORAGE_STATE_UNKNOWN;
-        mExternalStorageUnmountedSoundId = 0;
+        final Monitor monitor = mMonitor;
+        mMonitor = null;
+        mMonitorHandler.post(() -> {
+            if (monitor != null) {
+                monitor.stop();
+            }
+            mIsMonitorRunning = false;
+            mIntegrityVerifier.stop();
+            for (final Map.Entry<String, Integer> entry : mVolumeStates.entrySet()) {
+                recordTransition(entry.getKey(), entry.getValue(), ExternalStorageState.ABSENT,
+                    TransitionTrigger.STOP);
+            }
+            recordTransition(EventJournal.AGGREGATE_VOLUME_ID, mExternalStorageState,
+                Constants.EXTERNAL_STORAGE_STATE_UNKNOWN, TransitionTrigger.STOP);
+            mExternalStorageState = Constants.EXTERNAL_STORAGE_STATE_UNKNOWN;
+            mIsFlapping = false;
+            mDegradedVolumes.clear();
+            mNearlyFullVolumes.clear();
+            mCorruptedVolumes.clear();
+            mUnmountedAlerts.clear();
+            mVolumeStates.clear();
+            mNotifier.reset();
+            if (mJournal != null) {
+                mJournal.flush();
+            }
+            mClients.broadcast(Constants.MSG_MONITOR_STOPPED, 0, 0, null);
+            mRemoteClients.broadcastMonitorRunningChanged(false, mClients.getSequence());
+            publishSnapshot();
+        });
+
         mMainHandler.removeCallbacksAndMessages(null);
-        dismissExternalStorageUnmountedDialog();
+        mEscalationScheduler.clear();
+        mEscalatingVolumes.clear();
+        cancelEscalation();
+        dismissExternalStorageUnmountedAlert();
+        updateVolumeProber();
 
-        if (mMonitor != null) {
-            mMonitor.stop();
-            mMonitor = null;
+        ServiceCompat.stopForeground(this, ServiceCompat.STOP_FOREGROUND_REMOVE);
+        stopSelf();
+    }
+
+    private void onExternalStorageStateChanged(final int state, final int trigger) {
+        mStateChangedNanos = System.nanoTime();
+        mMetrics.getStateChangeCount().incrementAndGet();
+        recordTransition(EventJournal.AGGREGATE_VOLUME_ID, mExternalStorageState, state, trigger);
+        mExternalStorageState = state;
+        mClients.broadcast(Constants.MSG_EXTERNAL_STORAGE_STATE_CHANGED, state, 0, null);
+        mRemoteClients.broadcastExternalStorageStateChanged(state, mClients.getSequence());
+        publishSnapshot();
+        mNotifier.update(getNotificationState());
+        if (mUnmountedAlerts.onExternalStorageStateChanged(state)) {
+            postExternalStorageUnmountedAlert();
         }
+    }
 
-        if (mExternalStorageUnmountedSoundPool != null) {
-            mExternalStorageUnmountedSoundPool.release();
-            mExternalStorageUnmountedSoundPool = null;
+    /**
+     * Raises a single alert when the aggregated state starts flapping; state changes are held back by the monitor
+     * until it recovers.
+     */
+    private void onFlappingChanged(@NonNull final String volumeId, final boolean isFlapping) {
+        Log.w(mTag, String.format("onFlappingChanged: volumeId = %s, isFlapping = %b", volumeId, isFlapping));
+        if (isFlapping) {
+            mMetrics.getFlapCount().incrementAndGet();
+        }
+        if (!EventJournal.AGGREGATE_VOLUME_ID.equals(volumeId)) {
+            return;
         }
 
-        mClientMessengers.forEach(this::notifyMonitorStopped);
+        mIsFlapping = isFlapping;
+        mNotifier.update(getNotificationState());
+        if (isFlapping) {
+            mMainHandler.post(this::showExternalStorageFlappingAlert);
+        } else {
+            postExternalStorageUnmountedAlert();
+        }
+    }
 
-        ServiceCompat.stopForeground(this, ServiceCompat.STOP_FOREGROUND_REMOVE);
-        stopSelf();
+    private int getNotificationState() {
+        if (mIsFlapping) {
+            return MonitorNotifier.STATE_FLAPPING;
+        } else if (mExternalStorageState != Constants.EXTERNAL_STORAGE_STATE_MOUNTED) {
+            return mExternalStorageState;
+        } else if (!mDegradedVolumes.isEmpty()) {
+            return MonitorNotifier.STATE_DEGRADED;
+        } else if (!mCorruptedVolumes.isEmpty()) {
+            return MonitorNotifier.STATE_CORRUPTED;
+        } else if (!mNearlyFullVolumes.isEmpty()) {
+            return MonitorNotifier.STATE_NEARLY_FULL;
+        } else {
+            return mExternalStorageState;
+        }
     }
 
-    @SuppressLint("MissingPermission")
-    private void onExternalStorageStateChanged(@NonNull final String state) {
-        mExternalStorageState = state;
-        mClientMessengers.forEach(this::notifyExternalStorageStateChanged);
-        NotificationManagerCompat.from(this).notify(NOTIFICATION_ID, buildNotification());
+    private void updateVolumeProber() {
+        if (mMonitor != null && Preferences.get().isProbeEnabled()) {
+            mVolumeProber.start();
+        } else {
+            mVolumeProber.stop();
+        }
+    }
+
+    private void onVolumeHealthChanged(@NonNull final String volumeId, final boolean isDegraded) {
+        if (!mIsMonitorRunning) {
+            return;
+        }
+
+        Log.w(mTag, String.format("onVolumeHealthChanged: volumeId = %s, isDegraded = %b", volumeId, isDegraded));
+        if (isDegraded ? mDegradedVolumes.add(volumeId) : mDegradedVolumes.remove(volumeId)) {
+            if (isDegraded) {
+                mMetrics.getDegradeCount().incrementAndGet();
+            }
+            mNotifier.update(getNotificationState());
+        }
+    }
+
+    /**
+     * Verifies every mounted volume when integrity checks are turned on or pointed at another directory, and stops
+     * them when turned off.
+     */
+    private void updateIntegrityVerifier() {
+        if (!mIsMonitorRunning || !Preferences.get().isIntegrityEnabled()) {
+            mIntegrityVerifier.stop();
+            if (!mCorruptedVolumes.isEmpty()) {
+                mCorruptedVolumes.clear();
+                mNotifier.update(getNotificationState());
+            }
+            return;
+        }
 
-        mMainHandler.removeCallbacks(mShowExternalStorageUnmountedDialogRunnable);
+        for (final Map.Entry<String, Integer> entry : mVolumeStates.entrySet()) {
+            if (entry.getValue() == ExternalStorageState.MOUNTED) {
+                mIntegrityVerifier.verify(entry.getKey());
+            }
+        }
+    }
+
+    /**
+     * Re-verifies every volume with mismatches, dropping the files it misses from its manifest.
+     */
+    private void acceptMissingFiles() {
+        if (!mIsMonitorRunning || !Preferences.get().isIntegrityEnabled()) {
+            return;
+        }
+
+        for (final String volumeId : mCorruptedVolumes) {
+            mIntegrityVerifier.acceptMissing(volumeId);
+        }
+    }
 
-        if (Constants.EXTERNAL_STORAGE_STATE_UNMOUNTED.equals(mExternalStorageState)) {
-            showExternalStorageUnmountedDialog();
+    private void onIntegrityChecked(@NonNull final String volumeId, @NonNull final IntegrityReport report) {
+        if (!mIsMonitorRunning) {
+            return;
+        }
+
+        mMetrics.getIntegrityCheckCount().incrementAndGet();
+        final boolean isCorrupted = report.hasMismatches();
+        if (isCorrupted) {
+            mMetrics.getIntegrityMismatchCount().addAndGet(report.getCorruptedCount() + report.getUnreadableCount()
+                + report.getMissingCount());
+            Log.w(mTag, String.format("onIntegrityChecked: volumeId = %s, %s, mismatches = %s", volumeId, report,
+                report.getMismatches()));
+        }
+        if (isCorrupted ? mCorruptedVolumes.add(volumeId) : mCorruptedVolumes.remove(volumeId)) {
+            mNotifier.update(getNotificationState());
+        }
+    }
+
+    /**
+     * Raises a single alert when a volume is predicted to fill up soon; the notification shows it until the trend
+     * clears.
+     */
+    private void onNearlyFullChanged(@NonNull final String volumeId, final boolean isNearlyFull) {
+        Log.w(mTag, String.format("onNearlyFullChanged: volumeId = %s, isNearlyFull = %b", volumeId, isNearlyFull));
+        if (isNearlyFull ? mNearlyFullVolumes.add(volumeId) : mNearlyFullVolumes.remove(volumeId)) {
+            mNotifier.update(getNotificationState());
+            if (isNearlyFull) {
+                mMetrics.getNearlyFullCount().incrementAndGet();
+                mMainHandler.post(this::showExternalStorageNearlyFullAlert);
+            }
+        }
+    }
+
+    private void showExternalStorageNearlyFullAlert() {
+        // the unmounted and flapping alerts take precedence over this one
+        if (mMonitor == null || mIsFlapping || !mEscalatingVolumes.isEmpty()) {
+            return;
+        }
+
+        mAlertOverlay.show(0L, R.string.external_storage_nearly_full_alert);
+        mAlertSound.play(0L, EscalationPolicy.DEFAULT.getVolumeAt(0L));
+    }
+
+    private void showExternalStorageFlappingAlert() {
+        if (mMonitor == null || !mIsFlapping) {
+            return;
+        }
+
+        mEscalatingVolumes.forEach(mEscalationScheduler::stop);
+        mEscalatingVolumes.clear();
+        scheduleEscalation();
+        mAlertOverlay.show(0L, R.string.external_storage_flapping_alert);
+        mAlertSound.play(0L, 1.0f);
+    }
+
+    /**
+     * Posts the unmounted alerts that should escalate, with their policies, to the main thread. Called on the monitor
+     * thread whenever they change, and when the aggregated state stops flapping.
+     */
+    private void postExternalStorageUnmountedAlert() {
+        final Map<String, EscalationPolicy> unmountedVolumes = mUnmountedAlerts.getAlerts();
+        mMainHandler.post(() -> updateExternalStorageUnmountedAlert(unmountedVolumes));
+    }
+
+    /**
+     * Escalates each unmounted alert in {@code unmountedVolumes}, by volume or aggregate key, and stops the
+     * others. While the aggregated state flaps, the single flapping alert stands in for all of them.
+     */
+    private void updateExternalStorageUnmountedAlert(@NonNull final Map<String, EscalationPolicy> unmountedVolumes) {
+        if (mIsFlapping) {
+            return;
+        }
+
+        final boolean isRunning = mMonitor != null;
+        for (final Iterator<String> iterator = mEscalatingVolumes.iterator(); iterator.hasNext(); ) {
+            final String volumeId = iterator.next();
+            if (!isRunning || !unmountedVolumes.containsKey(volumeId)) {
+                mEscalationScheduler.stop(volumeId);
+                iterator.remove();
+            }
+        }
+        if (isRunning) {
+            for (final Map.Entry<String, EscalationPolicy> entry : unmountedVolumes.entrySet()) {
+                if (mEscalatingVolumes.add(entry.getKey())) {
+                    mEscalationScheduler.start(entry.getKey(), entry.getValue());
+                }
+            }
+        }
+        if (mEscalatingVolumes.isEmpty()) {
+            dismissExternalStorageUnmountedAlert();
+        }
+        scheduleEscalation();
+    }
+
+    /**
+     * Wakes the main thread at the next escalation deadline. The deadlines are on the elapsed realtime clock, which
+     * keeps counting in deep sleep, so they are set as alarms on that clock: exact ones while the app may schedule
+     * them, otherwise windowed ones, which need no permission but may be delivered late.
+     */
+    private void scheduleEscalation() {
+        cancelEscalation();
+        final long deadline = mEscalationScheduler.getNextDeadline();
+        if (deadline == TimerWheel.NO_DEADLINE) {
+            return;
+        }
+
+        final AlarmManager alarmManager = getSystemService(AlarmManager.class);
+        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.S || alarmManager.canScheduleExactAlarms()) {
+            alarmManager.setExact(AlarmManager.ELAPSED_REALTIME_WAKEUP, deadline, ESCALATION_ALARM_TAG,
+                mEscalationAlarmListener, mMainHandler);
         } else {
-            dismissExternalStorageUnmountedDialog();
-        }
-    }
-
-    @SuppressWarnings("DataFlowIssue")
-    private void showExternalStorageUnmountedDialog() {
-        if (mExternalStorageUnmountedDialog == null) {
-            final Context themedContext = new ContextThemeWrapper(this, R.style.AppTheme);
-            mExternalStorageUnmountedDialog = new MaterialAlertDialogBuilder(themedContext)
-                .setMessage(R.string.external_storage_unmounted_alert)
-                .setPositiveButton(R.string.got_it, null)
-                .setCancelable(false)
-                .setOnDismissListener(dialog -> {
-                    mExternalStorageUnmountedDialog = null;
-                    pauseExternalStorageUnmountedSound();
-                    if (Constants.EXTERNAL_STORAGE_STATE_UNMOUNTED.equals(mExternalStorageState)) {
-                        mMainHandler.postDelayed(mShowExternalStorageUnmountedDialogRunnable, ALERT_INTERVAL_MS);
-                    }
-                })
-                .create();
-            mExternalStorageUnmountedDialog.getWindow().setType(Build.VERSION.SDK_INT < Build.VERSION_CODES.O
-                ? WindowManager.LayoutParams.TYPE_SYSTEM_ALERT : WindowManager.LayoutParams.TYPE_APPLICATION_OVERLAY);
-            mExternalStorageUnmountedDialog.getWindow().addFlags(WindowManager.LayoutParams.FLAG_NOT_FOCUSABLE);
-            mExternalStorageUnmountedDialog.setOnShowListener(dialog -> playExternalStorageUnmountedSound());
+            alarmManager.setWindow(AlarmManager.ELAPSED_REALTIME_WAKEUP, deadline, ESCALATION_WINDOW_MS,
+                ESCALATION_ALARM_TAG, mEscalationAlarmListener, mMainHandler);
+        }
+        mIsEscalationAlarmSet = true;
+    }
+
+    private void cancelEscalation() {
+        if (mIsEscalationAlarmSet) {
+            mIsEscalationAlarmSet = false;
+            getSystemService(AlarmManager.class).cancel(mEscalationAlarmListener);
+        }
+    }
+
+    private void onEscalationAlert(@NonNull final String key, final int count, final float volume) {
+        Log.i(mTag, String.format("onEscalationAlert: key = %s, count = %d, volume = %.2f", key, count, volume));
+        final long stateChangedNanos = mStateChangedNanos;
+        mStateChangedNanos = 0L;
+        mAlertOverlay.show(stateChangedNanos, R.string.external_storage_unmounted_alert);
+        mAlertSound.play(stateChangedNanos, volume);
+    }
+
+    private void onVolumeStateChanged(@NonNull final String volumeId, final int previousState, final int state,
+        final int trigger) {
+        Log.i(mTag, String.format("onVolumeStateChanged: volumeId = %s, %s -> %s, trigger = %s", volumeId,
+            ExternalStorageState.toString(previousState), ExternalStorageState.toString(state),
+            TransitionTrigger.toString(trigger)));
+        mMetrics.getVolumeChangeCount().incrementAndGet();
+        recordTransition(volumeId, previousState, state, trigger);
+
+        if (state == ExternalStorageState.ABSENT) {
+            mVolumeStates.remove(volumeId);
+            if (mDegradedVolumes.remove(volumeId) | mNearlyFullVolumes.remove(volumeId)
+                | mCorruptedVolumes.remove(volumeId)) {
+                mNotifier.update(getNotificationState());
+            }
+        } else {
+            mVolumeStates.put(volumeId, state);
         }
 
-        if (!mExternalStorageUnmountedDialog.isShowing()) {
-            mExternalStorageUnmountedDialog.show();
+        if (state == ExternalStorageState.MOUNTED) {
+            if (Preferences.get().isIntegrityEnabled()) {
+                mIntegrityVerifier.verify(volumeId);
+            }
+        } else if (previousState == ExternalStorageState.MOUNTED) {
+            mIntegrityVerifier.cancel(volumeId);
         }
+        if (mUnmountedAlerts.onVolumeStateChanged(volumeId, previousState, state)) {
+            postExternalStorageUnmountedAlert();
+        }
+
+        final Bundle data = new Bundle();
+        data.putString(Constants.KEY_VOLUME_ID, volumeId);
+        mClients.broadcast(Constants.MSG_VOLUME_STATE_CHANGED, state, previousState, data);
+        mRemoteClients.broadcastVolumeStateChanged(volumeId, previousState, state, trigger, mClients.getSequence());
+        publishSnapshot();
     }
 
-    private void dismissExternalStorageUnmountedDialog() {
-        if (mExternalStorageUnmountedDialog != null) {
-            mExternalStorageUnmountedDialog.dismiss();
-            mExternalStorageUnmountedDialog = null;
+    private void openJournal() {
+        try {
+            mJournal = EventJournal.open(getJournalDirectory());
+        } catch (IOException e) {
+            Log.e(mTag, "openJournal: open journal failed", e);
+            return;
         }
+
+        final long startTime = SystemClock.elapsedRealtime();
+        final int count = mJournal.scan(Long.MIN_VALUE, Long.MAX_VALUE, record -> {
+            mHistory.onTransition(record.getTimestamp(), record.getVolumeId(), record.getState(),
+                record.getTrigger());
+            return true;
+        });
+        Log.i(mTag, String.format("openJournal: replayed %d transitions in %d ms", count,
+            SystemClock.elapsedRealtime() - startTime));
+        mState.setJournal(mJournal);
     }
 
-    private void playExternalStorageUnmountedSound() {
-        if (mExternalStorageUnmountedSoundPool == null) {
-            mExternalStorageUnmountedSoundPool = new SoundPool.Builder()
-                .setMaxStreams(1)
-                .setAudioAttributes(new AudioAttributes.Builder()
-                    .setUsage(AudioAttributes.USAGE_ALARM)
-                    .setContentType(AudioAttributes.CONTENT_TYPE_SONIFICATION)
-                    .build())
-                .build();
-            mExternalStorageUnmountedSoundPool.setOnLoadCompleteListener((soundPool, sampleId, status) -> {
-                if (mExternalStorageUnmountedSoundPool == soundPool && mExternalStorageUnmountedDialog != null
-                    && mExternalStorageUnmountedDialog.isShowing() && status == 0) {
-                    mExternalStorageUnmountedSoundPool.play(sampleId, 1.0f, 1.0f, 0, 0, 1.0f);
+    /**
+     * Returns the journal directory in device protected storage, so that it is available before the user unlocks,
+     * moving the journal from credential protected storage once the user has unlocked.
+     */
+    @NonNull
+    private File getJournalDirectory() {
+        final File directory = MonitorState.getJournalDirectory(this);
+        if (!directory.exists() && UserManagerCompat.isUserUnlocked(this)) {
+            final File legacyDirectory = MonitorState.getLegacyJournalDirectory(this);
+            if (legacyDirectory.exists()) {
+                try {
+                    EventJournal.move(legacyDirectory, directory);
+                } catch (IOException e) {
+                    Log.w(mTag, "getJournalDirectory: move journal to device protected storage failed", e);
                 }
-            });
-            mExternalStorageUnmountedSoundId =
-                mExternalStorageUnmountedSoundPool.load(this, R.raw.external_storage_unmounted_alert, 1);
+            }
         }
+        return directory;
+    }
 
-        if (mExternalStorageUnmountedSoundId > 0) {
-            mExternalStorageUnmountedSoundPool.play(mExternalStorageUnmountedSoundId, 1.0f, 1.0f, 0, 0, 1.0f);
+    private void closeJournal() {
+        if (mJournal != null) {
+            mState.setJournal(null);
+            mJournal.close();
+            mJournal = null;
         }
     }
 
-    private void pauseExternalStorageUnmountedSound() {
-        if (mExternalStorageUnmountedSoundPool != null && mExternalStorageUnmountedSoundId > 0) {
-            mExternalStorageUnmountedSoundPool.pause(mExternalStorageUnmountedSoundId);
+    private void recordTransition(@NonNull final String volumeId, final int previousState, final int state,
+        final int trigger) {
+        final long timestamp = System.currentTimeMillis();
+        mHistory.onTransition(timestamp, volumeId, state, trigger);
+
+        if (mJournal == null) {
+            return;
         }
+
+        try {
+            mJournal.append(timestamp, volumeId, previousState, state, trigger);
+            mState.onHistoryChanged();
+        } catch (IOException e) {
+            Log.e(mTag, "recordTransition: append journal failed", e);
+            closeJournal();
+        }
+    }
+
+    private void dismissExternalStorageUnmountedAlert() {
+        mAlertOverlay.hide();
+        mAlertSound.stop();
     }
 
     private void registerServiceClient(@NonNull final Messenger messenger) {
         Log.i(mTag, "registerServiceClient: register service client");
 
-        if (mClientMessengers.contains(messenger)) {
-            Log.w(mTag, "registerServiceClient: client already exists");
+        if (mClients.register(messenger)) {
+            sendSnapshot(messenger);
         } else {
-            mClientMessengers.add(messenger);
-
-            if (mMonitor == null) {
-                notifyMonitorStopped(messenger);
-            } else {
-                notifyMonitorStarted(messenger);
-                notifyExternalStorageStateChanged(messenger);
-            }
+            Log.w(mTag, "registerServiceClient: client already exists or is dead");
         }
     }
 
     private void unregisterServiceClient(@NonNull final Messenger messenger) {
         Log.i(mTag, "unregisterServiceClient: unregister service client");
 
-        if (!mClientMessengers.remove(messenger)) {
+        if (!mClients.unregister(messenger)) {
             Log.w(mTag, "unregisterServiceClient: client does not exist");
         }
     }
 
-    private void notifyMonitorStarted(@NonNull final Messenger messenger) {
-        try {
-            messenger.send(Message.obtain(null, Constants.MSG_MONITOR_STARTED));
-        } catch (RemoteException e) {
-            // ignored
+    /**
+     * Publishes the current state to {@link #mState}. Called on the monitor thread after every update.
+     */
+    private void publishSnapshot() {
+        final String[] volumeIds = new String[mVolumeStates.size()];
+        final int[] volumeStates = new int[mVolumeStates.size()];
+        int index = 0;
+        for (final Map.Entry<String, Integer> entry : mVolumeStates.entrySet()) {
+            volumeIds[index] = entry.getKey();
+            volumeStates[index] = entry.getValue();
+            index++;
         }
+
+        mState.publishSnapshot(new StateSnapshot(mClients.getSequence(), System.currentTimeMillis(),
+            mIsMonitorRunning, mExternalStorageState, volumeIds, volumeStates));
     }
 
-    private void notifyMonitorStopped(@NonNull final Messenger messenger) {
-        try {
-            messenger.send(Message.obtain(null, Constants.MSG_MONITOR_STOPPED));
-        } catch (RemoteException e) {
-            // ignored
+    private void sendSnapshot(@NonNull final Messenger messenger) {
+        final StateSnapshot snapshot = mState.getSnapshot();
+        final String[] volumeIds = new String[snapshot.getVolumeCount()];
+        final int[] volumeStates = new int[snapshot.getVolumeCount()];
+        for (int i = 0; i < volumeIds.length; i++) {
+            volumeIds[i] = snapshot.getVolumeId(i);
+            volumeStates[i] = snapshot.getVolumeState(i);
         }
+
+        final Message message = Message.obtain(null, Constants.MSG_SNAPSHOT);
+        final Bundle data = message.getData();
+        data.putInt(Constants.KEY_PROTOCOL_VERSION, Constants.PROTOCOL_VERSION);
+        data.putLong(Constants.KEY_SEQUENCE, snapshot.getSequence());
+        data.putBoolean(Constants.KEY_MONITOR_RUNNING, snapshot.isMonitorRunning());
+        data.putInt(Constants.KEY_EXTERNAL_STORAGE_STATE, snapshot.getExternalStorageState());
+        data.putStringArray(Constants.KEY_VOLUME_IDS, volumeIds);
+        data.putIntArray(Constants.KEY_VOLUME_STATES, volumeStates);
+        mClients.send(messenger, message);
     }
 
-    private void notifyExternalStorageStateChanged(@NonNull final Messenger messenger) {
-        try {
-            messenger.send(Message.obtain(null, Constants.MSG_EXTERNAL_STORAGE_STATE_CHANGED, mExternalStorageState));
-        } catch (RemoteException e) {
-            // ignored
+    /**
+     * Reads a batch of journaled transitions for {@link IMonitorService#getTransitions}. Runs on a binder thread; the
+     * journal lock is held for one pass over the timestamps after {@code afterSequence} and then for one record at a
+     * time, so only the records of the batch are decoded and appends on the monitor thread are not held up long.
+     */
+    @NonNull
+    private TransitionBatch readTransitions(final long fromTime, final long toTime, final long afterSequence,
+        final int maxCount) {
+        final long[] sequences = new long[maxCount];
+        final long[] timestamps = new long[maxCount];
+        final String[] volumeIds = new String[maxCount];
+        final int[] previousStates = new int[maxCount];
+        final int[] states = new int[maxCount];
+        final int[] triggers = new int[maxCount];
+        int size = 0;
+        long nextSequence = afterSequence;
+        boolean hasMore = false;
+
+        final EventJournal journal = mJournal;
+        if (journal != null) {
+            // index by timestamp first, then decode only the records that go into the batch
+            final long[] found = journal.findSequences(fromTime, toTime, afterSequence, maxCount + 1);
+            hasMore = found.length > maxCount;
+            final JournalRecord record = new JournalRecord();
+            for (int i = 0; i < Math.min(found.length, maxCount); i++) {
+                final long sequence = found[i];
+                nextSequence = sequence;
+                if (!journal.read(sequence, record)) {
+                    // compacted away meanwhile
+                    continue;
+                }
+
+                sequences[size] = sequence;
+                timestamps[size] = record.getTimestamp();
+                volumeIds[size] = record.getVolumeId();
+                previousStates[size] = record.getPreviousState();
+                states[size] = record.getState();
+                triggers[size] = record.getTrigger();
+                size++;
+            }
         }
+        return new TransitionBatch(size, sequences, timestamps, volumeIds, previousStates, states, triggers,
+            nextSequence, hasMore);
     }
 
-    @NonNull
-    private Notification buildNotification() {
-        final String contentText;
-        switch (mExternalStorageState) {
-            case Constants.EXTERNAL_STORAGE_STATE_MOUNTED:
-                contentText = getString(R.string.external_storage_mounted);
-                break;
-            case Constants.EXTERNAL_STORAGE_STATE_UNMOUNTED:
-                contentText = getString(R.string.external_storage_unmounted);
-                break;
-            default:
-                contentText = null;
-                break;
-        }
-
-        return new NotificationCompat.Builder(this, NOTIFICATION_CHANNEL_ID)
-            .setSmallIcon(R.mipmap.ic_launcher)
-            .setContentTitle(getString(R.string.service_notification_title))
-            .setContentText(contentText)
-            .setContentIntent(PendingIntent.getActivity(this, 0, new Intent(this, MainActivity.class),
-                PendingIntent.FLAG_IMMUTABLE | PendingIntent.FLAG_UPDATE_CURRENT))
-            .setPriority(NotificationCompat.PRIORITY_DEFAULT)
-            .setOngoing(true)
-            .setOnlyAlertOnce(true)
-            .build();
-    }
-
-    private void createNotificationChannel() {
-        final NotificationChannelCompat notificationChannel =
-            new NotificationChannelCompat.Builder(NOTIFICATION_CHANNEL_ID, NotificationManagerCompat.IMPORTANCE_LOW)
-                .setName(getString(R.string.service_notification_channel_name))
-                .build();
-        NotificationManagerCompat.from(this).createNotificationChannel(notificationChannel);
+    private void sendHistory(@NonNull final Messenger messenger, @NonNull final Bundle request) {
+        final long now = System.currentTimeMillis();
+        final long fromTime = request.getLong(Constants.KEY_FROM_TIME);
+        final long toTime = request.getLong(Constants.KEY_TO_TIME, now);
+        final List<String> volumeIds = mHistory.getVolumeIds();
+        final double[] uptimeRatios = new double[volumeIds.size()];
+        final long[] unmountCounts = new long[volumeIds.size()];
+        final long[] meanTimesBetweenFailures = new long[volumeIds.size()];
+        final long[] longestOutages = new long[volumeIds.size()];
+        final UptimeStats stats = new UptimeStats();
+        for (int i = 0; i < volumeIds.size(); i++) {
+            mHistory.query(volumeIds.get(i), fromTime, toTime, now, stats);
+            uptimeRatios[i] = stats.getUptimeRatio();
+            unmountCounts[i] = stats.getUnmountCount();
+            meanTimesBetweenFailures[i] = stats.getMeanTimeBetweenFailuresMs();
+            longestOutages[i] = stats.getLongestOutageMs();
+        }
+
+        final Message message = Message.obtain(null, Constants.MSG_HISTORY);
+        final Bundle data = message.getData();
+        data.putLong(Constants.KEY_FROM_TIME, fromTime);
+        data.putLong(Constants.KEY_TO_TIME, toTime);
+        data.putStringArray(Constants.KEY_VOLUME_IDS, volumeIds.toArray(new String[0]));
+        data.putDoubleArray(Constants.KEY_UPTIME_RATIOS, uptimeRatios);
+        data.putLongArray(Constants.KEY_UNMOUNT_COUNTS, unmountCounts);
+        data.putLongArray(Constants.KEY_MEAN_TIMES_BETWEEN_FAILURES, meanTimesBetweenFailures);
+        data.putLongArray(Constants.KEY_LONGEST_OUTAGES, longestOutages);
+        mClients.send(messenger, message);
     }
 
+    /**
+     * Runs a {@link VolumeMonitor} over the device's storage volumes on the looper it was created with, and samples
+     * the free space of the mounted external volumes during its scans. Every method, and every listener callback,
+     * runs on that looper.
+     */
     @Accessors(prefix = "m")
     private static class Monitor {
-        private static final long TICK_INTERVAL_MS = Duration.ofMinutes(1L).toMillis();
-
-        private long mStartTime;
-
-        @Getter
-        private boolean mIsRunning;
-
-        @NonNull
-        private String mExternalStorageState = Constants.EXTERNAL_STORAGE_STATE_UNKNOWN;
+        private static final long FIXED_TICK_INTERVAL_MS = Duration.ofMinutes(1L).toMillis();
 
         @Setter
         @Nullable
         private ExternalStorageStateListener mExternalStorageStateListener;
 
+        private final String mTag = "Monitor@" + hashCode();
+
         @NonNull
         private final Context mContext;
 
         @NonNull
-        private final StorageManager mStorageManager;
+        private final MonitorMetrics mMetrics;
 
+        /**
+         * Free space trends of mounted external volumes, written on the monitor thread and read by dumps.
+         */
         @NonNull
-        private final Handler mMainHandler = new Handler(Looper.getMainLooper());
+        private final Map<String, CapacityTrend> mCapacityTrends = new ConcurrentHashMap<>();
 
+        /**
+         * Volumes whose free space is being read on the capacity thread. Monitor thread only.
+         */
         @NonNull
-        private final Runnable mTickRunnable = new Runnable() {
-            @Override
-            public void run() {
-                mMainHandler.removeCallbacks(mTickRunnable);
-                tick();
-                mMainHandler.postDelayed(mTickRunnable,
-                    TICK_INTERVAL_MS - (SystemClock.elapsedRealtime() - mStartTime) % TICK_INTERVAL_MS);
-            }
-        };
+        private final Set<String> mPendingCapacitySamples = new HashSet<>();
 
+        /**
+         * Reads free space off the monitor thread, as a stat of a failing card can block for seconds.
+         */
         @NonNull
-        private final BroadcastReceiver mBroadcastReceiver = new BroadcastReceiver() {
-            @Override
-            public void onReceive(Context context, Intent intent) {
-                mMainHandler.post(mTickRunnable);
-            }
-        };
+        private final ExecutorService mCapacityExecutor = Executors.newSingleThreadExecutor(runnable -> new Thread(
+            () -> {
+                Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+                runnable.run();
+            }, "capacity"));
+
+        @NonNull
+        private final Handler mHandler;
+
+        @NonNull
+        private final VolumeMonitor mVolumeMonitor;
 
-        public Monitor(@NonNull final Context context) {
+        public Monitor(@NonNull final Context context, @NonNull final Looper looper,
+            @NonNull final MonitorMetrics metrics) {
             mContext = context;
-            mStorageManager = mContext.getSystemService(StorageManager.class);
-        }
+            mMetrics = metrics;
+            final Handler handler = new Handler(looper);
+            mHandler = handler;
+            mVolumeMonitor = new VolumeMonitor(new StorageManagerVolumeSource(context, handler, this::sampleCapacity),
+                new HybridScheduler(context, handler, metrics), SystemClock::elapsedRealtime, metrics.getDetection(),
+                new VolumeMonitor.Listener() {
+                    @Override
+                    public void onExternalStorageStateChanged(final int state, final int trigger) {
+                        if (mExternalStorageStateListener != null) {
+                            mExternalStorageStateListener.onExternalStorageStateChanged(state, trigger);
+                        }
+                    }
 
-        public void start() {
-            if (mIsRunning) {
-                return;
-            }
+                    @Override
+                    public void onVolumeStateChanged(@NonNull final String volumeId, final int previousState,
+                        final int state, final int trigger) {
+                        if (mExternalStorageStateListener != null) {
+                            mExternalStorageStateListener.onVolumeStateChanged(volumeId, previousState, state,
+                                trigger);
+                        }
+                    }
 
-            mStartTime = SystemClock.elapsedRealtime();
-            mIsRunning = true;
+                    @Override
+                    public void onFlappingChanged(@NonNull final String volumeId, final boolean isFlapping) {
+                        if (mExternalStorageStateListener != null) {
+                            mExternalStorageStateListener.onFlappingChanged(volumeId, isFlapping);
+                        }
+                    }
 
-            final IntentFilter intentFilter = new IntentFilter();
-            intentFilter.addAction(Intent.ACTION_MEDIA_REMOVED);
-            intentFilter.addAction(Intent.ACTION_MEDIA_UNMOUNTED);
-            intentFilter.addAction(Intent.ACTION_MEDIA_CHECKING);
-            intentFilter.addAction(Intent.ACTION_MEDIA_NOFS);
-            intentFilter.addAction(Intent.ACTION_MEDIA_MOUNTED);
-            intentFilter.addAction(Intent.ACTION_MEDIA_SHARED);
-            intentFilter.addAction(Intent.ACTION_MEDIA_BAD_REMOVAL);
-            intentFilter.addAction(Intent.ACTION_MEDIA_UNMOUNTABLE);
-            intentFilter.addDataScheme(ContentResolver.SCHEME_FILE);
-            ContextCompat.registerReceiver(mContext, mBroadcastReceiver, intentFilter,
-                ContextCompat.RECEIVER_NOT_EXPORTED);
+                    @Override
+                    public void onVolumeObserved(@NonNull final String volumeId, final int previousState,
+                        final int state) {
+                        if (state != ExternalStorageState.MOUNTED) {
+                            // a card mounted again may have been written to or replaced elsewhere
+                            final CapacityTrend trend = mCapacityTrends.remove(volumeId);
+                            if (trend != null && trend.isNearlyFull() && mExternalStorageStateListener != null) {
+                                mExternalStorageStateListener.onNearlyFullChanged(volumeId, false);
+                            }
+                        }
+                    }
+                });
+        }
+
+        public boolean isRunning() {
+            return mVolumeMonitor.isRunning();
+        }
 
-            mMainHandler.post(mTickRunnable);
+        public void start() {
+            mVolumeMonitor.start();
         }
 
         public void stop() {
-            if (!mIsRunning) {
+            if (!mVolumeMonitor.isRunning()) {
                 return;
             }
 
-            mIsRunning = false;
-            mContext.unregisterReceiver(mBroadcastReceiver);
-            mMainHandler.removeCallbacksAndMessages(null);
+            mVolumeMonitor.stop();
+            mCapacityExecutor.shutdownNow();
+            mCapacityTrends.clear();
+            mPendingCapacitySamples.clear();
+            Log.i(mTag, String.format("stop: %s", mVolumeMonitor.getSummary(FIXED_TICK_INTERVAL_MS)));
         }
 
-        private void tick() {
-            final List<String> states = mStorageManager.getStorageVolumes().stream().map(storageVolume -> {
-                if (storageVolume.isPrimary()) {
-                    return Constants.EXTERNAL_STORAGE_STATE_UNMOUNTED;
-                }
+        public void dumpCapacity(@NonNull final PrintWriter writer) {
+            writer.println(String.format("Capacity: volumes = %d", mCapacityTrends.size()));
+            for (final Map.Entry<String, CapacityTrend> entry : mCapacityTrends.entrySet()) {
+                writer.println(String.format("  %s: %s", entry.getKey(), entry.getValue()));
+            }
+        }
 
-                if (storageVolume.isRemovable()) {
-                    switch (storageVolume.getState()) {
-                        case Environment.MEDIA_CHECKING:
-                            return Constants.EXTERNAL_STORAGE_STATE_UNKNOWN;
-                        case Environment.MEDIA_MOUNTED:
-                            return Constants.EXTERNAL_STORAGE_STATE_MOUNTED;
-                        default:
-                            return Constants.EXTERNAL_STORAGE_STATE_UNMOUNTED;
-                    }
-                } else {
-                    return Constants.EXTERNAL_STORAGE_STATE_UNMOUNTED;
-                }
-            }).collect(Collectors.toList());
+        /**
+         * Samples the free space of a mounted volume if its trend is due for a sample, so sampling rides on the scans
+         * and never wakes the device by itself. The volume is stat'ed on the capacity thread and the sample is posted
+         * back to the monitor thread, where it is dropped if the volume was unmounted or the monitor stopped meanwhile.
+         */
+        private void sampleCapacity(@NonNull final String volumeId, @NonNull final StorageVolume storageVolume) {
+            final CapacityTrend trend = mCapacityTrends.computeIfAbsent(volumeId, key -> new CapacityTrend());
+            if (!trend.shouldSample(SystemClock.elapsedRealtime()) || mPendingCapacitySamples.contains(volumeId)) {
+                return;
+            }
 
-            final String state;
-            if (states.stream().anyMatch(Constants.EXTERNAL_STORAGE_STATE_MOUNTED::equals)) {
-                state = Constants.EXTERNAL_STORAGE_STATE_MOUNTED;
-            } else if (states.stream().anyMatch(Constants.EXTERNAL_STORAGE_STATE_UNKNOWN::equals)) {
-                state = Constants.EXTERNAL_STORAGE_STATE_UNKNOWN;
-            } else {
-                state = Constants.EXTERNAL_STORAGE_STATE_UNMOUNTED;
+            final File directory = StorageVolumeUtils.getDirectory(mContext, storageVolume);
+            if (directory == null || mCapacityExecutor.isShutdown()) {
+                return;
             }
 
-            if (Objects.equals(mExternalStorageState, state)) {
+            mPendingCapacitySamples.add(volumeId);
+            mCapacityExecutor.execute(() -> {
+                final StatFs statFs;
+                try {
+                    statFs = new StatFs(directory.getPath());
+                } catch (IllegalArgumentException e) {
+                    Log.w(mTag, String.format("sampleCapacity: stat %s failed", volumeId), e);
+                    mHandler.post(() -> mPendingCapacitySamples.remove(volumeId));
+                    return;
+                }
+
+                final long now = SystemClock.elapsedRealtime();
+                final long freeBytes = statFs.getAvailableBytes();
+                final long totalBytes = statFs.getTotalBytes();
+                mHandler.post(() -> onCapacitySampled(volumeId, trend, now, freeBytes, totalBytes));
+            });
+        }
+
+        private void onCapacitySampled(@NonNull final String volumeId, @NonNull final CapacityTrend trend,
+            final long now, final long freeBytes, final long totalBytes) {
+            mPendingCapacitySamples.remove(volumeId);
+            if (mCapacityTrends.get(volumeId) != trend) {
                 return;
             }
 
-            mExternalStorageState = state;
-            if (mExternalStorageStateListener != null) {
-                mExternalStorageStateListener.onExternalStorageStateChanged(mExternalStorageState);
+            mMetrics.getCapacitySampleCount().incrementAndGet();
+            if (trend.onSample(now, freeBytes, totalBytes)) {
+                Log.i(mTag, String.format("onCapacitySampled: %s %s", volumeId, trend));
+                if (mExternalStorageStateListener != null) {
+                    mExternalStorageStateListener.onNearlyFullChanged(volumeId, trend.isNearlyFull());
+                }
             }
         }
     }
 
-    @FunctionalInterface
+    /**
+     * Receives monitor changes. Callbacks are invoked on the monitor thread and must not block it; UI work has to be
+     * posted to the main thread.
+     */
     private interface ExternalStorageStateListener {
-        void onExternalStorageStateChanged(@NonNull String state);
+        void onExternalStorageStateChanged(int state, int trigger);
+
+        void onVolumeStateChanged(@NonNull String volumeId, int previousState, int state, int trigger);
+
+        /**
+         * Called when a volume, or the aggregated state with {@link EventJournal#AGGREGATE_VOLUME_ID}, starts or stops
+         * flapping. Its state changes are not reported while it flaps.
+         */
+        void onFlappingChanged(@NonNull String volumeId, boolean isFlapping);
+
+        /**
+         * Called when a mounted volume is predicted to fill up soon, or no longer is.
+         */
+        void onNearlyFullChanged(@NonNull String volumeId, boolean isNearlyFull);
     }
 }
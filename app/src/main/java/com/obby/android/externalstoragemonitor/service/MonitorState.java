@@ -0,0 +1,137 @@
+package com.obby.android.externalstoragemonitor.service;
+
+import android.content.Context;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import com.obby.android.externalstoragemonitor.api.StateSnapshot;
+import com.obby.android.externalstoragemonitor.core.journal.EventJournal;
+import com.obby.android.externalstoragemonitor.support.Constants;
+
+import java.io.File;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * State of the {@link MonitorService} as seen from the rest of the process: the last published
+ * {@link StateSnapshot} and the open journal. The service publishes both on its monitor thread; readers on any
+ * thread get the latest values without waiting on it.
+ *
+ * <p>Observers are told when the state or the journal actually changes, on the publishing thread, and must return
+ * quickly.
+ */
+public final class MonitorState {
+    private static final String JOURNAL_DIRECTORY_NAME = "journal";
+
+    @NonNull
+    private volatile StateSnapshot mSnapshot = new StateSnapshot(0L, System.currentTimeMillis(), false,
+        Constants.EXTERNAL_STORAGE_STATE_UNKNOWN, new String[0], new int[0]);
+
+    @Nullable
+    private volatile EventJournal mJournal;
+
+    @NonNull
+    private final List<Observer> mObservers = new CopyOnWriteArrayList<>();
+
+    private MonitorState() {
+    }
+
+    @NonNull
+    public static MonitorState get() {
+        return InstanceHolder.INSTANCE;
+    }
+
+    @NonNull
+    public StateSnapshot getSnapshot() {
+        return mSnapshot;
+    }
+
+    /**
+     * Returns the journal of the service, or {@code null} while the service does not run or could not open it.
+     */
+    @Nullable
+    public EventJournal getJournal() {
+        return mJournal;
+    }
+
+    /**
+     * Returns the journal directory in device protected storage, so that the journal is available before the user
+     * unlocks.
+     */
+    @NonNull
+    public static File getJournalDirectory(@NonNull final Context context) {
+        return new File(context.createDeviceProtectedStorageContext().getNoBackupFilesDir(), JOURNAL_DIRECTORY_NAME);
+    }
+
+    /**
+     * Returns the legacy journal directory in credential protected storage.
+     */
+    @NonNull
+    static File getLegacyJournalDirectory(@NonNull final Context context) {
+        return new File(context.getNoBackupFilesDir(), JOURNAL_DIRECTORY_NAME);
+    }
+
+    public void addObserver(@NonNull final Observer observer) {
+        if (!mObservers.contains(observer)) {
+            mObservers.add(observer);
+        }
+    }
+
+    public void removeObserver(@NonNull final Observer observer) {
+        mObservers.remove(observer);
+    }
+
+    /**
+     * Publishes a snapshot; observers are only told if more than its sequence number and time differ.
+     */
+    void publishSnapshot(@NonNull final StateSnapshot snapshot) {
+        final StateSnapshot previous = mSnapshot;
+        mSnapshot = snapshot;
+        if (!hasSameState(previous, snapshot)) {
+            for (final Observer observer : mObservers) {
+                observer.onStateChanged();
+            }
+        }
+    }
+
+    void setJournal(@Nullable final EventJournal journal) {
+        if (mJournal != journal) {
+            mJournal = journal;
+            onHistoryChanged();
+        }
+    }
+
+    /**
+     * Called after a transition has been appended to the journal.
+     */
+    void onHistoryChanged() {
+        for (final Observer observer : mObservers) {
+            observer.onHistoryChanged();
+        }
+    }
+
+    private static boolean hasSameState(@NonNull final StateSnapshot a, @NonNull final StateSnapshot b) {
+        if (a.isMonitorRunning() != b.isMonitorRunning() || a.getExternalStorageState() != b.getExternalStorageState()
+            || a.getVolumeCount() != b.getVolumeCount()) {
+            return false;
+        }
+
+        for (int i = 0; i < a.getVolumeCount(); i++) {
+            if (!a.getVolumeId(i).equals(b.getVolumeId(i)) || a.getVolumeState(i) != b.getVolumeState(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    public interface Observer {
+        void onStateChanged();
+
+        void onHistoryChanged();
+    }
+
+    private static class InstanceHolder {
+        private static final MonitorState INSTANCE = new MonitorState();
+    }
+}
@@ -0,0 +1,199 @@
+package com.obby.android.externalstoragemonitor.service;
+
+import android.os.Process;
+import android.system.ErrnoException;
+import android.system.Os;
+import android.system.OsConstants;
+import android.system.StructPollfd;
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import com.obby.android.externalstoragemonitor.core.mount.MountInfoParser;
+
+import java.io.FileDescriptor;
+import java.io.InterruptedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Reports changes of the storage mounts in {@code /proc/self/mountinfo} as soon as the kernel signals them.
+ *
+ * <p>The kernel flags a mount table change on open mountinfo descriptors with {@code POLLPRI | POLLERR}. A thread
+ * blocks in {@link Os#poll} on the file and on a wakeup pipe used to stop it, so it costs nothing while nothing
+ * changes. On a change the file is read again into a reused buffer and fingerprinted with a
+ * {@link MountInfoParser}; the listener is called, on the watcher thread, only when the mounts below the storage
+ * directories changed. If the file cannot be watched the thread logs and exits, leaving detection to broadcasts
+ * and polling.
+ */
+final class MountInfoWatcher {
+    private static final String MOUNTINFO_PATH = "/proc/self/mountinfo";
+
+    private static final int INITIAL_BUFFER_SIZE = 64 << 10;
+
+    private static final byte[][] STORAGE_PREFIXES = {
+        "/storage/".getBytes(StandardCharsets.US_ASCII),
+        "/mnt/media_rw/".getBytes(StandardCharsets.US_ASCII),
+        "/mnt/user/".getBytes(StandardCharsets.US_ASCII),
+        "/mnt/pass_through/".getBytes(StandardCharsets.US_ASCII)
+    };
+
+    private final String mTag = "MountInfoWatcher@" + hashCode();
+
+    @NonNull
+    private final Listener mListener;
+
+    @NonNull
+    private final MountInfoParser mParser = new MountInfoParser();
+
+    @NonNull
+    private byte[] mBuffer = new byte[INITIAL_BUFFER_SIZE];
+
+    @Nullable
+    private Thread mThread;
+
+    @Nullable
+    private FileDescriptor mWakeupWriter;
+
+    private volatile long mChangeCount;
+
+    MountInfoWatcher(@NonNull final Listener listener) {
+        mListener = listener;
+    }
+
+    public synchronized void start() {
+        if (mThread != null) {
+            return;
+        }
+
+        final FileDescriptor[] pipe;
+        try {
+            pipe = Os.pipe();
+        } catch (ErrnoException e) {
+            Log.e(mTag, "start: create wakeup pipe failed", e);
+            return;
+        }
+
+        mWakeupWriter = pipe[1];
+        mThread = new Thread(() -> {
+            Process.setThreadPriority(Process.THREAD_PRIORITY_FOREGROUND);
+            watch(pipe[0]);
+            close(pipe[0]);
+        }, "mountinfo");
+        mThread.start();
+    }
+
+    public synchronized void stop() {
+        if (mThread == null) {
+            return;
+        }
+
+        try {
+            Os.write(mWakeupWriter, new byte[1], 0, 1);
+        } catch (ErrnoException | InterruptedIOException e) {
+            Log.w(mTag, "stop: wake up watcher failed", e);
+            mThread.interrupt();
+        }
+        close(mWakeupWriter);
+        mWakeupWriter = null;
+        mThread = null;
+    }
+
+    public long getChangeCount() {
+        return mChangeCount;
+    }
+
+    private void watch(@NonNull final FileDescriptor wakeupReader) {
+        final FileDescriptor mountInfo;
+        try {
+            mountInfo = Os.open(MOUNTINFO_PATH, OsConstants.O_RDONLY, 0);
+        } catch (ErrnoException e) {
+            Log.e(mTag, "watch: open mountinfo failed", e);
+            return;
+        }
+
+        try {
+            long fingerprint = readFingerprint(mountInfo);
+            final StructPollfd mountInfoPollfd = new StructPollfd();
+            mountInfoPollfd.fd = mountInfo;
+            mountInfoPollfd.events = (short) (OsConstants.POLLPRI | OsConstants.POLLERR);
+            final StructPollfd wakeupPollfd = new StructPollfd();
+            wakeupPollfd.fd = wakeupReader;
+            wakeupPollfd.events = (short) OsConstants.POLLIN;
+            final StructPollfd[] pollfds = {mountInfoPollfd, wakeupPollfd};
+
+            while (!Thread.currentThread().isInterrupted()) {
+                mountInfoPollfd.revents = 0;
+                wakeupPollfd.revents = 0;
+                try {
+                    Os.poll(pollfds, -1);
+                } catch (ErrnoException e) {
+                    if (e.errno == OsConstants.EINTR) {
+                        continue;
+                    }
+                    throw e;
+                }
+
+                if (wakeupPollfd.revents != 0) {
+                    return;
+                }
+                if ((mountInfoPollfd.revents & (OsConstants.POLLPRI | OsConstants.POLLERR)) == 0) {
+                    continue;
+                }
+
+                final long nextFingerprint = readFingerprint(mountInfo);
+                if (nextFingerprint != fingerprint) {
+                    fingerprint = nextFingerprint;
+                    mChangeCount++;
+                    mListener.onMountsChanged();
+                }
+            }
+        } catch (ErrnoException | InterruptedIOException e) {
+            Log.e(mTag, "watch: watch mountinfo failed", e);
+        } finally {
+            close(mountInfo);
+        }
+    }
+
+    /**
+     * Reads the whole file from the start, growing the buffer as needed, and fingerprints the storage mounts.
+     */
+    private long readFingerprint(@NonNull final FileDescriptor mountInfo)
+        throws ErrnoException, InterruptedIOException {
+        Os.lseek(mountInfo, 0L, OsConstants.SEEK_SET);
+        int length = 0;
+        while (true) {
+            if (length == mBuffer.length) {
+                mBuffer = Arrays.copyOf(mBuffer, mBuffer.length * 2);
+            }
+            final int read = Os.read(mountInfo, mBuffer, length, mBuffer.length - length);
+            if (read <= 0) {
+                break;
+            }
+            length += read;
+        }
+        mParser.reset(mBuffer, length);
+        return mParser.fingerprint(STORAGE_PREFIXES);
+    }
+
+    private void close(@Nullable final FileDescriptor fd) {
+        if (fd == null) {
+            return;
+        }
+
+        try {
+            Os.close(fd);
+        } catch (ErrnoException e) {
+            Log.w(mTag, "close: close descriptor failed", e);
+        }
+    }
+
+    @FunctionalInterface
+    interface Listener {
+        /**
+         * Called on the watcher thread when the storage mounts changed.
+         */
+        void onMountsChanged();
+    }
+}
@@ -0,0 +1,87 @@
+package com.obby.android.externalstoragemonitor.service;
+
+import android.os.RemoteCallbackList;
+import android.os.RemoteException;
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+
+import com.obby.android.externalstoragemonitor.api.IMonitorCallback;
+import com.obby.android.externalstoragemonitor.api.StateSnapshot;
+
+/**
+ * Callbacks registered through the {@code IMonitorService} binder by other processes.
+ *
+ * <p>The callbacks are kept in a {@link RemoteCallbackList}, which drops a client when its process dies, and the
+ * updates are one-way calls with plain arguments, so a broadcast allocates nothing per client and never waits for
+ * one. Updates carry the sequence numbers of the {@link ClientRegistry}, so both kinds of clients see the same
+ * numbering. Must only be used on the monitor thread, so that a registration's snapshot is ordered with the
+ * updates.
+ */
+final class RemoteClientRegistry {
+    private final String mTag = "RemoteClientRegistry@" + hashCode();
+
+    @NonNull
+    private final RemoteCallbackList<IMonitorCallback> mCallbacks = new RemoteCallbackList<>();
+
+    public void register(@NonNull final IMonitorCallback callback, @NonNull final StateSnapshot snapshot) {
+        if (!mCallbacks.register(callback)) {
+            Log.w(mTag, "register: registry closed");
+            return;
+        }
+
+        try {
+            callback.onSnapshot(snapshot);
+        } catch (RemoteException e) {
+            Log.w(mTag, "register: drop unreachable client");
+            mCallbacks.unregister(callback);
+        }
+    }
+
+    public void unregister(@NonNull final IMonitorCallback callback) {
+        mCallbacks.unregister(callback);
+    }
+
+    public int size() {
+        return mCallbacks.getRegisteredCallbackCount();
+    }
+
+    public void broadcastMonitorRunningChanged(final boolean isRunning, final long sequence) {
+        for (int i = mCallbacks.beginBroadcast() - 1; i >= 0; i--) {
+            try {
+                mCallbacks.getBroadcastItem(i).onMonitorRunningChanged(isRunning, sequence);
+            } catch (RemoteException e) {
+                // dead clients are dropped by the callback list
+            }
+        }
+        mCallbacks.finishBroadcast();
+    }
+
+    public void broadcastExternalStorageStateChanged(final int state, final long sequence) {
+        for (int i = mCallbacks.beginBroadcast() - 1; i >= 0; i--) {
+            try {
+                mCallbacks.getBroadcastItem(i).onExternalStorageStateChanged(state, sequence);
+            } catch (RemoteException e) {
+                // dead clients are dropped by the callback list
+            }
+        }
+        mCallbacks.finishBroadcast();
+    }
+
+    public void broadcastVolumeStateChanged(@NonNull final String volumeId, final int previousState, final int state,
+        final int trigger, final long sequence) {
+        for (int i = mCallbacks.beginBroadcast() - 1; i >= 0; i--) {
+            try {
+                mCallbacks.getBroadcastItem(i).onVolumeStateChanged(volumeId, previousState, state, trigger,
+                    sequence);
+            } catch (RemoteException e) {
+                // dead clients are dropped by the callback list
+            }
+        }
+        mCallbacks.finishBroadcast();
+    }
+
+    public void clear() {
+        mCallbacks.kill();
+    }
+}
@@ -0,0 +1,124 @@
+package com.obby.android.externalstoragemonitor.service;
+
+import android.content.BroadcastReceiver;
+import android.content.ContentResolver;
+import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
+import android.os.Handler;
+import android.os.storage.StorageManager;
+import android.os.storage.StorageVolume;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.core.content.ContextCompat;
+
+import com.obby.android.externalstoragemonitor.core.ExternalStorageState;
+import com.obby.android.externalstoragemonitor.core.TransitionTrigger;
+import com.obby.android.externalstoragemonitor.core.VolumeStateSource;
+import com.obby.android.externalstoragemonitor.utils.StorageVolumeUtils;
+
+/**
+ * {@link VolumeStateSource} of the device: scans {@link StorageManager#getStorageVolumes()}, and signals the media
+ * broadcasts and the storage mount changes seen by a {@link MountInfoWatcher}. Events are delivered on the looper of
+ * the given handler.
+ */
+final class StorageManagerVolumeSource implements VolumeStateSource {
+    @NonNull
+    private final Context mContext;
+
+    @NonNull
+    private final StorageManager mStorageManager;
+
+    @NonNull
+    private final Handler mHandler;
+
+    @NonNull
+    private final MountedVolumeListener mMountedVolumeListener;
+
+    @NonNull
+    private final MountInfoWatcher mMountInfoWatcher;
+
+    @Nullable
+    private Callback mCallback;
+
+    @NonNull
+    private final Runnable mMountsChangedRunnable = () -> {
+        if (mCallback != null) {
+            mCallback.onMountsChanged();
+        }
+    };
+
+    @NonNull
+    private final BroadcastReceiver mBroadcastReceiver = new BroadcastReceiver() {
+        @Override
+        public void onReceive(Context context, Intent intent) {
+            if (mCallback != null) {
+                mCallback.onBroadcast(TransitionTrigger.ofAction(intent.getAction()));
+            }
+        }
+    };
+
+    /**
+     * @param mountedVolumeListener called during a scan for every mounted external volume
+     */
+    StorageManagerVolumeSource(@NonNull final Context context, @NonNull final Handler handler,
+        @NonNull final MountedVolumeListener mountedVolumeListener) {
+        mContext = context;
+        mStorageManager = context.getSystemService(StorageManager.class);
+        mHandler = handler;
+        mMountedVolumeListener = mountedVolumeListener;
+        mMountInfoWatcher = new MountInfoWatcher(() -> mHandler.post(mMountsChangedRunnable));
+    }
+
+    @Override
+    public void start(@NonNull final Callback callback) {
+        mCallback = callback;
+
+        final IntentFilter intentFilter = new IntentFilter();
+        intentFilter.addAction(Intent.ACTION_MEDIA_REMOVED);
+        intentFilter.addAction(Intent.ACTION_MEDIA_UNMOUNTED);
+        intentFilter.addAction(Intent.ACTION_MEDIA_CHECKING);
+        intentFilter.addAction(Intent.ACTION_MEDIA_NOFS);
+        intentFilter.addAction(Intent.ACTION_MEDIA_MOUNTED);
+        intentFilter.addAction(Intent.ACTION_MEDIA_SHARED);
+        intentFilter.addAction(Intent.ACTION_MEDIA_BAD_REMOVAL);
+        intentFilter.addAction(Intent.ACTION_MEDIA_UNMOUNTABLE);
+        intentFilter.addDataScheme(ContentResolver.SCHEME_FILE);
+        ContextCompat.registerReceiver(mContext, mBroadcastReceiver, intentFilter, null, mHandler,
+            ContextCompat.RECEIVER_NOT_EXPORTED);
+
+        mMountInfoWatcher.start();
+    }
+
+    @Override
+    public void stop() {
+        mCallback = null;
+        mContext.unregisterReceiver(mBroadcastReceiver);
+        mMountInfoWatcher.stop();
+        mHandler.removeCallbacks(mMountsChangedRunnable);
+    }
+
+    @Override
+    public void scan(@NonNull final Visitor visitor) {
+        for (final StorageVolume storageVolume : mStorageManager.getStorageVolumes()) {
+            final int state = ExternalStorageState.of(storageVolume.isPrimary(), storageVolume.isRemovable(),
+                storageVolume.getState());
+            if (!StorageVolumeUtils.isExternalStorage(storageVolume)) {
+                visitor.onVolume(null, state);
+                continue;
+            }
+
+            final String volumeId = StorageVolumeUtils.getVolumeId(storageVolume);
+            visitor.onVolume(volumeId, state);
+            if (state == ExternalStorageState.MOUNTED) {
+                mMountedVolumeListener.onMountedVolumeScanned(volumeId, storageVolume);
+            }
+        }
+    }
+
+    @FunctionalInterface
+    interface MountedVolumeListener {
+        void onMountedVolumeScanned(@NonNull String volumeId, @NonNull StorageVolume storageVolume);
+    }
+}
@@ -0,0 +1,203 @@
+package com.obby.android.externalstoragemonitor.service;
+
+import android.content.Context;
+import android.os.Environment;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.PowerManager;
+import android.os.Process;
+import android.os.storage.StorageManager;
+import android.os.storage.StorageVolume;
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import com.obby.android.externalstoragemonitor.core.probe.ProbeResult;
+import com.obby.android.externalstoragemonitor.core.probe.VolumeHealth;
+import com.obby.android.externalstoragemonitor.core.probe.VolumeProbe;
+import com.obby.android.externalstoragemonitor.utils.StorageVolumeUtils;
+
+import java.io.File;
+import java.io.PrintWriter;
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Periodically probes the app's external files directory on every mounted removable volume with a
+ * {@link VolumeProbe} and reports volumes whose {@link VolumeHealth} becomes degraded or recovers.
+ *
+ * <p>Probes run one volume at a time on a background priority thread, every {@link #PROBE_INTERVAL_MS}, and are
+ * skipped while the device is in power save or idle mode. Health changes are posted to the callback handler.
+ *
+ * <p>Each {@link #start()} runs a new {@link ProbeTask} with its own thread, probe and result buffer, so a probe of
+ * a stopped task that is still in progress never shares them with its successor. The health of each volume outlives
+ * restarts, so that a recovery is still reported, and is only updated while holding its lock.
+ */
+final class VolumeProber {
+    private static final long PROBE_INTERVAL_MS = Duration.ofMinutes(5L).toMillis();
+
+    private final String mTag = "VolumeProber@" + hashCode();
+
+    @NonNull
+    private final Context mContext;
+
+    @NonNull
+    private final Handler mCallbackHandler;
+
+    @NonNull
+    private final Listener mListener;
+
+    @NonNull
+    private final StorageManager mStorageManager;
+
+    @NonNull
+    private final PowerManager mPowerManager;
+
+    @NonNull
+    private final Map<String, VolumeHealth> mHealths = new ConcurrentHashMap<>();
+
+    @Nullable
+    private volatile ProbeTask mTask;
+
+    private volatile long mSkipCount;
+
+    VolumeProber(@NonNull final Context context, @NonNull final Handler callbackHandler,
+        @NonNull final Listener listener) {
+        mContext = context;
+        mCallbackHandler = callbackHandler;
+        mListener = listener;
+        mStorageManager = context.getSystemService(StorageManager.class);
+        mPowerManager = context.getSystemService(PowerManager.class);
+    }
+
+    /**
+     * Starts probing. Must be called on the main thread.
+     */
+    public void start() {
+        if (mTask != null) {
+            return;
+        }
+
+        Log.i(mTag, "start: start probing");
+        final HandlerThread thread = new HandlerThread("probe", Process.THREAD_PRIORITY_BACKGROUND);
+        thread.start();
+        final ProbeTask task = new ProbeTask(thread, new Handler(thread.getLooper()));
+        mTask = task;
+        task.mHandler.post(task);
+    }
+
+    /**
+     * Stops probing; a probe in progress completes, but no further volume is probed. Must be called on the main
+     * thread.
+     */
+    public void stop() {
+        final ProbeTask task = mTask;
+        if (task == null) {
+            return;
+        }
+
+        Log.i(mTag, "stop: stop probing");
+        mTask = null;
+        task.cancel();
+    }
+
+    public void dump(@NonNull final PrintWriter writer) {
+        writer.println(String.format("Probes: running = %b, skipped = %d", mTask != null, mSkipCount));
+        for (final VolumeHealth health : mHealths.values()) {
+            synchronized (health) {
+                health.dump(writer, "  ");
+            }
+        }
+    }
+
+    private void probeAll(@NonNull final ProbeTask task) {
+        if (mPowerManager.isPowerSaveMode() || mPowerManager.isDeviceIdleMode()) {
+            mSkipCount++;
+            Log.i(mTag, "probeAll: skipped in low power state");
+            return;
+        }
+
+        for (final File directory : mContext.getExternalFilesDirs(null)) {
+            if (task.mIsCancelled) {
+                return;
+            }
+            if (directory == null) {
+                continue;
+            }
+
+            final StorageVolume storageVolume = mStorageManager.getStorageVolume(directory);
+            if (storageVolume == null || !StorageVolumeUtils.isExternalStorage(storageVolume)
+                || !Environment.MEDIA_MOUNTED.equals(storageVolume.getState())) {
+                continue;
+            }
+
+            final String volumeId = StorageVolumeUtils.getVolumeId(storageVolume);
+            final VolumeHealth health = mHealths.computeIfAbsent(volumeId, VolumeHealth::new);
+            final ProbeResult result = task.mResult;
+            task.mProbe.probe(directory, result);
+            if (!result.isSuccess()) {
+                Log.w(mTag, String.format("probeAll: probe %s failed, %s", volumeId, result.getError()));
+            }
+            final boolean isChanged;
+            final boolean isDegraded;
+            synchronized (health) {
+                isChanged = health.onResult(result);
+                isDegraded = health.isDegraded();
+            }
+            if (isChanged) {
+                Log.w(mTag, String.format("probeAll: volumeId = %s, isDegraded = %b", volumeId, isDegraded));
+                mCallbackHandler.post(() -> mListener.onVolumeHealthChanged(volumeId, isDegraded));
+            }
+        }
+    }
+
+    /**
+     * Probes all volumes and re-posts itself on its own handler until cancelled or until its looper has quit.
+     */
+    private final class ProbeTask implements Runnable {
+        @NonNull
+        private final HandlerThread mThread;
+
+        @NonNull
+        private final Handler mHandler;
+
+        @NonNull
+        private final VolumeProbe mProbe = new VolumeProbe();
+
+        @NonNull
+        private final ProbeResult mResult = new ProbeResult();
+
+        private volatile boolean mIsCancelled;
+
+        private ProbeTask(@NonNull final HandlerThread thread, @NonNull final Handler handler) {
+            mThread = thread;
+            mHandler = handler;
+        }
+
+        @Override
+        public void run() {
+            if (mIsCancelled) {
+                return;
+            }
+
+            probeAll(this);
+            // fails once the looper quits
+            if (!mIsCancelled && !mHandler.postDelayed(this, PROBE_INTERVAL_MS)) {
+                Log.i(mTag, "run: probe thread has quit");
+            }
+        }
+
+        private void cancel() {
+            mIsCancelled = true;
+            mHandler.removeCallbacks(this);
+            mThread.quitSafely();
+        }
+    }
+
+    @FunctionalInterface
+    interface Listener {
+        void onVolumeHealthChanged(@NonNull String volumeId, boolean isDegraded);
+    }
+}
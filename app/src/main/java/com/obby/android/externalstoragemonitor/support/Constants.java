@@ -1,19 +1,35 @@
 package com.obby.android.externalstoragemonitor.support;
 
+import com.obby.android.externalstoragemonitor.core.ExternalStorageState;
+
 import lombok.AccessLevel;
 import lombok.NoArgsConstructor;
 
 @NoArgsConstructor(access = AccessLevel.PRIVATE)
 public final class Constants {
-    public static final String EXTERNAL_STORAGE_STATE_UNKNOWN = "unknown";
+    public static final int EXTERNAL_STORAGE_STATE_UNKNOWN = ExternalStorageState.UNKNOWN;
 
-    public static final String EXTERNAL_STORAGE_STATE_MOUNTED = "mounted";
+    public static final int EXTERNAL_STORAGE_STATE_MOUNTED = ExternalStorageState.MOUNTED;
 
-    public static final String EXTERNAL_STORAGE_STATE_UNMOUNTED = "unmounted";
+    public static final int EXTERNAL_STORAGE_STATE_UNMOUNTED = ExternalStorageState.UNMOUNTED;
 
     @SuppressWarnings("SpellCheckingInspection")
     public static final String ACTION_STOP_SERVICE = "com.obby.android.externalstoragemonitor.ACTION_STOP_SERVICE";
 
+    /**
+     * Confirms that the files an integrity pass found missing were deleted on purpose.
+     */
+    @SuppressWarnings("SpellCheckingInspection")
+    public static final String ACTION_ACCEPT_MISSING_FILES =
+        "com.obby.android.externalstoragemonitor.ACTION_ACCEPT_MISSING_FILES";
+
+    /**
+     * {@code SystemClock.elapsedRealtime()} at which the boot broadcast that started the service was received.
+     */
+    @SuppressWarnings("SpellCheckingInspection")
+    public static final String EXTRA_BOOT_RECEIVED_TIME =
+        "com.obby.android.externalstoragemonitor.EXTRA_BOOT_RECEIVED_TIME";
+
     public static final int MSG_REGISTER_SERVICE_CLIENT = 1;
 
     public static final int MSG_UNREGISTER_SERVICE_CLIENT = 2;
@@ -23,4 +39,42 @@ public final class Constants {
     public static final int MSG_MONITOR_STOPPED = 4;
 
     public static final int MSG_EXTERNAL_STORAGE_STATE_CHANGED = 5;
+
+    public static final int MSG_SNAPSHOT = 6;
+
+    public static final int MSG_VOLUME_STATE_CHANGED = 7;
+
+    public static final int MSG_REQUEST_SNAPSHOT = 8;
+
+    public static final int MSG_REQUEST_HISTORY = 9;
+
+    public static final int MSG_HISTORY = 10;
+
+    public static final int PROTOCOL_VERSION = 1;
+
+    public static final String KEY_PROTOCOL_VERSION = "protocol_version";
+
+    public static final String KEY_SEQUENCE = "sequence";
+
+    public static final String KEY_MONITOR_RUNNING = "monitor_running";
+
+    public static final String KEY_EXTERNAL_STORAGE_STATE = "external_storage_state";
+
+    public static final String KEY_VOLUME_ID = "volume_id";
+
+    public static final String KEY_VOLUME_IDS = "volume_ids";
+
+    public static final String KEY_VOLUME_STATES = "volume_states";
+
+    public static final String KEY_FROM_TIME = "from_time";
+
+    public static final String KEY_TO_TIME = "to_time";
+
+    public static final String KEY_UPTIME_RATIOS = "uptime_ratios";
+
+    public static final String KEY_UNMOUNT_COUNTS = "unmount_counts";
+
+    public static final String KEY_MEAN_TIMES_BETWEEN_FAILURES = "mean_times_between_failures";
+
+    public static final String KEY_LONGEST_OUTAGES = "longest_outages";
 }
@@ -1,35 +1,111 @@
 package com.obby.android.externalstoragemonitor.support;
 
-import android.annotation.SuppressLint;
 import android.content.Context;
 import android.content.SharedPreferences;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
 
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
+import androidx.core.os.UserManagerCompat;
 
 import com.obby.android.externalstoragemonitor.App;
+import com.obby.android.externalstoragemonitor.core.alert.EscalationPolicy;
+import com.obby.android.externalstoragemonitor.core.prefs.PreferenceStore;
 
+import java.io.File;
+import java.io.IOException;
 import java.util.List;
 import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
-@SuppressLint("ApplySharedPref")
+/**
+ * Application settings, read from and written to an in-memory {@link PreferenceStore} which persists changes on a
+ * background thread. Observers are always notified on the main thread.
+ *
+ * <p>The store lives in device protected storage so that the boot receiver can read it before the user unlocks.
+ * Settings from the credential protected store, or from the older shared preferences, are migrated once the user
+ * has unlocked. Loading and migrating run on the background thread of the store; an access that comes before they
+ * are done waits until the settings are in memory, but never for a write to the disk.
+ */
 public final class Preferences {
     public static final String KEY_MONITOR_ENABLED = "monitor_enabled";
 
+    public static final String KEY_PROBE_ENABLED = "probe_enabled";
+
+    public static final String KEY_INTEGRITY_ENABLED = "integrity_enabled";
+
+    public static final String KEY_INTEGRITY_DIRECTORY = "integrity_directory";
+
+    public static final String KEY_ESCALATION_POLICY = "escalation_policy";
+
+    /**
+     * Prefix of the keys overriding {@link #KEY_ESCALATION_POLICY} for a single volume, followed by its id.
+     */
+    public static final String KEY_VOLUME_ESCALATION_POLICY_PREFIX = "escalation_policy:";
+
     private static final String PREF_FILE_NAME = "esm-preferences";
 
+    private static final String STORE_FILE_NAME = "esm-preferences.dat";
+
+    /**
+     * Set in the store together with the settings copied from the legacy files, so that they are copied only once
+     * even if deleting the files has to be retried.
+     */
+    private static final String KEY_LEGACY_COPIED = "legacy_copied";
+
+    private final String mTag = "Preferences@" + hashCode();
+
     @NonNull
-    private final SharedPreferences mPreferences;
+    private final ExecutorService mExecutor = Executors.newSingleThreadExecutor(
+        runnable -> new Thread(runnable, "preferences"));
+
+    @NonNull
+    private final PreferenceStore mStore;
+
+    /**
+     * Whether settings may still have to be migrated; only known once the first migration task has run.
+     */
+    private volatile boolean mIsMigrationPending = true;
+
+    private boolean mIsMigrationScheduled;
+
+    /**
+     * Released once the store is loaded and the scheduled migration, if any, has applied its settings to it.
+     */
+    @NonNull
+    private volatile CountDownLatch mReadyLatch = new CountDownLatch(1);
+
+    @NonNull
+    private final Handler mMainHandler = new Handler(Looper.getMainLooper());
 
     @NonNull
     private final List<Observer> mObservers = new CopyOnWriteArrayList<>();
 
     @NonNull
-    private final SharedPreferences.OnSharedPreferenceChangeListener mOnSharedPreferenceChangeListener =
-        (sharedPreferences, key) -> mObservers.forEach(observer -> observer.onChanged(key));
+    private final PreferenceStore.Listener mStoreListener = (store, key) -> {
+        if (Looper.myLooper() == Looper.getMainLooper()) {
+            notifyObservers(key);
+        } else {
+            mMainHandler.post(() -> notifyObservers(key));
+        }
+    };
 
     private Preferences() {
-        mPreferences = App.get().getSharedPreferences(PREF_FILE_NAME, Context.MODE_PRIVATE);
+        final Context context = App.get();
+        final File file = new File(context.createDeviceProtectedStorageContext().getFilesDir(), STORE_FILE_NAME);
+        mStore = PreferenceStore.open(file, mExecutor);
+        mStore.addListener(mStoreListener);
+        mStore.setErrorListener((store, e) -> Log.e(mTag, "onWriteFailed: write preferences failed", e));
+        mIsMigrationScheduled = true;
+        // runs after the load and before any write, so a missing file means the store is new
+        mExecutor.execute(() -> {
+            mIsMigrationPending = !mStore.exists();
+            migrate();
+        });
     }
 
     @NonNull
@@ -38,31 +114,190 @@ public final class Preferences {
     }
 
     public void addObserver(@NonNull final Observer observer) {
-        if (mObservers.contains(observer)) {
-            return;
+        if (!mObservers.contains(observer)) {
+            mObservers.add(observer);
         }
+    }
+
+    public void removeObserver(@NonNull final Observer observer) {
+        mObservers.remove(observer);
+    }
+
+    public boolean isMonitorEnabled() {
+        migrateIfNeeded();
+        return mStore.getBoolean(KEY_MONITOR_ENABLED, false);
+    }
 
-        if (mObservers.isEmpty()) {
-            mPreferences.registerOnSharedPreferenceChangeListener(mOnSharedPreferenceChangeListener);
+    public void setMonitorEnabled(final boolean isEnabled) {
+        migrateIfNeeded();
+        mStore.edit().putBoolean(KEY_MONITOR_ENABLED, isEnabled).apply();
+    }
+
+    public boolean isProbeEnabled() {
+        migrateIfNeeded();
+        return mStore.getBoolean(KEY_PROBE_ENABLED, false);
+    }
+
+    public void setProbeEnabled(final boolean isEnabled) {
+        migrateIfNeeded();
+        mStore.edit().putBoolean(KEY_PROBE_ENABLED, isEnabled).apply();
+    }
+
+    public boolean isIntegrityEnabled() {
+        migrateIfNeeded();
+        return mStore.getBoolean(KEY_INTEGRITY_ENABLED, false);
+    }
+
+    public void setIntegrityEnabled(final boolean isEnabled) {
+        migrateIfNeeded();
+        mStore.edit().putBoolean(KEY_INTEGRITY_ENABLED, isEnabled).apply();
+    }
+
+    /**
+     * Returns the directory whose files are verified, relative to the app's files directory on each removable volume,
+     * or an empty string for the files directory itself. The app has no access to the rest of the volume.
+     */
+    @NonNull
+    public String getIntegrityDirectory() {
+        migrateIfNeeded();
+        return mStore.getString(KEY_INTEGRITY_DIRECTORY, "");
+    }
+
+    public void setIntegrityDirectory(@NonNull final String directory) {
+        migrateIfNeeded();
+        mStore.edit().putString(KEY_INTEGRITY_DIRECTORY, directory).apply();
+    }
+
+    /**
+     * Returns the policy of the unmounted alert of the given volume: its own, else the default one, else
+     * {@link EscalationPolicy#DEFAULT}. A malformed policy is logged and skipped.
+     */
+    @NonNull
+    public EscalationPolicy getEscalationPolicy(@NonNull final String volumeId) {
+        migrateIfNeeded();
+        final EscalationPolicy policy = parseEscalationPolicy(KEY_VOLUME_ESCALATION_POLICY_PREFIX + volumeId);
+        if (policy != null) {
+            return policy;
         }
+        final EscalationPolicy defaultPolicy = parseEscalationPolicy(KEY_ESCALATION_POLICY);
+        return defaultPolicy != null ? defaultPolicy : EscalationPolicy.DEFAULT;
+    }
 
-        mObservers.add(observer);
+    /**
+     * Returns the policy of the unmounted alert of the volumes without their own as it was written, or an empty string
+     * for {@link EscalationPolicy#DEFAULT}.
+     */
+    @NonNull
+    public String getDefaultEscalationPolicy() {
+        migrateIfNeeded();
+        return mStore.getString(KEY_ESCALATION_POLICY, "");
     }
 
-    public void removeObserver(@NonNull final Observer observer) {
-        mObservers.remove(observer);
+    /**
+     * Sets the policy of the unmounted alert of the given volume, or of all volumes without their own if
+     * {@code volumeId} is null. A null policy removes it.
+     */
+    public void setEscalationPolicy(@Nullable final String volumeId, @Nullable final EscalationPolicy policy) {
+        migrateIfNeeded();
+        final String key = volumeId == null ? KEY_ESCALATION_POLICY : KEY_VOLUME_ESCALATION_POLICY_PREFIX + volumeId;
+        if (policy == null) {
+            mStore.edit().remove(key).apply();
+        } else {
+            mStore.edit().putString(key, policy.toString()).apply();
+        }
+    }
 
-        if (mObservers.isEmpty()) {
-            mPreferences.unregisterOnSharedPreferenceChangeListener(mOnSharedPreferenceChangeListener);
+    @Nullable
+    private EscalationPolicy parseEscalationPolicy(@NonNull final String key) {
+        final String spec = mStore.getString(key, "");
+        if (spec.isEmpty()) {
+            return null;
+        }
+        try {
+            return EscalationPolicy.parse(spec);
+        } catch (IllegalArgumentException e) {
+            Log.w(mTag, String.format("parseEscalationPolicy: invalid policy, key = %s, spec = %s", key, spec), e);
+            return null;
         }
     }
 
-    public boolean isMonitorEnabled() {
-        return mPreferences.getBoolean(KEY_MONITOR_ENABLED, false);
+    /**
+     * Schedules the migration if it is still pending and the user has unlocked, and waits until the settings are in
+     * memory. Once the legacy settings are copied, a migration only retries deleting the legacy files and nobody waits
+     * for it.
+     */
+    private void migrateIfNeeded() {
+        if (mIsMigrationPending && UserManagerCompat.isUserUnlocked(App.get())) {
+            synchronized (this) {
+                if (mIsMigrationPending && !mIsMigrationScheduled) {
+                    mIsMigrationScheduled = true;
+                    if (!mStore.getBoolean(KEY_LEGACY_COPIED, false)) {
+                        mReadyLatch = new CountDownLatch(1);
+                    }
+                    mExecutor.execute(this::migrate);
+                }
+            }
+        }
+
+        try {
+            mReadyLatch.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
     }
 
-    public void setMonitorEnabled(final boolean isEnabled) {
-        mPreferences.edit().putBoolean(KEY_MONITOR_ENABLED, isEnabled).commit();
+    /**
+     * Runs on the thread of the store: copies the legacy settings into the store unless that was done before, releases
+     * the waiting callers, and then writes the store and deletes the legacy files.
+     */
+    private void migrate() {
+        final Context context = App.get();
+        final File legacyFile = new File(context.getFilesDir(), STORE_FILE_NAME);
+        final boolean isDue = mIsMigrationPending && UserManagerCompat.isUserUnlocked(context);
+        try {
+            if (isDue && !mStore.getBoolean(KEY_LEGACY_COPIED, false)) {
+                copyLegacySettings(context, legacyFile);
+            }
+        } finally {
+            synchronized (this) {
+                mIsMigrationScheduled = false;
+            }
+            mReadyLatch.countDown();
+        }
+
+        if (!isDue) {
+            return;
+        }
+
+        try {
+            mStore.flush();
+        } catch (IOException e) {
+            // keep the old files and delete them later, the copied settings stay in memory
+            Log.w(mTag, "migrate: write migrated preferences failed", e);
+            return;
+        }
+        //noinspection ResultOfMethodCallIgnored
+        legacyFile.delete();
+        context.deleteSharedPreferences(PREF_FILE_NAME);
+        mIsMigrationPending = false;
+    }
+
+    private void copyLegacySettings(@NonNull final Context context, @NonNull final File legacyFile) {
+        final SharedPreferences preferences = context.getSharedPreferences(PREF_FILE_NAME, Context.MODE_PRIVATE);
+        final PreferenceStore.Editor editor = mStore.edit().putBoolean(KEY_LEGACY_COPIED, true);
+        if (legacyFile.exists()) {
+            final PreferenceStore legacyStore = PreferenceStore.open(legacyFile, Runnable::run);
+            if (legacyStore.contains(KEY_MONITOR_ENABLED)) {
+                editor.putBoolean(KEY_MONITOR_ENABLED, legacyStore.getBoolean(KEY_MONITOR_ENABLED, false));
+            }
+        } else if (preferences.contains(KEY_MONITOR_ENABLED)) {
+            editor.putBoolean(KEY_MONITOR_ENABLED, preferences.getBoolean(KEY_MONITOR_ENABLED, false));
+        }
+        editor.apply();
+    }
+
+    private void notifyObservers(@Nullable final String key) {
+        mObservers.forEach(observer -> observer.onChanged(key));
     }
 
     @FunctionalInterface
@@ -0,0 +1,72 @@
+package com.obby.android.externalstoragemonitor.utils;
+
+import android.content.Context;
+import android.os.Build;
+import android.os.storage.StorageManager;
+import android.os.storage.StorageVolume;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.io.File;
+
+import lombok.AccessLevel;
+import lombok.NoArgsConstructor;
+
+@NoArgsConstructor(access = AccessLevel.PRIVATE)
+public final class StorageVolumeUtils {
+    /**
+     * Returns a stable id of {@code storageVolume}: its file system UUID, or else its mount path. The description is
+     * never used, since it is localized and two cards with the same label would share it.
+     */
+    @NonNull
+    public static String getVolumeId(@NonNull final StorageVolume storageVolume) {
+        final String uuid = storageVolume.getUuid();
+        if (uuid != null) {
+            return uuid;
+        }
+
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.R) {
+            final File directory = storageVolume.getDirectory();
+            if (directory != null) {
+                return directory.getPath();
+            }
+        } else {
+            try {
+                // public API only from R, but present and accessible on every older release
+                final Object path = StorageVolume.class.getMethod("getPath").invoke(storageVolume);
+                if (path instanceof String) {
+                    return (String) path;
+                }
+            } catch (ReflectiveOperationException e) {
+                // fall through
+            }
+        }
+
+        // equals() and hashCode() of a storage volume are those of its mount path
+        return "volume#" + Integer.toHexString(storageVolume.hashCode());
+    }
+
+    /**
+     * Returns a directory on {@code storageVolume}: its root on R and above, otherwise the app specific files
+     * directory on it, which needs the volume to be mounted.
+     */
+    @Nullable
+    public static File getDirectory(@NonNull final Context context, @NonNull final StorageVolume storageVolume) {
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.R) {
+            return storageVolume.getDirectory();
+        }
+
+        final StorageManager storageManager = context.getSystemService(StorageManager.class);
+        for (final File directory : context.getExternalFilesDirs(null)) {
+            if (directory != null && storageVolume.equals(storageManager.getStorageVolume(directory))) {
+                return directory;
+            }
+        }
+        return null;
+    }
+
+    public static boolean isExternalStorage(@NonNull final StorageVolume storageVolume) {
+        return storageVolume.isRemovable() && !storageVolume.isPrimary();
+    }
+}
@@ -0,0 +1,77 @@
+package com.obby.android.externalstoragemonitor.benchmark;
+
+import com.obby.android.externalstoragemonitor.core.ExternalStorageState;
+import com.obby.android.externalstoragemonitor.core.ExternalStorageStateAggregator;
+import com.obby.android.externalstoragemonitor.core.VolumeStateTable;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The per-volume work of a scan: classifying each volume, diffing it against the previous scan and folding it into
+ * the aggregated state, without the source behind it. {@code steadyScan} is the common case of nothing changing;
+ * {@code changingScan} flips one volume per scan, so the table reports a change every time.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class AggregationBenchmark {
+    @Param({"1", "4", "16"})
+    public int volumeCount;
+
+    private long mChangeCount;
+
+    private final ExternalStorageStateAggregator mAggregator = new ExternalStorageStateAggregator();
+
+    private final VolumeStateTable mVolumeStateTable = new VolumeStateTable(
+        (volumeId, previousState, state) -> mChangeCount++);
+
+    private String[] mVolumeIds;
+
+    private String[] mMediaStates;
+
+    @Setup
+    public void setUp() {
+        mVolumeIds = new String[volumeCount];
+        mMediaStates = new String[volumeCount];
+        for (int i = 0; i < volumeCount; i++) {
+            mVolumeIds[i] = String.format(Locale.ROOT, "%04X-%04X", i, i * 31);
+            mMediaStates[i] = ExternalStorageState.MEDIA_MOUNTED;
+        }
+        scan();
+    }
+
+    @Benchmark
+    public int steadyScan() {
+        return scan();
+    }
+
+    @Benchmark
+    public int changingScan() {
+        mMediaStates[0] = ExternalStorageState.MEDIA_MOUNTED.equals(mMediaStates[0])
+            ? ExternalStorageState.MEDIA_CHECKING : ExternalStorageState.MEDIA_MOUNTED;
+        return scan();
+    }
+
+    private int scan() {
+        mAggregator.reset();
+        mVolumeStateTable.beginScan();
+        mAggregator.accept(true, false, ExternalStorageState.MEDIA_MOUNTED);
+        for (int i = 0; i < volumeCount; i++) {
+            final int state = ExternalStorageState.of(false, true, mMediaStates[i]);
+            mAggregator.accept(state);
+            mVolumeStateTable.update(mVolumeIds[i], state);
+        }
+        mVolumeStateTable.endScan();
+        return mAggregator.getState();
+    }
+}
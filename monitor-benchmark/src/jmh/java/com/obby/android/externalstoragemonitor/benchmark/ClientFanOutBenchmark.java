@@ -0,0 +1,104 @@
+package com.obby.android.externalstoragemonitor.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The loop that broadcasts a state update to the registered service clients. {@code Messenger} and {@code Bundle}
+ * need Android, so clients are plain sinks and the payload is a map, but the shapes match the service's client
+ * registry: {@code sharedPayload} builds the payload once and walks an indexed list backwards, so a failing client
+ * can be removed in place; {@code copiedPayload} copies the payload for every client; {@code copyOnWriteList}
+ * iterates a copy-on-write list, the usual alternative for listener lists.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class ClientFanOutBenchmark {
+    private static final String KEY_SEQUENCE = "sequence";
+
+    private static final String KEY_STATE = "state";
+
+    @Param({"1", "4", "16"})
+    public int clientCount;
+
+    private final List<Client> mClients = new ArrayList<>();
+
+    private final List<Client> mCopyOnWriteClients = new CopyOnWriteArrayList<>();
+
+    private long mSequence;
+
+    @Setup
+    public void setUp() {
+        for (int i = 0; i < clientCount; i++) {
+            final Client client = new Client();
+            mClients.add(client);
+            mCopyOnWriteClients.add(client);
+        }
+    }
+
+    @Benchmark
+    public long sharedPayload() {
+        final Map<String, Object> payload = newPayload();
+        for (int i = mClients.size() - 1; i >= 0; i--) {
+            mClients.get(i).send(new Message(1, payload));
+        }
+        return mSequence;
+    }
+
+    @Benchmark
+    public long copiedPayload() {
+        final Map<String, Object> payload = newPayload();
+        for (int i = mClients.size() - 1; i >= 0; i--) {
+            mClients.get(i).send(new Message(1, new HashMap<>(payload)));
+        }
+        return mSequence;
+    }
+
+    @Benchmark
+    public long copyOnWriteList() {
+        final Map<String, Object> payload = newPayload();
+        for (final Client client : mCopyOnWriteClients) {
+            client.send(new Message(1, payload));
+        }
+        return mSequence;
+    }
+
+    private Map<String, Object> newPayload() {
+        final Map<String, Object> payload = new HashMap<>();
+        payload.put(KEY_STATE, 1);
+        payload.put(KEY_SEQUENCE, ++mSequence);
+        return payload;
+    }
+
+    private static final class Message {
+        private final int mWhat;
+
+        private final Map<String, Object> mData;
+
+        private Message(final int what, final Map<String, Object> data) {
+            mWhat = what;
+            mData = data;
+        }
+    }
+
+    private static final class Client {
+        private Message mLastMessage;
+
+        private void send(final Message message) {
+            mLastMessage = message;
+        }
+    }
+}
@@ -0,0 +1,81 @@
+package com.obby.android.externalstoragemonitor.benchmark;
+
+import com.obby.android.externalstoragemonitor.core.ExternalStorageState;
+import com.obby.android.externalstoragemonitor.core.TransitionTrigger;
+import com.obby.android.externalstoragemonitor.core.journal.EventJournal;
+import com.obby.android.externalstoragemonitor.core.journal.JournalRecord;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Encoding a state transition into the memory-mapped journal and decoding it back. Appends roll over to a new
+ * segment file every {@value #SEGMENT_RECORDS} records, so that cost is amortized into the result.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class JournalBenchmark {
+    private static final int SEGMENT_RECORDS = 4096;
+
+    private static final String VOLUME_ID = "1234-ABCD";
+
+    private final JournalRecord mRecord = new JournalRecord();
+
+    private File mDirectory;
+
+    private EventJournal mJournal;
+
+    private long mTimestamp;
+
+    private long mReadSequence;
+
+    @Setup
+    public void setUp() throws IOException {
+        mDirectory = Files.createTempDirectory("journal").toFile();
+        mJournal = EventJournal.open(mDirectory, SEGMENT_RECORDS, 2);
+        for (int i = 0; i < SEGMENT_RECORDS; i++) {
+            append();
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        mJournal.close();
+        final File[] files = mDirectory.listFiles();
+        if (files != null) {
+            for (final File file : files) {
+                file.delete();
+            }
+        }
+        mDirectory.delete();
+    }
+
+    @Benchmark
+    public long append() throws IOException {
+        mTimestamp++;
+        return mJournal.append(mTimestamp, VOLUME_ID, ExternalStorageState.MOUNTED, ExternalStorageState.ABSENT,
+            TransitionTrigger.MEDIA_BAD_REMOVAL);
+    }
+
+    @Benchmark
+    public int read() {
+        final long firstSequence = mJournal.getFirstSequence();
+        if (mReadSequence < firstSequence || mReadSequence > mJournal.getLastSequence()) {
+            mReadSequence = firstSequence;
+        }
+        mJournal.read(mReadSequence++, mRecord);
+        return mRecord.getState();
+    }
+}
@@ -0,0 +1,83 @@
+package com.obby.android.externalstoragemonitor.benchmark;
+
+import com.obby.android.externalstoragemonitor.core.ExternalStorageState;
+import com.obby.android.externalstoragemonitor.core.TransitionTrigger;
+import com.obby.android.externalstoragemonitor.core.VolumeMonitor;
+import com.obby.android.externalstoragemonitor.core.metrics.DetectionMetrics;
+import com.obby.android.externalstoragemonitor.core.replay.ScriptedVolumeSource;
+import com.obby.android.externalstoragemonitor.core.replay.VirtualScheduler;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A whole tick of the {@link VolumeMonitor} on virtual time: a mount table event, the scan it triggers through the
+ * source, the diff, the aggregation, the flap filter and the rescheduling. Nothing changes, which is what almost
+ * every tick on a device does.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class MonitorTickBenchmark {
+    @Param({"1", "4", "16"})
+    public int volumeCount;
+
+    private VirtualScheduler mScheduler;
+
+    private ScriptedVolumeSource mSource;
+
+    private VolumeMonitor mMonitor;
+
+    @Setup
+    public void setUp() {
+        final String[] volumeIds = new String[volumeCount];
+        for (int i = 0; i < volumeCount; i++) {
+            volumeIds[i] = String.format(Locale.ROOT, "%04X-%04X", i, i * 31);
+        }
+
+        mScheduler = new VirtualScheduler(0L);
+        mSource = new ScriptedVolumeSource(volumeIds);
+        for (int i = 0; i < volumeCount; i++) {
+            mSource.apply(i, ExternalStorageState.MOUNTED, TransitionTrigger.POLL);
+        }
+        mMonitor = new VolumeMonitor(mSource, mScheduler, mScheduler, new DetectionMetrics(),
+            new VolumeMonitor.Listener() {
+                @Override
+                public void onExternalStorageStateChanged(final int state, final int trigger) {
+                }
+
+                @Override
+                public void onVolumeStateChanged(final String volumeId, final int previousState, final int state,
+                    final int trigger) {
+                }
+
+                @Override
+                public void onFlappingChanged(final String volumeId, final boolean isFlapping) {
+                }
+            });
+        mMonitor.start();
+        mScheduler.advanceTo(0L);
+    }
+
+    @TearDown
+    public void tearDown() {
+        mMonitor.stop();
+    }
+
+    @Benchmark
+    public long tick() {
+        mSource.apply(0, ExternalStorageState.MOUNTED, TransitionTrigger.MOUNT_TABLE);
+        mScheduler.advanceTo(mScheduler.now());
+        return mSource.getScanCount();
+    }
+}
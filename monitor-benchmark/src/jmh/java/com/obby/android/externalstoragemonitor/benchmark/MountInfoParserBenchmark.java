@@ -0,0 +1,77 @@
+package com.obby.android.externalstoragemonitor.benchmark;
+
+import com.obby.android.externalstoragemonitor.core.mount.MountInfoParser;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Walking a mount table on every mount change: {@code fingerprint} is what the watcher does, matching and hashing
+ * in place; {@code decodeMountPoints} decodes every mount point to a string first, the straightforward alternative.
+ * Tables are synthetic, with four storage mounts among system mounts, sized like a phone's and like a busy
+ * device's.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class MountInfoParserBenchmark {
+    private static final String[] PREFIXES = {"/storage/", "/mnt/media_rw/", "/mnt/user/", "/mnt/pass_through/"};
+
+    @Param({"64", "1024"})
+    public int lineCount;
+
+    private final MountInfoParser mParser = new MountInfoParser();
+
+    private final byte[][] mPrefixes = new byte[PREFIXES.length][];
+
+    private byte[] mBuffer;
+
+    @Setup
+    public void setUp() {
+        for (int i = 0; i < PREFIXES.length; i++) {
+            mPrefixes[i] = PREFIXES[i].getBytes(StandardCharsets.US_ASCII);
+        }
+
+        final StringBuilder builder = new StringBuilder();
+        for (int i = 0; i < lineCount; i++) {
+            final String mountPoint = i % (lineCount / 4) == 0
+                ? PREFIXES[i * 4 / lineCount] + String.format(Locale.ROOT, "%04X-ABCD", i)
+                : String.format(Locale.ROOT, "/apex/com.android.module%d@%d", i, 330000000 + i);
+            builder.append(String.format(Locale.ROOT, "%d %d 253:%d / %s ro,nodev,relatime master:%d - ext4 "
+                + "/dev/block/dm-%d ro,seclabel\n", 100 + i, 99 + i, i % 64, mountPoint, i, i % 64));
+        }
+        mBuffer = builder.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    @Benchmark
+    public long fingerprint() {
+        mParser.reset(mBuffer, mBuffer.length);
+        return mParser.fingerprint(mPrefixes);
+    }
+
+    @Benchmark
+    public long decodeMountPoints() {
+        mParser.reset(mBuffer, mBuffer.length);
+        long hash = 0L;
+        while (mParser.next()) {
+            final String mountPoint = mParser.getMountPoint();
+            for (final String prefix : PREFIXES) {
+                if (mountPoint.startsWith(prefix)) {
+                    hash = hash * 31L + mountPoint.hashCode() + mParser.getMountId();
+                    break;
+                }
+            }
+        }
+        return hash;
+    }
+}
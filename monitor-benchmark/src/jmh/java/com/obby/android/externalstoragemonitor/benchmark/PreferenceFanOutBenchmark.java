@@ -0,0 +1,71 @@
+package com.obby.android.externalstoragemonitor.benchmark;
+
+import com.obby.android.externalstoragemonitor.core.prefs.PreferenceStore;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Applying a preference edit and notifying the observers, as the settings screen and the service do. The write
+ * behind is never run, so the disk stays out of the measurement; {@code applyUnchanged} applies the current value,
+ * which notifies nobody, to separate the fan-out from the edit itself.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class PreferenceFanOutBenchmark {
+    private static final String KEY = "enable_alert";
+
+    @Param({"1", "4", "16"})
+    public int listenerCount;
+
+    private File mFile;
+
+    private PreferenceStore mStore;
+
+    private boolean mValue;
+
+    private long mNotificationCount;
+
+    @Setup
+    public void setUp() throws IOException {
+        mFile = Files.createTempFile("preferences", ".bin").toFile();
+        mStore = PreferenceStore.open(mFile, task -> {
+        });
+        for (int i = 0; i < listenerCount; i++) {
+            mStore.addListener((store, key) -> mNotificationCount++);
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        if (!mFile.delete()) {
+            mFile.deleteOnExit();
+        }
+    }
+
+    @Benchmark
+    public long applyChanged() {
+        mValue = !mValue;
+        mStore.edit().putBoolean(KEY, mValue).apply();
+        return mNotificationCount;
+    }
+
+    @Benchmark
+    public long applyUnchanged() {
+        mStore.edit().putBoolean(KEY, mValue).apply();
+        return mNotificationCount;
+    }
+}
@@ -0,0 +1,61 @@
+package com.obby.android.externalstoragemonitor.benchmark;
+
+import com.obby.android.externalstoragemonitor.core.ExternalStorageState;
+import com.obby.android.externalstoragemonitor.core.TransitionTrigger;
+import com.obby.android.externalstoragemonitor.core.bench.BenchmarkResult;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Mapping the platform's strings to the compact state encoding, as done for every volume of every scan and every
+ * media broadcast, and the text encoding of the stored storage benchmark results.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class StateCodecBenchmark {
+    private static final String[] MEDIA_STATES = {
+        "mounted", "unmounted", "checking", "removed", "bad_removal", "nofs", "unmountable", "shared"
+    };
+
+    private static final String[] ACTIONS = {
+        "android.intent.action.MEDIA_REMOVED", "android.intent.action.MEDIA_UNMOUNTED",
+        "android.intent.action.MEDIA_CHECKING", "android.intent.action.MEDIA_MOUNTED",
+        "android.intent.action.MEDIA_BAD_REMOVAL", "android.intent.action.MEDIA_EJECT"
+    };
+
+    private int mIndex;
+
+    private String mFormattedResult;
+
+    @Setup
+    public void setUp() {
+        mFormattedResult = BenchmarkResult.parse(String.join("\t", "0", "4096", "1", "4096", "16777216",
+            "1000000000", "120000", "250000", "900000", "2000000")).format();
+    }
+
+    @Benchmark
+    public int classifyVolume() {
+        mIndex = (mIndex + 1) & 7;
+        return ExternalStorageState.of(false, true, MEDIA_STATES[mIndex]);
+    }
+
+    @Benchmark
+    public int decodeAction() {
+        mIndex = (mIndex + 1) % ACTIONS.length;
+        return TransitionTrigger.ofAction(ACTIONS[mIndex]);
+    }
+
+    @Benchmark
+    public String roundTripResult() {
+        return BenchmarkResult.parse(mFormattedResult).format();
+    }
+}
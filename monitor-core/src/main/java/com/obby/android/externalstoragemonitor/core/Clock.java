@@ -0,0 +1,9 @@
+package com.obby.android.externalstoragemonitor.core;
+
+/**
+ * Source of monotonic time in milliseconds, injected so that time driven logic can be tested at accelerated time.
+ */
+@FunctionalInterface
+public interface Clock {
+    long now();
+}
@@ -0,0 +1,67 @@
+package com.obby.android.externalstoragemonitor.core;
+
+/**
+ * Compact int encoding of the external storage state, shared by the monitor and its clients.
+ */
+public final class ExternalStorageState {
+    /**
+     * Used for a single volume that is not (or no longer) reported by the system.
+     */
+    public static final int ABSENT = -1;
+
+    public static final int UNKNOWN = 0;
+
+    public static final int MOUNTED = 1;
+
+    public static final int UNMOUNTED = 2;
+
+    /**
+     * Mirrors {@code android.os.Environment.MEDIA_CHECKING}.
+     */
+    public static final String MEDIA_CHECKING = "checking";
+
+    /**
+     * Mirrors {@code android.os.Environment.MEDIA_MOUNTED}.
+     */
+    public static final String MEDIA_MOUNTED = "mounted";
+
+    private ExternalStorageState() {
+    }
+
+    /**
+     * Classifies a single storage volume. Only removable, non-primary volumes can count as mounted external
+     * storage; a removable volume that is still being checked is reported as unknown.
+     */
+    public static int of(final boolean isPrimary, final boolean isRemovable, final String mediaState) {
+        if (isPrimary || !isRemovable) {
+            return UNMOUNTED;
+        }
+
+        if (MEDIA_MOUNTED.equals(mediaState)) {
+            return MOUNTED;
+        } else if (MEDIA_CHECKING.equals(mediaState)) {
+            return UNKNOWN;
+        } else {
+            return UNMOUNTED;
+        }
+    }
+
+    public static boolean isValid(final int state) {
+        return state == UNKNOWN || state == MOUNTED || state == UNMOUNTED;
+    }
+
+    public static String toString(final int state) {
+        switch (state) {
+            case UNKNOWN:
+                return "unknown";
+            case MOUNTED:
+                return "mounted";
+            case UNMOUNTED:
+                return "unmounted";
+            case ABSENT:
+                return "absent";
+            default:
+                return "invalid(" + state + ")";
+        }
+    }
+}
@@ -0,0 +1,49 @@
+package com.obby.android.externalstoragemonitor.core;
+
+/**
+ * Folds per-volume states into the overall external storage state in a single pass.
+ *
+ * <p>Any mounted volume makes the storage mounted, otherwise any unknown volume makes it unknown, otherwise it
+ * is unmounted (including when there are no volumes at all). The aggregator keeps a bit set of the states seen
+ * so far and never allocates, so one instance can be reused for every scan. Not thread-safe.
+ */
+public final class ExternalStorageStateAggregator {
+    private int mSeenStates;
+
+    private int mVolumeCount;
+
+    public void reset() {
+        mSeenStates = 0;
+        mVolumeCount = 0;
+    }
+
+    public void accept(final int state) {
+        mSeenStates |= 1 << state;
+        mVolumeCount++;
+    }
+
+    public void accept(final boolean isPrimary, final boolean isRemovable, final String mediaState) {
+        accept(ExternalStorageState.of(isPrimary, isRemovable, mediaState));
+    }
+
+    public int getVolumeCount() {
+        return mVolumeCount;
+    }
+
+    /**
+     * Whether no volume is in a transient state, such as still being checked.
+     */
+    public boolean isSettled() {
+        return (mSeenStates & (1 << ExternalStorageState.UNKNOWN)) == 0;
+    }
+
+    public int getState() {
+        if ((mSeenStates & (1 << ExternalStorageState.MOUNTED)) != 0) {
+            return ExternalStorageState.MOUNTED;
+        } else if ((mSeenStates & (1 << ExternalStorageState.UNKNOWN)) != 0) {
+            return ExternalStorageState.UNKNOWN;
+        } else {
+            return ExternalStorageState.UNMOUNTED;
+        }
+    }
+}
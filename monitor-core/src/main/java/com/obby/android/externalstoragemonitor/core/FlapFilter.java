@@ -0,0 +1,200 @@
+package com.obby.android.externalstoragemonitor.core;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Suppresses state changes of volumes whose state flips too often, such as a card with a loose contact.
+ *
+ * <p>Raw state changes go in through {@link #update(String, int, int, long)}. A volume that changes state
+ * {@code threshold} times within {@code windowMs} starts flapping: the listener is told once, and further changes
+ * of that volume are held back. Once the volume has not changed for {@code stableMs} it recovers on the next
+ * {@link #poll(long)}: the listener is told, and the current state is reported if it differs from the last one
+ * reported. During a storm each volume therefore reports at most {@code threshold - 1} changes per window plus the
+ * flapping notifications.
+ *
+ * <p>Keys are arbitrary, so the aggregated state can be filtered with its own key. Times are in milliseconds on a
+ * monotonic clock chosen by the caller. Not thread-safe.
+ */
+public final class FlapFilter {
+    public static final long DEFAULT_WINDOW_MS = 60_000L;
+
+    public static final int DEFAULT_THRESHOLD = 6;
+
+    public static final long DEFAULT_STABLE_MS = 30_000L;
+
+    public static final long NO_RECOVERY = Long.MAX_VALUE;
+
+    private final long mWindowMs;
+
+    private final int mThreshold;
+
+    private final long mStableMs;
+
+    private final Listener mListener;
+
+    private final Map<String, Entry> mEntries = new LinkedHashMap<>();
+
+    private final List<Entry> mRecovered = new ArrayList<>();
+
+    public FlapFilter(final Listener listener) {
+        this(DEFAULT_WINDOW_MS, DEFAULT_THRESHOLD, DEFAULT_STABLE_MS, listener);
+    }
+
+    public FlapFilter(final long windowMs, final int threshold, final long stableMs, final Listener listener) {
+        if (windowMs <= 0L || threshold < 2 || stableMs <= 0L) {
+            throw new IllegalArgumentException("invalid flap filter parameters");
+        }
+
+        mWindowMs = windowMs;
+        mThreshold = threshold;
+        mStableMs = stableMs;
+        mListener = listener;
+    }
+
+    /**
+     * Feeds a raw state change of {@code key} from {@code previousState} to {@code state}.
+     */
+    public void update(final String key, final int previousState, final int state, final long now) {
+        Entry entry = mEntries.get(key);
+        if (entry == null) {
+            entry = new Entry(key, previousState, mThreshold);
+            mEntries.put(key, entry);
+        }
+
+        entry.mState = state;
+        entry.mLastChangeTime = now;
+        entry.mChangeTimes[entry.mChangeIndex] = now;
+        entry.mChangeIndex = (entry.mChangeIndex + 1) % mThreshold;
+        entry.mChangeCount++;
+
+        if (entry.mIsFlapping) {
+            entry.mSuppressedCount++;
+            return;
+        }
+
+        if (entry.mChangeCount >= mThreshold && now - entry.mChangeTimes[entry.mChangeIndex] < mWindowMs) {
+            entry.mIsFlapping = true;
+            entry.mSuppressedCount = 1;
+            mListener.onFlappingChanged(key, true, entry.mReportedState);
+            return;
+        }
+
+        report(entry, state, false);
+    }
+
+    /**
+     * Recovers the flapping volumes that have been stable long enough, and forgets absent volumes that are quiet.
+     */
+    public void poll(final long now) {
+        for (final Iterator<Entry> iterator = mEntries.values().iterator(); iterator.hasNext(); ) {
+            final Entry entry = iterator.next();
+            if (entry.mIsFlapping) {
+                if (now - entry.mLastChangeTime >= mStableMs) {
+                    entry.mIsFlapping = false;
+                    mRecovered.add(entry);
+                }
+            } else if (entry.mReportedState == ExternalStorageState.ABSENT
+                && now - entry.mLastChangeTime >= mWindowMs) {
+                iterator.remove();
+            }
+        }
+
+        for (final Entry entry : mRecovered) {
+            mListener.onFlappingChanged(entry.mKey, false, entry.mState);
+            report(entry, entry.mState, true);
+        }
+        mRecovered.clear();
+    }
+
+    /**
+     * Returns the time of the earliest possible recovery, or {@link #NO_RECOVERY} if no volume is flapping.
+     */
+    public long getNextRecoveryTime() {
+        long time = NO_RECOVERY;
+        for (final Entry entry : mEntries.values()) {
+            if (entry.mIsFlapping) {
+                time = Math.min(time, entry.mLastChangeTime + mStableMs);
+            }
+        }
+        return time;
+    }
+
+    public boolean isFlapping(final String key) {
+        final Entry entry = mEntries.get(key);
+        return entry != null && entry.mIsFlapping;
+    }
+
+    public boolean isAnyFlapping() {
+        for (final Entry entry : mEntries.values()) {
+            if (entry.mIsFlapping) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Returns the number of changes of {@code key} held back in the current or last flapping period.
+     */
+    public int getSuppressedCount(final String key) {
+        final Entry entry = mEntries.get(key);
+        return entry == null ? 0 : entry.mSuppressedCount;
+    }
+
+    public void clear() {
+        mEntries.clear();
+    }
+
+    private void report(final Entry entry, final int state, final boolean isRecovery) {
+        if (entry.mReportedState == state) {
+            return;
+        }
+
+        final int previousState = entry.mReportedState;
+        entry.mReportedState = state;
+        mListener.onStateChanged(entry.mKey, previousState, state, isRecovery);
+    }
+
+    public interface Listener {
+        /**
+         * @param isRecovery whether the change is reported because the volume stopped flapping
+         */
+        void onStateChanged(String key, int previousState, int state, boolean isRecovery);
+
+        /**
+         * @param state the last reported state when flapping starts, the current state when it ends
+         */
+        void onFlappingChanged(String key, boolean isFlapping, int state);
+    }
+
+    private static final class Entry {
+        private final String mKey;
+
+        private final long[] mChangeTimes;
+
+        private int mChangeIndex;
+
+        private long mChangeCount;
+
+        private long mLastChangeTime;
+
+        private int mState;
+
+        private int mReportedState;
+
+        private boolean mIsFlapping;
+
+        private int mSuppressedCount;
+
+        private Entry(final String key, final int state, final int threshold) {
+            mKey = key;
+            mState = state;
+            mReportedState = state;
+            mChangeTimes = new long[threshold];
+        }
+    }
+}
@@ -0,0 +1,17 @@
+package com.obby.android.externalstoragemonitor.core;
+
+/**
+ * Runs delayed tasks on a single thread, injected together with a {@link Clock} so that the monitor can run on a
+ * looper on a device and on virtual time in tests.
+ */
+public interface Scheduler {
+    /**
+     * Runs {@code task} once after {@code delayMs}, replacing a pending run of the same task.
+     */
+    void schedule(Runnable task, long delayMs);
+
+    /**
+     * Drops a pending run of {@code task}, if any.
+     */
+    void cancel(Runnable task);
+}
@@ -0,0 +1,214 @@
+package com.obby.android.externalstoragemonitor.core;
+
+import java.util.Locale;
+
+/**
+ * Decides when the monitor should scan the storage volumes next.
+ *
+ * <p>Media broadcasts are debounced: the first broadcast of a burst opens a window and every following broadcast
+ * pushes the scan back by {@link #getDebounceMs()}, but never beyond {@link #getMaxDebounceMs()} after the first
+ * one, so a burst such as REMOVED + UNMOUNTED + BAD_REMOVAL costs a single scan. Polling is adaptive: after a
+ * state change, or while a volume is still being checked, the next poll happens after
+ * {@link #getFastIntervalMs()}; each quiet poll then doubles the interval up to {@link #getIdleIntervalMs()}.
+ *
+ * <p>All times are in milliseconds on a monotonic clock chosen by the caller. Not thread-safe.
+ */
+public final class TickScheduler {
+    public static final long DEFAULT_DEBOUNCE_MS = 300L;
+
+    public static final long DEFAULT_MAX_DEBOUNCE_MS = 1_500L;
+
+    public static final long DEFAULT_FAST_INTERVAL_MS = 1_000L;
+
+    public static final long DEFAULT_IDLE_INTERVAL_MS = 60_000L;
+
+    private static final long NONE = -1L;
+
+    private final long mDebounceMs;
+
+    private final long mMaxDebounceMs;
+
+    private final long mFastIntervalMs;
+
+    private final long mIdleIntervalMs;
+
+    private long mIntervalMs;
+
+    private long mFirstBroadcastTime = NONE;
+
+    private long mStartTime = NONE;
+
+    private long mScanCount;
+
+    private long mWakeupCount;
+
+    private long mBroadcastCount;
+
+    private long mCoalescedBroadcastCount;
+
+    private long mMountChangeCount;
+
+    private long mDetectionLatencyCount;
+
+    private long mTotalDetectionLatencyMs;
+
+    private long mMaxDetectionLatencyMs;
+
+    public TickScheduler() {
+        this(DEFAULT_DEBOUNCE_MS, DEFAULT_MAX_DEBOUNCE_MS, DEFAULT_FAST_INTERVAL_MS, DEFAULT_IDLE_INTERVAL_MS);
+    }
+
+    public TickScheduler(final long debounceMs, final long maxDebounceMs, final long fastIntervalMs,
+        final long idleIntervalMs) {
+        if (debounceMs < 0L || maxDebounceMs < debounceMs || fastIntervalMs <= 0L || idleIntervalMs < fastIntervalMs) {
+            throw new IllegalArgumentException("invalid scheduler intervals");
+        }
+
+        mDebounceMs = debounceMs;
+        mMaxDebounceMs = maxDebounceMs;
+        mFastIntervalMs = fastIntervalMs;
+        mIdleIntervalMs = idleIntervalMs;
+        mIntervalMs = fastIntervalMs;
+    }
+
+    /**
+     * Resets the polling interval and the statistics, and returns the time of the first scan.
+     */
+    public long start(final long now) {
+        mStartTime = now;
+        mIntervalMs = mFastIntervalMs;
+        mFirstBroadcastTime = NONE;
+        mScanCount = 0L;
+        mWakeupCount = 0L;
+        mBroadcastCount = 0L;
+        mCoalescedBroadcastCount = 0L;
+        mMountChangeCount = 0L;
+        mDetectionLatencyCount = 0L;
+        mTotalDetectionLatencyMs = 0L;
+        mMaxDetectionLatencyMs = 0L;
+        return now;
+    }
+
+    /**
+     * Records a media broadcast and returns the time at which the coalesced scan should run.
+     */
+    public long onBroadcast(final long now) {
+        mBroadcastCount++;
+        if (mFirstBroadcastTime == NONE) {
+            mFirstBroadcastTime = now;
+        } else {
+            mCoalescedBroadcastCount++;
+        }
+        return Math.min(now + mDebounceMs, mFirstBroadcastTime + mMaxDebounceMs);
+    }
+
+    /**
+     * Records a change of the kernel mount table and returns the time of the scan, which is now: the change does not
+     * wait in the broadcast queue and does not come in bursts, so there is nothing to debounce. It opens a window
+     * like a broadcast, so the broadcasts of the same event that follow are coalesced into one more scan.
+     */
+    public long onMountChanged(final long now) {
+        mMountChangeCount++;
+        if (mFirstBroadcastTime == NONE) {
+            mFirstBroadcastTime = now;
+        }
+        return now;
+    }
+
+    /**
+     * Records a completed scan and returns the time of the next poll.
+     *
+     * @param isChanged whether the scan observed a state change
+     * @param isSettled whether every volume reached a stable state
+     */
+    public long onScanned(final long now, final boolean isChanged, final boolean isSettled) {
+        mScanCount++;
+        if (mFirstBroadcastTime == NONE) {
+            mWakeupCount++;
+        } else {
+            final long latencyMs = now - mFirstBroadcastTime;
+            mDetectionLatencyCount++;
+            mTotalDetectionLatencyMs += latencyMs;
+            mMaxDetectionLatencyMs = Math.max(mMaxDetectionLatencyMs, latencyMs);
+            mFirstBroadcastTime = NONE;
+        }
+
+        if (isChanged || !isSettled) {
+            mIntervalMs = mFastIntervalMs;
+        } else {
+            mIntervalMs = Math.min(mIntervalMs * 2L, mIdleIntervalMs);
+        }
+        return now + mIntervalMs;
+    }
+
+    public boolean isBroadcastPending() {
+        return mFirstBroadcastTime != NONE;
+    }
+
+    public long getDebounceMs() {
+        return mDebounceMs;
+    }
+
+    public long getMaxDebounceMs() {
+        return mMaxDebounceMs;
+    }
+
+    public long getFastIntervalMs() {
+        return mFastIntervalMs;
+    }
+
+    public long getIdleIntervalMs() {
+        return mIdleIntervalMs;
+    }
+
+    public long getIntervalMs() {
+        return mIntervalMs;
+    }
+
+    public long getScanCount() {
+        return mScanCount;
+    }
+
+    /**
+     * Number of scans triggered by the poll timer rather than by a broadcast.
+     */
+    public long getWakeupCount() {
+        return mWakeupCount;
+    }
+
+    public long getBroadcastCount() {
+        return mBroadcastCount;
+    }
+
+    public long getCoalescedBroadcastCount() {
+        return mCoalescedBroadcastCount;
+    }
+
+    public long getMountChangeCount() {
+        return mMountChangeCount;
+    }
+
+    public long getMeanDetectionLatencyMs() {
+        return mDetectionLatencyCount == 0L ? 0L : mTotalDetectionLatencyMs / mDetectionLatencyCount;
+    }
+
+    public long getMaxDetectionLatencyMs() {
+        return mMaxDetectionLatencyMs;
+    }
+
+    /**
+     * Number of scans a fixed-interval poller would have run since {@link #start(long)}, for comparison.
+     */
+    public long getFixedIntervalScanCount(final long now, final long fixedIntervalMs) {
+        return mStartTime == NONE ? 0L : (now - mStartTime) / fixedIntervalMs + 1L;
+    }
+
+    public String getSummary(final long now, final long fixedIntervalMs) {
+        return String.format(Locale.ROOT,
+            "scans = %d (fixed interval: %d), wakeups = %d, broadcasts = %d (coalesced: %d), mount changes = %d, "
+                + "detection latency mean = %d ms, max = %d ms, interval = %d ms",
+            mScanCount, getFixedIntervalScanCount(now, fixedIntervalMs), mWakeupCount, mBroadcastCount,
+            mCoalescedBroadcastCount, mMountChangeCount, getMeanDetectionLatencyMs(), mMaxDetectionLatencyMs,
+            mIntervalMs);
+    }
+}
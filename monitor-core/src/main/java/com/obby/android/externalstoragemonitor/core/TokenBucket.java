@@ -0,0 +1,70 @@
+package com.obby.android.externalstoragemonitor.core;
+
+/**
+ * Token bucket rate limiter holding up to {@code capacity} tokens and refilling one token every
+ * {@code refillIntervalMs}. Times are in milliseconds on a monotonic clock chosen by the caller. Not thread-safe.
+ */
+public final class TokenBucket {
+    private final int mCapacity;
+
+    private final long mRefillIntervalMs;
+
+    private int mTokens;
+
+    private long mLastRefillTime;
+
+    private boolean mIsStarted;
+
+    public TokenBucket(final int capacity, final long refillIntervalMs) {
+        if (capacity <= 0 || refillIntervalMs <= 0L) {
+            throw new IllegalArgumentException("invalid token bucket parameters");
+        }
+
+        mCapacity = capacity;
+        mRefillIntervalMs = refillIntervalMs;
+        mTokens = capacity;
+    }
+
+    /**
+     * Takes a token if one is available.
+     *
+     * @return {@code 0} if a token was taken, otherwise the number of milliseconds until the next token is available
+     */
+    public long tryAcquire(final long now) {
+        refill(now);
+        if (mTokens > 0) {
+            mTokens--;
+            return 0L;
+        }
+        return mLastRefillTime + mRefillIntervalMs - now;
+    }
+
+    public int getTokens(final long now) {
+        refill(now);
+        return mTokens;
+    }
+
+    public void reset() {
+        mTokens = mCapacity;
+        mIsStarted = false;
+    }
+
+    private void refill(final long now) {
+        if (!mIsStarted) {
+            mIsStarted = true;
+            mLastRefillTime = now;
+            return;
+        }
+
+        if (mTokens >= mCapacity) {
+            mLastRefillTime = now;
+            return;
+        }
+
+        final long refills = (now - mLastRefillTime) / mRefillIntervalMs;
+        if (refills > 0L) {
+            mTokens = (int) Math.min(mCapacity, mTokens + refills);
+            mLastRefillTime = mTokens >= mCapacity ? now : mLastRefillTime + refills * mRefillIntervalMs;
+        }
+    }
+}
@@ -0,0 +1,111 @@
+package com.obby.android.externalstoragemonitor.core;
+
+/**
+ * Compact encoding of what triggered the scan that observed a state transition.
+ */
+public final class TransitionTrigger {
+    public static final int POLL = 0;
+
+    public static final int START = 1;
+
+    public static final int MEDIA_REMOVED = 2;
+
+    public static final int MEDIA_UNMOUNTED = 3;
+
+    public static final int MEDIA_CHECKING = 4;
+
+    public static final int MEDIA_NOFS = 5;
+
+    public static final int MEDIA_MOUNTED = 6;
+
+    public static final int MEDIA_SHARED = 7;
+
+    public static final int MEDIA_BAD_REMOVAL = 8;
+
+    public static final int MEDIA_UNMOUNTABLE = 9;
+
+    public static final int OTHER = 10;
+
+    /**
+     * The monitor stopped; the volume is no longer observed until the next {@link #START}.
+     */
+    public static final int STOP = 11;
+
+    /**
+     * A flapping volume has been stable long enough and its state is reported again.
+     */
+    public static final int FLAP_RECOVERY = 12;
+
+    /**
+     * The kernel mount table changed, observed before any media broadcast.
+     */
+    public static final int MOUNT_TABLE = 13;
+
+    private static final String ACTION_PREFIX = "android.intent.action.";
+
+    private TransitionTrigger() {
+    }
+
+    /**
+     * Maps an {@code android.intent.action.MEDIA_*} broadcast action to its trigger.
+     */
+    public static int ofAction(final String action) {
+        if (action == null || !action.startsWith(ACTION_PREFIX)) {
+            return OTHER;
+        }
+
+        switch (action.substring(ACTION_PREFIX.length())) {
+            case "MEDIA_REMOVED":
+                return MEDIA_REMOVED;
+            case "MEDIA_UNMOUNTED":
+                return MEDIA_UNMOUNTED;
+            case "MEDIA_CHECKING":
+                return MEDIA_CHECKING;
+            case "MEDIA_NOFS":
+                return MEDIA_NOFS;
+            case "MEDIA_MOUNTED":
+                return MEDIA_MOUNTED;
+            case "MEDIA_SHARED":
+                return MEDIA_SHARED;
+            case "MEDIA_BAD_REMOVAL":
+                return MEDIA_BAD_REMOVAL;
+            case "MEDIA_UNMOUNTABLE":
+                return MEDIA_UNMOUNTABLE;
+            default:
+                return OTHER;
+        }
+    }
+
+    public static String toString(final int trigger) {
+        switch (trigger) {
+            case POLL:
+                return "poll";
+            case START:
+                return "start";
+            case MEDIA_REMOVED:
+                return "media_removed";
+            case MEDIA_UNMOUNTED:
+                return "media_unmounted";
+            case MEDIA_CHECKING:
+                return "media_checking";
+            case MEDIA_NOFS:
+                return "media_nofs";
+            case MEDIA_MOUNTED:
+                return "media_mounted";
+            case MEDIA_SHARED:
+                return "media_shared";
+            case MEDIA_BAD_REMOVAL:
+                return "media_bad_removal";
+            case MEDIA_UNMOUNTABLE:
+                return "media_unmountable";
+            case STOP:
+                return "stop";
+            case FLAP_RECOVERY:
+                return "flap_recovery";
+            case MOUNT_TABLE:
+                return "mount_table";
+            default:
+                return "other";
+        }
+    }
+}
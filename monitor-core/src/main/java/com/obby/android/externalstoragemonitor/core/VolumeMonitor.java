@@ -0,0 +1,257 @@
+package com.obby.android.externalstoragemonitor.core;
+
+import com.obby.android.externalstoragemonitor.core.journal.EventJournal;
+import com.obby.android.externalstoragemonitor.core.metrics.DetectionMetrics;
+
+/**
+ * Detects external storage state changes: scans a {@link VolumeStateSource} when its events or the adaptive poll
+ * of the {@link TickScheduler} call for it, diffs the volumes in a {@link VolumeStateTable}, folds them with an
+ * {@link ExternalStorageStateAggregator}, holds back flapping volumes with a {@link FlapFilter} and reports what is
+ * left to the {@link Listener}.
+ *
+ * <p>The source, the {@link Scheduler} and the {@link Clock} are injected, so the same detection path runs on a
+ * looper on a device and on virtual time in tests and soak runs. Every method, every source callback and every
+ * listener callback runs on the scheduler's thread. A scan that observes no change does not allocate.
+ */
+public final class VolumeMonitor {
+    private final VolumeStateSource mSource;
+
+    private final Scheduler mScheduler;
+
+    private final Clock mClock;
+
+    private final DetectionMetrics mMetrics;
+
+    private final Listener mListener;
+
+    private final ExternalStorageStateAggregator mAggregator = new ExternalStorageStateAggregator();
+
+    private final VolumeStateTable mVolumeStateTable = new VolumeStateTable(this::onVolumeStateChanged);
+
+    private final TickScheduler mTickScheduler;
+
+    private final FlapFilter mFlapFilter = new FlapFilter(new FlapFilter.Listener() {
+        @Override
+        public void onStateChanged(final String key, final int previousState, final int state,
+            final boolean isRecovery) {
+            onFilteredStateChanged(key, previousState, state, isRecovery ? TransitionTrigger.FLAP_RECOVERY : mTrigger);
+        }
+
+        @Override
+        public void onFlappingChanged(final String key, final boolean isFlapping, final int state) {
+            mListener.onFlappingChanged(key, isFlapping);
+        }
+    });
+
+    private final VolumeStateSource.Visitor mVisitor = this::onVolume;
+
+    private final VolumeStateSource.Callback mCallback = new VolumeStateSource.Callback() {
+        @Override
+        public void onBroadcast(final int trigger) {
+            if (!mIsRunning) {
+                return;
+            }
+
+            final long now = mClock.now();
+            mMetrics.getBroadcastCount().incrementAndGet();
+            if (!mTickScheduler.isBroadcastPending()) {
+                mBroadcastNanos = System.nanoTime();
+            }
+            mTrigger = trigger;
+            scheduleTick(mTickScheduler.onBroadcast(now), now);
+        }
+
+        /**
+         * Scans at once when the storage mounts change, ahead of the media broadcasts for the same event.
+         */
+        @Override
+        public void onMountsChanged() {
+            if (!mIsRunning) {
+                return;
+            }
+
+            final long now = mClock.now();
+            mMetrics.getMountChangeCount().incrementAndGet();
+            if (mMountNanos == 0L) {
+                mMountNanos = System.nanoTime();
+            }
+            mTrigger = TransitionTrigger.MOUNT_TABLE;
+            scheduleTick(mTickScheduler.onMountChanged(now), now);
+        }
+    };
+
+    private final Runnable mTickRunnable = new Runnable() {
+        @Override
+        public void run() {
+            if (!mTickScheduler.isBroadcastPending()) {
+                mMetrics.getWakeupCount().incrementAndGet();
+            }
+            final boolean isChanged = tick();
+            mTrigger = TransitionTrigger.POLL;
+            mBroadcastNanos = 0L;
+            mMountNanos = 0L;
+            final long now = mClock.now();
+            pollFlapFilter(now);
+            scheduleTick(mTickScheduler.onScanned(now, isChanged, mAggregator.isSettled()), now);
+        }
+    };
+
+    private final Runnable mFlapRecoveryRunnable = new Runnable() {
+        @Override
+        public void run() {
+            pollFlapFilter(mClock.now());
+        }
+    };
+
+    private boolean mIsRunning;
+
+    private int mExternalStorageState = ExternalStorageState.UNKNOWN;
+
+    private boolean mIsVolumeChanged;
+
+    private int mTrigger = TransitionTrigger.START;
+
+    private long mBroadcastNanos;
+
+    private long mMountNanos;
+
+    public VolumeMonitor(final VolumeStateSource source, final Scheduler scheduler, final Clock clock,
+        final DetectionMetrics metrics, final Listener listener) {
+        this(source, scheduler, clock, new TickScheduler(), metrics, listener);
+    }
+
+    public VolumeMonitor(final VolumeStateSource source, final Scheduler scheduler, final Clock clock,
+        final TickScheduler tickScheduler, final DetectionMetrics metrics, final Listener listener) {
+        mSource = source;
+        mScheduler = scheduler;
+        mClock = clock;
+        mTickScheduler = tickScheduler;
+        mMetrics = metrics;
+        mListener = listener;
+    }
+
+    public boolean isRunning() {
+        return mIsRunning;
+    }
+
+    public void start() {
+        if (mIsRunning) {
+            return;
+        }
+
+        mIsRunning = true;
+        mTrigger = TransitionTrigger.START;
+        mSource.start(mCallback);
+        final long now = mClock.now();
+        scheduleTick(mTickScheduler.start(now), now);
+    }
+
+    public void stop() {
+        if (!mIsRunning) {
+            return;
+        }
+
+        mIsRunning = false;
+        mSource.stop();
+        mScheduler.cancel(mTickRunnable);
+        mScheduler.cancel(mFlapRecoveryRunnable);
+        mVolumeStateTable.clear();
+        mFlapFilter.clear();
+    }
+
+    public TickScheduler getTickScheduler() {
+        return mTickScheduler;
+    }
+
+    public String getSummary(final long fixedIntervalMs) {
+        return mTickScheduler.getSummary(mClock.now(), fixedIntervalMs);
+    }
+
+    private void pollFlapFilter(final long now) {
+        mFlapFilter.poll(now);
+        final long recoveryTime = mFlapFilter.getNextRecoveryTime();
+        if (recoveryTime == FlapFilter.NO_RECOVERY) {
+            mScheduler.cancel(mFlapRecoveryRunnable);
+        } else {
+            mScheduler.schedule(mFlapRecoveryRunnable, Math.max(recoveryTime - now, 0L));
+        }
+    }
+
+    private void scheduleTick(final long tickTime, final long now) {
+        mScheduler.schedule(mTickRunnable, Math.max(tickTime - now, 0L));
+    }
+
+    private boolean tick() {
+        final long startNanos = System.nanoTime();
+        mMetrics.getTickCount().incrementAndGet();
+        mIsVolumeChanged = false;
+        mAggregator.reset();
+        mVolumeStateTable.beginScan();
+        mSource.scan(mVisitor);
+        mVolumeStateTable.endScan();
+        mMetrics.getScanLatency().recordSince(startNanos);
+        mMetrics.getFirstScanTime().compareAndSet(0L, mClock.now());
+
+        final int state = mAggregator.getState();
+        if (mExternalStorageState == state) {
+            return mIsVolumeChanged;
+        }
+
+        final int previousState = mExternalStorageState;
+        mExternalStorageState = state;
+        mFlapFilter.update(EventJournal.AGGREGATE_VOLUME_ID, previousState, state, mClock.now());
+        return true;
+    }
+
+    private void onVolume(final String volumeId, final int state) {
+        mAggregator.accept(state);
+        if (volumeId != null) {
+            mVolumeStateTable.update(volumeId, state);
+        }
+    }
+
+    private void onVolumeStateChanged(final String volumeId, final int previousState, final int state) {
+        mIsVolumeChanged = true;
+        mListener.onVolumeObserved(volumeId, previousState, state);
+        mFlapFilter.update(volumeId, previousState, state, mClock.now());
+    }
+
+    /**
+     * Reports a state change that passed the flap filter.
+     */
+    private void onFilteredStateChanged(final String key, final int previousState, final int state,
+        final int trigger) {
+        if (EventJournal.AGGREGATE_VOLUME_ID.equals(key)) {
+            if (mBroadcastNanos != 0L) {
+                mMetrics.getBroadcastToStateLatency().recordSince(mBroadcastNanos);
+            }
+            if (mMountNanos != 0L) {
+                mMetrics.getMountToStateLatency().recordSince(mMountNanos);
+            }
+            mListener.onExternalStorageStateChanged(state, trigger);
+        } else {
+            mListener.onVolumeStateChanged(key, previousState, state, trigger);
+        }
+    }
+
+    /**
+     * Receives the changes that passed the flap filter, on the scheduler's thread.
+     */
+    public interface Listener {
+        void onExternalStorageStateChanged(int state, int trigger);
+
+        void onVolumeStateChanged(String volumeId, int previousState, int state, int trigger);
+
+        /**
+         * Called when a volume, or the aggregated state with {@link EventJournal#AGGREGATE_VOLUME_ID}, starts or stops
+         * flapping. Its state changes are not reported while it flaps.
+         */
+        void onFlappingChanged(String volumeId, boolean isFlapping);
+
+        /**
+         * Called for every change of a volume seen by a scan, before the flap filter.
+         */
+        default void onVolumeObserved(final String volumeId, final int previousState, final int state) {
+        }
+    }
+}
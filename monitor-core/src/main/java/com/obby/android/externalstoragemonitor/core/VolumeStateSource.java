@@ -0,0 +1,47 @@
+package com.obby.android.externalstoragemonitor.core;
+
+/**
+ * Where a {@link VolumeMonitor} gets the storage volumes from: a scan of the volumes the system currently reports,
+ * and the events that suggest they changed. On a device this is the storage manager with its media broadcasts and
+ * the kernel mount table; in tests and soak runs it is a scripted source replaying a trace.
+ *
+ * <p>Every method is called on the thread of the monitor's {@link Scheduler}, and the callback must be invoked on
+ * that thread too.
+ */
+public interface VolumeStateSource {
+    /**
+     * Starts delivering events to {@code callback} until {@link #stop()}.
+     */
+    void start(Callback callback);
+
+    void stop();
+
+    /**
+     * Reports every volume the system currently knows of to {@code visitor}, synchronously.
+     */
+    void scan(Visitor visitor);
+
+    @FunctionalInterface
+    interface Visitor {
+        /**
+         * @param volumeId id of an external volume, or {@code null} for a volume that only counts towards the
+         *                 aggregated state, such as the primary storage
+         * @param state    one of the {@link ExternalStorageState} volume states
+         */
+        void onVolume(String volumeId, int state);
+    }
+
+    interface Callback {
+        /**
+         * A media broadcast was received.
+         *
+         * @param trigger the {@link TransitionTrigger} of the broadcast action
+         */
+        void onBroadcast(int trigger);
+
+        /**
+         * The storage mounts in the kernel mount table changed.
+         */
+        void onMountsChanged();
+    }
+}
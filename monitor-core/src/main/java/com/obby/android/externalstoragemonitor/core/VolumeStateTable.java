@@ -0,0 +1,106 @@
+package com.obby.android.externalstoragemonitor.core;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Per-volume state index that is diffed incrementally against the previous scan.
+ *
+ * <p>A scan is bracketed by {@link #beginScan()} and {@link #endScan()}; every volume seen in between is passed to
+ * {@link #update(String, int)}. Only differences are reported to the {@link Listener}: a volume seen for the first
+ * time is reported with a previous state of {@link ExternalStorageState#ABSENT}, a volume missing from the scan is
+ * reported with a new state of {@link ExternalStorageState#ABSENT} and removed from the table. Entries are reused,
+ * so a scan in which nothing changed does not allocate. Not thread-safe.
+ */
+public final class VolumeStateTable {
+    private long mGeneration;
+
+    private final Map<String, Entry> mEntriesById = new HashMap<>();
+
+    private final List<Entry> mEntries = new ArrayList<>();
+
+    private final Listener mListener;
+
+    public VolumeStateTable(final Listener listener) {
+        mListener = listener;
+    }
+
+    public void beginScan() {
+        mGeneration++;
+    }
+
+    public void update(final String volumeId, final int state) {
+        Entry entry = mEntriesById.get(volumeId);
+        if (entry == null) {
+            entry = new Entry(volumeId, state, mGeneration);
+            mEntriesById.put(volumeId, entry);
+            mEntries.add(entry);
+            mListener.onVolumeStateChanged(volumeId, ExternalStorageState.ABSENT, state);
+            return;
+        }
+
+        entry.mGeneration = mGeneration;
+        if (entry.mState != state) {
+            final int previousState = entry.mState;
+            entry.mState = state;
+            mListener.onVolumeStateChanged(volumeId, previousState, state);
+        }
+    }
+
+    /**
+     * Drops the volumes that were not seen since {@link #beginScan()}.
+     */
+    public void endScan() {
+        for (int i = mEntries.size() - 1; i >= 0; i--) {
+            final Entry entry = mEntries.get(i);
+            if (entry.mGeneration != mGeneration) {
+                mEntries.remove(i);
+                mEntriesById.remove(entry.mVolumeId);
+                mListener.onVolumeStateChanged(entry.mVolumeId, entry.mState, ExternalStorageState.ABSENT);
+            }
+        }
+    }
+
+    public void clear() {
+        mEntries.clear();
+        mEntriesById.clear();
+    }
+
+    public int getState(final String volumeId) {
+        final Entry entry = mEntriesById.get(volumeId);
+        return entry == null ? ExternalStorageState.ABSENT : entry.mState;
+    }
+
+    public int size() {
+        return mEntries.size();
+    }
+
+    public String getVolumeIdAt(final int index) {
+        return mEntries.get(index).mVolumeId;
+    }
+
+    public int getStateAt(final int index) {
+        return mEntries.get(index).mState;
+    }
+
+    @FunctionalInterface
+    public interface Listener {
+        void onVolumeStateChanged(String volumeId, int previousState, int state);
+    }
+
+    private static final class Entry {
+        private final String mVolumeId;
+
+        private int mState;
+
+        private long mGeneration;
+
+        private Entry(final String volumeId, final int state, final long generation) {
+            mVolumeId = volumeId;
+            mState = state;
+            mGeneration = generation;
+        }
+    }
+}
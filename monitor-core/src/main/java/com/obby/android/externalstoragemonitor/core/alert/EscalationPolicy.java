@@ -0,0 +1,265 @@
+package com.obby.android.externalstoragemonitor.core.alert;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Describes when an alert repeats while its condition lasts, and how loud it is.
+ *
+ * <p>A policy is a sequence of stages. Each stage repeats the alert every {@code intervalMs} at {@code volume} for
+ * {@code durationMs} after the stage begins; the last stage lasts forever. The first alert is raised
+ * {@link #getInitialDelayMs()} after the condition starts. Snoozing, usually by dismissing the alert, postpones the
+ * next alert by {@link #getSnoozeMs()} without restarting the escalation.
+ *
+ * <p>A policy is written as its stages followed by its options, for example {@code 30s/5m@0.6,10m@1;snooze=1m}:
+ * each stage is {@code interval/duration@volume}, where a missing duration means forever, and the options are
+ * {@code delay} and {@code snooze}. Durations are a number of milliseconds followed by an optional unit of
+ * {@code s}, {@code m} or {@code h}.
+ */
+public final class EscalationPolicy {
+    public static final long FOREVER = Long.MAX_VALUE;
+
+    /**
+     * Alerts immediately, every 30 seconds for 5 minutes at a moderate volume, then every 10 minutes at full volume.
+     * A dismissed alert is raised again after a minute at the earliest.
+     */
+    public static final EscalationPolicy DEFAULT = new Builder()
+        .addStage(30_000L, 300_000L, 0.6f)
+        .addStage(600_000L, FOREVER, 1.0f)
+        .setSnoozeMs(60_000L)
+        .build();
+
+    private final long mInitialDelayMs;
+
+    private final long mSnoozeMs;
+
+    private final List<Stage> mStages;
+
+    private EscalationPolicy(final Builder builder) {
+        mInitialDelayMs = builder.mInitialDelayMs;
+        mSnoozeMs = builder.mSnoozeMs;
+        mStages = Collections.unmodifiableList(new ArrayList<>(builder.mStages));
+    }
+
+    public long getInitialDelayMs() {
+        return mInitialDelayMs;
+    }
+
+    public long getSnoozeMs() {
+        return mSnoozeMs;
+    }
+
+    public List<Stage> getStages() {
+        return mStages;
+    }
+
+    /**
+     * Returns the offset from the start of the condition of the alert following the one raised at {@code elapsedMs},
+     * or {@link #FOREVER} if there is none.
+     */
+    public long getNextAlertOffset(final long elapsedMs) {
+        long stageStart = mInitialDelayMs;
+        for (int i = 0; i < mStages.size(); i++) {
+            final Stage stage = mStages.get(i);
+            final long stageEnd = stage.mDurationMs == FOREVER ? FOREVER : stageStart + stage.mDurationMs;
+            if (elapsedMs < stageEnd) {
+                final long next = Math.max(elapsedMs, stageStart) + stage.mIntervalMs;
+                if (next < stageEnd) {
+                    return next;
+                }
+                // the next stage starts with an alert
+                return i + 1 < mStages.size() ? stageEnd : FOREVER;
+            }
+            stageStart = stageEnd;
+        }
+        return FOREVER;
+    }
+
+    /**
+     * Returns the volume, from 0 to 1, of an alert raised at {@code elapsedMs} after the start of the condition.
+     */
+    public float getVolumeAt(final long elapsedMs) {
+        long stageStart = mInitialDelayMs;
+        for (final Stage stage : mStages) {
+            if (stage.mDurationMs == FOREVER || elapsedMs < stageStart + stage.mDurationMs) {
+                return stage.mVolume;
+            }
+            stageStart += stage.mDurationMs;
+        }
+        return mStages.isEmpty() ? 1.0f : mStages.get(mStages.size() - 1).mVolume;
+    }
+
+    /**
+     * Parses a policy written as described above.
+     *
+     * @throws IllegalArgumentException if the policy is malformed
+     */
+    public static EscalationPolicy parse(final String spec) {
+        final String[] parts = spec.trim().split("\\s*;\\s*");
+        final Builder builder = new Builder();
+        final String[] stages = parts[0].split("\\s*,\\s*");
+        for (int i = 0; i < stages.length; i++) {
+            final String stage = stages[i];
+            final int at = stage.indexOf('@');
+            final int slash = stage.indexOf('/');
+            // only the last stage may go without a duration
+            if (at < 0 || (slash >= 0 && slash > at) || (slash < 0 && i + 1 < stages.length)) {
+                throw new IllegalArgumentException("invalid escalation stage: " + stage);
+            }
+            final long intervalMs = parseDuration(stage.substring(0, slash < 0 ? at : slash));
+            final long durationMs = slash < 0 ? FOREVER : parseDuration(stage.substring(slash + 1, at));
+            final float volume;
+            try {
+                volume = Float.parseFloat(stage.substring(at + 1));
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("invalid escalation volume: " + stage, e);
+            }
+            builder.addStage(intervalMs, durationMs, volume);
+        }
+        for (int i = 1; i < parts.length; i++) {
+            final int equals = parts[i].indexOf('=');
+            final String name = equals < 0 ? parts[i] : parts[i].substring(0, equals).trim();
+            if ("delay".equals(name) && equals >= 0) {
+                builder.setInitialDelayMs(parseDuration(parts[i].substring(equals + 1)));
+            } else if ("snooze".equals(name) && equals >= 0) {
+                builder.setSnoozeMs(parseDuration(parts[i].substring(equals + 1)));
+            } else {
+                throw new IllegalArgumentException("invalid escalation option: " + parts[i]);
+            }
+        }
+        return builder.build();
+    }
+
+    /**
+     * Returns the policy written as accepted by {@link #parse(String)}.
+     */
+    @Override
+    public String toString() {
+        final StringBuilder builder = new StringBuilder();
+        for (final Stage stage : mStages) {
+            if (builder.length() > 0) {
+                builder.append(',');
+            }
+            builder.append(formatDuration(stage.mIntervalMs));
+            if (stage.mDurationMs != FOREVER) {
+                builder.append('/').append(formatDuration(stage.mDurationMs));
+            }
+            builder.append('@').append(stage.mVolume);
+        }
+        if (mInitialDelayMs != 0L) {
+            builder.append(";delay=").append(formatDuration(mInitialDelayMs));
+        }
+        if (mSnoozeMs != 0L) {
+            builder.append(";snooze=").append(formatDuration(mSnoozeMs));
+        }
+        return builder.toString();
+    }
+
+    private static long parseDuration(final String value) {
+        final String duration = value.trim().toLowerCase(Locale.ROOT);
+        final long unitMs;
+        final int length;
+        if (duration.endsWith("ms")) {
+            unitMs = 1L;
+            length = duration.length() - 2;
+        } else if (duration.endsWith("s")) {
+            unitMs = 1_000L;
+            length = duration.length() - 1;
+        } else if (duration.endsWith("m")) {
+            unitMs = 60_000L;
+            length = duration.length() - 1;
+        } else if (duration.endsWith("h")) {
+            unitMs = 3_600_000L;
+            length = duration.length() - 1;
+        } else {
+            unitMs = 1L;
+            length = duration.length();
+        }
+        try {
+            return Math.multiplyExact(Long.parseLong(duration.substring(0, length)), unitMs);
+        } catch (NumberFormatException | ArithmeticException e) {
+            throw new IllegalArgumentException("invalid escalation duration: " + value, e);
+        }
+    }
+
+    private static String formatDuration(final long durationMs) {
+        if (durationMs % 3_600_000L == 0L) {
+            return durationMs / 3_600_000L + "h";
+        } else if (durationMs % 60_000L == 0L) {
+            return durationMs / 60_000L + "m";
+        } else if (durationMs % 1_000L == 0L) {
+            return durationMs / 1_000L + "s";
+        }
+        return durationMs + "ms";
+    }
+
+    public static final class Stage {
+        private final long mIntervalMs;
+
+        private final long mDurationMs;
+
+        private final float mVolume;
+
+        private Stage(final long intervalMs, final long durationMs, final float volume) {
+            mIntervalMs = intervalMs;
+            mDurationMs = durationMs;
+            mVolume = volume;
+        }
+
+        public long getIntervalMs() {
+            return mIntervalMs;
+        }
+
+        public long getDurationMs() {
+            return mDurationMs;
+        }
+
+        public float getVolume() {
+            return mVolume;
+        }
+    }
+
+    public static final class Builder {
+        private long mInitialDelayMs;
+
+        private long mSnoozeMs;
+
+        private final List<Stage> mStages = new ArrayList<>();
+
+        public Builder setInitialDelayMs(final long initialDelayMs) {
+            if (initialDelayMs < 0L) {
+                throw new IllegalArgumentException("initial delay must not be negative");
+            }
+            mInitialDelayMs = initialDelayMs;
+            return this;
+        }
+
+        public Builder setSnoozeMs(final long snoozeMs) {
+            if (snoozeMs < 0L) {
+                throw new IllegalArgumentException("snooze must not be negative");
+            }
+            mSnoozeMs = snoozeMs;
+            return this;
+        }
+
+        /**
+         * Appends a stage repeating the alert every {@code intervalMs} for {@code durationMs}, or {@link #FOREVER}.
+         */
+        public Builder addStage(final long intervalMs, final long durationMs, final float volume) {
+            if (intervalMs <= 0L || durationMs <= 0L || !(volume >= 0.0f && volume <= 1.0f)) {
+                throw new IllegalArgumentException("invalid escalation stage");
+            }
+            if (!mStages.isEmpty() && mStages.get(mStages.size() - 1).mDurationMs == FOREVER) {
+                throw new IllegalStateException("a stage lasting forever must be the last one");
+            }
+            mStages.add(new Stage(intervalMs, durationMs, volume));
+            return this;
+        }
+
+        public EscalationPolicy build() {
+            return new EscalationPolicy(this);
+        }
+    }
+}
@@ -0,0 +1,176 @@
+package com.obby.android.externalstoragemonitor.core.alert;
+
+import com.obby.android.externalstoragemonitor.core.Clock;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Raises repeated alerts for any number of keys, each following its own {@link EscalationPolicy}.
+ *
+ * <p>Pending alerts are timers on a {@link TimerWheel}, and all time comes from the injected {@link Clock}, so the
+ * caller drives the scheduler by calling {@link #advance()} at {@link #getNextDeadline()}. Alerts are raised at the
+ * offsets given by the policy from the start of the escalation rather than from the time the previous alert fired,
+ * so a late wakeup does not shift the rest of the schedule. Not thread-safe.
+ */
+public final class EscalationScheduler {
+    private final Clock mClock;
+
+    private final TimerWheel mWheel;
+
+    private final Listener mListener;
+
+    private final Map<String, Escalation> mEscalations = new HashMap<>();
+
+    public EscalationScheduler(final Clock clock, final TimerWheel wheel, final Listener listener) {
+        mClock = clock;
+        mWheel = wheel;
+        mListener = listener;
+    }
+
+    /**
+     * Starts an escalation for {@code key} unless one is already active. An alert without initial delay is raised
+     * before this method returns.
+     */
+    public void start(final String key, final EscalationPolicy policy) {
+        if (mEscalations.containsKey(key)) {
+            return;
+        }
+
+        final Escalation escalation = new Escalation(key, policy, mClock.now());
+        mEscalations.put(key, escalation);
+        if (policy.getInitialDelayMs() == 0L) {
+            escalation.fire();
+        } else {
+            escalation.schedule(policy.getInitialDelayMs());
+        }
+    }
+
+    public void stop(final String key) {
+        final Escalation escalation = mEscalations.remove(key);
+        if (escalation != null) {
+            escalation.cancel();
+        }
+    }
+
+    /**
+     * Postpones the next alert for {@code key} by the snooze time of its policy.
+     */
+    public void snooze(final String key) {
+        final Escalation escalation = mEscalations.get(key);
+        if (escalation != null) {
+            snooze(key, escalation.mPolicy.getSnoozeMs());
+        }
+    }
+
+    /**
+     * Postpones the next alert for {@code key} to {@code durationMs} from now, or later if it was due later anyway.
+     */
+    public void snooze(final String key, final long durationMs) {
+        final Escalation escalation = mEscalations.get(key);
+        if (escalation == null) {
+            return;
+        }
+
+        final long offset = mClock.now() - escalation.mStartTime + durationMs;
+        if (escalation.mTimer == null || offset > escalation.mNextOffset) {
+            escalation.cancel();
+            escalation.schedule(offset);
+        }
+    }
+
+    public boolean isActive(final String key) {
+        return mEscalations.containsKey(key);
+    }
+
+    /**
+     * Returns the number of alerts raised for {@code key} in the active escalation, or 0.
+     */
+    public int getAlertCount(final String key) {
+        final Escalation escalation = mEscalations.get(key);
+        return escalation == null ? 0 : escalation.mAlertCount;
+    }
+
+    /**
+     * Raises the alerts that are due.
+     */
+    public void advance() {
+        mWheel.advance(mClock.now());
+    }
+
+    /**
+     * Returns the time at which {@link #advance()} should be called next, or {@link TimerWheel#NO_DEADLINE}.
+     */
+    public long getNextDeadline() {
+        return mWheel.getNextDeadline();
+    }
+
+    public void clear() {
+        for (final Escalation escalation : mEscalations.values()) {
+            escalation.cancel();
+        }
+        mEscalations.clear();
+    }
+
+    @FunctionalInterface
+    public interface Listener {
+        /**
+         * @param count  number of the alert in its escalation, starting from 1
+         * @param volume volume from 0 to 1
+         */
+        void onAlert(String key, int count, float volume);
+    }
+
+    private final class Escalation implements Runnable {
+        private final String mKey;
+
+        private final EscalationPolicy mPolicy;
+
+        private final long mStartTime;
+
+        private long mNextOffset;
+
+        private int mAlertCount;
+
+        private TimerWheel.Timer mTimer;
+
+        private Escalation(final String key, final EscalationPolicy policy, final long startTime) {
+            mKey = key;
+            mPolicy = policy;
+            mStartTime = startTime;
+        }
+
+        @Override
+        public void run() {
+            mTimer = null;
+            fire();
+        }
+
+        private void fire() {
+            final long offset = mNextOffset;
+            mAlertCount++;
+            mListener.onAlert(mKey, mAlertCount, mPolicy.getVolumeAt(offset));
+            if (mEscalations.get(mKey) != this || mTimer != null) {
+                // stopped or snoozed by the listener
+                return;
+            }
+
+            final long nextOffset = mPolicy.getNextAlertOffset(offset);
+            if (nextOffset != EscalationPolicy.FOREVER) {
+                schedule(nextOffset);
+            }
+        }
+
+        private void schedule(final long offset) {
+            mNextOffset = offset;
+            mTimer = mWheel.schedule(mClock.now(), mStartTime + offset, this);
+        }
+
+        private void cancel() {
+            if (mTimer != null) {
+                mTimer.cancel();
+                mTimer = null;
+            }
+        }
+    }
+}
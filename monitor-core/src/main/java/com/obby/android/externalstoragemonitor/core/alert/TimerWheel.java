@@ -0,0 +1,234 @@
+package com.obby.android.externalstoragemonitor.core.alert;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Hashed timer wheel.
+ *
+ * <p>Time is divided into ticks of {@code tickMs} and a timer is linked into the bucket of its deadline tick modulo
+ * the wheel size, together with the number of full revolutions left, so scheduling and cancelling are O(1)
+ * regardless of the number of pending timers. {@link #advance(long)} walks the buckets of the elapsed ticks and
+ * fires the timers that are due; timers fire no earlier than their deadline and at most one tick late. Tasks run
+ * inside {@code advance} and may schedule or cancel timers; a timer scheduled for a deadline that has already
+ * passed fires in the next tick.
+ *
+ * <p>The wheel does not own a thread: the caller advances it, typically at {@link #getNextDeadline()}. Times are in
+ * milliseconds on a monotonic clock chosen by the caller. Not thread-safe.
+ */
+public final class TimerWheel {
+    public static final long NO_DEADLINE = Long.MAX_VALUE;
+
+    private static final int BUCKET_NONE = -1;
+
+    private static final int BUCKET_DUE = -2;
+
+    private final long mTickMs;
+
+    private final Timer[] mBuckets;
+
+    private final int mMask;
+
+    private final List<Timer> mDue = new ArrayList<>();
+
+    private long mTick;
+
+    private int mSize;
+
+    private boolean mIsStarted;
+
+    /**
+     * @param wheelSize number of buckets, rounded up to a power of two
+     */
+    public TimerWheel(final long tickMs, final int wheelSize) {
+        if (tickMs <= 0L || wheelSize <= 0 || wheelSize > (1 << 20)) {
+            throw new IllegalArgumentException("invalid timer wheel parameters");
+        }
+
+        mTickMs = tickMs;
+        final int size = Integer.bitCount(wheelSize) == 1 ? wheelSize : Integer.highestOneBit(wheelSize) << 1;
+        mBuckets = new Timer[size];
+        mMask = size - 1;
+    }
+
+    /**
+     * Schedules {@code task} to run once {@link #advance(long)} reaches {@code deadline}.
+     */
+    public Timer schedule(final long now, final long deadline, final Runnable task) {
+        start(now);
+        final Timer timer = new Timer(deadline, task);
+        final long tick = Math.max(ceilDiv(deadline, mTickMs), mTick + 1L);
+        timer.mRounds = (tick - mTick - 1L) >> Integer.numberOfTrailingZeros(mBuckets.length);
+        link(timer, (int) (tick & mMask));
+        mSize++;
+        return timer;
+    }
+
+    /**
+     * Fires every timer whose deadline is at or before {@code now}.
+     *
+     * @return the number of timers fired
+     */
+    public int advance(final long now) {
+        start(now);
+        int fired = 0;
+        final long targetTick = now / mTickMs;
+        while (mTick < targetTick) {
+            mTick++;
+            final int index = (int) (mTick & mMask);
+            Timer timer = mBuckets[index];
+            while (timer != null) {
+                final Timer next = timer.mNext;
+                if (timer.mRounds <= 0L) {
+                    unlink(timer);
+                    timer.mBucket = BUCKET_DUE;
+                    mDue.add(timer);
+                } else {
+                    timer.mRounds--;
+                }
+                timer = next;
+            }
+            for (int i = 0; i < mDue.size(); i++) {
+                final Timer due = mDue.get(i);
+                if (due.mBucket == BUCKET_DUE) {
+                    due.mBucket = BUCKET_NONE;
+                    mSize--;
+                    due.mTask.run();
+                    fired++;
+                }
+            }
+            mDue.clear();
+            if (mSize == 0) {
+                mTick = targetTick;
+            }
+        }
+        return fired;
+    }
+
+    /**
+     * Returns the end of the tick holding the earliest pending timer, or {@link #NO_DEADLINE}. This walks the
+     * buckets from the current tick up to the first bucket holding a timer due in this revolution.
+     */
+    public long getNextDeadline() {
+        if (mSize == 0) {
+            return NO_DEADLINE;
+        }
+
+        long nextTick = Long.MAX_VALUE;
+        for (int offset = 1; offset <= mBuckets.length; offset++) {
+            final long tick = mTick + offset;
+            if (tick >= nextTick) {
+                break;
+            }
+            for (Timer timer = mBuckets[(int) (tick & mMask)]; timer != null; timer = timer.mNext) {
+                nextTick = Math.min(nextTick, tick + timer.mRounds * mBuckets.length);
+            }
+        }
+        return nextTick == Long.MAX_VALUE ? NO_DEADLINE : nextTick * mTickMs;
+    }
+
+    public int size() {
+        return mSize;
+    }
+
+    public long getTickMs() {
+        return mTickMs;
+    }
+
+    public void clear() {
+        for (int i = 0; i < mBuckets.length; i++) {
+            Timer timer = mBuckets[i];
+            while (timer != null) {
+                final Timer next = timer.mNext;
+                timer.mPrevious = null;
+                timer.mNext = null;
+                timer.mBucket = BUCKET_NONE;
+                timer = next;
+            }
+            mBuckets[i] = null;
+        }
+        mSize = 0;
+    }
+
+    private void start(final long now) {
+        if (!mIsStarted) {
+            mIsStarted = true;
+            mTick = now / mTickMs;
+        }
+    }
+
+    private void link(final Timer timer, final int bucket) {
+        timer.mBucket = bucket;
+        timer.mNext = mBuckets[bucket];
+        if (timer.mNext != null) {
+            timer.mNext.mPrevious = timer;
+        }
+        mBuckets[bucket] = timer;
+    }
+
+    private void unlink(final Timer timer) {
+        if (timer.mPrevious != null) {
+            timer.mPrevious.mNext = timer.mNext;
+        } else {
+            mBuckets[timer.mBucket] = timer.mNext;
+        }
+        if (timer.mNext != null) {
+            timer.mNext.mPrevious = timer.mPrevious;
+        }
+        timer.mPrevious = null;
+        timer.mNext = null;
+        timer.mBucket = BUCKET_NONE;
+    }
+
+    private static long ceilDiv(final long x, final long y) {
+        return -Math.floorDiv(-x, y);
+    }
+
+    /**
+     * Handle of a scheduled task.
+     */
+    public final class Timer {
+        private final long mDeadline;
+
+        private final Runnable mTask;
+
+        private long mRounds;
+
+        private int mBucket = BUCKET_NONE;
+
+        private Timer mPrevious;
+
+        private Timer mNext;
+
+        private Timer(final long deadline, final Runnable task) {
+            mDeadline = deadline;
+            mTask = task;
+        }
+
+        public long getDeadline() {
+            return mDeadline;
+        }
+
+        public boolean isPending() {
+            return mBucket != BUCKET_NONE;
+        }
+
+        /**
+         * Cancels the timer in O(1).
+         *
+         * @return whether the timer was still pending
+         */
+        public boolean cancel() {
+            if (mBucket == BUCKET_NONE) {
+                return false;
+            }
+            if (mBucket == BUCKET_DUE) {
+                mBucket = BUCKET_NONE;
+            } else {
+                unlink(this);
+            }
+            mSize--;
+            return true;
+        }
+    }
+}
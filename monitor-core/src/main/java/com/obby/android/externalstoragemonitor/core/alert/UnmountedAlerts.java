@@ -0,0 +1,94 @@
+package com.obby.android.externalstoragemonitor.core.alert;
+
+import com.obby.android.externalstoragemonitor.core.ExternalStorageState;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Function;
+
+/**
+ * Decides which unmounted alerts should escalate, from the per-volume and aggregated state changes.
+ *
+ * <p>A volume that was mounted and no longer is stays alerted under its own id until it is mounted again. A volume
+ * that went absent is also dropped once another external volume mounts, since a replaced card comes back under a
+ * new id. While no volume is alerted and no removable volume is mounted, as when the card is already missing at
+ * start, a single alert is kept under the aggregate key instead. Not thread-safe.
+ */
+public final class UnmountedAlerts {
+    private final String mAggregateKey;
+
+    private final Function<String, EscalationPolicy> mPolicies;
+
+    private final Map<String, EscalationPolicy> mVolumes = new HashMap<>();
+
+    private final Set<String> mAbsentVolumes = new HashSet<>();
+
+    private int mExternalStorageState = ExternalStorageState.UNKNOWN;
+
+    /**
+     * @param aggregateKey the key of the alert raised while no removable volume is mounted
+     * @param policies     looks up the policy of the alert of a volume id or of {@code aggregateKey}
+     */
+    public UnmountedAlerts(final String aggregateKey, final Function<String, EscalationPolicy> policies) {
+        mAggregateKey = aggregateKey;
+        mPolicies = policies;
+    }
+
+    /**
+     * Returns whether the alerts changed.
+     */
+    public boolean onExternalStorageStateChanged(final int state) {
+        final boolean wasAggregateAlerted = isAggregateAlerted();
+        mExternalStorageState = state;
+        return wasAggregateAlerted != isAggregateAlerted();
+    }
+
+    /**
+     * Returns whether the alerts changed.
+     */
+    public boolean onVolumeStateChanged(final String volumeId, final int previousState, final int state) {
+        final boolean wasAggregateAlerted = isAggregateAlerted();
+        boolean isChanged = false;
+        if (state == ExternalStorageState.MOUNTED) {
+            isChanged = mVolumes.remove(volumeId) != null;
+            for (final String absentVolumeId : mAbsentVolumes) {
+                isChanged |= mVolumes.remove(absentVolumeId) != null;
+            }
+            mAbsentVolumes.clear();
+        } else if (previousState == ExternalStorageState.MOUNTED) {
+            mVolumes.put(volumeId, mPolicies.apply(volumeId));
+            isChanged = true;
+        }
+
+        if (state == ExternalStorageState.ABSENT && mVolumes.containsKey(volumeId)) {
+            mAbsentVolumes.add(volumeId);
+        } else {
+            mAbsentVolumes.remove(volumeId);
+        }
+        return isChanged || wasAggregateAlerted != isAggregateAlerted();
+    }
+
+    /**
+     * Returns a copy of the alerts that should escalate, with their policies, by key.
+     */
+    public Map<String, EscalationPolicy> getAlerts() {
+        if (isAggregateAlerted()) {
+            final Map<String, EscalationPolicy> alerts = new HashMap<>();
+            alerts.put(mAggregateKey, mPolicies.apply(mAggregateKey));
+            return alerts;
+        }
+        return new HashMap<>(mVolumes);
+    }
+
+    public void clear() {
+        mVolumes.clear();
+        mAbsentVolumes.clear();
+        mExternalStorageState = ExternalStorageState.UNKNOWN;
+    }
+
+    private boolean isAggregateAlerted() {
+        return mVolumes.isEmpty() && mExternalStorageState == ExternalStorageState.UNMOUNTED;
+    }
+}
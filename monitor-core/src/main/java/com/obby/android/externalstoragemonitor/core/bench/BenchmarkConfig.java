@@ -0,0 +1,149 @@
+package com.obby.android.externalstoragemonitor.core.bench;
+
+import java.util.Arrays;
+
+/**
+ * Parameters of a {@link StorageBenchmark} run.
+ *
+ * <p>Every block size is tested in turn. The queue depth is the number of threads issuing positional I/O on the
+ * same file concurrently, which is how the kernel sees outstanding requests from a synchronous {@code FileChannel};
+ * sequential tests split the file into one contiguous region of whole blocks per thread. Random tests issue
+ * {@link #getRandomOps()} operations in total, and every test stops early after {@link #getMaxTestMs()}.
+ */
+public final class BenchmarkConfig {
+    public static final long MAX_FILE_SIZE = 1L << 30;
+
+    public static final BenchmarkConfig DEFAULT = new Builder().build();
+
+    private final long mFileSize;
+
+    private final int[] mBlockSizes;
+
+    private final int mQueueDepth;
+
+    private final int mRandomOps;
+
+    private final long mMaxTestMs;
+
+    private final boolean mIsMemoryMapped;
+
+    private BenchmarkConfig(final Builder builder) {
+        mFileSize = builder.mFileSize;
+        mBlockSizes = builder.mBlockSizes.clone();
+        mQueueDepth = builder.mQueueDepth;
+        mRandomOps = builder.mRandomOps;
+        mMaxTestMs = builder.mMaxTestMs;
+        mIsMemoryMapped = builder.mIsMemoryMapped;
+    }
+
+    public long getFileSize() {
+        return mFileSize;
+    }
+
+    public int[] getBlockSizes() {
+        return mBlockSizes.clone();
+    }
+
+    public int getQueueDepth() {
+        return mQueueDepth;
+    }
+
+    public int getRandomOps() {
+        return mRandomOps;
+    }
+
+    public long getMaxTestMs() {
+        return mMaxTestMs;
+    }
+
+    /**
+     * Whether the sequential tests are repeated through memory mapped buffers.
+     */
+    public boolean isMemoryMapped() {
+        return mIsMemoryMapped;
+    }
+
+    @Override
+    public String toString() {
+        return "BenchmarkConfig{fileSize=" + mFileSize + ", blockSizes=" + Arrays.toString(mBlockSizes)
+            + ", queueDepth=" + mQueueDepth + ", randomOps=" + mRandomOps + ", maxTestMs=" + mMaxTestMs
+            + ", memoryMapped=" + mIsMemoryMapped + '}';
+    }
+
+    public static final class Builder {
+        private long mFileSize = 64L << 20;
+
+        private int[] mBlockSizes = {4 << 10, 128 << 10, 1 << 20};
+
+        private int mQueueDepth = 1;
+
+        private int mRandomOps = 2048;
+
+        private long mMaxTestMs = 10_000L;
+
+        private boolean mIsMemoryMapped = true;
+
+        /**
+         * Sets the size of the test file, a multiple of every block size, at most {@link #MAX_FILE_SIZE}.
+         */
+        public Builder setFileSize(final long fileSize) {
+            if (fileSize <= 0L || fileSize > MAX_FILE_SIZE) {
+                throw new IllegalArgumentException("file size must be in (0, " + MAX_FILE_SIZE + "]");
+            }
+            mFileSize = fileSize;
+            return this;
+        }
+
+        public Builder setBlockSizes(final int... blockSizes) {
+            if (blockSizes.length == 0) {
+                throw new IllegalArgumentException("at least one block size is required");
+            }
+            for (final int blockSize : blockSizes) {
+                if (blockSize <= 0) {
+                    throw new IllegalArgumentException("block size must be positive");
+                }
+            }
+            mBlockSizes = blockSizes.clone();
+            return this;
+        }
+
+        public Builder setQueueDepth(final int queueDepth) {
+            if (queueDepth <= 0) {
+                throw new IllegalArgumentException("queue depth must be positive");
+            }
+            mQueueDepth = queueDepth;
+            return this;
+        }
+
+        public Builder setRandomOps(final int randomOps) {
+            if (randomOps <= 0) {
+                throw new IllegalArgumentException("random operation count must be positive");
+            }
+            mRandomOps = randomOps;
+            return this;
+        }
+
+        public Builder setMaxTestMs(final long maxTestMs) {
+            if (maxTestMs <= 0L) {
+                throw new IllegalArgumentException("test duration must be positive");
+            }
+            mMaxTestMs = maxTestMs;
+            return this;
+        }
+
+        public Builder setMemoryMapped(final boolean isMemoryMapped) {
+            mIsMemoryMapped = isMemoryMapped;
+            return this;
+        }
+
+        public BenchmarkConfig build() {
+            for (final int blockSize : mBlockSizes) {
+                if (mFileSize % blockSize != 0L || mFileSize / blockSize < mQueueDepth) {
+                    throw new IllegalStateException("file size must be a multiple of block size " + blockSize
+                        + " holding at least one block per thread");
+                }
+            }
+            return new BenchmarkConfig(this);
+        }
+    }
+}
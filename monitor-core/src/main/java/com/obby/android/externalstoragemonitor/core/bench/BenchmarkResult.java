@@ -0,0 +1,177 @@
+package com.obby.android.externalstoragemonitor.core.bench;
+
+import com.obby.android.externalstoragemonitor.core.metrics.LatencyHistogram;
+
+import java.util.Locale;
+
+/**
+ * Outcome of one test of a {@link StorageBenchmark} run: throughput over the whole test and per operation latency
+ * percentiles. Write tests include the final {@code force} in their elapsed time but not in the operation latencies.
+ */
+public final class BenchmarkResult {
+    public static final int SEQUENTIAL_WRITE = 0;
+
+    public static final int SEQUENTIAL_READ = 1;
+
+    public static final int RANDOM_WRITE = 2;
+
+    public static final int RANDOM_READ = 3;
+
+    public static final int MAPPED_WRITE = 4;
+
+    public static final int MAPPED_READ = 5;
+
+    private static final char SEPARATOR = '\t';
+
+    private static final int FIELD_COUNT = 10;
+
+    private final int mTest;
+
+    private final int mBlockSize;
+
+    private final int mQueueDepth;
+
+    private final long mOps;
+
+    private final long mBytes;
+
+    private final long mElapsedNanos;
+
+    private final long mP50Nanos;
+
+    private final long mP99Nanos;
+
+    private final long mP999Nanos;
+
+    private final long mMaxNanos;
+
+    public BenchmarkResult(final int test, final int blockSize, final int queueDepth, final long bytes,
+        final long elapsedNanos, final LatencyHistogram latency) {
+        this(test, blockSize, queueDepth, latency.getCount(), bytes, elapsedNanos, latency.getPercentileNanos(50.0),
+            latency.getPercentileNanos(99.0), latency.getPercentileNanos(99.9), latency.getMaxNanos());
+    }
+
+    private BenchmarkResult(final int test, final int blockSize, final int queueDepth, final long ops,
+        final long bytes, final long elapsedNanos, final long p50Nanos, final long p99Nanos, final long p999Nanos,
+        final long maxNanos) {
+        mTest = test;
+        mBlockSize = blockSize;
+        mQueueDepth = queueDepth;
+        mOps = ops;
+        mBytes = bytes;
+        mElapsedNanos = elapsedNanos;
+        mP50Nanos = p50Nanos;
+        mP99Nanos = p99Nanos;
+        mP999Nanos = p999Nanos;
+        mMaxNanos = maxNanos;
+    }
+
+    public int getTest() {
+        return mTest;
+    }
+
+    public int getBlockSize() {
+        return mBlockSize;
+    }
+
+    public int getQueueDepth() {
+        return mQueueDepth;
+    }
+
+    public long getOps() {
+        return mOps;
+    }
+
+    public long getBytes() {
+        return mBytes;
+    }
+
+    public long getElapsedNanos() {
+        return mElapsedNanos;
+    }
+
+    public long getP50Nanos() {
+        return mP50Nanos;
+    }
+
+    public long getP99Nanos() {
+        return mP99Nanos;
+    }
+
+    public long getP999Nanos() {
+        return mP999Nanos;
+    }
+
+    public long getMaxNanos() {
+        return mMaxNanos;
+    }
+
+    /**
+     * Returns the throughput in decimal megabytes per second, the unit card speed classes are specified in.
+     */
+    public double getMegabytesPerSecond() {
+        return mElapsedNanos <= 0L ? 0.0 : mBytes * 1_000.0 / mElapsedNanos;
+    }
+
+    public double getIops() {
+        return mElapsedNanos <= 0L ? 0.0 : mOps * 1_000_000_000.0 / mElapsedNanos;
+    }
+
+    /**
+     * Encodes the result as a single tab separated line, without a line terminator, that {@link #parse(String)}
+     * reads back.
+     */
+    public String format() {
+        return String.valueOf(mTest) + SEPARATOR + mBlockSize + SEPARATOR + mQueueDepth + SEPARATOR + mOps
+            + SEPARATOR + mBytes + SEPARATOR + mElapsedNanos + SEPARATOR + mP50Nanos + SEPARATOR + mP99Nanos
+            + SEPARATOR + mP999Nanos + SEPARATOR + mMaxNanos;
+    }
+
+    /**
+     * Decodes a line written by {@link #format()}.
+     *
+     * @throws IllegalArgumentException if the line is malformed
+     */
+    public static BenchmarkResult parse(final String line) {
+        final String[] fields = line.split(String.valueOf(SEPARATOR), -1);
+        if (fields.length != FIELD_COUNT) {
+            throw new IllegalArgumentException("Malformed benchmark result: " + line);
+        }
+
+        try {
+            return new BenchmarkResult(Integer.parseInt(fields[0]), Integer.parseInt(fields[1]),
+                Integer.parseInt(fields[2]), Long.parseLong(fields[3]), Long.parseLong(fields[4]),
+                Long.parseLong(fields[5]), Long.parseLong(fields[6]), Long.parseLong(fields[7]),
+                Long.parseLong(fields[8]), Long.parseLong(fields[9]));
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Malformed benchmark result: " + line, e);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return String.format(Locale.ROOT,
+            "%-11s bs=%-7d qd=%-2d %9.2f MB/s %10.1f IOPS  p50=%.3f ms p99=%.3f ms p99.9=%.3f ms max=%.3f ms",
+            toString(mTest), mBlockSize, mQueueDepth, getMegabytesPerSecond(), getIops(), mP50Nanos / 1e6,
+            mP99Nanos / 1e6, mP999Nanos / 1e6, mMaxNanos / 1e6);
+    }
+
+    public static String toString(final int test) {
+        switch (test) {
+            case SEQUENTIAL_WRITE:
+                return "seq_write";
+            case SEQUENTIAL_READ:
+                return "seq_read";
+            case RANDOM_WRITE:
+                return "rand_write";
+            case RANDOM_READ:
+                return "rand_read";
+            case MAPPED_WRITE:
+                return "mmap_write";
+            case MAPPED_READ:
+                return "mmap_read";
+            default:
+                return "unknown(" + test + ")";
+        }
+    }
+}
@@ -0,0 +1,109 @@
+package com.obby.android.externalstoragemonitor.core.bench;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Append-only text file of benchmark results, each stored with the volume it was measured on and the wall clock
+ * time of the run. One line per result: time, volume id and {@link BenchmarkResult#format()}, tab separated.
+ * Malformed lines, such as a line torn by a crash, are skipped when reading. Thread-safe.
+ */
+public final class BenchmarkStore {
+    private static final char SEPARATOR = '\t';
+
+    private final File mFile;
+
+    public BenchmarkStore(final File file) {
+        mFile = file;
+    }
+
+    public File getFile() {
+        return mFile;
+    }
+
+    /**
+     * Appends the results of one run and syncs the file.
+     */
+    public synchronized void append(final String volumeId, final long timeMillis,
+        final List<BenchmarkResult> results) throws IOException {
+        final String id = volumeId.replace(SEPARATOR, ' ').replace('\n', ' ').replace('\r', ' ');
+        try (FileOutputStream output = new FileOutputStream(mFile, true);
+             Writer writer = new OutputStreamWriter(output, StandardCharsets.UTF_8)) {
+            for (final BenchmarkResult result : results) {
+                writer.write(String.valueOf(timeMillis) + SEPARATOR + id + SEPARATOR + result.format() + '\n');
+            }
+            writer.flush();
+            output.getFD().sync();
+        }
+    }
+
+    /**
+     * Returns the stored results in the order they were appended.
+     *
+     * @param volumeId the volume to return the results of, or {@code null} for every volume
+     */
+    public synchronized List<Record> read(final String volumeId) throws IOException {
+        final List<Record> records = new ArrayList<>();
+        try (BufferedReader reader = new BufferedReader(
+            new InputStreamReader(new FileInputStream(mFile), StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                final int first = line.indexOf(SEPARATOR);
+                final int second = first < 0 ? -1 : line.indexOf(SEPARATOR, first + 1);
+                if (second < 0) {
+                    continue;
+                }
+
+                final String id = line.substring(first + 1, second);
+                if (volumeId != null && !volumeId.equals(id)) {
+                    continue;
+                }
+                try {
+                    records.add(new Record(Long.parseLong(line.substring(0, first)), id,
+                        BenchmarkResult.parse(line.substring(second + 1))));
+                } catch (IllegalArgumentException e) {
+                    // torn or foreign line
+                }
+            }
+        } catch (FileNotFoundException e) {
+            // nothing stored yet
+        }
+        return records;
+    }
+
+    public static final class Record {
+        private final long mTimeMillis;
+
+        private final String mVolumeId;
+
+        private final BenchmarkResult mResult;
+
+        private Record(final long timeMillis, final String volumeId, final BenchmarkResult result) {
+            mTimeMillis = timeMillis;
+            mVolumeId = volumeId;
+            mResult = result;
+        }
+
+        public long getTimeMillis() {
+            return mTimeMillis;
+        }
+
+        public String getVolumeId() {
+            return mVolumeId;
+        }
+
+        public BenchmarkResult getResult() {
+            return mResult;
+        }
+    }
+}
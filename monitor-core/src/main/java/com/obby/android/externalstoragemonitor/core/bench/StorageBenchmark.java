@@ -0,0 +1,290 @@
+package com.obby.android.externalstoragemonitor.core.bench;
+
+import com.obby.android.externalstoragemonitor.core.metrics.LatencyHistogram;
+
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Measures sequential and random read and write throughput of the volume holding a directory.
+ *
+ * <p>For each block size the benchmark runs a sequential write, a random write, a sequential read and a random read
+ * on a single file of {@link BenchmarkConfig#getFileSize()} bytes, then optionally a sequential write and read
+ * through memory mapped buffers. I/O uses {@link FileChannel} positional reads and writes with direct buffers,
+ * issued by {@link BenchmarkConfig#getQueueDepth()} threads at once. Written data is random so compressing
+ * controllers do not flatter the result, and every write test ends with a {@code force} that is part of its time.
+ *
+ * <p>Reads are not guaranteed to reach the device: there is no portable way for an app to drop the page cache, so
+ * read figures are an upper bound unless the file is larger than the memory available for caching.
+ *
+ * <p>The engine is plain Java; {@code StorageBenchmarkCli} in the soak source set runs it against a directory on any
+ * host.
+ */
+public final class StorageBenchmark {
+    public static final String FILE_NAME = ".esm-benchmark";
+
+    private final BenchmarkConfig mConfig;
+
+    private volatile boolean mIsCancelled;
+
+    public StorageBenchmark(final BenchmarkConfig config) {
+        mConfig = config;
+    }
+
+    public BenchmarkConfig getConfig() {
+        return mConfig;
+    }
+
+    /**
+     * Aborts the run in progress, or the next one, which then throws {@link InterruptedIOException}. May be called
+     * from any thread.
+     */
+    public void cancel() {
+        mIsCancelled = true;
+    }
+
+    public boolean isCancelled() {
+        return mIsCancelled;
+    }
+
+    /**
+     * Runs every test against {@code directory} and deletes the test file afterwards. Blocks until done.
+     *
+     * @param listener receives each result as soon as its test finishes, on the calling thread
+     */
+    public List<BenchmarkResult> run(final File directory, final Listener listener) throws IOException {
+        final List<BenchmarkResult> results = new ArrayList<>();
+        final File file = new File(directory, FILE_NAME);
+        final ExecutorService executor = Executors.newFixedThreadPool(mConfig.getQueueDepth(), runnable -> {
+            final Thread thread = new Thread(runnable, "benchmark");
+            thread.setDaemon(true);
+            return thread;
+        });
+        try (RandomAccessFile randomAccessFile = new RandomAccessFile(file, "rw");
+             FileChannel channel = randomAccessFile.getChannel()) {
+            randomAccessFile.setLength(mConfig.getFileSize());
+            final List<Integer> tests = new ArrayList<>();
+            tests.add(BenchmarkResult.SEQUENTIAL_WRITE);
+            tests.add(BenchmarkResult.RANDOM_WRITE);
+            tests.add(BenchmarkResult.SEQUENTIAL_READ);
+            tests.add(BenchmarkResult.RANDOM_READ);
+            if (mConfig.isMemoryMapped()) {
+                tests.add(BenchmarkResult.MAPPED_WRITE);
+                tests.add(BenchmarkResult.MAPPED_READ);
+            }
+
+            for (final int blockSize : mConfig.getBlockSizes()) {
+                for (final int test : tests) {
+                    final BenchmarkResult result = runTest(test, blockSize, channel, executor);
+                    results.add(result);
+                    listener.onResult(result);
+                }
+            }
+        } finally {
+            executor.shutdownNow();
+            //noinspection ResultOfMethodCallIgnored
+            file.delete();
+        }
+        return results;
+    }
+
+    private BenchmarkResult runTest(final int test, final int blockSize, final FileChannel channel,
+        final ExecutorService executor) throws IOException {
+        final int queueDepth = mConfig.getQueueDepth();
+        final LatencyHistogram latency = new LatencyHistogram(BenchmarkResult.toString(test));
+        final AtomicLong bytes = new AtomicLong();
+        final long startNanos = System.nanoTime();
+        final long deadlineNanos = startNanos + TimeUnit.MILLISECONDS.toNanos(mConfig.getMaxTestMs());
+
+        final List<Future<?>> futures = new ArrayList<>(queueDepth);
+        for (int i = 0; i < queueDepth; i++) {
+            final Worker worker = new Worker(test, i, blockSize, channel, latency, deadlineNanos);
+            futures.add(executor.submit(() -> {
+                bytes.addAndGet(worker.run());
+                return null;
+            }));
+        }
+        for (final Future<?> future : futures) {
+            await(future);
+        }
+        if (test == BenchmarkResult.SEQUENTIAL_WRITE || test == BenchmarkResult.RANDOM_WRITE) {
+            channel.force(false);
+        }
+        return new BenchmarkResult(test, blockSize, queueDepth, bytes.get(), System.nanoTime() - startNanos,
+            latency);
+    }
+
+    private static void await(final Future<?> future) throws IOException {
+        try {
+            future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            future.cancel(true);
+            throw new InterruptedIOException("Benchmark interrupted");
+        } catch (ExecutionException e) {
+            final Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            } else if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw new IOException(cause);
+        }
+    }
+
+    /**
+     * Issues the operations of one thread of a test.
+     */
+    private final class Worker {
+        private final int mTest;
+
+        private final int mBlockSize;
+
+        private final FileChannel mChannel;
+
+        private final LatencyHistogram mLatency;
+
+        private final long mDeadlineNanos;
+
+        private final long mRegionStart;
+
+        private final long mRegionSize;
+
+        private final SplittableRandom mRandom;
+
+        private final ByteBuffer mBuffer;
+
+        Worker(final int test, final int index, final int blockSize, final FileChannel channel,
+            final LatencyHistogram latency, final long deadlineNanos) {
+            mTest = test;
+            mBlockSize = blockSize;
+            mChannel = channel;
+            mLatency = latency;
+            mDeadlineNanos = deadlineNanos;
+            mRegionSize = mConfig.getFileSize() / blockSize / mConfig.getQueueDepth() * blockSize;
+            mRegionStart = mRegionSize * index;
+            mRandom = new SplittableRandom(((long) blockSize << 32) ^ ((long) test << 16) ^ index);
+            mBuffer = ByteBuffer.allocateDirect(blockSize);
+            while (mBuffer.hasRemaining()) {
+                mBuffer.put((byte) mRandom.nextInt());
+            }
+        }
+
+        /**
+         * Returns the number of bytes transferred.
+         */
+        long run() throws IOException {
+            switch (mTest) {
+                case BenchmarkResult.SEQUENTIAL_WRITE:
+                case BenchmarkResult.SEQUENTIAL_READ:
+                    return runSequential();
+                case BenchmarkResult.RANDOM_WRITE:
+                case BenchmarkResult.RANDOM_READ:
+                    return runRandom();
+                case BenchmarkResult.MAPPED_WRITE:
+                case BenchmarkResult.MAPPED_READ:
+                    return runMapped();
+                default:
+                    throw new IllegalArgumentException("Unknown test " + mTest);
+            }
+        }
+
+        private long runSequential() throws IOException {
+            final boolean isWrite = mTest == BenchmarkResult.SEQUENTIAL_WRITE;
+            long bytes = 0L;
+            for (long position = mRegionStart; position < mRegionStart + mRegionSize; position += mBlockSize) {
+                if (!checkContinue()) {
+                    break;
+                }
+                transfer(position, isWrite);
+                bytes += mBlockSize;
+            }
+            return bytes;
+        }
+
+        private long runRandom() throws IOException {
+            final boolean isWrite = mTest == BenchmarkResult.RANDOM_WRITE;
+            final long blocks = mConfig.getFileSize() / mBlockSize;
+            final int ops = Math.max(mConfig.getRandomOps() / mConfig.getQueueDepth(), 1);
+            long bytes = 0L;
+            for (int i = 0; i < ops; i++) {
+                if (!checkContinue()) {
+                    break;
+                }
+                transfer(mRandom.nextLong(blocks) * mBlockSize, isWrite);
+                bytes += mBlockSize;
+            }
+            return bytes;
+        }
+
+        private long runMapped() throws IOException {
+            final boolean isWrite = mTest == BenchmarkResult.MAPPED_WRITE;
+            final MappedByteBuffer mapped = mChannel.map(
+                isWrite ? FileChannel.MapMode.READ_WRITE : FileChannel.MapMode.READ_ONLY, mRegionStart, mRegionSize);
+            final byte[] block = new byte[mBlockSize];
+            if (isWrite) {
+                mBuffer.clear();
+                mBuffer.get(block);
+            }
+
+            long bytes = 0L;
+            while (mapped.remaining() >= mBlockSize) {
+                if (!checkContinue()) {
+                    break;
+                }
+                final long startNanos = System.nanoTime();
+                if (isWrite) {
+                    mapped.put(block);
+                } else {
+                    mapped.get(block);
+                }
+                mLatency.recordSince(startNanos);
+                bytes += mBlockSize;
+            }
+            if (isWrite) {
+                mapped.force();
+            }
+            return bytes;
+        }
+
+        private void transfer(final long position, final boolean isWrite) throws IOException {
+            final long startNanos = System.nanoTime();
+            mBuffer.clear();
+            while (mBuffer.hasRemaining()) {
+                final long offset = position + mBuffer.position();
+                if (isWrite) {
+                    mChannel.write(mBuffer, offset);
+                } else if (mChannel.read(mBuffer, offset) < 0) {
+                    throw new EOFException("Unexpected end of benchmark file");
+                }
+            }
+            mLatency.recordSince(startNanos);
+        }
+
+        private boolean checkContinue() throws InterruptedIOException {
+            if (mIsCancelled || Thread.currentThread().isInterrupted()) {
+                throw new InterruptedIOException("Benchmark cancelled");
+            }
+            return System.nanoTime() - mDeadlineNanos < 0L;
+        }
+    }
+
+    public interface Listener {
+        void onResult(BenchmarkResult result);
+    }
+}
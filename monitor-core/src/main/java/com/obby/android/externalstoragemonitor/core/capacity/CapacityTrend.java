@@ -0,0 +1,245 @@
+package com.obby.android.externalstoragemonitor.core.capacity;
+
+import java.util.Locale;
+
+/**
+ * Free space history of one volume with a least squares trend and a time-to-full prediction.
+ *
+ * <p>Samples are kept in a ring of primitive arrays holding at most {@code capacity} samples, at least
+ * {@code sampleIntervalMs} apart; {@link #shouldSample(long)} lets the caller skip the measurement altogether when
+ * a sample would be dropped. The regression sums are updated as samples enter and leave the ring, and recomputed
+ * from the ring once per revolution to bound rounding drift, so adding a sample is O(1) amortized.
+ *
+ * <p>The volume is nearly full when the free space is below {@code minFreeBytes}, or when the trend is falling and
+ * predicts it will be full within {@code warningMs}. It stops being nearly full once neither holds with twice the
+ * margin, so a fluctuating prediction does not toggle the state. Times are in milliseconds on a monotonic clock
+ * chosen by the caller. Not thread-safe.
+ */
+public final class CapacityTrend {
+    public static final int DEFAULT_CAPACITY = 256;
+
+    public static final long DEFAULT_SAMPLE_INTERVAL_MS = 60_000L;
+
+    public static final long DEFAULT_WARNING_MS = 24L * 60L * 60_000L;
+
+    public static final long DEFAULT_MIN_FREE_BYTES = 256L * 1024L * 1024L;
+
+    public static final long UNKNOWN = -1L;
+
+    /**
+     * Minimum number of samples, and minimum time they span, before a prediction is made.
+     */
+    private static final int MIN_SAMPLES = 5;
+
+    private static final long MIN_SPAN_MS = 10L * 60_000L;
+
+    private final int mCapacity;
+
+    private final long mSampleIntervalMs;
+
+    private final long mWarningMs;
+
+    private final long mMinFreeBytes;
+
+    private final long[] mTimes;
+
+    private final long[] mFreeBytes;
+
+    private int mHead;
+
+    private int mSize;
+
+    private long mTotalBytes;
+
+    private long mLastSampleTime = Long.MIN_VALUE;
+
+    private long mOrigin;
+
+    private double mSumT;
+
+    private double mSumF;
+
+    private double mSumTT;
+
+    private double mSumTF;
+
+    private int mAddedSinceRecompute;
+
+    private boolean mIsNearlyFull;
+
+    public CapacityTrend() {
+        this(DEFAULT_CAPACITY, DEFAULT_SAMPLE_INTERVAL_MS, DEFAULT_WARNING_MS, DEFAULT_MIN_FREE_BYTES);
+    }
+
+    public CapacityTrend(final int capacity, final long sampleIntervalMs, final long warningMs,
+        final long minFreeBytes) {
+        if (capacity < MIN_SAMPLES || sampleIntervalMs < 0L || warningMs <= 0L || minFreeBytes < 0L) {
+            throw new IllegalArgumentException("invalid capacity trend parameters");
+        }
+
+        mCapacity = capacity;
+        mSampleIntervalMs = sampleIntervalMs;
+        mWarningMs = warningMs;
+        mMinFreeBytes = minFreeBytes;
+        mTimes = new long[capacity];
+        mFreeBytes = new long[capacity];
+    }
+
+    public boolean shouldSample(final long now) {
+        return mSize == 0 || now - mLastSampleTime >= mSampleIntervalMs;
+    }
+
+    /**
+     * Adds a sample if one is due.
+     *
+     * @return whether the nearly full state changed
+     */
+    public boolean onSample(final long now, final long freeBytes, final long totalBytes) {
+        if (!shouldSample(now)) {
+            return false;
+        }
+
+        mLastSampleTime = now;
+        mTotalBytes = totalBytes;
+        if (mSize == 0) {
+            mOrigin = now;
+        }
+
+        if (mSize == mCapacity) {
+            final int tail = (mHead - mSize + mCapacity) % mCapacity;
+            subtract(mTimes[tail], mFreeBytes[tail]);
+            mSize--;
+        }
+        mTimes[mHead] = now;
+        mFreeBytes[mHead] = freeBytes;
+        mHead = (mHead + 1) % mCapacity;
+        mSize++;
+        add(now, freeBytes);
+
+        if (++mAddedSinceRecompute >= mCapacity) {
+            recompute();
+        }
+
+        final boolean isNearlyFull = mIsNearlyFull ? !isClear(freeBytes) : isNearlyFull(freeBytes, 1L);
+        if (isNearlyFull == mIsNearlyFull) {
+            return false;
+        }
+        mIsNearlyFull = isNearlyFull;
+        return true;
+    }
+
+    public boolean isNearlyFull() {
+        return mIsNearlyFull;
+    }
+
+    public int size() {
+        return mSize;
+    }
+
+    public long getTotalBytes() {
+        return mTotalBytes;
+    }
+
+    public long getFreeBytes() {
+        return mSize == 0 ? UNKNOWN : mFreeBytes[(mHead - 1 + mCapacity) % mCapacity];
+    }
+
+    /**
+     * Returns the trend of the free space in bytes per hour, negative while the volume fills, or {@code NaN} if
+     * there are not enough samples yet.
+     */
+    public double getSlopeBytesPerHour() {
+        final double slope = getSlope();
+        return Double.isNaN(slope) ? Double.NaN : slope * 3_600_000.0;
+    }
+
+    /**
+     * Returns the predicted time until the volume is full, in milliseconds from the last sample, or
+     * {@link #UNKNOWN} if there are not enough samples or the free space is not falling.
+     */
+    public long getTimeToFullMs() {
+        final double slope = getSlope();
+        if (Double.isNaN(slope) || slope >= 0.0) {
+            return UNKNOWN;
+        }
+
+        final double n = mSize;
+        final double intercept = (mSumF - slope * mSumT) / n;
+        final double lastT = mLastSampleTime - mOrigin;
+        final double fitted = intercept + slope * lastT;
+        final double timeToFull = Math.max(fitted, 0.0) / -slope;
+        return timeToFull >= Long.MAX_VALUE ? UNKNOWN : (long) timeToFull;
+    }
+
+    public void clear() {
+        mHead = 0;
+        mSize = 0;
+        mLastSampleTime = Long.MIN_VALUE;
+        mIsNearlyFull = false;
+        recompute();
+    }
+
+    @Override
+    public String toString() {
+        return String.format(Locale.ROOT, "free = %d / %d bytes, samples = %d, slope = %.0f bytes/h, "
+                + "time to full = %d ms, nearly full = %b", getFreeBytes(), mTotalBytes, mSize,
+            getSlopeBytesPerHour(), getTimeToFullMs(), mIsNearlyFull);
+    }
+
+    private boolean isNearlyFull(final long freeBytes, final long margin) {
+        if (freeBytes < mMinFreeBytes * margin) {
+            return true;
+        }
+        final long timeToFull = getTimeToFullMs();
+        return timeToFull != UNKNOWN && timeToFull < mWarningMs * margin;
+    }
+
+    private boolean isClear(final long freeBytes) {
+        return !isNearlyFull(freeBytes, 2L);
+    }
+
+    private double getSlope() {
+        if (mSize < MIN_SAMPLES || mLastSampleTime - mTimes[(mHead - mSize + mCapacity) % mCapacity] < MIN_SPAN_MS) {
+            return Double.NaN;
+        }
+
+        final double n = mSize;
+        final double denominator = n * mSumTT - mSumT * mSumT;
+        return denominator == 0.0 ? Double.NaN : (n * mSumTF - mSumT * mSumF) / denominator;
+    }
+
+    private void add(final long time, final long freeBytes) {
+        final double t = time - mOrigin;
+        final double f = freeBytes;
+        mSumT += t;
+        mSumF += f;
+        mSumTT += t * t;
+        mSumTF += t * f;
+    }
+
+    private void subtract(final long time, final long freeBytes) {
+        final double t = time - mOrigin;
+        final double f = freeBytes;
+        mSumT -= t;
+        mSumF -= f;
+        mSumTT -= t * t;
+        mSumTF -= t * f;
+    }
+
+    private void recompute() {
+        mAddedSinceRecompute = 0;
+        mSumT = 0.0;
+        mSumF = 0.0;
+        mSumTT = 0.0;
+        mSumTF = 0.0;
+        if (mSize == 0) {
+            return;
+        }
+
+        mOrigin = mTimes[(mHead - mSize + mCapacity) % mCapacity];
+        for (int i = 0; i < mSize; i++) {
+            final int index = (mHead - mSize + i + mCapacity) % mCapacity;
+            add(mTimes[index], mFreeBytes[index]);
+        }
+    }
+}
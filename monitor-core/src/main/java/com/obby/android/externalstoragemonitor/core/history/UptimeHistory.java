@@ -0,0 +1,92 @@
+package com.obby.android.externalstoragemonitor.core.history;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Per-volume uptime history built incrementally from state transitions.
+ *
+ * <p>Aggregates are kept at minute, hour and day resolution. A query uses the finest resolution that still covers
+ * the start of the range, so its cost depends on the number of buckets of that resolution and never on the number
+ * of transitions: the sums are the difference of two bucket snapshots and only the longest outage needs a pass over
+ * the bucket maxima. Time during which the monitor was stopped ({@code TransitionTrigger.STOP}) is not counted.
+ * At most {@code maxVolumes} volumes are kept; the one updated least recently is dropped first. Not thread-safe.
+ */
+public final class UptimeHistory {
+    public static final long MINUTE_MS = 60_000L;
+
+    public static final long HOUR_MS = 60L * MINUTE_MS;
+
+    public static final long DAY_MS = 24L * HOUR_MS;
+
+    public static final int DEFAULT_MAX_VOLUMES = 64;
+
+    private static final long[] RESOLUTIONS_MS = {MINUTE_MS, HOUR_MS, DAY_MS};
+
+    private static final int[] BUCKET_COUNTS = {3 * 60, 62 * 24, 400};
+
+    private final int mMaxVolumes;
+
+    private final Map<String, VolumeHistory> mVolumes = new LinkedHashMap<>();
+
+    public UptimeHistory() {
+        this(DEFAULT_MAX_VOLUMES);
+    }
+
+    public UptimeHistory(final int maxVolumes) {
+        mMaxVolumes = maxVolumes;
+    }
+
+    public void onTransition(final long timestamp, final String volumeId, final int state, final int trigger) {
+        VolumeHistory volume = mVolumes.get(volumeId);
+        if (volume == null) {
+            volume = new VolumeHistory(RESOLUTIONS_MS, BUCKET_COUNTS);
+            mVolumes.put(volumeId, volume);
+        }
+        volume.onTransition(timestamp, state, trigger);
+        evict();
+    }
+
+    /**
+     * Computes the statistics of a volume over {@code [fromTime, toTime)}.
+     *
+     * @return {@code false} if the volume has no history
+     */
+    public boolean query(final String volumeId, final long fromTime, final long toTime, final long now,
+        final UptimeStats stats) {
+        final VolumeHistory volume = mVolumes.get(volumeId);
+        if (volume == null) {
+            return false;
+        }
+
+        volume.query(fromTime, toTime, now, stats);
+        return true;
+    }
+
+    public List<String> getVolumeIds() {
+        return new ArrayList<>(mVolumes.keySet());
+    }
+
+    public void clear() {
+        mVolumes.clear();
+    }
+
+    private void evict() {
+        if (mVolumes.size() <= mMaxVolumes) {
+            return;
+        }
+
+        String oldestVolumeId = null;
+        long oldestTime = Long.MAX_VALUE;
+        for (final Map.Entry<String, VolumeHistory> entry : mVolumes.entrySet()) {
+            if (entry.getValue().getLastUpdateTime() < oldestTime) {
+                oldestTime = entry.getValue().getLastUpdateTime();
+                oldestVolumeId = entry.getKey();
+            }
+        }
+
+        mVolumes.remove(oldestVolumeId);
+    }
+}
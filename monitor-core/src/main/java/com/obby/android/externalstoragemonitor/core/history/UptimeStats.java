@@ -0,0 +1,85 @@
+package com.obby.android.externalstoragemonitor.core.history;
+
+import java.util.Locale;
+
+/**
+ * Uptime statistics of one volume over a time range, filled by {@link UptimeHistory#query}.
+ */
+public final class UptimeStats {
+    long mFromTime;
+
+    long mToTime;
+
+    long mMountedMs;
+
+    long mUnmountedMs;
+
+    long mUnmountCount;
+
+    long mLongestOutageMs;
+
+    void clear(final long fromTime, final long toTime) {
+        mFromTime = fromTime;
+        mToTime = toTime;
+        mMountedMs = 0L;
+        mUnmountedMs = 0L;
+        mUnmountCount = 0L;
+        mLongestOutageMs = 0L;
+    }
+
+    /**
+     * Start of the range actually covered, rounded down to the bucket resolution used for the query.
+     */
+    public long getFromTime() {
+        return mFromTime;
+    }
+
+    public long getToTime() {
+        return mToTime;
+    }
+
+    public long getMountedMs() {
+        return mMountedMs;
+    }
+
+    public long getUnmountedMs() {
+        return mUnmountedMs;
+    }
+
+    /**
+     * Time during which the volume was observed by a running monitor.
+     */
+    public long getObservedMs() {
+        return mMountedMs + mUnmountedMs;
+    }
+
+    /**
+     * Share of the observed time the volume was mounted, in {@code [0, 1]}, or {@code NaN} if it was not observed.
+     */
+    public double getUptimeRatio() {
+        final long observedMs = getObservedMs();
+        return observedMs == 0L ? Double.NaN : (double) mMountedMs / observedMs;
+    }
+
+    public long getUnmountCount() {
+        return mUnmountCount;
+    }
+
+    /**
+     * Mean mounted time between two unmounts, or the whole mounted time if it was never unmounted.
+     */
+    public long getMeanTimeBetweenFailuresMs() {
+        return mUnmountCount == 0L ? mMountedMs : mMountedMs / mUnmountCount;
+    }
+
+    public long getLongestOutageMs() {
+        return mLongestOutageMs;
+    }
+
+    @Override
+    public String toString() {
+        return String.format(Locale.ROOT, "[%d, %d): uptime = %.2f%%, unmounts = %d, mtbf = %d ms, "
+                + "longest outage = %d ms", mFromTime, mToTime, getUptimeRatio() * 100.0, mUnmountCount,
+            getMeanTimeBetweenFailuresMs(), mLongestOutageMs);
+    }
+}
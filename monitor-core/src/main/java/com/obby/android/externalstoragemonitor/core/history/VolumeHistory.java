@@ -0,0 +1,229 @@
+package com.obby.android.externalstoragemonitor.core.history;
+
+import com.obby.android.externalstoragemonitor.core.ExternalStorageState;
+import com.obby.android.externalstoragemonitor.core.TransitionTrigger;
+
+/**
+ * Uptime aggregates of a single volume.
+ *
+ * <p>Running totals (mounted time, unmounted time, unmount count) are updated at every transition. Each resolution
+ * keeps a ring of the totals as they were at the start of every bucket, so the totals over any range are the
+ * difference of two snapshots. Each bucket also keeps the longest outage that ended in it.
+ */
+final class VolumeHistory {
+    private static final int STATUS_UNOBSERVED = 0;
+
+    private static final int STATUS_MOUNTED = 1;
+
+    private static final int STATUS_UNMOUNTED = 2;
+
+    private int mStatus = STATUS_UNOBSERVED;
+
+    private long mSince = Long.MIN_VALUE;
+
+    private long mMountedMs;
+
+    private long mUnmountedMs;
+
+    private long mUnmountCount;
+
+    private long mOutageStartTime;
+
+    private final Series[] mSeries;
+
+    VolumeHistory(final long[] resolutionsMs, final int[] bucketCounts) {
+        mSeries = new Series[resolutionsMs.length];
+        for (int i = 0; i < mSeries.length; i++) {
+            mSeries[i] = new Series(resolutionsMs[i], bucketCounts[i]);
+        }
+    }
+
+    long getLastUpdateTime() {
+        return mSince;
+    }
+
+    void onTransition(final long timestamp, final int state, final int trigger) {
+        final long time = Math.max(timestamp, mSince);
+        roll(time);
+        accrue(time);
+
+        final int status;
+        if (trigger == TransitionTrigger.STOP) {
+            status = STATUS_UNOBSERVED;
+        } else if (state == ExternalStorageState.MOUNTED) {
+            status = STATUS_MOUNTED;
+        } else if (state == ExternalStorageState.UNKNOWN && mStatus != STATUS_UNOBSERVED) {
+            status = mStatus;
+        } else {
+            status = STATUS_UNMOUNTED;
+        }
+
+        if (status == mStatus) {
+            return;
+        }
+
+        if (mStatus == STATUS_UNMOUNTED) {
+            final long outageMs = time - mOutageStartTime;
+            for (final Series series : mSeries) {
+                series.recordOutage(time, outageMs);
+            }
+        }
+
+        if (status == STATUS_UNMOUNTED) {
+            mOutageStartTime = time;
+            if (mStatus == STATUS_MOUNTED) {
+                mUnmountCount++;
+            }
+        }
+
+        mStatus = status;
+    }
+
+    void query(final long fromTime, final long toTime, final long now, final UptimeStats stats) {
+        final long time = Math.max(now, mSince);
+        roll(time);
+
+        Series series = mSeries[mSeries.length - 1];
+        for (final Series candidate : mSeries) {
+            if (candidate.covers(fromTime)) {
+                series = candidate;
+                break;
+            }
+        }
+        series.query(fromTime, Math.min(toTime, time), time, stats);
+    }
+
+    private void roll(final long time) {
+        for (final Series series : mSeries) {
+            series.roll(time);
+        }
+    }
+
+    private void accrue(final long time) {
+        if (mSince != Long.MIN_VALUE) {
+            if (mStatus == STATUS_MOUNTED) {
+                mMountedMs += time - mSince;
+            } else if (mStatus == STATUS_UNMOUNTED) {
+                mUnmountedMs += time - mSince;
+            }
+        }
+        mSince = time;
+    }
+
+    private long mountedMsAt(final long time) {
+        return mStatus == STATUS_MOUNTED && mSince != Long.MIN_VALUE
+            ? mMountedMs + Math.max(time - mSince, 0L) : mMountedMs;
+    }
+
+    private long unmountedMsAt(final long time) {
+        return mStatus == STATUS_UNMOUNTED && mSince != Long.MIN_VALUE
+            ? mUnmountedMs + Math.max(time - mSince, 0L) : mUnmountedMs;
+    }
+
+    private final class Series {
+        private final long mResolutionMs;
+
+        private final int mBucketCount;
+
+        private final long[] mMountedMs;
+
+        private final long[] mUnmountedMs;
+
+        private final long[] mUnmountCounts;
+
+        private final long[] mLongestOutagesMs;
+
+        private long mFirstBucket = Long.MIN_VALUE;
+
+        private long mNewestBucket = Long.MIN_VALUE;
+
+        private Series(final long resolutionMs, final int bucketCount) {
+            mResolutionMs = resolutionMs;
+            mBucketCount = bucketCount;
+            mMountedMs = new long[bucketCount];
+            mUnmountedMs = new long[bucketCount];
+            mUnmountCounts = new long[bucketCount];
+            mLongestOutagesMs = new long[bucketCount];
+        }
+
+        private void roll(final long time) {
+            final long bucket = Math.floorDiv(time, mResolutionMs);
+            if (mNewestBucket == Long.MIN_VALUE) {
+                mFirstBucket = bucket;
+                mNewestBucket = bucket;
+                store(bucket);
+                return;
+            }
+
+            if (bucket <= mNewestBucket) {
+                return;
+            }
+
+            for (long b = Math.max(mNewestBucket + 1L, bucket - mBucketCount + 1L); b <= bucket; b++) {
+                store(b);
+            }
+            mNewestBucket = bucket;
+        }
+
+        private long getOldestBucket() {
+            return Math.max(mFirstBucket, mNewestBucket - mBucketCount + 1L);
+        }
+
+        private boolean covers(final long time) {
+            return mNewestBucket != Long.MIN_VALUE
+                && (mFirstBucket == getOldestBucket() || Math.floorDiv(time, mResolutionMs) >= getOldestBucket());
+        }
+
+        private void recordOutage(final long time, final long outageMs) {
+            final int slot = slot(Math.floorDiv(time, mResolutionMs));
+            mLongestOutagesMs[slot] = Math.max(mLongestOutagesMs[slot], outageMs);
+        }
+
+        private void query(final long fromTime, final long toTime, final long now, final UptimeStats stats) {
+            final long fromBucket = Math.max(Math.floorDiv(fromTime, mResolutionMs), getOldestBucket());
+            final long effectiveFromTime = fromBucket * mResolutionMs;
+            stats.clear(effectiveFromTime, toTime);
+            if (toTime <= effectiveFromTime) {
+                return;
+            }
+
+            final int fromSlot = slot(fromBucket);
+            final long toBucket;
+            if (toTime >= now) {
+                toBucket = mNewestBucket;
+                stats.mMountedMs = mountedMsAt(now) - mMountedMs[fromSlot];
+                stats.mUnmountedMs = unmountedMsAt(now) - mUnmountedMs[fromSlot];
+                stats.mUnmountCount = mUnmountCount - mUnmountCounts[fromSlot];
+            } else {
+                toBucket = Math.floorDiv(toTime, mResolutionMs);
+                final int toSlot = slot(toBucket);
+                stats.mToTime = toBucket * mResolutionMs;
+                stats.mMountedMs = mMountedMs[toSlot] - mMountedMs[fromSlot];
+                stats.mUnmountedMs = mUnmountedMs[toSlot] - mUnmountedMs[fromSlot];
+                stats.mUnmountCount = mUnmountCounts[toSlot] - mUnmountCounts[fromSlot];
+            }
+
+            long longestOutageMs = 0L;
+            for (long b = fromBucket; b <= toBucket; b++) {
+                longestOutageMs = Math.max(longestOutageMs, mLongestOutagesMs[slot(b)]);
+            }
+            if (mStatus == STATUS_UNMOUNTED && toTime >= now) {
+                longestOutageMs = Math.max(longestOutageMs, now - Math.max(mOutageStartTime, effectiveFromTime));
+            }
+            stats.mLongestOutageMs = longestOutageMs;
+        }
+
+        private void store(final long bucket) {
+            final long time = bucket * mResolutionMs;
+            final int slot = slot(bucket);
+            mMountedMs[slot] = mountedMsAt(time);
+            mUnmountedMs[slot] = unmountedMsAt(time);
+            mUnmountCounts[slot] = mUnmountCount;
+            mLongestOutagesMs[slot] = 0L;
+        }
+
+        private int slot(final long bucket) {
+            return (int) Math.floorMod(bucket, (long) mBucketCount);
+        }
+    }
+}
@@ -0,0 +1,137 @@
+package com.obby.android.externalstoragemonitor.core.integrity;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedInputStream;
+import java.util.zip.CheckedOutputStream;
+
+/**
+ * Set of {@link ManifestEntry} keyed by relative path, persisted in a compact binary file.
+ *
+ * <p>Entries are written sorted by path, each path stored as the length of the prefix it shares with the previous
+ * one followed by the rest, so a deep tree costs little more than its file names. The file ends with a CRC32 of its
+ * content and is written to a temporary sibling, synced and renamed over the original. Not thread-safe; concurrent
+ * reads are safe while nobody writes.
+ */
+public final class FileManifest {
+    private static final int MAGIC = 0x45534d4d;
+
+    private static final int VERSION = 1;
+
+    private final SortedMap<String, ManifestEntry> mEntries = new TreeMap<>();
+
+    public int size() {
+        return mEntries.size();
+    }
+
+    public boolean isEmpty() {
+        return mEntries.isEmpty();
+    }
+
+    public ManifestEntry get(final String path) {
+        return mEntries.get(path);
+    }
+
+    public void put(final ManifestEntry entry) {
+        mEntries.put(entry.getPath(), entry);
+    }
+
+    public void remove(final String path) {
+        mEntries.remove(path);
+    }
+
+    public Collection<ManifestEntry> getEntries() {
+        return Collections.unmodifiableCollection(mEntries.values());
+    }
+
+    /**
+     * Reads a manifest. A missing file yields an empty manifest.
+     *
+     * @throws IOException if the file cannot be read or is corrupted
+     */
+    public static FileManifest read(final File file) throws IOException {
+        final FileManifest manifest = new FileManifest();
+        final CRC32 crc = new CRC32();
+        try (BufferedInputStream buffered = new BufferedInputStream(new FileInputStream(file))) {
+            final DataInputStream input = new DataInputStream(new CheckedInputStream(buffered, crc));
+            if (input.readInt() != MAGIC || input.readInt() != VERSION) {
+                throw new IOException("Unknown format");
+            }
+
+            final int count = input.readInt();
+            String previous = "";
+            for (int i = 0; i < count; i++) {
+                final int prefix = input.readUnsignedShort();
+                if (prefix > previous.length()) {
+                    throw new IOException("Invalid path prefix");
+                }
+                final String path = previous.substring(0, prefix) + input.readUTF();
+                manifest.put(new ManifestEntry(path, input.readLong(), input.readLong(), input.readLong(),
+                    input.readLong()));
+                previous = path;
+            }
+
+            // the trailer is read past the checked stream so it is not part of the checksum
+            if (new DataInputStream(buffered).readLong() != crc.getValue()) {
+                throw new IOException("Checksum mismatch");
+            }
+        } catch (FileNotFoundException e) {
+            return manifest;
+        }
+        return manifest;
+    }
+
+    public void write(final File file) throws IOException {
+        final File tempFile = new File(file.getPath() + ".tmp");
+        final CRC32 crc = new CRC32();
+        try (FileOutputStream stream = new FileOutputStream(tempFile)) {
+            final BufferedOutputStream buffered = new BufferedOutputStream(stream);
+            final DataOutputStream output = new DataOutputStream(new CheckedOutputStream(buffered, crc));
+            output.writeInt(MAGIC);
+            output.writeInt(VERSION);
+            output.writeInt(mEntries.size());
+            String previous = "";
+            for (final ManifestEntry entry : mEntries.values()) {
+                final String path = entry.getPath();
+                final int prefix = commonPrefix(previous, path);
+                output.writeShort(prefix);
+                output.writeUTF(path.substring(prefix));
+                output.writeLong(entry.getSize());
+                output.writeLong(entry.getModifiedTime());
+                output.writeLong(entry.getHash());
+                output.writeLong(entry.getSampleHash());
+                previous = path;
+            }
+            output.flush();
+
+            final DataOutputStream trailer = new DataOutputStream(buffered);
+            trailer.writeLong(crc.getValue());
+            trailer.flush();
+            stream.getFD().sync();
+        }
+        if (!tempFile.renameTo(file)) {
+            throw new IOException("Cannot rename " + tempFile + " to " + file);
+        }
+    }
+
+    private static int commonPrefix(final String a, final String b) {
+        final int length = Math.min(Math.min(a.length(), b.length()), 0xffff);
+        int i = 0;
+        while (i < length && a.charAt(i) == b.charAt(i)) {
+            i++;
+        }
+        return i;
+    }
+}
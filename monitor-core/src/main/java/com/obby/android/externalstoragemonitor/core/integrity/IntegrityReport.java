@@ -0,0 +1,104 @@
+package com.obby.android.externalstoragemonitor.core.integrity;
+
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Outcome of an {@link IntegrityScanner} pass over a directory tree.
+ *
+ * <p>Added and modified files are legitimate changes and update the manifest. Corrupted files kept their size and
+ * modification time but not their content; unreadable files could not be hashed, or are directories that could not
+ * be listed, listed with a trailing {@code /}; missing files are gone. All three are mismatches and their manifest
+ * entries are kept, so they are reported again until the file is rewritten or, for missing files, until the user
+ * accepts their removal. At most {@link #MAX_MISMATCHES} mismatching paths are listed.
+ */
+public final class IntegrityReport {
+    public static final int MAX_MISMATCHES = 64;
+
+    long mVerifiedCount;
+
+    long mAddedCount;
+
+    long mModifiedCount;
+
+    long mMissingCount;
+
+    long mCorruptedCount;
+
+    long mUnreadableCount;
+
+    long mBytesHashed;
+
+    long mElapsedNanos;
+
+    final List<String> mMismatches = new ArrayList<>();
+
+    IntegrityReport() {
+    }
+
+    public long getVerifiedCount() {
+        return mVerifiedCount;
+    }
+
+    public long getAddedCount() {
+        return mAddedCount;
+    }
+
+    public long getModifiedCount() {
+        return mModifiedCount;
+    }
+
+    public long getMissingCount() {
+        return mMissingCount;
+    }
+
+    public long getCorruptedCount() {
+        return mCorruptedCount;
+    }
+
+    public long getUnreadableCount() {
+        return mUnreadableCount;
+    }
+
+    public long getBytesHashed() {
+        return mBytesHashed;
+    }
+
+    public long getElapsedNanos() {
+        return mElapsedNanos;
+    }
+
+    public boolean hasMismatches() {
+        return mCorruptedCount > 0L || mUnreadableCount > 0L || mMissingCount > 0L;
+    }
+
+    /**
+     * Returns the paths of corrupted, unreadable and missing files, up to {@link #MAX_MISMATCHES}.
+     */
+    public List<String> getMismatches() {
+        return Collections.unmodifiableList(mMismatches);
+    }
+
+    void addMismatch(final String path) {
+        if (mMismatches.size() < MAX_MISMATCHES) {
+            mMismatches.add(path);
+        }
+    }
+
+    public void dump(final PrintWriter writer, final String prefix) {
+        writer.println(prefix + this);
+        for (final String path : mMismatches) {
+            writer.println(prefix + "  mismatch: " + path);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return String.format(Locale.ROOT, "verified = %d, added = %d, modified = %d, missing = %d, corrupted = %d, "
+                + "unreadable = %d, hashed = %d bytes in %d ms", mVerifiedCount, mAddedCount, mModifiedCount,
+            mMissingCount, mCorruptedCount, mUnreadableCount, mBytesHashed, mElapsedNanos / 1_000_000L);
+    }
+}
@@ -0,0 +1,405 @@
+package com.obby.android.externalstoragemonitor.core.integrity;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Builds and verifies a {@link FileManifest} of a directory tree, walking and hashing on a {@link ForkJoinPool}.
+ *
+ * <p>Each directory is a task that forks one task per subdirectory and per file, so throughput scales with the
+ * parallelism of the pool; the caller picks the pool and thereby how much of the device the scan may use.
+ * Verification is incremental: a file whose size or modification time changed, or that is new, is hashed in full
+ * and its entry replaced. A file whose metadata did not change only has {@code sampleBlocks} blocks read and
+ * compared with the recorded sample hash, which covers the whole file when it is small, so a clean pass over an
+ * unchanged tree reads a bounded amount per file. Symbolic links are not followed.
+ *
+ * <p>A file that is gone is reported as missing, a mismatch, and keeps its manifest entry until a pass is run with
+ * {@code isAcceptingMissing}, since a card that lost files looks just like one whose files were deleted. A directory
+ * that cannot be listed is reported as unreadable, and the entries below it are neither missing nor dropped.
+ */
+public final class IntegrityScanner {
+    public static final int DEFAULT_SAMPLE_BLOCKS = 8;
+
+    public static final int DEFAULT_BLOCK_SIZE = 64 << 10;
+
+    private static final String DIGEST_ALGORITHM = "SHA-256";
+
+    private static final int ADDED = 0;
+
+    private static final int MODIFIED = 1;
+
+    private static final int VERIFIED = 2;
+
+    private static final int CORRUPTED = 3;
+
+    private static final int UNREADABLE = 4;
+
+    /**
+     * A directory that could not be listed.
+     */
+    private static final int UNLISTED = 5;
+
+    private final ForkJoinPool mPool;
+
+    private final int mSampleBlocks;
+
+    private final int mBlockSize;
+
+    private final ThreadLocal<Hasher> mHashers;
+
+    private volatile boolean mIsCancelled;
+
+    public IntegrityScanner(final ForkJoinPool pool) {
+        this(pool, DEFAULT_SAMPLE_BLOCKS, DEFAULT_BLOCK_SIZE);
+    }
+
+    public IntegrityScanner(final ForkJoinPool pool, final int sampleBlocks, final int blockSize) {
+        if (sampleBlocks < 2 || blockSize <= 0) {
+            throw new IllegalArgumentException("invalid sampling parameters");
+        }
+
+        mPool = pool;
+        mSampleBlocks = sampleBlocks;
+        mBlockSize = blockSize;
+        mHashers = ThreadLocal.withInitial(() -> new Hasher(blockSize));
+    }
+
+    /**
+     * Aborts the pass in progress, or the next one, which then throws {@link InterruptedIOException} and leaves the
+     * manifest untouched. May be called from any thread.
+     */
+    public void cancel() {
+        mIsCancelled = true;
+    }
+
+    /**
+     * Verifies {@code root} against {@code manifest} and updates the manifest with the legitimate changes. An empty
+     * manifest reports every file as added, which is how a manifest is built. Blocks until done.
+     *
+     * @throws IOException if {@code root} is not a readable directory
+     */
+    public IntegrityReport verify(final File root, final FileManifest manifest) throws IOException {
+        return verify(root, manifest, false);
+    }
+
+    /**
+     * Like {@link #verify(File, FileManifest)}, but with {@code isAcceptingMissing} the entries of missing files are
+     * removed from the manifest, once the user has confirmed that they were deleted on purpose.
+     */
+    public IntegrityReport verify(final File root, final FileManifest manifest, final boolean isAcceptingMissing)
+        throws IOException {
+        if (!root.isDirectory()) {
+            throw new IOException("Not a directory: " + root);
+        }
+
+        final long startNanos = System.nanoTime();
+        final Queue<Outcome> outcomes = new ConcurrentLinkedQueue<>();
+        mPool.invoke(new DirectoryTask(root, "", manifest, outcomes));
+        if (mIsCancelled) {
+            throw new InterruptedIOException("Integrity scan cancelled");
+        }
+
+        final IntegrityReport report = new IntegrityReport();
+        final Set<String> seen = new HashSet<>();
+        final List<String> unlistedDirectories = new ArrayList<>();
+        for (final Outcome outcome : outcomes) {
+            if (outcome.mResult == UNLISTED) {
+                unlistedDirectories.add(outcome.mPath.isEmpty() ? "" : outcome.mPath + '/');
+                report.mUnreadableCount++;
+                report.addMismatch(outcome.mPath.isEmpty() ? "." : outcome.mPath + '/');
+                continue;
+            }
+
+            seen.add(outcome.mPath);
+            report.mBytesHashed += outcome.mBytesHashed;
+            switch (outcome.mResult) {
+                case ADDED:
+                    report.mAddedCount++;
+                    manifest.put(outcome.mEntry);
+                    break;
+                case MODIFIED:
+                    report.mModifiedCount++;
+                    manifest.put(outcome.mEntry);
+                    break;
+                case VERIFIED:
+                    report.mVerifiedCount++;
+                    break;
+                case CORRUPTED:
+                    report.mCorruptedCount++;
+                    report.addMismatch(outcome.mPath);
+                    break;
+                default:
+                    report.mUnreadableCount++;
+                    report.addMismatch(outcome.mPath);
+                    break;
+            }
+        }
+
+        final List<String> missing = new ArrayList<>();
+        for (final ManifestEntry entry : manifest.getEntries()) {
+            if (!seen.contains(entry.getPath()) && !isBelowAny(entry.getPath(), unlistedDirectories)) {
+                missing.add(entry.getPath());
+            }
+        }
+        for (final String path : missing) {
+            if (isAcceptingMissing) {
+                manifest.remove(path);
+            } else {
+                report.addMismatch(path);
+            }
+        }
+        report.mMissingCount = isAcceptingMissing ? 0L : missing.size();
+        report.mElapsedNanos = System.nanoTime() - startNanos;
+        return report;
+    }
+
+    private Outcome check(final File file, final String path, final ManifestEntry entry) {
+        final long size = file.length();
+        final long modifiedTime = file.lastModified();
+        final Hasher hasher = mHashers.get();
+        try {
+            if (entry == null || entry.getSize() != size || entry.getModifiedTime() != modifiedTime) {
+                final long hash = hasher.hashAll(file);
+                final long sampleHash = hasher.hashSamples(file, size);
+                return new Outcome(path, entry == null ? ADDED : MODIFIED,
+                    new ManifestEntry(path, size, modifiedTime, hash, sampleHash), hasher.takeBytesHashed());
+            }
+
+            final long sampleHash = hasher.hashSamples(file, size);
+            return new Outcome(path, sampleHash == entry.getSampleHash() ? VERIFIED : CORRUPTED, null,
+                hasher.takeBytesHashed());
+        } catch (IOException e) {
+            return new Outcome(path, UNREADABLE, null, hasher.takeBytesHashed());
+        }
+    }
+
+    private static boolean isBelowAny(final String path, final List<String> directories) {
+        for (final String directory : directories) {
+            if (path.startsWith(directory)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Returns whether the child {@code name} of the canonical {@code directory} is a symbolic link, or cannot be
+     * resolved.
+     */
+    private static boolean isSymbolicLink(final File directory, final String name) {
+        final File file = new File(directory, name);
+        try {
+            return !file.getCanonicalFile().equals(file);
+        } catch (IOException e) {
+            return true;
+        }
+    }
+
+    private static final class Outcome {
+        final String mPath;
+
+        final int mResult;
+
+        final ManifestEntry mEntry;
+
+        final long mBytesHashed;
+
+        Outcome(final String path, final int result, final ManifestEntry entry, final long bytesHashed) {
+            mPath = path;
+            mResult = result;
+            mEntry = entry;
+            mBytesHashed = bytesHashed;
+        }
+    }
+
+    private final class DirectoryTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final File mDirectory;
+
+        private final String mPath;
+
+        private final FileManifest mManifest;
+
+        private final Queue<Outcome> mOutcomes;
+
+        DirectoryTask(final File directory, final String path, final FileManifest manifest,
+            final Queue<Outcome> outcomes) {
+            mDirectory = directory;
+            mPath = path;
+            mManifest = manifest;
+            mOutcomes = outcomes;
+        }
+
+        @Override
+        protected void compute() {
+            if (mIsCancelled) {
+                return;
+            }
+
+            final File[] children = mDirectory.listFiles();
+            File directory = null;
+            if (children != null) {
+                try {
+                    directory = mDirectory.getCanonicalFile();
+                } catch (IOException e) {
+                    // as good as unlistable, its children cannot be told from symbolic links
+                }
+            }
+            if (directory == null) {
+                mOutcomes.add(new Outcome(mPath, UNLISTED, null, 0L));
+                return;
+            }
+
+            final List<ForkJoinTask<?>> tasks = new ArrayList<>(children.length);
+            for (final File child : children) {
+                if (isSymbolicLink(directory, child.getName())) {
+                    continue;
+                }
+
+                final String path = mPath.isEmpty() ? child.getName() : mPath + '/' + child.getName();
+                if (child.isDirectory()) {
+                    tasks.add(new DirectoryTask(child, path, mManifest, mOutcomes));
+                } else if (child.isFile()) {
+                    tasks.add(new FileTask(child, path, mManifest.get(path), mOutcomes));
+                }
+            }
+            invokeAll(tasks);
+        }
+    }
+
+    private final class FileTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final File mFile;
+
+        private final String mPath;
+
+        private final ManifestEntry mEntry;
+
+        private final Queue<Outcome> mOutcomes;
+
+        FileTask(final File file, final String path, final ManifestEntry entry, final Queue<Outcome> outcomes) {
+            mFile = file;
+            mPath = path;
+            mEntry = entry;
+            mOutcomes = outcomes;
+        }
+
+        @Override
+        protected void compute() {
+            if (!mIsCancelled) {
+                mOutcomes.add(check(mFile, mPath, mEntry));
+            }
+        }
+    }
+
+    /**
+     * Per thread digest and read buffer.
+     */
+    private final class Hasher {
+        private final MessageDigest mDigest;
+
+        private final ByteBuffer mBuffer;
+
+        private long mBytesHashed;
+
+        Hasher(final int blockSize) {
+            try {
+                mDigest = MessageDigest.getInstance(DIGEST_ALGORITHM);
+            } catch (NoSuchAlgorithmException e) {
+                throw new IllegalStateException(e);
+            }
+            mBuffer = ByteBuffer.allocateDirect(blockSize);
+        }
+
+        long hashAll(final File file) throws IOException {
+            mDigest.reset();
+            try (FileInputStream input = new FileInputStream(file); FileChannel channel = input.getChannel()) {
+                long position = 0L;
+                while (true) {
+                    if (mIsCancelled) {
+                        throw new InterruptedIOException("Integrity scan cancelled");
+                    }
+                    mBuffer.clear();
+                    final int read = channel.read(mBuffer, position);
+                    if (read < 0) {
+                        break;
+                    }
+                    position += read;
+                    mBytesHashed += read;
+                    mBuffer.flip();
+                    mDigest.update(mBuffer);
+                }
+            }
+            return digest();
+        }
+
+        /**
+         * Hashes the size and {@code mSampleBlocks} blocks spread evenly from the first to the last, or the whole
+         * file if it is not larger than that.
+         */
+        long hashSamples(final File file, final long size) throws IOException {
+            mDigest.reset();
+            mBuffer.clear();
+            mBuffer.putLong(size);
+            mBuffer.flip();
+            mDigest.update(mBuffer);
+            final long sampled = (long) mSampleBlocks * mBlockSize;
+            try (FileInputStream input = new FileInputStream(file); FileChannel channel = input.getChannel()) {
+                if (size <= sampled) {
+                    hashRange(channel, 0L, size);
+                } else {
+                    final long stride = (size - mBlockSize) / (mSampleBlocks - 1);
+                    for (int i = 0; i < mSampleBlocks; i++) {
+                        hashRange(channel, i == mSampleBlocks - 1 ? size - mBlockSize : i * stride, mBlockSize);
+                    }
+                }
+            }
+            return digest();
+        }
+
+        long takeBytesHashed() {
+            final long bytesHashed = mBytesHashed;
+            mBytesHashed = 0L;
+            return bytesHashed;
+        }
+
+        private void hashRange(final FileChannel channel, final long start, final long length) throws IOException {
+            long position = start;
+            final long end = start + length;
+            while (position < end) {
+                mBuffer.clear();
+                mBuffer.limit((int) Math.min(mBuffer.capacity(), end - position));
+                final int read = channel.read(mBuffer, position);
+                if (read < 0) {
+                    // shorter than its recorded size, the sample hash will not match
+                    break;
+                }
+                position += read;
+                mBytesHashed += read;
+                mBuffer.flip();
+                mDigest.update(mBuffer);
+            }
+        }
+
+        private long digest() {
+            return ByteBuffer.wrap(mDigest.digest()).getLong();
+        }
+    }
+}
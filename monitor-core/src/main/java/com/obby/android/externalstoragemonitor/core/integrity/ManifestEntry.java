@@ -0,0 +1,55 @@
+package com.obby.android.externalstoragemonitor.core.integrity;
+
+/**
+ * Recorded state of one file: its metadata, a hash of its whole content and a hash of sampled blocks, see
+ * {@link IntegrityScanner}. Hashes are the first 64 bits of SHA-256 digests.
+ */
+public final class ManifestEntry {
+    private final String mPath;
+
+    private final long mSize;
+
+    private final long mModifiedTime;
+
+    private final long mHash;
+
+    private final long mSampleHash;
+
+    public ManifestEntry(final String path, final long size, final long modifiedTime, final long hash,
+        final long sampleHash) {
+        mPath = path;
+        mSize = size;
+        mModifiedTime = modifiedTime;
+        mHash = hash;
+        mSampleHash = sampleHash;
+    }
+
+    /**
+     * Returns the path relative to the manifest root, with {@code '/'} separators.
+     */
+    public String getPath() {
+        return mPath;
+    }
+
+    public long getSize() {
+        return mSize;
+    }
+
+    public long getModifiedTime() {
+        return mModifiedTime;
+    }
+
+    public long getHash() {
+        return mHash;
+    }
+
+    public long getSampleHash() {
+        return mSampleHash;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%s: size = %d, mtime = %d, hash = %016x, sample = %016x", mPath, mSize, mModifiedTime,
+            mHash, mSampleHash);
+    }
+}
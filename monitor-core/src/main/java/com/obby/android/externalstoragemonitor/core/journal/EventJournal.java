@@ -0,0 +1,541 @@
+package com.obby.android.externalstoragemonitor.core.journal;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.zip.CRC32;
+
+/**
+ * Append-only journal of storage state transitions, stored as fixed-size records in memory-mapped segment files.
+ *
+ * <p>Each record is {@value #RECORD_SIZE} bytes: the sequence number, the wall clock timestamp, the previous and
+ * new state, the trigger, and the volume id (ASCII, truncated to {@value #MAX_VOLUME_ID_LENGTH} bytes), followed by
+ * a CRC32 of the preceding bytes. Appending copies the record into the mapped segment and never syncs, so it costs
+ * a memory copy; the data reaches the disk through the page cache even if the process dies, and
+ * {@link #flush()} forces it for power loss. On open, every segment is scanned and the first record with a bad
+ * checksum or an unexpected sequence number ends the segment, which drops a torn append.
+ *
+ * <p>When the current segment is full a new one is created, and the oldest segments are deleted so that at most
+ * {@code maxSegments} remain, which bounds the journal to {@code maxSegments * segmentRecords} records.
+ * All methods are synchronized; appends and reads are short and never wait on I/O other than a segment roll.
+ *
+ * <p>A journal opened with {@link #openReadOnly(File)} maps the segments read-only and never changes them on disk,
+ * so it can be read while no writer has it open, e.g. by another component of the process; it sees the records as
+ * of its opening.
+ */
+public final class EventJournal implements Closeable {
+    public static final int RECORD_SIZE = 64;
+
+    public static final int MAX_VOLUME_ID_LENGTH = 40;
+
+    /**
+     * Volume id used for transitions of the aggregated external storage state.
+     */
+    public static final String AGGREGATE_VOLUME_ID = "*";
+
+    public static final int DEFAULT_SEGMENT_RECORDS = 4096;
+
+    public static final int DEFAULT_MAX_SEGMENTS = 8;
+
+    private static final String SEGMENT_SUFFIX = ".seg";
+
+    private static final int OFFSET_SEQUENCE = 0;
+
+    private static final int OFFSET_TIMESTAMP = 8;
+
+    private static final int OFFSET_PREVIOUS_STATE = 16;
+
+    private static final int OFFSET_STATE = 17;
+
+    private static final int OFFSET_TRIGGER = 18;
+
+    private static final int OFFSET_VOLUME_ID_LENGTH = 19;
+
+    private static final int OFFSET_VOLUME_ID = 20;
+
+    private static final int OFFSET_CHECKSUM = OFFSET_VOLUME_ID + MAX_VOLUME_ID_LENGTH;
+
+    private long mNextSequence = 1L;
+
+    private boolean mIsClosed;
+
+    private final boolean mIsReadOnly;
+
+    private final File mDirectory;
+
+    private final int mSegmentRecords;
+
+    private final int mMaxSegments;
+
+    private final List<Segment> mSegments = new ArrayList<>();
+
+    private final byte[] mScratch = new byte[RECORD_SIZE];
+
+    private final CRC32 mCrc = new CRC32();
+
+    private EventJournal(final File directory, final int segmentRecords, final int maxSegments,
+        final boolean isReadOnly) {
+        mDirectory = directory;
+        mSegmentRecords = segmentRecords;
+        mMaxSegments = maxSegments;
+        mIsReadOnly = isReadOnly;
+    }
+
+    public static EventJournal open(final File directory) throws IOException {
+        return open(directory, DEFAULT_SEGMENT_RECORDS, DEFAULT_MAX_SEGMENTS);
+    }
+
+    public static EventJournal open(final File directory, final int segmentRecords, final int maxSegments)
+        throws IOException {
+        if (segmentRecords <= 0 || maxSegments <= 0) {
+            throw new IllegalArgumentException("invalid journal size");
+        }
+
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("cannot create journal directory " + directory);
+        }
+
+        final EventJournal journal = new EventJournal(directory, segmentRecords, maxSegments, false);
+        journal.load();
+        return journal;
+    }
+
+    /**
+     * Opens the journal in {@code directory}, which must exist, for reading only. Torn records end a segment as
+     * usual, but nothing is deleted and {@link #append} fails.
+     */
+    public static EventJournal openReadOnly(final File directory) throws IOException {
+        if (!directory.isDirectory()) {
+            throw new IOException("no journal directory " + directory);
+        }
+
+        final EventJournal journal = new EventJournal(directory, DEFAULT_SEGMENT_RECORDS, Integer.MAX_VALUE, true);
+        journal.load();
+        return journal;
+    }
+
+    /**
+     * Moves the journal in {@code source}, which must not be open, to {@code target}, which must not exist.
+     *
+     * <p>The directory is renamed if possible. Otherwise, e.g. between storage areas with different encryption
+     * policies where a rename fails with {@code EXDEV}, every segment is copied and synced into a temporary sibling
+     * of {@code target}, which is then renamed to {@code target}, and only then are the originals deleted, so an
+     * interrupted move leaves the source intact and can be repeated.
+     */
+    public static void move(final File source, final File target) throws IOException {
+        move(source, target, true);
+    }
+
+    static void move(final File source, final File target, final boolean isRenameAllowed) throws IOException {
+        if (target.exists()) {
+            throw new IOException("journal directory " + target + " already exists");
+        }
+        if (isRenameAllowed && source.renameTo(target)) {
+            return;
+        }
+
+        final File[] files = source.listFiles((dir, name) -> name.endsWith(SEGMENT_SUFFIX));
+        if (files == null) {
+            throw new IOException("cannot list journal directory " + source);
+        }
+
+        final File tempDirectory = new File(target.getPath() + ".tmp");
+        deleteDirectory(tempDirectory);
+        if (!tempDirectory.mkdirs()) {
+            throw new IOException("cannot create journal directory " + tempDirectory);
+        }
+        final byte[] buffer = new byte[8192];
+        for (final File file : files) {
+            try (FileInputStream input = new FileInputStream(file);
+                 FileOutputStream output = new FileOutputStream(new File(tempDirectory, file.getName()))) {
+                int count;
+                while ((count = input.read(buffer)) >= 0) {
+                    output.write(buffer, 0, count);
+                }
+                output.getFD().sync();
+            }
+        }
+        if (!tempDirectory.renameTo(target)) {
+            throw new IOException("cannot rename " + tempDirectory + " to " + target);
+        }
+
+        deleteDirectory(source);
+    }
+
+    /**
+     * Appends a transition and returns its sequence number.
+     */
+    public synchronized long append(final long timestamp, final String volumeId, final int previousState,
+        final int state, final int trigger) throws IOException {
+        ensureOpen();
+        if (mIsReadOnly) {
+            throw new IOException("journal opened read-only");
+        }
+
+        Segment segment = mSegments.isEmpty() ? null : mSegments.get(mSegments.size() - 1);
+        if (segment == null || segment.mCount >= segment.mCapacity) {
+            segment = roll();
+        }
+
+        final long sequence = mNextSequence;
+        encode(sequence, timestamp, volumeId, previousState, state, trigger);
+        segment.mBuffer.position(segment.mCount * RECORD_SIZE);
+        segment.mBuffer.put(mScratch);
+        segment.mCount++;
+        mNextSequence++;
+        return sequence;
+    }
+
+    /**
+     * Sequence number of the oldest retained record, or {@code 0} if the journal is empty.
+     */
+    public synchronized long getFirstSequence() {
+        for (final Segment segment : mSegments) {
+            if (segment.mCount > 0) {
+                return segment.mFirstSequence;
+            }
+        }
+        return 0L;
+    }
+
+    /**
+     * Sequence number of the newest record, or {@code 0} if the journal is empty.
+     */
+    public synchronized long getLastSequence() {
+        return getFirstSequence() == 0L ? 0L : mNextSequence - 1L;
+    }
+
+    public synchronized int size() {
+        int size = 0;
+        for (final Segment segment : mSegments) {
+            size += segment.mCount;
+        }
+        return size;
+    }
+
+    /**
+     * Reads the record with the given sequence number.
+     *
+     * @return {@code false} if the record was compacted away or does not exist yet
+     */
+    public synchronized boolean read(final long sequence, final JournalRecord record) {
+        final Segment segment = findSegment(sequence);
+        if (segment == null) {
+            return false;
+        }
+
+        decode(segment, (int) (sequence - segment.mFirstSequence), record);
+        return true;
+    }
+
+    /**
+     * Visits, oldest first, the records whose timestamp lies in {@code [fromTimestamp, toTimestamp)}.
+     *
+     * @return the number of records visited
+     */
+    public synchronized int scan(final long fromTimestamp, final long toTimestamp, final Visitor visitor) {
+        final JournalRecord record = new JournalRecord();
+        int count = 0;
+        for (final Segment segment : mSegments) {
+            for (int i = 0; i < segment.mCount; i++) {
+                final long timestamp = segment.mBuffer.getLong(i * RECORD_SIZE + OFFSET_TIMESTAMP);
+                if (timestamp < fromTimestamp || timestamp >= toTimestamp) {
+                    continue;
+                }
+
+                decode(segment, i, record);
+                count++;
+                if (!visitor.visit(record)) {
+                    return count;
+                }
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Returns, oldest first, the sequence numbers of the records whose timestamp lies in
+     * {@code [fromTimestamp, toTimestamp)}. Only the timestamps are read, so this is an index for reading the records
+     * one by one with {@link #read(long, JournalRecord)} rather than decoding the whole range at once.
+     */
+    public synchronized long[] findSequences(final long fromTimestamp, final long toTimestamp) {
+        return findSequences(fromTimestamp, toTimestamp, Long.MIN_VALUE, Integer.MAX_VALUE);
+    }
+
+    /**
+     * Like {@link #findSequences(long, long)}, but only returns sequence numbers above {@code afterSequence}, and at
+     * most {@code maxCount} of them; segments and records up to {@code afterSequence} are skipped without reading.
+     */
+    public synchronized long[] findSequences(final long fromTimestamp, final long toTimestamp,
+        final long afterSequence, final int maxCount) {
+        long[] sequences = new long[Math.min(Math.max(maxCount, 0), 16)];
+        int count = 0;
+        for (final Segment segment : mSegments) {
+            if (count == maxCount) {
+                break;
+            }
+            if (afterSequence >= segment.mFirstSequence + segment.mCount - 1L) {
+                continue;
+            }
+
+            final int start = afterSequence < segment.mFirstSequence ? 0
+                : (int) (afterSequence - segment.mFirstSequence + 1L);
+            for (int i = start; i < segment.mCount && count < maxCount; i++) {
+                final long timestamp = segment.mBuffer.getLong(i * RECORD_SIZE + OFFSET_TIMESTAMP);
+                if (timestamp < fromTimestamp || timestamp >= toTimestamp) {
+                    continue;
+                }
+
+                if (count == sequences.length) {
+                    sequences = Arrays.copyOf(sequences, count * 2);
+                }
+                sequences[count++] = segment.mFirstSequence + i;
+            }
+        }
+        return Arrays.copyOf(sequences, count);
+    }
+
+    /**
+     * Forces the records of the current segment to the storage device. Should not be called on a latency-sensitive
+     * thread.
+     */
+    public synchronized void flush() {
+        if (!mIsClosed && !mIsReadOnly && !mSegments.isEmpty()) {
+            mSegments.get(mSegments.size() - 1).mBuffer.force();
+        }
+    }
+
+    @Override
+    public synchronized void close() {
+        if (mIsClosed) {
+            return;
+        }
+
+        flush();
+        mSegments.clear();
+        mIsClosed = true;
+    }
+
+    private void load() throws IOException {
+        final File[] files = mDirectory.listFiles((dir, name) -> name.endsWith(SEGMENT_SUFFIX));
+        if (files == null) {
+            throw new IOException("cannot list journal directory " + mDirectory);
+        }
+
+        Arrays.sort(files, (a, b) -> Long.compareUnsigned(parseFirstSequence(a), parseFirstSequence(b)));
+        for (final File file : files) {
+            final long firstSequence = parseFirstSequence(file);
+            if (firstSequence <= 0L) {
+                continue;
+            }
+
+            final Segment segment = map(file, firstSequence, (int) (file.length() / RECORD_SIZE));
+            while (segment.mCount < segment.mCapacity && isValid(segment, segment.mCount)) {
+                segment.mCount++;
+            }
+
+            if (segment.mCount == 0) {
+                if (!mIsReadOnly) {
+                    delete(file);
+                }
+                continue;
+            }
+
+            mSegments.add(segment);
+            mNextSequence = Math.max(mNextSequence, firstSequence + segment.mCount);
+        }
+
+        compact();
+    }
+
+    private Segment roll() throws IOException {
+        final File file = new File(mDirectory, String.format(Locale.ROOT, "%016x%s", mNextSequence, SEGMENT_SUFFIX));
+        final Segment segment = map(file, mNextSequence, mSegmentRecords);
+        for (int i = 0; i < segment.mCapacity; i++) {
+            segment.mBuffer.putLong(i * RECORD_SIZE + OFFSET_SEQUENCE, 0L);
+        }
+        mSegments.add(segment);
+        compact();
+        return segment;
+    }
+
+    private void compact() {
+        while (mSegments.size() > mMaxSegments) {
+            delete(mSegments.remove(0).mFile);
+        }
+    }
+
+    private Segment map(final File file, final long firstSequence, final int capacity) throws IOException {
+        if (mIsReadOnly) {
+            try (RandomAccessFile randomAccessFile = new RandomAccessFile(file, "r")) {
+                final MappedByteBuffer buffer = randomAccessFile.getChannel().map(FileChannel.MapMode.READ_ONLY, 0L,
+                    (long) capacity * RECORD_SIZE);
+                return new Segment(file, firstSequence, capacity, buffer);
+            }
+        }
+
+        try (RandomAccessFile randomAccessFile = new RandomAccessFile(file, "rw")) {
+            final long size = (long) capacity * RECORD_SIZE;
+            if (randomAccessFile.length() != size) {
+                randomAccessFile.setLength(size);
+            }
+            final MappedByteBuffer buffer =
+                randomAccessFile.getChannel().map(FileChannel.MapMode.READ_WRITE, 0L, size);
+            return new Segment(file, firstSequence, capacity, buffer);
+        }
+    }
+
+    private Segment findSegment(final long sequence) {
+        int low = 0;
+        int high = mSegments.size() - 1;
+        while (low <= high) {
+            final int middle = (low + high) >>> 1;
+            final Segment segment = mSegments.get(middle);
+            if (sequence < segment.mFirstSequence) {
+                high = middle - 1;
+            } else if (sequence >= segment.mFirstSequence + segment.mCount) {
+                low = middle + 1;
+            } else {
+                return segment;
+            }
+        }
+        return null;
+    }
+
+    private void encode(final long sequence, final long timestamp, final String volumeId, final int previousState,
+        final int state, final int trigger) {
+        putLong(mScratch, OFFSET_SEQUENCE, sequence);
+        putLong(mScratch, OFFSET_TIMESTAMP, timestamp);
+        mScratch[OFFSET_PREVIOUS_STATE] = (byte) previousState;
+        mScratch[OFFSET_STATE] = (byte) state;
+        mScratch[OFFSET_TRIGGER] = (byte) trigger;
+
+        final int length = Math.min(volumeId.length(), MAX_VOLUME_ID_LENGTH);
+        mScratch[OFFSET_VOLUME_ID_LENGTH] = (byte) length;
+        for (int i = 0; i < MAX_VOLUME_ID_LENGTH; i++) {
+            final char c = i < length ? volumeId.charAt(i) : 0;
+            mScratch[OFFSET_VOLUME_ID + i] = (byte) (c < 0x80 ? c : '?');
+        }
+
+        mCrc.reset();
+        mCrc.update(mScratch, 0, OFFSET_CHECKSUM);
+        putInt(mScratch, OFFSET_CHECKSUM, (int) mCrc.getValue());
+    }
+
+    private boolean isValid(final Segment segment, final int index) {
+        final int offset = index * RECORD_SIZE;
+        if (segment.mBuffer.getLong(offset + OFFSET_SEQUENCE) != segment.mFirstSequence + index) {
+            return false;
+        }
+
+        segment.mBuffer.position(offset);
+        segment.mBuffer.get(mScratch);
+        mCrc.reset();
+        mCrc.update(mScratch, 0, OFFSET_CHECKSUM);
+        return (int) mCrc.getValue() == getInt(mScratch, OFFSET_CHECKSUM);
+    }
+
+    private void decode(final Segment segment, final int index, final JournalRecord record) {
+        final int offset = index * RECORD_SIZE;
+        final MappedByteBuffer buffer = segment.mBuffer;
+        record.mSequence = buffer.getLong(offset + OFFSET_SEQUENCE);
+        record.mTimestamp = buffer.getLong(offset + OFFSET_TIMESTAMP);
+        record.mPreviousState = buffer.get(offset + OFFSET_PREVIOUS_STATE);
+        record.mState = buffer.get(offset + OFFSET_STATE);
+        record.mTrigger = buffer.get(offset + OFFSET_TRIGGER);
+
+        final int length = Math.min(buffer.get(offset + OFFSET_VOLUME_ID_LENGTH) & 0xff, MAX_VOLUME_ID_LENGTH);
+        final byte[] volumeId = new byte[length];
+        for (int i = 0; i < length; i++) {
+            volumeId[i] = buffer.get(offset + OFFSET_VOLUME_ID + i);
+        }
+        record.mVolumeId = new String(volumeId, StandardCharsets.US_ASCII);
+    }
+
+    private void ensureOpen() throws IOException {
+        if (mIsClosed) {
+            throw new IOException("journal closed");
+        }
+    }
+
+    private static long parseFirstSequence(final File file) {
+        final String name = file.getName();
+        try {
+            return Long.parseUnsignedLong(name.substring(0, name.length() - SEGMENT_SUFFIX.length()), 16);
+        } catch (NumberFormatException e) {
+            return 0L;
+        }
+    }
+
+    private static void delete(final File file) {
+        //noinspection ResultOfMethodCallIgnored
+        file.delete();
+    }
+
+    private static void deleteDirectory(final File directory) {
+        final File[] files = directory.listFiles();
+        if (files != null) {
+            for (final File file : files) {
+                delete(file);
+            }
+        }
+        delete(directory);
+    }
+
+    private static void putLong(final byte[] bytes, final int offset, final long value) {
+        for (int i = 0; i < Long.BYTES; i++) {
+            bytes[offset + i] = (byte) (value >>> (56 - 8 * i));
+        }
+    }
+
+    private static void putInt(final byte[] bytes, final int offset, final int value) {
+        for (int i = 0; i < Integer.BYTES; i++) {
+            bytes[offset + i] = (byte) (value >>> (24 - 8 * i));
+        }
+    }
+
+    private static int getInt(final byte[] bytes, final int offset) {
+        int value = 0;
+        for (int i = 0; i < Integer.BYTES; i++) {
+            value = (value << 8) | (bytes[offset + i] & 0xff);
+        }
+        return value;
+    }
+
+    @FunctionalInterface
+    public interface Visitor {
+        /**
+         * @return {@code false} to stop the scan
+         */
+        boolean visit(JournalRecord record);
+    }
+
+    private static final class Segment {
+        private final File mFile;
+
+        private final long mFirstSequence;
+
+        private final int mCapacity;
+
+        private final MappedByteBuffer mBuffer;
+
+        private int mCount;
+
+        private Segment(final File file, final long firstSequence, final int capacity, final MappedByteBuffer buffer) {
+            mFile = file;
+            mFirstSequence = firstSequence;
+            mCapacity = capacity;
+            mBuffer = buffer;
+        }
+    }
+}
@@ -0,0 +1,58 @@
+package com.obby.android.externalstoragemonitor.core.journal;
+
+import com.obby.android.externalstoragemonitor.core.ExternalStorageState;
+import com.obby.android.externalstoragemonitor.core.TransitionTrigger;
+
+import java.util.Locale;
+
+/**
+ * A state transition read back from the {@link EventJournal}. Instances are mutable so a reader can reuse one
+ * holder for a whole range.
+ */
+public final class JournalRecord {
+    long mSequence;
+
+    long mTimestamp;
+
+    int mPreviousState;
+
+    int mState;
+
+    int mTrigger;
+
+    String mVolumeId;
+
+    public long getSequence() {
+        return mSequence;
+    }
+
+    /**
+     * Wall clock time of the transition, in milliseconds since the epoch.
+     */
+    public long getTimestamp() {
+        return mTimestamp;
+    }
+
+    public int getPreviousState() {
+        return mPreviousState;
+    }
+
+    public int getState() {
+        return mState;
+    }
+
+    public int getTrigger() {
+        return mTrigger;
+    }
+
+    public String getVolumeId() {
+        return mVolumeId;
+    }
+
+    @Override
+    public String toString() {
+        return String.format(Locale.ROOT, "#%d @%d %s: %s -> %s (%s)", mSequence, mTimestamp, mVolumeId,
+            ExternalStorageState.toString(mPreviousState), ExternalStorageState.toString(mState),
+            TransitionTrigger.toString(mTrigger));
+    }
+}
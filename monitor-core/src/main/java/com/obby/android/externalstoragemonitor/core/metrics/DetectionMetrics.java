@@ -0,0 +1,89 @@
+package com.obby.android.externalstoragemonitor.core.metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Counters and latency histograms of the detect stage, recorded by the volume monitor. Recording is lock-free and
+ * allocation-free, and the values can be read from any thread.
+ */
+public final class DetectionMetrics {
+    private final LatencyHistogram mScanLatency = new LatencyHistogram("scan");
+
+    private final LatencyHistogram mBroadcastToStateLatency = new LatencyHistogram("broadcast_to_state");
+
+    private final LatencyHistogram mMountToStateLatency = new LatencyHistogram("mount_to_state");
+
+    private final AtomicLong mFirstScanTime = new AtomicLong();
+
+    private final AtomicLong mTickCount = new AtomicLong();
+
+    private final AtomicLong mWakeupCount = new AtomicLong();
+
+    private final AtomicLong mBroadcastCount = new AtomicLong();
+
+    private final AtomicLong mMountChangeCount = new AtomicLong();
+
+    /**
+     * Duration of a volume scan, including the source's own work such as a binder call.
+     */
+    public LatencyHistogram getScanLatency() {
+        return mScanLatency;
+    }
+
+    /**
+     * From the first media broadcast of a burst to the aggregated state change reported to the listener.
+     */
+    public LatencyHistogram getBroadcastToStateLatency() {
+        return mBroadcastToStateLatency;
+    }
+
+    /**
+     * From a storage mount table change to the aggregated state change reported to the listener.
+     */
+    public LatencyHistogram getMountToStateLatency() {
+        return mMountToStateLatency;
+    }
+
+    /**
+     * Clock time of the first scan, or 0.
+     */
+    public AtomicLong getFirstScanTime() {
+        return mFirstScanTime;
+    }
+
+    public AtomicLong getTickCount() {
+        return mTickCount;
+    }
+
+    /**
+     * Scans run by the poll timer rather than by an event.
+     */
+    public AtomicLong getWakeupCount() {
+        return mWakeupCount;
+    }
+
+    public AtomicLong getBroadcastCount() {
+        return mBroadcastCount;
+    }
+
+    public AtomicLong getMountChangeCount() {
+        return mMountChangeCount;
+    }
+
+    public LatencyHistogram[] getHistograms() {
+        return new LatencyHistogram[]{mScanLatency, mBroadcastToStateLatency, mMountToStateLatency};
+    }
+
+    /**
+     * Resets counters and histograms; the first scan time is kept.
+     */
+    public void reset() {
+        for (final LatencyHistogram histogram : getHistograms()) {
+            histogram.reset();
+        }
+        mTickCount.set(0L);
+        mWakeupCount.set(0L);
+        mBroadcastCount.set(0L);
+        mMountChangeCount.set(0L);
+    }
+}
@@ -0,0 +1,142 @@
+package com.obby.android.externalstoragemonitor.core.metrics;
+
+import java.io.PrintWriter;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Fixed-memory, log-linear histogram of latencies in nanoseconds.
+ *
+ * <p>Every power of two is split into {@value #SUB_BUCKETS} linear sub-buckets, so a reported percentile is at most
+ * 1/{@value #SUB_BUCKETS} above the recorded value. {@link #record(long)} is lock-free and does not allocate, so it
+ * can stay enabled on hot paths; reads are not atomic snapshots but every counter is individually consistent.
+ */
+public final class LatencyHistogram {
+    private static final int SUB_BUCKET_BITS = 3;
+
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+
+    private static final int BUCKET_COUNT = (Long.SIZE - SUB_BUCKET_BITS + 1) * SUB_BUCKETS;
+
+    private final String mName;
+
+    private final AtomicLongArray mBuckets = new AtomicLongArray(BUCKET_COUNT);
+
+    private final AtomicLong mCount = new AtomicLong();
+
+    private final AtomicLong mTotal = new AtomicLong();
+
+    private final AtomicLong mMax = new AtomicLong();
+
+    public LatencyHistogram(final String name) {
+        mName = name;
+    }
+
+    public String getName() {
+        return mName;
+    }
+
+    public void record(final long latencyNanos) {
+        final long value = Math.max(latencyNanos, 0L);
+        mBuckets.incrementAndGet(indexOf(value));
+        mCount.incrementAndGet();
+        mTotal.addAndGet(value);
+
+        long max = mMax.get();
+        while (value > max && !mMax.compareAndSet(max, value)) {
+            max = mMax.get();
+        }
+    }
+
+    public void recordSince(final long startNanos) {
+        record(System.nanoTime() - startNanos);
+    }
+
+    public long getCount() {
+        return mCount.get();
+    }
+
+    public long getMaxNanos() {
+        return mMax.get();
+    }
+
+    public long getMeanNanos() {
+        final long count = mCount.get();
+        return count == 0L ? 0L : mTotal.get() / count;
+    }
+
+    /**
+     * Returns the upper bound of the bucket holding the given percentile, in nanoseconds.
+     *
+     * @param percentile in {@code [0, 100]}
+     */
+    public long getPercentileNanos(final double percentile) {
+        long total = 0L;
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            total += mBuckets.get(i);
+        }
+        if (total == 0L) {
+            return 0L;
+        }
+
+        final long rank = Math.max(1L, (long) Math.ceil(total * Math.min(Math.max(percentile, 0.0), 100.0) / 100.0));
+        long seen = 0L;
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            seen += mBuckets.get(i);
+            if (seen >= rank) {
+                return Math.min(upperBoundOf(i), mMax.get());
+            }
+        }
+        return mMax.get();
+    }
+
+    public void reset() {
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            mBuckets.set(i, 0L);
+        }
+        mCount.set(0L);
+        mTotal.set(0L);
+        mMax.set(0L);
+    }
+
+    public void dump(final PrintWriter writer) {
+        writer.println(String.format(Locale.ROOT,
+            "%s: count = %d, mean = %s, p50 = %s, p90 = %s, p99 = %s, max = %s", mName, getCount(),
+            format(getMeanNanos()), format(getPercentileNanos(50.0)), format(getPercentileNanos(90.0)),
+            format(getPercentileNanos(99.0)), format(getMaxNanos())));
+    }
+
+    static int indexOf(final long value) {
+        if (value < SUB_BUCKETS) {
+            return (int) value;
+        }
+
+        final int exponent = Long.SIZE - 1 - Long.numberOfLeadingZeros(value);
+        final int shift = exponent - SUB_BUCKET_BITS;
+        final int subBucket = (int) (value >>> shift) & (SUB_BUCKETS - 1);
+        return (shift + 1) * SUB_BUCKETS + subBucket;
+    }
+
+    static long upperBoundOf(final int index) {
+        if (index < SUB_BUCKETS) {
+            return index;
+        }
+
+        final int shift = index / SUB_BUCKETS - 1;
+        final long subBucket = index % SUB_BUCKETS;
+        final long lowerBound = (SUB_BUCKETS + subBucket) << shift;
+        return lowerBound + (1L << shift) - 1L;
+    }
+
+    private static String format(final long nanos) {
+        if (nanos < TimeUnit.MICROSECONDS.toNanos(10L)) {
+            return nanos + "ns";
+        } else if (nanos < TimeUnit.MILLISECONDS.toNanos(10L)) {
+            return TimeUnit.NANOSECONDS.toMicros(nanos) + "us";
+        } else {
+            return TimeUnit.NANOSECONDS.toMillis(nanos) + "ms";
+        }
+    }
+}
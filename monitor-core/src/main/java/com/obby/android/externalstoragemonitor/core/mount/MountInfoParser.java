@@ -0,0 +1,309 @@
+package com.obby.android.externalstoragemonitor.core.mount;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Cursor over the lines of a {@code /proc/<pid>/mountinfo} file held in a byte array.
+ *
+ * <p>The parser does not copy the input: {@link #next()} only records field offsets into the caller's buffer, and
+ * numeric fields and prefix tests work on the raw bytes, so walking a mount table allocates nothing. Strings are
+ * only created, with the kernel's octal escapes such as {@code \040} decoded, when a getter asks for one. Malformed
+ * lines are skipped. A line looks like:
+ *
+ * <pre>
+ * 36 35 98:0 /mnt1 /mnt/parent rw,noatime master:1 - ext3 /dev/root rw,errors=continue
+ * </pre>
+ *
+ * <p>Not thread-safe; an instance can be reused for any number of buffers.
+ */
+public final class MountInfoParser {
+    private static final int ROOT = 0;
+
+    private static final int MOUNT_POINT = 2;
+
+    private static final int OPTIONS = 4;
+
+    private static final int FS_TYPE = 6;
+
+    private static final int SOURCE = 8;
+
+    private static final int SUPER_OPTIONS = 10;
+
+    private static final long FNV_OFFSET = 0xcbf29ce484222325L;
+
+    private static final long FNV_PRIME = 0x100000001b3L;
+
+    private byte[] mBuffer = new byte[0];
+
+    private int mLength;
+
+    private int mPosition;
+
+    private int mMountId;
+
+    private int mParentId;
+
+    private int mMajor;
+
+    private int mMinor;
+
+    private int mNumber;
+
+    /**
+     * Start and end offsets of the string fields of the current line.
+     */
+    private final int[] mFields = new int[12];
+
+    /**
+     * Starts over on the first {@code length} bytes of {@code buffer}.
+     */
+    public void reset(final byte[] buffer, final int length) {
+        if (length < 0 || length > buffer.length) {
+            throw new IllegalArgumentException("invalid length");
+        }
+
+        mBuffer = buffer;
+        mLength = length;
+        mPosition = 0;
+    }
+
+    /**
+     * Moves to the next well-formed line.
+     *
+     * @return false at the end of the input
+     */
+    public boolean next() {
+        while (mPosition < mLength) {
+            int end = mPosition;
+            while (end < mLength && mBuffer[end] != '\n') {
+                end++;
+            }
+            final int start = mPosition;
+            mPosition = end + 1;
+            if (parseLine(start, end)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    public int getMountId() {
+        return mMountId;
+    }
+
+    public int getParentId() {
+        return mParentId;
+    }
+
+    public int getMajor() {
+        return mMajor;
+    }
+
+    public int getMinor() {
+        return mMinor;
+    }
+
+    public String getRoot() {
+        return decode(ROOT);
+    }
+
+    public String getMountPoint() {
+        return decode(MOUNT_POINT);
+    }
+
+    public String getOptions() {
+        return decode(OPTIONS);
+    }
+
+    public String getFsType() {
+        return decode(FS_TYPE);
+    }
+
+    public String getSource() {
+        return decode(SOURCE);
+    }
+
+    public String getSuperOptions() {
+        return decode(SUPER_OPTIONS);
+    }
+
+    /**
+     * Returns whether the raw, still escaped, mount point starts with {@code prefix}.
+     */
+    public boolean mountPointStartsWith(final byte[] prefix) {
+        final int start = mFields[MOUNT_POINT];
+        if (mFields[MOUNT_POINT + 1] - start < prefix.length) {
+            return false;
+        }
+        for (int i = 0; i < prefix.length; i++) {
+            if (mBuffer[start + i] != prefix[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Returns a hash of the mount ids, device numbers and mount points of the mounts below any of the
+     * {@code prefixes}, from the first line of the input, in order. Two tables with the same fingerprint almost
+     * certainly mount the same things at those places. Moves the cursor to the end of the input.
+     */
+    public long fingerprint(final byte[][] prefixes) {
+        mPosition = 0;
+        long hash = FNV_OFFSET;
+        while (next()) {
+            boolean isMatch = false;
+            for (final byte[] prefix : prefixes) {
+                if (mountPointStartsWith(prefix)) {
+                    isMatch = true;
+                    break;
+                }
+            }
+            if (!isMatch) {
+                continue;
+            }
+
+            hash = (hash ^ mMountId) * FNV_PRIME;
+            hash = (hash ^ mMajor) * FNV_PRIME;
+            hash = (hash ^ mMinor) * FNV_PRIME;
+            for (int i = mFields[MOUNT_POINT]; i < mFields[MOUNT_POINT + 1]; i++) {
+                hash = (hash ^ (mBuffer[i] & 0xff)) * FNV_PRIME;
+            }
+            hash = (hash ^ '\n') * FNV_PRIME;
+        }
+        return hash;
+    }
+
+    private boolean parseLine(final int start, final int end) {
+        // mount id, parent id and major:minor
+        int position = parseNumber(start, end, ' ');
+        if (position < 0) {
+            return false;
+        }
+        mMountId = mNumber;
+        position = parseNumber(position, end, ' ');
+        if (position < 0) {
+            return false;
+        }
+        mParentId = mNumber;
+        position = parseNumber(position, end, ':');
+        if (position < 0) {
+            return false;
+        }
+        mMajor = mNumber;
+        position = parseNumber(position, end, ' ');
+        if (position < 0) {
+            return false;
+        }
+        mMinor = mNumber;
+        // the field scan below expects to start on the separator
+        position--;
+
+        // root, mount point and options
+        for (int field = ROOT; field <= OPTIONS; field += 2) {
+            position = nextField(position, end, field);
+            if (position < 0) {
+                return false;
+            }
+        }
+
+        // optional fields up to the separator
+        while (true) {
+            if (position >= end || mBuffer[position] != ' ') {
+                return false;
+            }
+            final int fieldStart = position + 1;
+            int fieldEnd = fieldStart;
+            while (fieldEnd < end && mBuffer[fieldEnd] != ' ') {
+                fieldEnd++;
+            }
+            position = fieldEnd;
+            if (fieldEnd - fieldStart == 1 && mBuffer[fieldStart] == '-') {
+                break;
+            }
+        }
+
+        // file system type, source and super options
+        for (int field = FS_TYPE; field <= SUPER_OPTIONS; field += 2) {
+            position = nextField(position, end, field);
+            if (position < 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Parses the decimal number at {@code position} into {@link #mNumber} and returns the offset after the
+     * {@code terminator} following it, or -1.
+     */
+    private int parseNumber(final int position, final int end, final char terminator) {
+        int index = position;
+        int number = 0;
+        while (index < end && isDigit(mBuffer[index])) {
+            number = number * 10 + (mBuffer[index++] - '0');
+        }
+        if (index == position || index >= end || mBuffer[index] != terminator) {
+            return -1;
+        }
+        mNumber = number;
+        return index + 1;
+    }
+
+    /**
+     * Records the space separated field at {@code position} and returns the offset after it, or -1.
+     */
+    private int nextField(final int position, final int end, final int field) {
+        if (position >= end || mBuffer[position] != ' ') {
+            return -1;
+        }
+        int fieldEnd = position + 1;
+        while (fieldEnd < end && mBuffer[fieldEnd] != ' ') {
+            fieldEnd++;
+        }
+        mFields[field] = position + 1;
+        mFields[field + 1] = fieldEnd;
+        return fieldEnd;
+    }
+
+    private String decode(final int field) {
+        final int start = mFields[field];
+        final int end = mFields[field + 1];
+        int escapes = 0;
+        for (int i = start; i < end; i++) {
+            if (isEscape(i, end)) {
+                escapes++;
+                i += 3;
+            }
+        }
+        if (escapes == 0) {
+            return new String(mBuffer, start, end - start, StandardCharsets.UTF_8);
+        }
+
+        final byte[] bytes = new byte[end - start - escapes * 3];
+        int length = 0;
+        for (int i = start; i < end; i++) {
+            if (isEscape(i, end)) {
+                bytes[length++] = (byte) (((mBuffer[i + 1] - '0') << 6) | ((mBuffer[i + 2] - '0') << 3)
+                    | (mBuffer[i + 3] - '0'));
+                i += 3;
+            } else {
+                bytes[length++] = mBuffer[i];
+            }
+        }
+        return new String(bytes, 0, length, StandardCharsets.UTF_8);
+    }
+
+    private boolean isEscape(final int index, final int end) {
+        return mBuffer[index] == '\\' && index + 3 < end && isOctal(mBuffer[index + 1])
+            && isOctal(mBuffer[index + 2]) && isOctal(mBuffer[index + 3]);
+    }
+
+    private static boolean isDigit(final byte b) {
+        return b >= '0' && b <= '9';
+    }
+
+    private static boolean isOctal(final byte b) {
+        return b >= '0' && b <= '7';
+    }
+}
@@ -0,0 +1,377 @@
+package com.obby.android.externalstoragemonitor.core.prefs;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+import java.util.zip.CRC32;
+
+/**
+ * Typed key-value store backed by an in-memory map and written behind to a single file.
+ *
+ * <p>Reads and {@link Editor#apply()} only touch the map, so they never wait on the disk. Applying schedules at most
+ * one write on the executor; every edit applied before that write runs is folded into it, so a burst of changes to
+ * any number of keys costs one durable write. The file is written to a temporary sibling, synced and renamed over
+ * the original, so a crash leaves either the old or the new contents. A failed write is reported to the
+ * {@link ErrorListener} and retried by the next apply or {@link #flush()}.
+ *
+ * <p>The file is loaded on the executor after {@link #open(File, Executor)}, or by the first access if that comes
+ * earlier, so opening a store never waits on the disk; an access during the load waits for it.
+ *
+ * <p>Listeners are notified synchronously on the applying thread, from the map, once for each key whose value
+ * changed.
+ */
+public final class PreferenceStore {
+    private static final int MAGIC = 0x45534d50;
+
+    private static final int VERSION = 1;
+
+    private static final byte TYPE_BOOLEAN = 1;
+
+    private static final byte TYPE_INT = 2;
+
+    private static final byte TYPE_LONG = 3;
+
+    private static final byte TYPE_STRING = 4;
+
+    private final File mFile;
+
+    private final File mTempFile;
+
+    private final Executor mExecutor;
+
+    private final Map<String, Object> mValues = new HashMap<>();
+
+    private final List<Listener> mListeners = new CopyOnWriteArrayList<>();
+
+    private final Object mWriteLock = new Object();
+
+    private final Runnable mWriteRunnable = this::write;
+
+    private volatile ErrorListener mErrorListener;
+
+    private boolean mIsLoaded;
+
+    private long mGeneration;
+
+    private long mWrittenGeneration;
+
+    private boolean mIsWriteScheduled;
+
+    private long mWriteCount;
+
+    private PreferenceStore(final File file, final Executor executor) {
+        mFile = file;
+        mTempFile = new File(file.getPath() + ".tmp");
+        mExecutor = executor;
+    }
+
+    /**
+     * Opens the store and schedules loading the file on the executor. A missing or corrupted file yields an empty
+     * store.
+     */
+    public static PreferenceStore open(final File file, final Executor executor) {
+        final PreferenceStore store = new PreferenceStore(file, executor);
+        executor.execute(store::ensureLoaded);
+        return store;
+    }
+
+    public boolean exists() {
+        return mFile.exists();
+    }
+
+    public synchronized boolean contains(final String key) {
+        ensureLoaded();
+        return mValues.containsKey(key);
+    }
+
+    public synchronized boolean getBoolean(final String key, final boolean defaultValue) {
+        ensureLoaded();
+        final Object value = mValues.get(key);
+        return value instanceof Boolean ? (Boolean) value : defaultValue;
+    }
+
+    public synchronized int getInt(final String key, final int defaultValue) {
+        ensureLoaded();
+        final Object value = mValues.get(key);
+        return value instanceof Integer ? (Integer) value : defaultValue;
+    }
+
+    public synchronized long getLong(final String key, final long defaultValue) {
+        ensureLoaded();
+        final Object value = mValues.get(key);
+        return value instanceof Long ? (Long) value : defaultValue;
+    }
+
+    public synchronized String getString(final String key, final String defaultValue) {
+        ensureLoaded();
+        final Object value = mValues.get(key);
+        return value instanceof String ? (String) value : defaultValue;
+    }
+
+    public Editor edit() {
+        return new Editor();
+    }
+
+    public void addListener(final Listener listener) {
+        if (!mListeners.contains(listener)) {
+            mListeners.add(listener);
+        }
+    }
+
+    public void removeListener(final Listener listener) {
+        mListeners.remove(listener);
+    }
+
+    public void setErrorListener(final ErrorListener errorListener) {
+        mErrorListener = errorListener;
+    }
+
+    /**
+     * Writes pending changes on the calling thread and returns once they are durable.
+     */
+    public void flush() throws IOException {
+        synchronized (mWriteLock) {
+            final long generation;
+            final Map<String, Object> values;
+            synchronized (this) {
+                ensureLoaded();
+                if (mWrittenGeneration == mGeneration) {
+                    return;
+                }
+                generation = mGeneration;
+                values = new LinkedHashMap<>(mValues);
+            }
+            writeFile(values);
+            synchronized (this) {
+                mWrittenGeneration = Math.max(mWrittenGeneration, generation);
+            }
+        }
+    }
+
+    public synchronized boolean isDirty() {
+        return mWrittenGeneration != mGeneration;
+    }
+
+    public synchronized long getWriteCount() {
+        return mWriteCount;
+    }
+
+    private void applyChanges(final Map<String, Object> changes) {
+        final List<String> changedKeys = new ArrayList<>(changes.size());
+        final boolean isWriteNeeded;
+        synchronized (this) {
+            ensureLoaded();
+            for (final Map.Entry<String, Object> change : changes.entrySet()) {
+                final Object previous = change.getValue() == null
+                    ? mValues.remove(change.getKey())
+                    : mValues.put(change.getKey(), change.getValue());
+                if (!Objects.equals(previous, change.getValue())) {
+                    changedKeys.add(change.getKey());
+                }
+            }
+            if (!changedKeys.isEmpty()) {
+                mGeneration++;
+            }
+            isWriteNeeded = mWrittenGeneration != mGeneration && !mIsWriteScheduled;
+            if (isWriteNeeded) {
+                mIsWriteScheduled = true;
+            }
+        }
+
+        if (isWriteNeeded) {
+            mExecutor.execute(mWriteRunnable);
+        }
+        for (final String key : changedKeys) {
+            for (final Listener listener : mListeners) {
+                listener.onChanged(this, key);
+            }
+        }
+    }
+
+    private void write() {
+        synchronized (this) {
+            mIsWriteScheduled = false;
+        }
+        try {
+            flush();
+        } catch (IOException e) {
+            // retried by the next apply or flush
+            final ErrorListener errorListener = mErrorListener;
+            if (errorListener != null) {
+                errorListener.onWriteFailed(this, e);
+            }
+        }
+    }
+
+    private void writeFile(final Map<String, Object> values) throws IOException {
+        final byte[] bytes = encode(values);
+        try (FileOutputStream output = new FileOutputStream(mTempFile)) {
+            output.write(bytes);
+            output.getFD().sync();
+        }
+        if (!mTempFile.renameTo(mFile)) {
+            throw new IOException("Cannot rename " + mTempFile + " to " + mFile);
+        }
+        synchronized (this) {
+            mWriteCount++;
+        }
+    }
+
+    private synchronized void ensureLoaded() {
+        if (!mIsLoaded) {
+            mIsLoaded = true;
+            load();
+        }
+    }
+
+    private void load() {
+        final Map<String, Object> values;
+        try (DataInputStream input = new DataInputStream(new FileInputStream(mFile))) {
+            final byte[] bytes = new byte[(int) mFile.length()];
+            input.readFully(bytes);
+            values = decode(bytes);
+        } catch (IOException e) {
+            // missing or corrupted, start empty
+            return;
+        }
+        synchronized (this) {
+            mValues.putAll(values);
+        }
+    }
+
+    private static byte[] encode(final Map<String, Object> values) throws IOException {
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        final DataOutputStream output = new DataOutputStream(bytes);
+        output.writeInt(MAGIC);
+        output.writeInt(VERSION);
+        output.writeInt(values.size());
+        for (final Map.Entry<String, Object> entry : values.entrySet()) {
+            final Object value = entry.getValue();
+            if (value instanceof Boolean) {
+                output.writeByte(TYPE_BOOLEAN);
+                output.writeUTF(entry.getKey());
+                output.writeBoolean((Boolean) value);
+            } else if (value instanceof Integer) {
+                output.writeByte(TYPE_INT);
+                output.writeUTF(entry.getKey());
+                output.writeInt((Integer) value);
+            } else if (value instanceof Long) {
+                output.writeByte(TYPE_LONG);
+                output.writeUTF(entry.getKey());
+                output.writeLong((Long) value);
+            } else {
+                output.writeByte(TYPE_STRING);
+                output.writeUTF(entry.getKey());
+                output.writeUTF((String) value);
+            }
+        }
+        final CRC32 crc = new CRC32();
+        crc.update(bytes.toByteArray());
+        output.writeLong(crc.getValue());
+        output.flush();
+        return bytes.toByteArray();
+    }
+
+    private static Map<String, Object> decode(final byte[] bytes) throws IOException {
+        if (bytes.length < Long.BYTES) {
+            throw new IOException("Truncated file");
+        }
+        final CRC32 crc = new CRC32();
+        crc.update(bytes, 0, bytes.length - Long.BYTES);
+        final DataInputStream input = new DataInputStream(new ByteArrayInputStream(bytes));
+        if (input.readInt() != MAGIC || input.readInt() != VERSION) {
+            throw new IOException("Unknown format");
+        }
+        final int count = input.readInt();
+        final Map<String, Object> values = new HashMap<>();
+        for (int i = 0; i < count; i++) {
+            final byte type = input.readByte();
+            final String key = input.readUTF();
+            switch (type) {
+                case TYPE_BOOLEAN:
+                    values.put(key, input.readBoolean());
+                    break;
+                case TYPE_INT:
+                    values.put(key, input.readInt());
+                    break;
+                case TYPE_LONG:
+                    values.put(key, input.readLong());
+                    break;
+                case TYPE_STRING:
+                    values.put(key, input.readUTF());
+                    break;
+                default:
+                    throw new IOException("Unknown type " + type);
+            }
+        }
+        if (input.readLong() != crc.getValue()) {
+            throw new IOException("Checksum mismatch");
+        }
+        return values;
+    }
+
+    @FunctionalInterface
+    public interface Listener {
+        void onChanged(PreferenceStore store, String key);
+    }
+
+    @FunctionalInterface
+    public interface ErrorListener {
+        /**
+         * Called on the executor when a write behind fails.
+         */
+        void onWriteFailed(PreferenceStore store, IOException e);
+    }
+
+    /**
+     * Collects changes to several keys and applies them to the store at once.
+     */
+    public final class Editor {
+        private final Map<String, Object> mChanges = new LinkedHashMap<>();
+
+        private Editor() {
+        }
+
+        public Editor putBoolean(final String key, final boolean value) {
+            mChanges.put(key, value);
+            return this;
+        }
+
+        public Editor putInt(final String key, final int value) {
+            mChanges.put(key, value);
+            return this;
+        }
+
+        public Editor putLong(final String key, final long value) {
+            mChanges.put(key, value);
+            return this;
+        }
+
+        public Editor putString(final String key, final String value) {
+            mChanges.put(key, value);
+            return this;
+        }
+
+        public Editor remove(final String key) {
+            mChanges.put(key, null);
+            return this;
+        }
+
+        public void apply() {
+            applyChanges(mChanges);
+        }
+    }
+}
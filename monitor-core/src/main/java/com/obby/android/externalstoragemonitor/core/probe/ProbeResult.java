@@ -0,0 +1,54 @@
+package com.obby.android.externalstoragemonitor.core.probe;
+
+/**
+ * Outcome of a {@link VolumeProbe}. Reused between probes.
+ */
+public final class ProbeResult {
+    boolean mIsSuccess;
+
+    String mError;
+
+    long mWriteNanos;
+
+    long mSyncNanos;
+
+    long mReadNanos;
+
+    long mTotalNanos;
+
+    public boolean isSuccess() {
+        return mIsSuccess;
+    }
+
+    /**
+     * Returns the description of the failure, or {@code null} if the probe succeeded.
+     */
+    public String getError() {
+        return mError;
+    }
+
+    public long getWriteNanos() {
+        return mWriteNanos;
+    }
+
+    public long getSyncNanos() {
+        return mSyncNanos;
+    }
+
+    public long getReadNanos() {
+        return mReadNanos;
+    }
+
+    public long getTotalNanos() {
+        return mTotalNanos;
+    }
+
+    void reset() {
+        mIsSuccess = false;
+        mError = null;
+        mWriteNanos = 0L;
+        mSyncNanos = 0L;
+        mReadNanos = 0L;
+        mTotalNanos = 0L;
+    }
+}
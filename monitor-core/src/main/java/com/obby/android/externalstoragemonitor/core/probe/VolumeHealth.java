@@ -0,0 +1,140 @@
+package com.obby.android.externalstoragemonitor.core.probe;
+
+import com.obby.android.externalstoragemonitor.core.metrics.LatencyHistogram;
+
+import java.io.PrintWriter;
+import java.util.Locale;
+
+/**
+ * Tracks the probe results of one volume and decides whether it is degraded.
+ *
+ * <p>A probe is bad if it failed or took longer than {@code slowNanos}. The volume becomes degraded after
+ * {@code degradeAfter} bad probes in a row and recovers after {@code recoverAfter} good probes in a row, so a single
+ * slow probe neither raises nor clears the state. Not thread-safe, except for the histograms.
+ */
+public final class VolumeHealth {
+    public static final long DEFAULT_SLOW_NANOS = 500_000_000L;
+
+    public static final int DEFAULT_DEGRADE_AFTER = 2;
+
+    public static final int DEFAULT_RECOVER_AFTER = 3;
+
+    private final String mVolumeId;
+
+    private final long mSlowNanos;
+
+    private final int mDegradeAfter;
+
+    private final int mRecoverAfter;
+
+    private final LatencyHistogram mWriteLatency;
+
+    private final LatencyHistogram mSyncLatency;
+
+    private final LatencyHistogram mReadLatency;
+
+    private final LatencyHistogram mTotalLatency;
+
+    private boolean mIsDegraded;
+
+    private int mBadCount;
+
+    private int mGoodCount;
+
+    private long mProbeCount;
+
+    private long mFailureCount;
+
+    private String mLastError;
+
+    public VolumeHealth(final String volumeId) {
+        this(volumeId, DEFAULT_SLOW_NANOS, DEFAULT_DEGRADE_AFTER, DEFAULT_RECOVER_AFTER);
+    }
+
+    public VolumeHealth(final String volumeId, final long slowNanos, final int degradeAfter, final int recoverAfter) {
+        if (slowNanos <= 0L || degradeAfter <= 0 || recoverAfter <= 0) {
+            throw new IllegalArgumentException("invalid volume health thresholds");
+        }
+
+        mVolumeId = volumeId;
+        mSlowNanos = slowNanos;
+        mDegradeAfter = degradeAfter;
+        mRecoverAfter = recoverAfter;
+        mWriteLatency = new LatencyHistogram(volumeId + "/write");
+        mSyncLatency = new LatencyHistogram(volumeId + "/sync");
+        mReadLatency = new LatencyHistogram(volumeId + "/read");
+        mTotalLatency = new LatencyHistogram(volumeId + "/total");
+    }
+
+    /**
+     * Accounts for a probe result.
+     *
+     * @return whether the degraded state changed
+     */
+    public boolean onResult(final ProbeResult result) {
+        mProbeCount++;
+        mTotalLatency.record(result.getTotalNanos());
+        final boolean isBad;
+        if (result.isSuccess()) {
+            mWriteLatency.record(result.getWriteNanos());
+            mSyncLatency.record(result.getSyncNanos());
+            mReadLatency.record(result.getReadNanos());
+            isBad = result.getTotalNanos() > mSlowNanos;
+        } else {
+            mFailureCount++;
+            mLastError = result.getError();
+            isBad = true;
+        }
+
+        if (isBad) {
+            mGoodCount = 0;
+            mBadCount++;
+            if (!mIsDegraded && mBadCount >= mDegradeAfter) {
+                mIsDegraded = true;
+                return true;
+            }
+        } else {
+            mBadCount = 0;
+            mGoodCount++;
+            if (mIsDegraded && mGoodCount >= mRecoverAfter) {
+                mIsDegraded = false;
+                return true;
+            }
+        }
+        return false;
+    }
+
+    public String getVolumeId() {
+        return mVolumeId;
+    }
+
+    public boolean isDegraded() {
+        return mIsDegraded;
+    }
+
+    public long getProbeCount() {
+        return mProbeCount;
+    }
+
+    public long getFailureCount() {
+        return mFailureCount;
+    }
+
+    public String getLastError() {
+        return mLastError;
+    }
+
+    public LatencyHistogram getTotalLatency() {
+        return mTotalLatency;
+    }
+
+    public void dump(final PrintWriter writer, final String prefix) {
+        writer.println(String.format(Locale.ROOT, "%s%s: degraded = %b, probes = %d, failures = %d, last error = %s",
+            prefix, mVolumeId, mIsDegraded, mProbeCount, mFailureCount, mLastError));
+        for (final LatencyHistogram histogram : new LatencyHistogram[]{mWriteLatency, mSyncLatency, mReadLatency,
+            mTotalLatency}) {
+            writer.print(prefix + "  ");
+            histogram.dump(writer);
+        }
+    }
+}
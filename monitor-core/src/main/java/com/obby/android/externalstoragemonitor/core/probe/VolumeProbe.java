@@ -0,0 +1,104 @@
+package com.obby.android.externalstoragemonitor.core.probe;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Checks that a volume still accepts I/O by writing a small block to a probe file, forcing it to the device,
+ * reading it back and verifying it.
+ *
+ * <p>Every probe overwrites the same {@code size} bytes of a single file in the given directory, so a probe costs
+ * one small write, one fsync and one small read, and the file never grows. Each probe writes a different pattern,
+ * so reading back stale data is detected. The read may be served from the page cache; the write and fsync are what
+ * exercise the card. Buffers are allocated once. Not thread-safe.
+ */
+public final class VolumeProbe {
+    public static final String FILE_NAME = ".esm-probe";
+
+    public static final int DEFAULT_SIZE = 4096;
+
+    private final int mSize;
+
+    private final ByteBuffer mWriteBuffer;
+
+    private final ByteBuffer mReadBuffer;
+
+    private long mRound;
+
+    public VolumeProbe() {
+        this(DEFAULT_SIZE);
+    }
+
+    public VolumeProbe(final int size) {
+        if (size < Long.BYTES || size % Long.BYTES != 0) {
+            throw new IllegalArgumentException("probe size must be a positive multiple of 8");
+        }
+
+        mSize = size;
+        mWriteBuffer = ByteBuffer.allocateDirect(size);
+        mReadBuffer = ByteBuffer.allocateDirect(size);
+    }
+
+    public int getSize() {
+        return mSize;
+    }
+
+    /**
+     * Probes {@code directory} and stores the outcome in {@code result}.
+     */
+    public void probe(final File directory, final ProbeResult result) {
+        result.reset();
+        final long round = ++mRound;
+        fill(round);
+
+        final long startNanos = System.nanoTime();
+        try (RandomAccessFile file = new RandomAccessFile(new File(directory, FILE_NAME), "rw");
+             FileChannel channel = file.getChannel()) {
+            mWriteBuffer.clear();
+            while (mWriteBuffer.hasRemaining()) {
+                channel.write(mWriteBuffer, mWriteBuffer.position());
+            }
+            final long writtenNanos = System.nanoTime();
+            result.mWriteNanos = writtenNanos - startNanos;
+
+            channel.force(false);
+            final long syncedNanos = System.nanoTime();
+            result.mSyncNanos = syncedNanos - writtenNanos;
+
+            mReadBuffer.clear();
+            while (mReadBuffer.hasRemaining()) {
+                if (channel.read(mReadBuffer, mReadBuffer.position()) < 0) {
+                    throw new IOException("Unexpected end of probe file");
+                }
+            }
+            result.mReadNanos = System.nanoTime() - syncedNanos;
+
+            mWriteBuffer.clear();
+            mReadBuffer.clear();
+            if (!mWriteBuffer.equals(mReadBuffer)) {
+                throw new IOException("Probe data mismatch");
+            }
+            if (channel.size() > mSize) {
+                channel.truncate(mSize);
+            }
+            result.mIsSuccess = true;
+        } catch (IOException | RuntimeException e) {
+            result.mError = e.toString();
+        }
+        result.mTotalNanos = System.nanoTime() - startNanos;
+    }
+
+    private void fill(final long round) {
+        mWriteBuffer.clear();
+        long value = round * 0x9e3779b97f4a7c15L;
+        while (mWriteBuffer.hasRemaining()) {
+            value ^= value << 13;
+            value ^= value >>> 7;
+            value ^= value << 17;
+            mWriteBuffer.putLong(value);
+        }
+    }
+}
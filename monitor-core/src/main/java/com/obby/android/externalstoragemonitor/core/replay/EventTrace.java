@@ -0,0 +1,274 @@
+package com.obby.android.externalstoragemonitor.core.replay;
+
+import com.obby.android.externalstoragemonitor.core.ExternalStorageState;
+import com.obby.android.externalstoragemonitor.core.TransitionTrigger;
+import com.obby.android.externalstoragemonitor.core.journal.EventJournal;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.SplittableRandom;
+
+/**
+ * A sequence of volume events to replay through a {@link ScriptedVolumeSource}: at a time relative to the start of
+ * the trace, a volume enters a state and the system signals it with a trigger. A media broadcast trigger is
+ * delivered as a broadcast, {@link TransitionTrigger#MOUNT_TABLE} as a mount table change and
+ * {@link TransitionTrigger#POLL} not at all, so only polling can observe the change. A volume in
+ * {@link ExternalStorageState#ABSENT} is not reported by the source.
+ *
+ * <p>Events are held in parallel primitive arrays, so a trace of millions of events stays compact and reading it
+ * does not allocate. Traces are recorded from an {@link EventJournal}, generated, or read from text with one event
+ * per line: {@code <time ms> <volume id> <state> <trigger>}, using the names of
+ * {@link ExternalStorageState#toString(int)} and {@link TransitionTrigger#toString(int)}; {@code #} starts a comment.
+ * Not thread-safe.
+ */
+public final class EventTrace {
+    private static final int INITIAL_CAPACITY = 64;
+
+    /**
+     * Gap between the events of a burst, such as MEDIA_UNMOUNTED followed by MEDIA_REMOVED.
+     */
+    private static final long BURST_GAP_MS = 20L;
+
+    private final List<String> mVolumeIds = new ArrayList<>();
+
+    private final Map<String, Integer> mVolumeIndexes = new HashMap<>();
+
+    private long[] mTimes = new long[INITIAL_CAPACITY];
+
+    private int[] mVolumes = new int[INITIAL_CAPACITY];
+
+    private int[] mStates = new int[INITIAL_CAPACITY];
+
+    private int[] mTriggers = new int[INITIAL_CAPACITY];
+
+    private int mSize;
+
+    /**
+     * Appends an event. Events must be added in time order.
+     */
+    public void add(final long timeMs, final String volumeId, final int state, final int trigger) {
+        if (mSize > 0 && timeMs < mTimes[mSize - 1]) {
+            throw new IllegalArgumentException("events must be added in time order");
+        }
+        if (state != ExternalStorageState.ABSENT && !ExternalStorageState.isValid(state)) {
+            throw new IllegalArgumentException("invalid state " + state);
+        }
+
+        if (mSize == mTimes.length) {
+            final int capacity = mSize * 2;
+            mTimes = Arrays.copyOf(mTimes, capacity);
+            mVolumes = Arrays.copyOf(mVolumes, capacity);
+            mStates = Arrays.copyOf(mStates, capacity);
+            mTriggers = Arrays.copyOf(mTriggers, capacity);
+        }
+
+        Integer volume = mVolumeIndexes.get(volumeId);
+        if (volume == null) {
+            volume = mVolumeIds.size();
+            mVolumeIds.add(volumeId);
+            mVolumeIndexes.put(volumeId, volume);
+        }
+
+        mTimes[mSize] = timeMs;
+        mVolumes[mSize] = volume;
+        mStates[mSize] = state;
+        mTriggers[mSize] = trigger;
+        mSize++;
+    }
+
+    public int size() {
+        return mSize;
+    }
+
+    public long getTime(final int index) {
+        return mTimes[index];
+    }
+
+    /**
+     * Returns the index of the event's volume in {@link #getVolumeIds()}.
+     */
+    public int getVolume(final int index) {
+        return mVolumes[index];
+    }
+
+    public int getState(final int index) {
+        return mStates[index];
+    }
+
+    public int getTrigger(final int index) {
+        return mTriggers[index];
+    }
+
+    /**
+     * Time of the last event, which is the length of the trace.
+     */
+    public long getDurationMs() {
+        return mSize == 0 ? 0L : mTimes[mSize - 1];
+    }
+
+    public String[] getVolumeIds() {
+        return mVolumeIds.toArray(new String[0]);
+    }
+
+    public void write(final Writer writer) throws IOException {
+        for (int i = 0; i < mSize; i++) {
+            writer.write(String.format(Locale.ROOT, "%d %s %s %s%n", mTimes[i], mVolumeIds.get(mVolumes[i]),
+                ExternalStorageState.toString(mStates[i]), TransitionTrigger.toString(mTriggers[i])));
+        }
+    }
+
+    /**
+     * Reads a text trace. The volume id is everything between the time and the state, so it may contain spaces.
+     */
+    public static EventTrace read(final BufferedReader reader) throws IOException {
+        final EventTrace trace = new EventTrace();
+        int lineNumber = 0;
+        String line;
+        while ((line = reader.readLine()) != null) {
+            lineNumber++;
+            final int commentIndex = line.indexOf('#');
+            final String text = (commentIndex < 0 ? line : line.substring(0, commentIndex)).trim();
+            if (text.isEmpty()) {
+                continue;
+            }
+
+            final String[] fields = text.split("\\s+");
+            if (fields.length < 4) {
+                throw new IOException(String.format(Locale.ROOT, "line %d: expected 4 fields", lineNumber));
+            }
+
+            final int state = parseState(fields[fields.length - 2]);
+            final int trigger = parseTrigger(fields[fields.length - 1]);
+            if (state == Integer.MIN_VALUE || trigger == Integer.MIN_VALUE) {
+                throw new IOException(String.format(Locale.ROOT, "line %d: unknown state or trigger", lineNumber));
+            }
+
+            try {
+                trace.add(Long.parseLong(fields[0]), String.join(" ", Arrays.asList(fields).subList(1,
+                    fields.length - 2)), state, trigger);
+            } catch (IllegalArgumentException e) {
+                throw new IOException(String.format(Locale.ROOT, "line %d: %s", lineNumber, e.getMessage()), e);
+            }
+        }
+        return trace;
+    }
+
+    /**
+     * Builds a trace from the volume transitions recorded in {@code journal} within
+     * {@code [fromTimestamp, toTimestamp)}, timed from the first of them. Transitions recorded when the monitor
+     * started or stopped are not device events and are dropped; transitions reported on a flap recovery are
+     * replayed as silent changes. The journal only holds the changes that passed the flap filter, so the changes
+     * that were held back during a flapping period are missing from the trace.
+     */
+    public static EventTrace fromJournal(final EventJournal journal, final long fromTimestamp,
+        final long toTimestamp) {
+        final EventTrace trace = new EventTrace();
+        final long[] firstTimestamp = {-1L};
+        journal.scan(fromTimestamp, toTimestamp, record -> {
+            final int trigger = record.getTrigger();
+            if (EventJournal.AGGREGATE_VOLUME_ID.equals(record.getVolumeId()) || trigger == TransitionTrigger.START
+                || trigger == TransitionTrigger.STOP) {
+                return true;
+            }
+
+            if (firstTimestamp[0] < 0L) {
+                firstTimestamp[0] = record.getTimestamp();
+            }
+            // wall clock time may step back; keep the trace ordered
+            final long time = Math.max(record.getTimestamp() - firstTimestamp[0], trace.getDurationMs());
+            trace.add(time, record.getVolumeId(), record.getState(),
+                trigger == TransitionTrigger.FLAP_RECOVERY ? TransitionTrigger.POLL : trigger);
+            return true;
+        });
+        return trace;
+    }
+
+    /**
+     * Generates {@code eventCount} events of cards going through their life cycle in {@code volumeCount} slots:
+     * inserted, checked, mounted, unmounted and removed, sometimes unmountable or removed without unmounting.
+     * Events are spaced by exponentially distributed gaps with the given mean, so short gaps make volumes flap; a
+     * removal after unmounting comes as a burst of two events. Most changes are signalled by a broadcast, some only
+     * by a mount table change and a few not at all. The same seed gives the same trace.
+     */
+    public static EventTrace synthetic(final long seed, final int volumeCount, final int eventCount,
+        final long meanIntervalMs) {
+        if (volumeCount <= 0 || eventCount < 0 || meanIntervalMs <= 0L) {
+            throw new IllegalArgumentException("invalid synthetic trace parameters");
+        }
+
+        final SplittableRandom random = new SplittableRandom(seed);
+        final String[] volumeIds = new String[volumeCount];
+        final int[] states = new int[volumeCount];
+        for (int i = 0; i < volumeCount; i++) {
+            volumeIds[i] = String.format(Locale.ROOT, "%04X-%04X", (i * 0x1f3d + 0x0a21) & 0xffff,
+                (i * 0x7c1b + 0x3e05) & 0xffff);
+            states[i] = ExternalStorageState.ABSENT;
+        }
+
+        final EventTrace trace = new EventTrace();
+        long time = 0L;
+        while (trace.size() < eventCount) {
+            time += (long) (-Math.log(1.0 - random.nextDouble()) * meanIntervalMs);
+            final int volume = random.nextInt(volumeCount);
+            final String volumeId = volumeIds[volume];
+            final double chance = random.nextDouble();
+            final int state;
+            final int trigger;
+            switch (states[volume]) {
+                case ExternalStorageState.ABSENT:
+                    state = chance < 0.8 ? ExternalStorageState.UNKNOWN : ExternalStorageState.MOUNTED;
+                    trigger = chance < 0.8 ? TransitionTrigger.MEDIA_CHECKING : TransitionTrigger.MEDIA_MOUNTED;
+                    break;
+                case ExternalStorageState.UNKNOWN:
+                    state = chance < 0.9 ? ExternalStorageState.MOUNTED : ExternalStorageState.UNMOUNTED;
+                    trigger = chance < 0.9 ? TransitionTrigger.MEDIA_MOUNTED : TransitionTrigger.MEDIA_UNMOUNTABLE;
+                    break;
+                case ExternalStorageState.MOUNTED:
+                    state = chance < 0.9 ? ExternalStorageState.UNMOUNTED : ExternalStorageState.ABSENT;
+                    trigger = chance < 0.9 ? TransitionTrigger.MEDIA_UNMOUNTED : TransitionTrigger.MEDIA_BAD_REMOVAL;
+                    break;
+                default:
+                    state = chance < 0.8 ? ExternalStorageState.ABSENT : ExternalStorageState.MOUNTED;
+                    trigger = chance < 0.8 ? TransitionTrigger.MEDIA_REMOVED : TransitionTrigger.MEDIA_MOUNTED;
+                    break;
+            }
+
+            final double delivery = random.nextDouble();
+            trace.add(time, volumeId, state,
+                delivery < 0.05 ? TransitionTrigger.POLL : delivery < 0.25 ? TransitionTrigger.MOUNT_TABLE : trigger);
+            states[volume] = state;
+
+            if (trigger == TransitionTrigger.MEDIA_UNMOUNTED && chance < 0.6 && trace.size() < eventCount) {
+                time += BURST_GAP_MS;
+                trace.add(time, volumeId, ExternalStorageState.ABSENT, TransitionTrigger.MEDIA_REMOVED);
+                states[volume] = ExternalStorageState.ABSENT;
+            }
+        }
+        return trace;
+    }
+
+    private static int parseState(final String name) {
+        for (int state = ExternalStorageState.ABSENT; state <= ExternalStorageState.UNMOUNTED; state++) {
+            if (ExternalStorageState.toString(state).equals(name)) {
+                return state;
+            }
+        }
+        return Integer.MIN_VALUE;
+    }
+
+    private static int parseTrigger(final String name) {
+        for (int trigger = TransitionTrigger.POLL; trigger <= TransitionTrigger.MOUNT_TABLE; trigger++) {
+            if (TransitionTrigger.toString(trigger).equals(name)) {
+                return trigger;
+            }
+        }
+        return Integer.MIN_VALUE;
+    }
+}
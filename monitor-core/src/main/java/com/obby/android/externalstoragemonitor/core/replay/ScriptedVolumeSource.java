@@ -0,0 +1,96 @@
+package com.obby.android.externalstoragemonitor.core.replay;
+
+import com.obby.android.externalstoragemonitor.core.ExternalStorageState;
+import com.obby.android.externalstoragemonitor.core.TransitionTrigger;
+import com.obby.android.externalstoragemonitor.core.VolumeStateSource;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * {@link VolumeStateSource} whose volumes are set by a script, such as an {@link EventTrace} replayed by a
+ * {@link TraceReplayer}. Like a device it always reports a primary volume, which only counts towards the aggregated
+ * state, and then the external volumes that are not {@link ExternalStorageState#ABSENT}. Events are delivered only
+ * while started. Scans do not allocate. Not thread-safe.
+ */
+public final class ScriptedVolumeSource implements VolumeStateSource {
+    private final String[] mVolumeIds;
+
+    private final int[] mStates;
+
+    private final Map<String, Integer> mVolumeIndexes = new HashMap<>();
+
+    private Callback mCallback;
+
+    private long mScanCount;
+
+    public ScriptedVolumeSource(final String[] volumeIds) {
+        mVolumeIds = volumeIds.clone();
+        mStates = new int[volumeIds.length];
+        for (int i = 0; i < volumeIds.length; i++) {
+            mStates[i] = ExternalStorageState.ABSENT;
+            mVolumeIndexes.put(volumeIds[i], i);
+        }
+    }
+
+    @Override
+    public void start(final Callback callback) {
+        mCallback = callback;
+    }
+
+    @Override
+    public void stop() {
+        mCallback = null;
+    }
+
+    @Override
+    public void scan(final Visitor visitor) {
+        mScanCount++;
+        visitor.onVolume(null, ExternalStorageState.UNMOUNTED);
+        for (int i = 0; i < mVolumeIds.length; i++) {
+            if (mStates[i] != ExternalStorageState.ABSENT) {
+                visitor.onVolume(mVolumeIds[i], mStates[i]);
+            }
+        }
+    }
+
+    /**
+     * Sets the state of {@code volume} and signals it with {@code trigger}, as described in {@link EventTrace}.
+     */
+    public void apply(final int volume, final int state, final int trigger) {
+        mStates[volume] = state;
+        if (mCallback == null || trigger == TransitionTrigger.POLL) {
+            return;
+        }
+
+        if (trigger == TransitionTrigger.MOUNT_TABLE) {
+            mCallback.onMountsChanged();
+        } else {
+            mCallback.onBroadcast(trigger);
+        }
+    }
+
+    public int getVolumeCount() {
+        return mVolumeIds.length;
+    }
+
+    public String getVolumeId(final int volume) {
+        return mVolumeIds[volume];
+    }
+
+    /**
+     * Returns the index of {@code volumeId}, or -1 if the source does not have it.
+     */
+    public int indexOf(final String volumeId) {
+        final Integer volume = mVolumeIndexes.get(volumeId);
+        return volume == null ? -1 : volume;
+    }
+
+    public int getState(final int volume) {
+        return mStates[volume];
+    }
+
+    public long getScanCount() {
+        return mScanCount;
+    }
+}
@@ -0,0 +1,65 @@
+package com.obby.android.externalstoragemonitor.core.replay;
+
+/**
+ * Replays an {@link EventTrace} into a {@link ScriptedVolumeSource} on a {@link VirtualScheduler}: before each
+ * event the scheduler runs the tasks that fall due, then the event is applied at its time relative to the start of
+ * the replay. The time between events is skipped, so a trace of days replays in as long as the monitor takes to
+ * process it. Not thread-safe.
+ */
+public final class TraceReplayer {
+    private final EventTrace mTrace;
+
+    private final VirtualScheduler mScheduler;
+
+    private final ScriptedVolumeSource mSource;
+
+    private final long mStartTime;
+
+    private int mIndex;
+
+    public TraceReplayer(final EventTrace trace, final VirtualScheduler scheduler) {
+        mTrace = trace;
+        mScheduler = scheduler;
+        mSource = new ScriptedVolumeSource(trace.getVolumeIds());
+        mStartTime = scheduler.now();
+    }
+
+    public ScriptedVolumeSource getSource() {
+        return mSource;
+    }
+
+    /**
+     * Index of the next event to apply.
+     */
+    public int getIndex() {
+        return mIndex;
+    }
+
+    public boolean hasNext() {
+        return mIndex < mTrace.size();
+    }
+
+    /**
+     * Runs the tasks due before the next event and applies it.
+     */
+    public void step() {
+        if (!hasNext()) {
+            throw new IllegalStateException("trace replayed");
+        }
+
+        mScheduler.advanceTo(mStartTime + mTrace.getTime(mIndex));
+        mSource.apply(mTrace.getVolume(mIndex), mTrace.getState(mIndex), mTrace.getTrigger(mIndex));
+        mIndex++;
+    }
+
+    /**
+     * Replays the rest of the trace and lets the scheduler run for {@code settleMs} more, so the last events are
+     * scanned and flapping volumes recover.
+     */
+    public void replay(final long settleMs) {
+        while (hasNext()) {
+            step();
+        }
+        mScheduler.advanceTo(mScheduler.now() + settleMs);
+    }
+}
@@ -0,0 +1,134 @@
+package com.obby.android.externalstoragemonitor.core.replay;
+
+import com.obby.android.externalstoragemonitor.core.Clock;
+import com.obby.android.externalstoragemonitor.core.Scheduler;
+
+import java.util.Arrays;
+
+/**
+ * {@link Clock} and {@link Scheduler} on virtual time: time only moves in {@link #advanceTo(long)}, which runs the
+ * tasks that fall due on the way, so hours of monitoring replay as fast as the tasks run.
+ *
+ * <p>The monitor keeps only a couple of tasks pending, so they are held in parallel arrays and searched linearly;
+ * scheduling and running tasks does not allocate. Tasks due at the same time run in the order they were scheduled.
+ * Not thread-safe.
+ */
+public final class VirtualScheduler implements Clock, Scheduler {
+    private static final int INITIAL_CAPACITY = 4;
+
+    private Runnable[] mTasks = new Runnable[INITIAL_CAPACITY];
+
+    private long[] mTimes = new long[INITIAL_CAPACITY];
+
+    private long[] mSequences = new long[INITIAL_CAPACITY];
+
+    private int mSize;
+
+    private long mNextSequence;
+
+    private long mNow;
+
+    private long mRunCount;
+
+    public VirtualScheduler(final long startTime) {
+        mNow = startTime;
+    }
+
+    @Override
+    public long now() {
+        return mNow;
+    }
+
+    @Override
+    public void schedule(final Runnable task, final long delayMs) {
+        int index = indexOf(task);
+        if (index < 0) {
+            if (mSize == mTasks.length) {
+                mTasks = Arrays.copyOf(mTasks, mSize * 2);
+                mTimes = Arrays.copyOf(mTimes, mSize * 2);
+                mSequences = Arrays.copyOf(mSequences, mSize * 2);
+            }
+            index = mSize++;
+            mTasks[index] = task;
+        }
+        mTimes[index] = mNow + Math.max(delayMs, 0L);
+        mSequences[index] = mNextSequence++;
+    }
+
+    @Override
+    public void cancel(final Runnable task) {
+        final int index = indexOf(task);
+        if (index >= 0) {
+            removeAt(index);
+        }
+    }
+
+    /**
+     * Runs the tasks due until {@code time} in time order, including the ones they schedule, and moves the clock to
+     * {@code time}. The clock never goes back.
+     *
+     * @return the number of tasks run
+     */
+    public int advanceTo(final long time) {
+        int count = 0;
+        while (true) {
+            final int index = nextIndex();
+            if (index < 0 || mTimes[index] > time) {
+                break;
+            }
+
+            final Runnable task = mTasks[index];
+            mNow = Math.max(mNow, mTimes[index]);
+            removeAt(index);
+            task.run();
+            count++;
+        }
+        mRunCount += count;
+        mNow = Math.max(mNow, time);
+        return count;
+    }
+
+    /**
+     * Returns the time of the next pending task, or {@link Long#MAX_VALUE} if there is none.
+     */
+    public long getNextTime() {
+        final int index = nextIndex();
+        return index < 0 ? Long.MAX_VALUE : mTimes[index];
+    }
+
+    public int getPendingCount() {
+        return mSize;
+    }
+
+    public long getRunCount() {
+        return mRunCount;
+    }
+
+    private int indexOf(final Runnable task) {
+        for (int i = 0; i < mSize; i++) {
+            if (mTasks[i] == task) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private int nextIndex() {
+        int next = -1;
+        for (int i = 0; i < mSize; i++) {
+            if (next < 0 || mTimes[i] < mTimes[next]
+                || (mTimes[i] == mTimes[next] && mSequences[i] < mSequences[next])) {
+                next = i;
+            }
+        }
+        return next;
+    }
+
+    private void removeAt(final int index) {
+        mSize--;
+        mTasks[index] = mTasks[mSize];
+        mTimes[index] = mTimes[mSize];
+        mSequences[index] = mSequences[mSize];
+        mTasks[mSize] = null;
+    }
+}
@@ -0,0 +1,51 @@
+package com.obby.android.externalstoragemonitor.core.bench;
+
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * Runs a {@link StorageBenchmark} against a directory on this host and prints each result as it finishes.
+ */
+public final class StorageBenchmarkCli {
+    private static final String USAGE = "usage: StorageBenchmarkCli <directory> [file size MiB] "
+        + "[block sizes KiB, comma separated] [queue depth]";
+
+    private StorageBenchmarkCli() {
+    }
+
+    public static void main(final String[] args) throws IOException {
+        if (args.length < 1 || args.length > 4) {
+            System.err.println(USAGE);
+            System.exit(2);
+            return;
+        }
+
+        final BenchmarkConfig config;
+        try {
+            final BenchmarkConfig.Builder builder = new BenchmarkConfig.Builder();
+            if (args.length > 1) {
+                builder.setFileSize(Long.parseLong(args[1]) << 20);
+            }
+            if (args.length > 2) {
+                final String[] values = args[2].split(",");
+                final int[] blockSizes = new int[values.length];
+                for (int i = 0; i < values.length; i++) {
+                    blockSizes[i] = Integer.parseInt(values[i].trim()) << 10;
+                }
+                builder.setBlockSizes(blockSizes);
+            }
+            if (args.length > 3) {
+                builder.setQueueDepth(Integer.parseInt(args[3]));
+            }
+            config = builder.build();
+        } catch (IllegalArgumentException | IllegalStateException e) {
+            System.err.println(e.getMessage());
+            System.err.println(USAGE);
+            System.exit(2);
+            return;
+        }
+
+        System.out.println(config);
+        new StorageBenchmark(config).run(new File(args[0]), System.out::println);
+    }
+}
@@ -0,0 +1,225 @@
+package com.obby.android.externalstoragemonitor.core.replay;
+
+import com.obby.android.externalstoragemonitor.core.VolumeMonitor;
+import com.obby.android.externalstoragemonitor.core.metrics.DetectionMetrics;
+import com.obby.android.externalstoragemonitor.core.metrics.LatencyHistogram;
+
+import java.io.BufferedReader;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintWriter;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.nio.charset.StandardCharsets;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Pushes an {@link EventTrace} through the full detect, aggregate and listener path of a {@link VolumeMonitor} on
+ * virtual time and reports the throughput, the latency from an event to the listener, and the allocation rate.
+ *
+ * <p>The trace is replayed once to warm up the JIT and once measured, each time into a fresh monitor. Latencies are
+ * wall clock time spent processing: the virtual time an event waits for its debounced scan is skipped, and is
+ * reported separately as the detection latency of the tick scheduler. Allocation is measured on the replaying thread
+ * where the JVM supports it.
+ */
+public final class SoakHarness {
+    private static final String USAGE = "usage: SoakHarness [events] [volumes] [mean interval ms] [seed]\n"
+        + "       SoakHarness --trace <file>";
+
+    private static final int DEFAULT_EVENT_COUNT = 1_000_000;
+
+    private static final int DEFAULT_VOLUME_COUNT = 4;
+
+    private static final long DEFAULT_MEAN_INTERVAL_MS = 2_000L;
+
+    private static final long DEFAULT_SEED = 1L;
+
+    /**
+     * Virtual time run after the last event, long enough for the last scan and for flapping volumes to recover.
+     */
+    private static final long SETTLE_MS = TimeUnit.MINUTES.toMillis(5L);
+
+    private static final long FIXED_INTERVAL_MS = TimeUnit.MINUTES.toMillis(1L);
+
+    private final EventTrace mTrace;
+
+    private final VirtualScheduler mScheduler = new VirtualScheduler(0L);
+
+    private final TraceReplayer mReplayer;
+
+    private final ScriptedVolumeSource mSource;
+
+    private final DetectionMetrics mMetrics = new DetectionMetrics();
+
+    private final LatencyHistogram mEventToListenerLatency = new LatencyHistogram("event_to_listener");
+
+    private final VolumeMonitor mMonitor;
+
+    /**
+     * Time of the oldest event of each volume not yet reported to the listener, or 0.
+     */
+    private final long[] mPendingNanos;
+
+    private long mStateChangeCount;
+
+    private long mVolumeChangeCount;
+
+    private long mFlapCount;
+
+    private SoakHarness(final EventTrace trace) {
+        mTrace = trace;
+        mReplayer = new TraceReplayer(trace, mScheduler);
+        mSource = mReplayer.getSource();
+        mPendingNanos = new long[mSource.getVolumeCount()];
+        mMonitor = new VolumeMonitor(mSource, mScheduler, mScheduler, mMetrics, new VolumeMonitor.Listener() {
+            @Override
+            public void onExternalStorageStateChanged(final int state, final int trigger) {
+                mStateChangeCount++;
+            }
+
+            @Override
+            public void onVolumeStateChanged(final String volumeId, final int previousState, final int state,
+                final int trigger) {
+                mVolumeChangeCount++;
+                final int volume = mSource.indexOf(volumeId);
+                if (mPendingNanos[volume] != 0L) {
+                    mEventToListenerLatency.recordSince(mPendingNanos[volume]);
+                    mPendingNanos[volume] = 0L;
+                }
+            }
+
+            @Override
+            public void onFlappingChanged(final String volumeId, final boolean isFlapping) {
+                if (isFlapping) {
+                    mFlapCount++;
+                }
+            }
+        });
+    }
+
+    private void run() {
+        mMonitor.start();
+        while (mReplayer.hasNext()) {
+            final int index = mReplayer.getIndex();
+            mScheduler.advanceTo(mTrace.getTime(index));
+            final int volume = mTrace.getVolume(index);
+            if (mPendingNanos[volume] == 0L) {
+                mPendingNanos[volume] = System.nanoTime();
+            }
+            mReplayer.step();
+        }
+        mScheduler.advanceTo(mScheduler.now() + SETTLE_MS);
+        mMonitor.stop();
+    }
+
+    public static void main(final String[] args) throws IOException {
+        final EventTrace trace;
+        try {
+            trace = readTrace(args);
+        } catch (IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            System.err.println(USAGE);
+            System.exit(2);
+            return;
+        }
+
+        System.out.println(String.format(Locale.ROOT, "trace: %d events, %d volumes, %s virtual", trace.size(),
+            trace.getVolumeIds().length, formatDuration(trace.getDurationMs())));
+
+        new SoakHarness(trace).run();
+
+        final SoakHarness harness = new SoakHarness(trace);
+        final long allocatedBefore = getAllocatedBytes();
+        final long gcCountBefore = getGcCount();
+        final long gcTimeBefore = getGcTimeMs();
+        final long startNanos = System.nanoTime();
+        harness.run();
+        final long elapsedNanos = System.nanoTime() - startNanos;
+        final long allocatedBytes = allocatedBefore < 0L ? -1L : getAllocatedBytes() - allocatedBefore;
+        harness.report(elapsedNanos, allocatedBytes, getGcCount() - gcCountBefore, getGcTimeMs() - gcTimeBefore);
+    }
+
+    private void report(final long elapsedNanos, final long allocatedBytes, final long gcCount, final long gcTimeMs) {
+        final double seconds = elapsedNanos / 1e9;
+        final PrintWriter writer = new PrintWriter(System.out, true);
+        writer.println(String.format(Locale.ROOT, "replay: %.1f ms, %.0f events/s, %.0fx real time",
+            elapsedNanos / 1e6, mTrace.size() / seconds, mScheduler.now() / (seconds * 1000.0)));
+        writer.println(String.format(Locale.ROOT,
+            "listener: state changes = %d, volume changes = %d, flaps = %d, scans = %d", mStateChangeCount,
+            mVolumeChangeCount, mFlapCount, mSource.getScanCount()));
+        writer.println("scheduler: " + mMonitor.getTickScheduler().getSummary(mScheduler.now(), FIXED_INTERVAL_MS));
+        writer.println("latencies:");
+        writer.print("  ");
+        mEventToListenerLatency.dump(writer);
+        for (final LatencyHistogram histogram : mMetrics.getHistograms()) {
+            writer.print("  ");
+            histogram.dump(writer);
+        }
+        if (allocatedBytes < 0L) {
+            writer.println("allocation: not supported by this JVM");
+        } else {
+            writer.println(String.format(Locale.ROOT, "allocation: %d bytes, %.1f bytes/event, %.1f MB/s",
+                allocatedBytes, (double) allocatedBytes / Math.max(mTrace.size(), 1), allocatedBytes / 1e6 / seconds));
+        }
+        writer.println(String.format(Locale.ROOT, "gc: %d collections, %d ms", gcCount, gcTimeMs));
+    }
+
+    private static EventTrace readTrace(final String[] args) throws IOException {
+        if (args.length > 0 && "--trace".equals(args[0])) {
+            if (args.length != 2) {
+                throw new IllegalArgumentException("missing trace file");
+            }
+            try (BufferedReader reader = new BufferedReader(
+                new InputStreamReader(new FileInputStream(args[1]), StandardCharsets.UTF_8))) {
+                return EventTrace.read(reader);
+            }
+        }
+
+        if (args.length > 4) {
+            throw new IllegalArgumentException("too many arguments");
+        }
+        return EventTrace.synthetic(args.length > 3 ? Long.parseLong(args[3]) : DEFAULT_SEED,
+            args.length > 1 ? Integer.parseInt(args[1]) : DEFAULT_VOLUME_COUNT,
+            args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_EVENT_COUNT,
+            args.length > 2 ? Long.parseLong(args[2]) : DEFAULT_MEAN_INTERVAL_MS);
+    }
+
+    /**
+     * Returns the bytes allocated by the calling thread so far, or -1 if the JVM does not tell.
+     */
+    private static long getAllocatedBytes() {
+        final ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        if (!(bean instanceof com.sun.management.ThreadMXBean)) {
+            return -1L;
+        }
+
+        final com.sun.management.ThreadMXBean threadBean = (com.sun.management.ThreadMXBean) bean;
+        return threadBean.isThreadAllocatedMemorySupported() && threadBean.isThreadAllocatedMemoryEnabled()
+            ? threadBean.getThreadAllocatedBytes(Thread.currentThread().getId()) : -1L;
+    }
+
+    private static long getGcCount() {
+        long count = 0L;
+        for (final GarbageCollectorMXBean bean : ManagementFactory.getGarbageCollectorMXBeans()) {
+            count += Math.max(bean.getCollectionCount(), 0L);
+        }
+        return count;
+    }
+
+    private static long getGcTimeMs() {
+        long time = 0L;
+        for (final GarbageCollectorMXBean bean : ManagementFactory.getGarbageCollectorMXBeans()) {
+            time += Math.max(bean.getCollectionTime(), 0L);
+        }
+        return time;
+    }
+
+    private static String formatDuration(final long ms) {
+        final long hours = TimeUnit.MILLISECONDS.toHours(ms);
+        return hours >= 48L ? String.format(Locale.ROOT, "%dd %dh", hours / 24L, hours % 24L)
+            : String.format(Locale.ROOT, "%dh %dm", hours, TimeUnit.MILLISECONDS.toMinutes(ms) % 60L);
+    }
+}
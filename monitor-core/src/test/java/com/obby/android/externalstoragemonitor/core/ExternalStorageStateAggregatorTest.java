@@ -0,0 +1,45 @@
+package com.obby.android.externalstoragemonitor.core;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+public class ExternalStorageStateAggregatorTest {
+    @Test
+    public void classify_onlyRemovableSecondaryVolumesCount() {
+        assertEquals(ExternalStorageState.UNMOUNTED, ExternalStorageState.of(true, true, "mounted"));
+        assertEquals(ExternalStorageState.UNMOUNTED, ExternalStorageState.of(false, false, "mounted"));
+        assertEquals(ExternalStorageState.MOUNTED, ExternalStorageState.of(false, true, "mounted"));
+        assertEquals(ExternalStorageState.UNKNOWN, ExternalStorageState.of(false, true, "checking"));
+        assertEquals(ExternalStorageState.UNMOUNTED, ExternalStorageState.of(false, true, "mounted_ro"));
+        assertEquals(ExternalStorageState.UNMOUNTED, ExternalStorageState.of(false, true, null));
+    }
+
+    @Test
+    public void aggregate_noVolumesIsUnmounted() {
+        final ExternalStorageStateAggregator aggregator = new ExternalStorageStateAggregator();
+        aggregator.reset();
+        assertEquals(ExternalStorageState.UNMOUNTED, aggregator.getState());
+        assertEquals(0, aggregator.getVolumeCount());
+    }
+
+    @Test
+    public void aggregate_mountedWinsOverUnknown() {
+        final ExternalStorageStateAggregator aggregator = new ExternalStorageStateAggregator();
+        aggregator.accept(ExternalStorageState.UNMOUNTED);
+        aggregator.accept(ExternalStorageState.UNKNOWN);
+        assertEquals(ExternalStorageState.UNKNOWN, aggregator.getState());
+        aggregator.accept(ExternalStorageState.MOUNTED);
+        assertEquals(ExternalStorageState.MOUNTED, aggregator.getState());
+        assertEquals(3, aggregator.getVolumeCount());
+    }
+
+    @Test
+    public void aggregate_resetClearsPreviousScan() {
+        final ExternalStorageStateAggregator aggregator = new ExternalStorageStateAggregator();
+        aggregator.accept(false, true, "mounted");
+        aggregator.reset();
+        aggregator.accept(true, false, "mounted");
+        assertEquals(ExternalStorageState.UNMOUNTED, aggregator.getState());
+    }
+}
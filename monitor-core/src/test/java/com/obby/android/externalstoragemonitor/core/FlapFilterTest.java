@@ -0,0 +1,103 @@
+package com.obby.android.externalstoragemonitor.core;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+public class FlapFilterTest {
+    private static final int M = ExternalStorageState.MOUNTED;
+
+    private static final int U = ExternalStorageState.UNMOUNTED;
+
+    private final List<String> mEvents = new ArrayList<>();
+
+    private FlapFilter mFilter;
+
+    @Before
+    public void setUp() {
+        mFilter = new FlapFilter(10_000L, 4, 5_000L, new FlapFilter.Listener() {
+            @Override
+            public void onStateChanged(final String key, final int previousState, final int state,
+                final boolean isRecovery) {
+                mEvents.add(key + ":" + previousState + "->" + state + (isRecovery ? " recovery" : ""));
+            }
+
+            @Override
+            public void onFlappingChanged(final String key, final boolean isFlapping, final int state) {
+                mEvents.add(key + (isFlapping ? ":flapping " : ":stable ") + state);
+            }
+        });
+    }
+
+    @Test
+    public void slowChangesPassThrough() {
+        int state = M;
+        for (int i = 0; i < 10; i++) {
+            final int next = state == M ? U : M;
+            mFilter.update("sd", state, next, i * 5_000L);
+            state = next;
+        }
+        assertEquals(10, mEvents.size());
+        assertFalse(mFilter.isFlapping("sd"));
+    }
+
+    @Test
+    public void stormIsBoundedAndRecovers() {
+        int state = M;
+        long now = 0L;
+        for (int i = 0; i < 100; i++) {
+            final int next = state == M ? U : M;
+            mFilter.update("sd", state, next, now);
+            mFilter.poll(now);
+            state = next;
+            now += 200L;
+        }
+        assertEquals(4, mEvents.size());
+        assertEquals("sd:flapping " + U, mEvents.get(3));
+        assertTrue(mFilter.isFlapping("sd"));
+        assertEquals(97, mFilter.getSuppressedCount("sd"));
+
+        final long lastChange = now - 200L;
+        assertEquals(lastChange + 5_000L, mFilter.getNextRecoveryTime());
+        mFilter.poll(lastChange + 4_999L);
+        assertTrue(mFilter.isFlapping("sd"));
+        mFilter.poll(lastChange + 5_000L);
+        assertFalse(mFilter.isFlapping("sd"));
+        assertEquals(List.of("sd:stable " + M, "sd:" + U + "->" + M + " recovery"),
+            mEvents.subList(4, mEvents.size()));
+        assertEquals(FlapFilter.NO_RECOVERY, mFilter.getNextRecoveryTime());
+    }
+
+    @Test
+    public void recoveryToReportedStateIsSilent() {
+        mFilter.update("sd", M, U, 0L);
+        mFilter.update("sd", U, M, 100L);
+        mFilter.update("sd", M, U, 200L);
+        mFilter.update("sd", U, M, 300L);
+        assertTrue(mFilter.isFlapping("sd"));
+        mFilter.update("sd", M, U, 400L);
+        mFilter.update("sd", U, M, 500L);
+        mFilter.update("sd", M, U, 600L);
+
+        mFilter.poll(10_000L);
+        assertEquals("sd:stable " + U, mEvents.get(mEvents.size() - 1));
+    }
+
+    @Test
+    public void keysAreIndependent() {
+        for (int i = 0; i < 4; i++) {
+            mFilter.update("a", i % 2 == 0 ? M : U, i % 2 == 0 ? U : M, i * 100L);
+        }
+        mFilter.update("b", ExternalStorageState.ABSENT, M, 500L);
+        assertTrue(mFilter.isFlapping("a"));
+        assertFalse(mFilter.isFlapping("b"));
+        assertTrue(mFilter.isAnyFlapping());
+        assertEquals("b:" + ExternalStorageState.ABSENT + "->" + M, mEvents.get(mEvents.size() - 1));
+    }
+}
@@ -0,0 +1,80 @@
+package com.obby.android.externalstoragemonitor.core;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class TickSchedulerTest {
+    @Test
+    public void broadcastBurst_coalescesIntoOneScan() {
+        final TickScheduler scheduler = new TickScheduler(300L, 1_500L, 1_000L, 180_000L);
+        scheduler.start(0L);
+        scheduler.onScanned(0L, true, true);
+
+        assertEquals(10_300L, scheduler.onBroadcast(10_000L));
+        assertEquals(10_400L, scheduler.onBroadcast(10_100L));
+        assertEquals(10_450L, scheduler.onBroadcast(10_150L));
+        scheduler.onScanned(10_450L, true, true);
+
+        assertEquals(2L, scheduler.getScanCount());
+        assertEquals(3L, scheduler.getBroadcastCount());
+        assertEquals(2L, scheduler.getCoalescedBroadcastCount());
+        assertEquals(450L, scheduler.getMaxDetectionLatencyMs());
+        assertFalse(scheduler.isBroadcastPending());
+    }
+
+    @Test
+    public void broadcastStorm_isBoundedByMaxDebounce() {
+        final TickScheduler scheduler = new TickScheduler(300L, 1_500L, 1_000L, 180_000L);
+        scheduler.start(0L);
+
+        long scanTime = 0L;
+        for (long now = 0L; now < 5_000L; now += 100L) {
+            scanTime = scheduler.onBroadcast(now);
+        }
+        assertEquals(1_500L, scanTime);
+    }
+
+    @Test
+    public void quietPolls_backOffToIdleInterval() {
+        final TickScheduler scheduler = new TickScheduler(300L, 1_500L, 1_000L, 8_000L);
+        long now = scheduler.start(0L);
+
+        now = scheduler.onScanned(now, true, true);
+        assertEquals(1_000L, now);
+        now = scheduler.onScanned(now, false, true);
+        assertEquals(3_000L, now);
+        now = scheduler.onScanned(now, false, true);
+        assertEquals(7_000L, now);
+        now = scheduler.onScanned(now, false, true);
+        assertEquals(15_000L, now);
+        now = scheduler.onScanned(now, false, true);
+        assertEquals(23_000L, now);
+        assertEquals(5L, scheduler.getWakeupCount());
+    }
+
+    @Test
+    public void unsettledVolume_keepsFastInterval() {
+        final TickScheduler scheduler = new TickScheduler(300L, 1_500L, 1_000L, 8_000L);
+        long now = scheduler.start(0L);
+        for (int i = 0; i < 5; i++) {
+            now = scheduler.onScanned(now, false, false);
+        }
+        assertEquals(5_000L, now);
+    }
+
+    @Test
+    public void mountChange_scansAtOnceAndOpensBroadcastWindow() {
+        final TickScheduler scheduler = new TickScheduler(300L, 1_500L, 1_000L, 8_000L);
+        scheduler.start(0L);
+
+        assertEquals(5_000L, scheduler.onMountChanged(5_000L));
+        assertTrue(scheduler.isBroadcastPending());
+        assertEquals(5_350L, scheduler.onBroadcast(5_050L));
+        scheduler.onScanned(5_350L, true, true);
+        assertEquals(0L, scheduler.getWakeupCount());
+        assertEquals(1L, scheduler.getMountChangeCount());
+    }
+}
@@ -0,0 +1,29 @@
+package com.obby.android.externalstoragemonitor.core;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+public class TokenBucketTest {
+    @Test
+    public void burst_isLimitedByCapacity() {
+        final TokenBucket bucket = new TokenBucket(3, 250L);
+        assertEquals(0L, bucket.tryAcquire(1_000L));
+        assertEquals(0L, bucket.tryAcquire(1_000L));
+        assertEquals(0L, bucket.tryAcquire(1_000L));
+        assertEquals(250L, bucket.tryAcquire(1_000L));
+        assertEquals(150L, bucket.tryAcquire(1_100L));
+    }
+
+    @Test
+    public void tokens_refillOverTime() {
+        final TokenBucket bucket = new TokenBucket(2, 250L);
+        bucket.tryAcquire(0L);
+        bucket.tryAcquire(0L);
+        assertEquals(0, bucket.getTokens(249L));
+        assertEquals(1, bucket.getTokens(250L));
+        assertEquals(2, bucket.getTokens(10_000L));
+        assertEquals(0L, bucket.tryAcquire(10_000L));
+        assertEquals(1, bucket.getTokens(10_000L));
+    }
+}
@@ -0,0 +1,209 @@
+package com.obby.android.externalstoragemonitor.core;
+
+import com.obby.android.externalstoragemonitor.core.journal.EventJournal;
+import com.obby.android.externalstoragemonitor.core.metrics.DetectionMetrics;
+import com.obby.android.externalstoragemonitor.core.replay.EventTrace;
+import com.obby.android.externalstoragemonitor.core.replay.ScriptedVolumeSource;
+import com.obby.android.externalstoragemonitor.core.replay.TraceReplayer;
+import com.obby.android.externalstoragemonitor.core.replay.VirtualScheduler;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class VolumeMonitorTest {
+    private static final String VOLUME_ID = "1234-ABCD";
+
+    private final VirtualScheduler mScheduler = new VirtualScheduler(0L);
+
+    private final ScriptedVolumeSource mSource = new ScriptedVolumeSource(new String[]{VOLUME_ID});
+
+    private final DetectionMetrics mMetrics = new DetectionMetrics();
+
+    private final RecordingListener mListener = new RecordingListener();
+
+    private final VolumeMonitor mMonitor = new VolumeMonitor(mSource, mScheduler, mScheduler, mMetrics, mListener);
+
+    @Test
+    public void start_reportsInitialStateFromFirstScan() {
+        mMonitor.start();
+        mScheduler.advanceTo(0L);
+
+        assertEquals(List.of("* unmounted start"), mListener.mEvents);
+        assertEquals(1L, mMetrics.getTickCount().get());
+    }
+
+    @Test
+    public void broadcast_scansAfterDebounce() {
+        mMonitor.start();
+        mScheduler.advanceTo(10_000L);
+        mListener.mEvents.clear();
+
+        mSource.apply(0, ExternalStorageState.MOUNTED, TransitionTrigger.MEDIA_MOUNTED);
+        mScheduler.advanceTo(10_299L);
+        assertTrue(mListener.mEvents.isEmpty());
+
+        mScheduler.advanceTo(10_300L);
+        assertEquals(List.of(VOLUME_ID + " absent>mounted media_mounted", "* mounted media_mounted"),
+            mListener.mEvents);
+        assertEquals(1L, mMetrics.getBroadcastToStateLatency().getCount());
+    }
+
+    @Test
+    public void mountChange_scansAtOnceAndCoalescesFollowingBroadcast() {
+        mMonitor.start();
+        mScheduler.advanceTo(10_000L);
+        mListener.mEvents.clear();
+        final long scanCount = mSource.getScanCount();
+
+        mSource.apply(0, ExternalStorageState.MOUNTED, TransitionTrigger.MOUNT_TABLE);
+        mScheduler.advanceTo(10_000L);
+        assertEquals(List.of(VOLUME_ID + " absent>mounted mount_table", "* mounted mount_table"), mListener.mEvents);
+        assertEquals(scanCount + 1L, mSource.getScanCount());
+
+        mScheduler.advanceTo(10_050L);
+        mSource.apply(0, ExternalStorageState.MOUNTED, TransitionTrigger.MEDIA_MOUNTED);
+        mScheduler.advanceTo(10_350L);
+        assertEquals(scanCount + 2L, mSource.getScanCount());
+        assertEquals(2, mListener.mEvents.size());
+        assertEquals(1L, mMetrics.getMountToStateLatency().getCount());
+    }
+
+    @Test
+    public void silentChange_isFoundByPolling() {
+        mMonitor.start();
+        mScheduler.advanceTo(0L);
+        mListener.mEvents.clear();
+
+        mSource.apply(0, ExternalStorageState.MOUNTED, TransitionTrigger.POLL);
+        mScheduler.advanceTo(TickScheduler.DEFAULT_FAST_INTERVAL_MS);
+
+        assertEquals(List.of(VOLUME_ID + " absent>mounted poll", "* mounted poll"), mListener.mEvents);
+    }
+
+    @Test
+    public void flappingVolume_isHeldBackUntilStable() {
+        mMonitor.start();
+        mScheduler.advanceTo(0L);
+        mListener.mEvents.clear();
+
+        for (int i = 0; i < 10; i++) {
+            mScheduler.advanceTo(10_000L + i * 2_000L);
+            if (i % 2 == 0) {
+                mSource.apply(0, ExternalStorageState.MOUNTED, TransitionTrigger.MEDIA_MOUNTED);
+            } else {
+                mSource.apply(0, ExternalStorageState.ABSENT, TransitionTrigger.MEDIA_REMOVED);
+            }
+        }
+        mScheduler.advanceTo(30_000L);
+
+        assertEquals(FlapFilter.DEFAULT_THRESHOLD - 1, mListener.count(VOLUME_ID + " "));
+        assertTrue(mListener.mEvents.contains("flapping " + VOLUME_ID + " true"));
+        assertTrue(mListener.mEvents.contains("flapping * true"));
+
+        mScheduler.advanceTo(30_000L + FlapFilter.DEFAULT_STABLE_MS + TickScheduler.DEFAULT_IDLE_INTERVAL_MS);
+        assertTrue(mListener.mEvents.contains("flapping " + VOLUME_ID + " false"));
+        assertTrue(mListener.mEvents.contains(VOLUME_ID + " mounted>absent flap_recovery"));
+        assertEquals(ExternalStorageState.UNMOUNTED, mListener.mExternalStorageState);
+    }
+
+    @Test
+    public void stop_dropsEventsAndPendingTasks() {
+        mMonitor.start();
+        mScheduler.advanceTo(0L);
+        mMonitor.stop();
+        mListener.mEvents.clear();
+
+        mSource.apply(0, ExternalStorageState.MOUNTED, TransitionTrigger.MEDIA_MOUNTED);
+        mScheduler.advanceTo(60_000L);
+
+        assertFalse(mMonitor.isRunning());
+        assertEquals(0, mScheduler.getPendingCount());
+        assertTrue(mListener.mEvents.isEmpty());
+    }
+
+    @Test
+    public void syntheticTrace_endsInTheStateOfTheSource() {
+        final EventTrace trace = EventTrace.synthetic(7L, 3, 20_000, 10_000L);
+        final VirtualScheduler scheduler = new VirtualScheduler(0L);
+        final TraceReplayer replayer = new TraceReplayer(trace, scheduler);
+        final ScriptedVolumeSource source = replayer.getSource();
+        final RecordingListener listener = new RecordingListener();
+        listener.mIsRecording = false;
+        final VolumeMonitor monitor = new VolumeMonitor(source, scheduler, scheduler, new DetectionMetrics(),
+            listener);
+
+        monitor.start();
+        replayer.replay(600_000L);
+
+        int expectedState = ExternalStorageState.UNMOUNTED;
+        for (int volume = 0; volume < source.getVolumeCount(); volume++) {
+            final int state = source.getState(volume);
+            assertEquals(state, (int) listener.mVolumeStates.getOrDefault(source.getVolumeId(volume),
+                ExternalStorageState.ABSENT));
+            if (state == ExternalStorageState.MOUNTED) {
+                expectedState = ExternalStorageState.MOUNTED;
+            } else if (state == ExternalStorageState.UNKNOWN && expectedState != ExternalStorageState.MOUNTED) {
+                expectedState = ExternalStorageState.UNKNOWN;
+            }
+        }
+        assertEquals(expectedState, listener.mExternalStorageState);
+        assertTrue(listener.mVolumeChangeCount > 10_000L);
+    }
+
+    private static final class RecordingListener implements VolumeMonitor.Listener {
+        private final List<String> mEvents = new ArrayList<>();
+
+        private final Map<String, Integer> mVolumeStates = new HashMap<>();
+
+        private boolean mIsRecording = true;
+
+        private int mExternalStorageState = ExternalStorageState.UNKNOWN;
+
+        private long mVolumeChangeCount;
+
+        @Override
+        public void onExternalStorageStateChanged(final int state, final int trigger) {
+            mExternalStorageState = state;
+            record(EventJournal.AGGREGATE_VOLUME_ID + " " + ExternalStorageState.toString(state) + " "
+                + TransitionTrigger.toString(trigger));
+        }
+
+        @Override
+        public void onVolumeStateChanged(final String volumeId, final int previousState, final int state,
+            final int trigger) {
+            mVolumeChangeCount++;
+            mVolumeStates.put(volumeId, state);
+            record(volumeId + " " + ExternalStorageState.toString(previousState) + ">"
+                + ExternalStorageState.toString(state) + " " + TransitionTrigger.toString(trigger));
+        }
+
+        @Override
+        public void onFlappingChanged(final String volumeId, final boolean isFlapping) {
+            record("flapping " + volumeId + " " + isFlapping);
+        }
+
+        private void record(final String event) {
+            if (mIsRecording) {
+                mEvents.add(event);
+            }
+        }
+
+        private int count(final String prefix) {
+            int count = 0;
+            for (final String event : mEvents) {
+                if (event.startsWith(prefix)) {
+                    count++;
+                }
+            }
+            return count;
+        }
+    }
+}
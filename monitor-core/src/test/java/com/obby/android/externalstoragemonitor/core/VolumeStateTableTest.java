@@ -0,0 +1,55 @@
+package com.obby.android.externalstoragemonitor.core;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+
+public class VolumeStateTableTest {
+    private final List<String> mChanges = new ArrayList<>();
+
+    private final VolumeStateTable mTable = new VolumeStateTable((volumeId, previousState, state) ->
+        mChanges.add(volumeId + ":" + previousState + "->" + state));
+
+    @Test
+    public void scan_reportsAddedVolumes() {
+        scan("sd", ExternalStorageState.MOUNTED, "usb", ExternalStorageState.UNKNOWN);
+        assertEquals(List.of("sd:-1->1", "usb:-1->0"), mChanges);
+        assertEquals(2, mTable.size());
+    }
+
+    @Test
+    public void scan_reportsOnlyChangedVolumes() {
+        scan("sd", ExternalStorageState.MOUNTED, "usb", ExternalStorageState.UNKNOWN);
+        mChanges.clear();
+
+        scan("sd", ExternalStorageState.MOUNTED, "usb", ExternalStorageState.MOUNTED);
+        assertEquals(List.of("usb:0->1"), mChanges);
+
+        mChanges.clear();
+        scan("sd", ExternalStorageState.MOUNTED, "usb", ExternalStorageState.MOUNTED);
+        assertEquals(List.of(), mChanges);
+    }
+
+    @Test
+    public void scan_reportsRemovedVolumes() {
+        scan("sd", ExternalStorageState.MOUNTED, "usb", ExternalStorageState.MOUNTED);
+        mChanges.clear();
+
+        scan("usb", ExternalStorageState.MOUNTED);
+        assertEquals(List.of("sd:1->-1"), mChanges);
+        assertEquals(ExternalStorageState.ABSENT, mTable.getState("sd"));
+        assertEquals(1, mTable.size());
+        assertEquals("usb", mTable.getVolumeIdAt(0));
+    }
+
+    private void scan(final Object... volumes) {
+        mTable.beginScan();
+        for (int i = 0; i < volumes.length; i += 2) {
+            mTable.update((String) volumes[i], (Integer) volumes[i + 1]);
+        }
+        mTable.endScan();
+    }
+}
@@ -0,0 +1,55 @@
+package com.obby.android.externalstoragemonitor.core.alert;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+public class EscalationPolicyTest {
+    @Test
+    public void defaultPolicyRoundTrips() {
+        assertEquals("30s/5m@0.6,10m@1.0;snooze=1m", EscalationPolicy.DEFAULT.toString());
+
+        final EscalationPolicy policy = EscalationPolicy.parse(EscalationPolicy.DEFAULT.toString());
+        assertEquals(EscalationPolicy.DEFAULT.toString(), policy.toString());
+        assertEquals(0.6f, policy.getVolumeAt(299_999L), 0.0f);
+        assertEquals(1.0f, policy.getVolumeAt(300_000L), 0.0f);
+        assertEquals(60_000L, policy.getSnoozeMs());
+    }
+
+    @Test
+    public void parseReadsOptionsAndUnits() {
+        final EscalationPolicy policy = EscalationPolicy.parse(" 1500/2h @0.5 , 90s@1 ; delay=10s ; snooze=250ms ");
+        assertEquals(10_000L, policy.getInitialDelayMs());
+        assertEquals(250L, policy.getSnoozeMs());
+        assertEquals(2, policy.getStages().size());
+        assertEquals(1_500L, policy.getStages().get(0).getIntervalMs());
+        assertEquals(7_200_000L, policy.getStages().get(0).getDurationMs());
+        assertEquals(EscalationPolicy.FOREVER, policy.getStages().get(1).getDurationMs());
+        assertEquals("1500ms/2h@0.5,90s@1.0;delay=10s;snooze=250ms", policy.toString());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void parseRejectsUnknownOption() {
+        EscalationPolicy.parse("30s@1;repeat=2");
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void parseRejectsMissingVolume() {
+        EscalationPolicy.parse("30s/5m");
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void parseRejectsLoudStage() {
+        EscalationPolicy.parse("30s@1.5");
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void parseRejectsNanVolume() {
+        EscalationPolicy.parse("30s/5m@NaN");
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void parseRejectsStageAfterEndlessStage() {
+        EscalationPolicy.parse("10m@1,30s@0.5");
+    }
+}
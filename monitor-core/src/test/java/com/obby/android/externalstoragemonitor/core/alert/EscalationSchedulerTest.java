@@ -0,0 +1,96 @@
+package com.obby.android.externalstoragemonitor.core.alert;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+public class EscalationSchedulerTest {
+    private long mNow;
+
+    private final List<String> mAlerts = new ArrayList<>();
+
+    private EscalationScheduler mScheduler;
+
+    @Before
+    public void setUp() {
+        mNow = 10_000L;
+        mScheduler = new EscalationScheduler(() -> mNow, new TimerWheel(100L, 512),
+            (key, count, volume) -> mAlerts.add(key + "#" + count + "@" + (mNow - 10_000L) + "/" + volume));
+    }
+
+    @Test
+    public void defaultPolicyEscalates() {
+        mScheduler.start("sd", EscalationPolicy.DEFAULT);
+        assertEquals(List.of("sd#1@0/0.6"), mAlerts);
+
+        runUntil(10_000L + 3_600_000L);
+        // 0, 30 s, ..., 270 s at 0.6, then 300 s, 900 s, ... at 1.0
+        assertEquals(10 + 6, mAlerts.size());
+        assertEquals("sd#10@270000/0.6", mAlerts.get(9));
+        assertEquals("sd#11@300000/1.0", mAlerts.get(10));
+        assertEquals("sd#12@900000/1.0", mAlerts.get(11));
+    }
+
+    @Test
+    public void snoozePostponesWithoutRestarting() {
+        mScheduler.start("sd", EscalationPolicy.DEFAULT);
+        runUntil(10_000L + 40_000L);
+        assertEquals(2, mAlerts.size());
+
+        mScheduler.snooze("sd");
+        runUntil(10_000L + 99_000L);
+        assertEquals(2, mAlerts.size());
+        runUntil(10_000L + 101_000L);
+        assertEquals("sd#3@100000/0.6", mAlerts.get(2));
+        runUntil(10_000L + 131_000L);
+        assertEquals("sd#4@130000/0.6", mAlerts.get(3));
+    }
+
+    @Test
+    public void stopCancelsPendingAlerts() {
+        mScheduler.start("a", EscalationPolicy.DEFAULT);
+        mScheduler.start("b", EscalationPolicy.DEFAULT);
+        mScheduler.start("a", EscalationPolicy.DEFAULT);
+        assertEquals(2, mAlerts.size());
+
+        mScheduler.stop("a");
+        assertFalse(mScheduler.isActive("a"));
+        runUntil(10_000L + 60_000L);
+        assertEquals(4, mAlerts.size());
+        assertTrue(mAlerts.get(3).startsWith("b#3"));
+    }
+
+    @Test
+    public void initialDelayAndFiniteStages() {
+        final EscalationPolicy policy = new EscalationPolicy.Builder()
+            .setInitialDelayMs(5_000L)
+            .addStage(1_000L, 3_000L, 0.2f)
+            .build();
+        mScheduler.start("x", policy);
+        assertTrue(mAlerts.isEmpty());
+
+        runUntil(10_000L + 60_000L);
+        assertEquals(List.of("x#1@5000/0.2", "x#2@6000/0.2", "x#3@7000/0.2"), mAlerts);
+        assertEquals(3, mScheduler.getAlertCount("x"));
+        assertEquals(TimerWheel.NO_DEADLINE, mScheduler.getNextDeadline());
+    }
+
+    private void runUntil(final long time) {
+        while (true) {
+            final long deadline = mScheduler.getNextDeadline();
+            if (deadline > time) {
+                mNow = time;
+                mScheduler.advance();
+                return;
+            }
+            mNow = deadline;
+            mScheduler.advance();
+        }
+    }
+}
@@ -0,0 +1,110 @@
+package com.obby.android.externalstoragemonitor.core.alert;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+public class TimerWheelTest {
+    @Test
+    public void firesNoEarlierThanDeadlineAndWithinOneTick() {
+        final TimerWheel wheel = new TimerWheel(100L, 8);
+        final List<Long> fired = new ArrayList<>();
+        final long[] now = {1_000L};
+        wheel.schedule(now[0], 1_250L, () -> fired.add(now[0]));
+
+        for (now[0] = 1_000L; now[0] < 1_250L; now[0] += 10L) {
+            wheel.advance(now[0]);
+        }
+        assertTrue(fired.isEmpty());
+
+        for (; now[0] <= 1_350L && fired.isEmpty(); now[0] += 10L) {
+            wheel.advance(now[0]);
+        }
+        assertEquals(1, fired.size());
+        assertTrue(fired.get(0) >= 1_250L && fired.get(0) < 1_350L);
+        assertEquals(0, wheel.size());
+    }
+
+    @Test
+    public void handlesDeadlinesBeyondOneRevolution() {
+        final TimerWheel wheel = new TimerWheel(10L, 4);
+        final List<Integer> fired = new ArrayList<>();
+        wheel.schedule(0L, 25L, () -> fired.add(1));
+        wheel.schedule(0L, 65L, () -> fired.add(2));
+        wheel.schedule(0L, 1_005L, () -> fired.add(3));
+
+        assertEquals(30L, wheel.getNextDeadline());
+        wheel.advance(30L);
+        assertEquals(List.of(1), fired);
+        assertEquals(70L, wheel.getNextDeadline());
+        wheel.advance(60L);
+        assertEquals(List.of(1), fired);
+        wheel.advance(70L);
+        assertEquals(List.of(1, 2), fired);
+        assertEquals(1_010L, wheel.getNextDeadline());
+        wheel.advance(1_009L);
+        assertEquals(2, fired.size());
+        wheel.advance(1_010L);
+        assertEquals(List.of(1, 2, 3), fired);
+        assertEquals(TimerWheel.NO_DEADLINE, wheel.getNextDeadline());
+    }
+
+    @Test
+    public void cancelledTimerDoesNotFire() {
+        final TimerWheel wheel = new TimerWheel(10L, 16);
+        final List<Integer> fired = new ArrayList<>();
+        final TimerWheel.Timer first = wheel.schedule(0L, 50L, () -> fired.add(1));
+        wheel.schedule(0L, 50L, () -> fired.add(2));
+        final TimerWheel.Timer third = wheel.schedule(0L, 50L, () -> fired.add(3));
+
+        assertTrue(third.cancel());
+        assertFalse(third.cancel());
+        assertTrue(first.cancel());
+        assertEquals(1, wheel.size());
+        wheel.advance(100L);
+        assertEquals(List.of(2), fired);
+        assertFalse(first.isPending());
+    }
+
+    @Test
+    public void taskMayCancelTimerDueInSameTick() {
+        final TimerWheel wheel = new TimerWheel(10L, 16);
+        final List<Integer> fired = new ArrayList<>();
+        final TimerWheel.Timer[] timers = new TimerWheel.Timer[2];
+        timers[0] = wheel.schedule(0L, 50L, () -> {
+            fired.add(1);
+            timers[1].cancel();
+        });
+        timers[1] = wheel.schedule(0L, 50L, () -> {
+            fired.add(2);
+            timers[0].cancel();
+        });
+
+        wheel.advance(50L);
+        assertEquals(1, fired.size());
+        assertEquals(0, wheel.size());
+    }
+
+    @Test
+    public void manyTimers() {
+        final TimerWheel wheel = new TimerWheel(1L, 64);
+        final int[] fired = {0};
+        final List<TimerWheel.Timer> timers = new ArrayList<>();
+        for (int i = 0; i < 10_000; i++) {
+            timers.add(wheel.schedule(0L, 1L + i % 500, () -> fired[0]++));
+        }
+        for (int i = 0; i < timers.size(); i += 2) {
+            timers.get(i).cancel();
+        }
+        wheel.advance(499L);
+        assertTrue(fired[0] < 5_000);
+        wheel.advance(500L);
+        assertEquals(5_000, fired[0]);
+        assertEquals(0, wheel.size());
+    }
+}
@@ -0,0 +1,65 @@
+package com.obby.android.externalstoragemonitor.core.alert;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import com.obby.android.externalstoragemonitor.core.ExternalStorageState;
+
+import org.junit.Test;
+
+import java.util.Set;
+
+public class UnmountedAlertsTest {
+    private final UnmountedAlerts mAlerts = new UnmountedAlerts("*", volumeId -> EscalationPolicy.DEFAULT);
+
+    @Test
+    public void alertsCardMissingAtStart() {
+        assertTrue(mAlerts.getAlerts().isEmpty());
+        assertTrue(mAlerts.onExternalStorageStateChanged(ExternalStorageState.UNMOUNTED));
+        assertEquals(Set.of("*"), mAlerts.getAlerts().keySet());
+
+        assertFalse(mAlerts.onVolumeStateChanged("sd", ExternalStorageState.ABSENT, ExternalStorageState.MOUNTED));
+        assertTrue(mAlerts.onExternalStorageStateChanged(ExternalStorageState.MOUNTED));
+        assertTrue(mAlerts.getAlerts().isEmpty());
+    }
+
+    @Test
+    public void alertsUnmountedVolumeUntilRemounted() {
+        mAlerts.onVolumeStateChanged("sd", ExternalStorageState.ABSENT, ExternalStorageState.MOUNTED);
+        mAlerts.onExternalStorageStateChanged(ExternalStorageState.MOUNTED);
+
+        assertTrue(mAlerts.onVolumeStateChanged("sd", ExternalStorageState.MOUNTED, ExternalStorageState.UNMOUNTED));
+        assertFalse(mAlerts.onExternalStorageStateChanged(ExternalStorageState.UNMOUNTED));
+        assertEquals(Set.of("sd"), mAlerts.getAlerts().keySet());
+
+        // an unmounted volume is not dropped when another one mounts
+        assertFalse(mAlerts.onVolumeStateChanged("usb", ExternalStorageState.ABSENT, ExternalStorageState.MOUNTED));
+        assertFalse(mAlerts.onExternalStorageStateChanged(ExternalStorageState.MOUNTED));
+        assertEquals(Set.of("sd"), mAlerts.getAlerts().keySet());
+
+        assertTrue(mAlerts.onVolumeStateChanged("sd", ExternalStorageState.UNMOUNTED, ExternalStorageState.MOUNTED));
+        assertTrue(mAlerts.getAlerts().isEmpty());
+    }
+
+    @Test
+    public void dropsRemovedVolumeOnceReplaced() {
+        mAlerts.onVolumeStateChanged("old", ExternalStorageState.ABSENT, ExternalStorageState.MOUNTED);
+        mAlerts.onExternalStorageStateChanged(ExternalStorageState.MOUNTED);
+        mAlerts.onVolumeStateChanged("old", ExternalStorageState.MOUNTED, ExternalStorageState.UNMOUNTED);
+        mAlerts.onVolumeStateChanged("old", ExternalStorageState.UNMOUNTED, ExternalStorageState.ABSENT);
+        mAlerts.onExternalStorageStateChanged(ExternalStorageState.UNMOUNTED);
+        assertEquals(Set.of("old"), mAlerts.getAlerts().keySet());
+
+        assertTrue(mAlerts.onVolumeStateChanged("new", ExternalStorageState.ABSENT, ExternalStorageState.MOUNTED));
+        mAlerts.onExternalStorageStateChanged(ExternalStorageState.MOUNTED);
+        assertTrue(mAlerts.getAlerts().isEmpty());
+    }
+
+    @Test
+    public void clearForgetsEverything() {
+        mAlerts.onExternalStorageStateChanged(ExternalStorageState.UNMOUNTED);
+        mAlerts.clear();
+        assertTrue(mAlerts.getAlerts().isEmpty());
+    }
+}
@@ -0,0 +1,106 @@
+package com.obby.android.externalstoragemonitor.core.bench;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+public class StorageBenchmarkTest {
+    @Rule
+    public TemporaryFolder mFolder = new TemporaryFolder();
+
+    @Test
+    public void runsEveryTestForEveryBlockSize() throws IOException {
+        final BenchmarkConfig config = new BenchmarkConfig.Builder()
+            .setFileSize(1L << 20)
+            .setBlockSizes(4 << 10, 64 << 10)
+            .setQueueDepth(2)
+            .setRandomOps(64)
+            .build();
+        final List<BenchmarkResult> reported = new ArrayList<>();
+        final List<BenchmarkResult> results = new StorageBenchmark(config).run(mFolder.getRoot(), reported::add);
+
+        assertEquals(12, results.size());
+        assertEquals(results, reported);
+        for (final BenchmarkResult result : results) {
+            assertEquals(2, result.getQueueDepth());
+            assertTrue(result.getOps() > 0L);
+            assertEquals(result.getOps() * result.getBlockSize(), result.getBytes());
+            assertTrue(result.getMegabytesPerSecond() > 0.0);
+            assertTrue(result.getP50Nanos() <= result.getP99Nanos());
+            if (result.getTest() == BenchmarkResult.SEQUENTIAL_WRITE) {
+                assertEquals(1L << 20, result.getBytes());
+            } else if (result.getTest() == BenchmarkResult.RANDOM_READ) {
+                assertEquals(64L, result.getOps());
+            }
+        }
+        assertFalse(new File(mFolder.getRoot(), StorageBenchmark.FILE_NAME).exists());
+    }
+
+    @Test
+    public void cancelledRunThrows() throws IOException {
+        final StorageBenchmark benchmark = new StorageBenchmark(new BenchmarkConfig.Builder()
+            .setFileSize(1L << 20)
+            .setBlockSizes(4 << 10)
+            .build());
+        benchmark.cancel();
+        try {
+            benchmark.run(mFolder.getRoot(), result -> fail());
+            fail();
+        } catch (InterruptedIOException e) {
+            // expected
+        }
+        assertFalse(new File(mFolder.getRoot(), StorageBenchmark.FILE_NAME).exists());
+    }
+
+    @Test
+    public void sequentialTestsSplitWholeBlocksBetweenThreads() throws IOException {
+        final List<BenchmarkResult> results = new StorageBenchmark(new BenchmarkConfig.Builder()
+            .setFileSize(10L << 12)
+            .setBlockSizes(4 << 10)
+            .setQueueDepth(3)
+            .setMemoryMapped(false)
+            .build()).run(mFolder.getRoot(), result -> { });
+        assertEquals(9L << 12, results.get(0).getBytes());
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void fileSizeMustFitBlocks() {
+        new BenchmarkConfig.Builder().setFileSize(1L << 20).setBlockSizes(3000).build();
+    }
+
+    @Test
+    public void storeKeepsResultsPerVolume() throws IOException {
+        final BenchmarkStore store = new BenchmarkStore(new File(mFolder.getRoot(), "benchmarks.tsv"));
+        assertTrue(store.read(null).isEmpty());
+
+        final List<BenchmarkResult> results = new StorageBenchmark(new BenchmarkConfig.Builder()
+            .setFileSize(256L << 10)
+            .setBlockSizes(64 << 10)
+            .setMemoryMapped(false)
+            .build()).run(mFolder.newFolder(), result -> { });
+        store.append("1234-ABCD", 1000L, results);
+        store.append("5678-EF01", 2000L, results.subList(0, 1));
+        try (FileOutputStream output = new FileOutputStream(store.getFile(), true)) {
+            output.write("3000\t1234-ABCD\t0\t1".getBytes(StandardCharsets.UTF_8));
+        }
+
+        final List<BenchmarkStore.Record> records = store.read("1234-ABCD");
+        assertEquals(4, records.size());
+        assertEquals(1000L, records.get(0).getTimeMillis());
+        assertEquals(results.get(2).format(), records.get(2).getResult().format());
+        assertEquals(5, store.read(null).size());
+    }
+}
@@ -0,0 +1,78 @@
+package com.obby.android.externalstoragemonitor.core.capacity;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class CapacityTrendTest {
+    private static final long MINUTE_MS = 60_000L;
+
+    private static final long HOUR_MS = 60L * MINUTE_MS;
+
+    private static final long GB = 1024L * 1024L * 1024L;
+
+    @Test
+    public void samplesAreRateLimited() {
+        final CapacityTrend trend = new CapacityTrend();
+        assertTrue(trend.shouldSample(0L));
+        trend.onSample(0L, 10L * GB, 32L * GB);
+        assertFalse(trend.shouldSample(MINUTE_MS - 1L));
+        trend.onSample(MINUTE_MS - 1L, 9L * GB, 32L * GB);
+        assertEquals(1, trend.size());
+        assertEquals(10L * GB, trend.getFreeBytes());
+    }
+
+    @Test
+    public void predictsTimeToFullFromLinearFill() {
+        final CapacityTrend trend = new CapacityTrend();
+        // 1 GB per hour from 10 GB
+        for (int i = 0; i <= 60; i++) {
+            trend.onSample(i * MINUTE_MS, 10L * GB - i * GB / 60L, 32L * GB);
+        }
+        assertEquals(-1.0 * GB, trend.getSlopeBytesPerHour(), GB * 0.001);
+        assertEquals(9L * HOUR_MS, trend.getTimeToFullMs(), MINUTE_MS);
+        assertTrue(trend.isNearlyFull());
+    }
+
+    @Test
+    public void noPredictionWhileStableOrTooShort() {
+        final CapacityTrend trend = new CapacityTrend();
+        for (int i = 0; i < 5; i++) {
+            trend.onSample(i * MINUTE_MS, 10L * GB - i * GB, 32L * GB);
+        }
+        assertEquals(CapacityTrend.UNKNOWN, trend.getTimeToFullMs());
+
+        final CapacityTrend stable = new CapacityTrend();
+        for (int i = 0; i < 100; i++) {
+            stable.onSample(i * MINUTE_MS, 10L * GB + (i % 2) * 1024L, 32L * GB);
+        }
+        assertEquals(CapacityTrend.UNKNOWN, stable.getTimeToFullMs());
+        assertFalse(stable.isNearlyFull());
+    }
+
+    @Test
+    public void nearlyFullHasHysteresis() {
+        final CapacityTrend trend = new CapacityTrend(16, 0L, HOUR_MS, 100L);
+        assertTrue(trend.onSample(0L, 50L, 1_000L));
+        assertTrue(trend.isNearlyFull());
+        assertFalse(trend.onSample(1L, 150L, 1_000L));
+        assertTrue(trend.isNearlyFull());
+        assertTrue(trend.onSample(2L, 250L, 1_000L));
+        assertFalse(trend.isNearlyFull());
+    }
+
+    @Test
+    public void windowSlidesWithoutDrift() {
+        final CapacityTrend trend = new CapacityTrend(32, MINUTE_MS, HOUR_MS, 0L);
+        long free = 100L * GB;
+        for (int i = 0; i < 10_000; i++) {
+            // filling 1 GB per hour for the last 32 samples, noise before
+            free = i < 9_968 ? 100L * GB + (i % 7) * GB : free - GB / 60L;
+            trend.onSample(i * MINUTE_MS, free, 200L * GB);
+        }
+        assertEquals(32, trend.size());
+        assertEquals(-1.0 * GB, trend.getSlopeBytesPerHour(), GB * 0.001);
+    }
+}
@@ -0,0 +1,88 @@
+package com.obby.android.externalstoragemonitor.core.history;
+
+import com.obby.android.externalstoragemonitor.core.ExternalStorageState;
+import com.obby.android.externalstoragemonitor.core.TransitionTrigger;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class UptimeHistoryTest {
+    private static final long HOUR_MS = UptimeHistory.HOUR_MS;
+
+    private static final long DAY_MS = UptimeHistory.DAY_MS;
+
+    private final UptimeHistory mHistory = new UptimeHistory();
+
+    private final UptimeStats mStats = new UptimeStats();
+
+    @Test
+    public void query_unknownVolume() {
+        assertFalse(mHistory.query("sd", 0L, DAY_MS, DAY_MS, mStats));
+    }
+
+    @Test
+    public void query_countsUptimeAndOutages() {
+        mHistory.onTransition(0L, "sd", ExternalStorageState.MOUNTED, TransitionTrigger.START);
+        mHistory.onTransition(10L * HOUR_MS, "sd", ExternalStorageState.ABSENT, TransitionTrigger.MEDIA_REMOVED);
+        mHistory.onTransition(12L * HOUR_MS, "sd", ExternalStorageState.MOUNTED, TransitionTrigger.MEDIA_MOUNTED);
+        mHistory.onTransition(20L * HOUR_MS, "sd", ExternalStorageState.UNMOUNTED, TransitionTrigger.POLL);
+        mHistory.onTransition(21L * HOUR_MS, "sd", ExternalStorageState.MOUNTED, TransitionTrigger.POLL);
+
+        assertTrue(mHistory.query("sd", 0L, DAY_MS, DAY_MS, mStats));
+        assertEquals(21L * HOUR_MS, mStats.getMountedMs());
+        assertEquals(3L * HOUR_MS, mStats.getUnmountedMs());
+        assertEquals(2L, mStats.getUnmountCount());
+        assertEquals(2L * HOUR_MS, mStats.getLongestOutageMs());
+        assertEquals(10.5 * HOUR_MS, mStats.getMeanTimeBetweenFailuresMs(), 1.0);
+        assertEquals(21.0 / 24.0, mStats.getUptimeRatio(), 1e-9);
+    }
+
+    @Test
+    public void query_subRangeUsesBucketSnapshots() {
+        mHistory.onTransition(0L, "sd", ExternalStorageState.MOUNTED, TransitionTrigger.START);
+        mHistory.onTransition(10L * HOUR_MS, "sd", ExternalStorageState.ABSENT, TransitionTrigger.MEDIA_REMOVED);
+        mHistory.onTransition(12L * HOUR_MS, "sd", ExternalStorageState.MOUNTED, TransitionTrigger.MEDIA_MOUNTED);
+
+        assertTrue(mHistory.query("sd", 11L * HOUR_MS, 15L * HOUR_MS, DAY_MS, mStats));
+        assertEquals(11L * HOUR_MS, mStats.getFromTime());
+        assertEquals(3L * HOUR_MS, mStats.getMountedMs());
+        assertEquals(HOUR_MS, mStats.getUnmountedMs());
+        assertEquals(0L, mStats.getUnmountCount());
+        assertEquals(2L * HOUR_MS, mStats.getLongestOutageMs());
+    }
+
+    @Test
+    public void query_monthsUseDayBuckets() {
+        long time = 0L;
+        mHistory.onTransition(time, "sd", ExternalStorageState.MOUNTED, TransitionTrigger.START);
+        for (int day = 0; day < 90; day++) {
+            time = day * DAY_MS + 6L * HOUR_MS;
+            mHistory.onTransition(time, "sd", ExternalStorageState.ABSENT, TransitionTrigger.MEDIA_BAD_REMOVAL);
+            mHistory.onTransition(time + HOUR_MS, "sd", ExternalStorageState.MOUNTED, TransitionTrigger.POLL);
+        }
+
+        final long now = 90L * DAY_MS;
+        assertTrue(mHistory.query("sd", 60L * DAY_MS, now, now, mStats));
+        assertEquals(30L, mStats.getUnmountCount());
+        assertEquals(30L * HOUR_MS, mStats.getUnmountedMs());
+        assertEquals(30L * 23L * HOUR_MS, mStats.getMountedMs());
+        assertEquals(HOUR_MS, mStats.getLongestOutageMs());
+    }
+
+    @Test
+    public void query_ignoresStoppedTimeAndCountsOngoingOutage() {
+        mHistory.onTransition(0L, "sd", ExternalStorageState.MOUNTED, TransitionTrigger.START);
+        mHistory.onTransition(HOUR_MS, "sd", ExternalStorageState.ABSENT, TransitionTrigger.STOP);
+        mHistory.onTransition(5L * HOUR_MS, "sd", ExternalStorageState.MOUNTED, TransitionTrigger.START);
+        mHistory.onTransition(6L * HOUR_MS, "sd", ExternalStorageState.ABSENT, TransitionTrigger.MEDIA_REMOVED);
+
+        assertTrue(mHistory.query("sd", 0L, 9L * HOUR_MS, 9L * HOUR_MS, mStats));
+        assertEquals(2L * HOUR_MS, mStats.getMountedMs());
+        assertEquals(3L * HOUR_MS, mStats.getUnmountedMs());
+        assertEquals(1L, mStats.getUnmountCount());
+        assertEquals(3L * HOUR_MS, mStats.getLongestOutageMs());
+    }
+}
@@ -0,0 +1,166 @@
+package com.obby.android.externalstoragemonitor.core.integrity;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import org.junit.After;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.RandomAccessFile;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+public class IntegrityScannerTest {
+    private static final long MTIME = 1_700_000_000_000L;
+
+    @Rule
+    public TemporaryFolder mFolder = new TemporaryFolder();
+
+    private final ForkJoinPool mPool = new ForkJoinPool(4);
+
+    @After
+    public void tearDown() {
+        mPool.shutdown();
+    }
+
+    @Test
+    public void buildsThenVerifiesUnchangedTree() throws IOException {
+        final File root = createTree();
+        final FileManifest manifest = new FileManifest();
+        final IntegrityReport built = new IntegrityScanner(mPool).verify(root, manifest);
+        assertEquals(4L, built.getAddedCount());
+        assertEquals(4, manifest.size());
+        assertTrue(manifest.get("a/b/large.bin") != null);
+
+        final IntegrityReport verified = new IntegrityScanner(mPool).verify(root, manifest);
+        assertEquals(4L, verified.getVerifiedCount());
+        assertFalse(verified.hasMismatches());
+        // the large file is sampled instead of read in full
+        assertTrue(verified.getBytesHashed() < built.getBytesHashed());
+    }
+
+    @Test
+    public void detectsCorruptionAndLegitimateChanges() throws IOException {
+        final File root = createTree();
+        final FileManifest manifest = new FileManifest();
+        final IntegrityScanner scanner = new IntegrityScanner(mPool, 4, 4096);
+        scanner.verify(root, manifest);
+
+        // corrupt the first block of the large file behind the filesystem's back
+        final File large = new File(root, "a/b/large.bin");
+        try (RandomAccessFile file = new RandomAccessFile(large, "rw")) {
+            file.write(new byte[16]);
+        }
+        assertTrue(large.setLastModified(MTIME));
+        // legitimately rewrite one file, delete another and add a third
+        write(new File(root, "small.txt"), 10, 7, MTIME + 1000L);
+        assertTrue(new File(root, "a/medium.bin").delete());
+        write(new File(root, "a/new.bin"), 100, 8, MTIME);
+
+        final IntegrityReport report = scanner.verify(root, manifest);
+        assertEquals(1L, report.getCorruptedCount());
+        assertEquals(Arrays.asList("a/b/large.bin", "a/medium.bin"), report.getMismatches());
+        assertEquals(1L, report.getModifiedCount());
+        assertEquals(1L, report.getMissingCount());
+        assertEquals(1L, report.getAddedCount());
+        assertEquals(1L, report.getVerifiedCount());
+
+        // the corrupted and missing entries are kept, so the mismatches are reported again
+        final IntegrityReport again = scanner.verify(root, manifest);
+        assertEquals(1L, again.getCorruptedCount());
+        assertEquals(1L, again.getMissingCount());
+        assertTrue(manifest.get("a/medium.bin") != null);
+    }
+
+    @Test
+    public void missingFilesAreKeptUntilAccepted() throws IOException {
+        final File root = createTree();
+        final FileManifest manifest = new FileManifest();
+        final IntegrityScanner scanner = new IntegrityScanner(mPool);
+        scanner.verify(root, manifest);
+        assertTrue(new File(root, "small.txt").delete());
+
+        final IntegrityReport report = scanner.verify(root, manifest);
+        assertTrue(report.hasMismatches());
+        assertEquals(Collections.singletonList("small.txt"), report.getMismatches());
+        assertTrue(manifest.get("small.txt") != null);
+
+        final IntegrityReport accepted = scanner.verify(root, manifest, true);
+        assertFalse(accepted.hasMismatches());
+        assertNull(manifest.get("small.txt"));
+        assertFalse(scanner.verify(root, manifest).hasMismatches());
+    }
+
+    @Test
+    public void manifestRoundTrips() throws IOException {
+        final File root = createTree();
+        final FileManifest manifest = new FileManifest();
+        new IntegrityScanner(mPool).verify(root, manifest);
+        final File file = new File(mFolder.newFolder(), "manifest");
+        manifest.write(file);
+
+        final FileManifest read = FileManifest.read(file);
+        assertEquals(manifest.size(), read.size());
+        for (final ManifestEntry entry : manifest.getEntries()) {
+            assertEquals(entry.toString(), read.get(entry.getPath()).toString());
+        }
+        assertEquals(0, FileManifest.read(new File(file.getParentFile(), "missing")).size());
+
+        try (RandomAccessFile raw = new RandomAccessFile(file, "rw")) {
+            raw.seek(20L);
+            raw.write(raw.read() ^ 1);
+        }
+        try {
+            FileManifest.read(file);
+            fail();
+        } catch (IOException e) {
+            // expected
+        }
+    }
+
+    @Test
+    public void cancelledScanLeavesManifestUntouched() throws IOException {
+        final File root = createTree();
+        final FileManifest manifest = new FileManifest();
+        final IntegrityScanner scanner = new IntegrityScanner(mPool);
+        scanner.cancel();
+        try {
+            scanner.verify(root, manifest);
+            fail();
+        } catch (InterruptedIOException e) {
+            // expected
+        }
+        assertTrue(manifest.isEmpty());
+    }
+
+    private File createTree() throws IOException {
+        final File root = mFolder.newFolder("tree");
+        write(new File(root, "small.txt"), 10, 1, MTIME);
+        write(new File(root, "a/medium.bin"), 20_000, 2, MTIME);
+        write(new File(root, "a/b/large.bin"), 2 << 20, 3, MTIME);
+        write(new File(root, "a/b/empty"), 0, 4, MTIME);
+        return root;
+    }
+
+    private static void write(final File file, final int size, final long seed, final long modifiedTime)
+        throws IOException {
+        assertTrue(file.getParentFile().isDirectory() || file.getParentFile().mkdirs());
+        final byte[] bytes = new byte[size];
+        new Random(seed).nextBytes(bytes);
+        try (FileOutputStream output = new FileOutputStream(file)) {
+            output.write(bytes);
+        }
+        assertTrue(file.setLastModified(modifiedTime));
+    }
+}
@@ -0,0 +1,195 @@
+package com.obby.android.externalstoragemonitor.core.journal;
+
+import com.obby.android.externalstoragemonitor.core.ExternalStorageState;
+import com.obby.android.externalstoragemonitor.core.TransitionTrigger;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class EventJournalTest {
+    @Rule
+    public final TemporaryFolder mFolder = new TemporaryFolder();
+
+    @Test
+    public void append_isReadableAfterReopen() throws IOException {
+        final File directory = mFolder.newFolder("journal");
+        try (EventJournal journal = EventJournal.open(directory, 16, 4)) {
+            assertEquals(1L, journal.append(1_000L, "1234-ABCD", ExternalStorageState.ABSENT,
+                ExternalStorageState.MOUNTED, TransitionTrigger.START));
+            assertEquals(2L, journal.append(2_000L, "1234-ABCD", ExternalStorageState.MOUNTED,
+                ExternalStorageState.ABSENT, TransitionTrigger.MEDIA_BAD_REMOVAL));
+        }
+
+        try (EventJournal journal = EventJournal.open(directory, 16, 4)) {
+            assertEquals(1L, journal.getFirstSequence());
+            assertEquals(2L, journal.getLastSequence());
+
+            final JournalRecord record = new JournalRecord();
+            assertTrue(journal.read(2L, record));
+            assertEquals(2_000L, record.getTimestamp());
+            assertEquals("1234-ABCD", record.getVolumeId());
+            assertEquals(ExternalStorageState.MOUNTED, record.getPreviousState());
+            assertEquals(ExternalStorageState.ABSENT, record.getState());
+            assertEquals(TransitionTrigger.MEDIA_BAD_REMOVAL, record.getTrigger());
+
+            assertEquals(3L, journal.append(3_000L, "usb", ExternalStorageState.ABSENT,
+                ExternalStorageState.UNKNOWN, TransitionTrigger.POLL));
+        }
+    }
+
+    @Test
+    public void append_compactsOldestSegments() throws IOException {
+        try (EventJournal journal = EventJournal.open(mFolder.newFolder("journal"), 4, 2)) {
+            for (int i = 1; i <= 10; i++) {
+                journal.append(i, "sd", ExternalStorageState.UNMOUNTED, ExternalStorageState.MOUNTED,
+                    TransitionTrigger.POLL);
+            }
+
+            assertEquals(5L, journal.getFirstSequence());
+            assertEquals(10L, journal.getLastSequence());
+            assertEquals(6, journal.size());
+            assertFalse(journal.read(4L, new JournalRecord()));
+        }
+    }
+
+    @Test
+    public void open_dropsTornRecord() throws IOException {
+        final File directory = mFolder.newFolder("journal");
+        try (EventJournal journal = EventJournal.open(directory, 16, 4)) {
+            journal.append(1L, "sd", ExternalStorageState.ABSENT, ExternalStorageState.MOUNTED, TransitionTrigger.POLL);
+            journal.append(2L, "sd", ExternalStorageState.MOUNTED, ExternalStorageState.ABSENT, TransitionTrigger.POLL);
+        }
+
+        final File[] segments = directory.listFiles();
+        assertEquals(1, segments.length);
+        try (RandomAccessFile file = new RandomAccessFile(segments[0], "rw")) {
+            file.seek(EventJournal.RECORD_SIZE + 30L);
+            file.write(0x5a);
+        }
+
+        try (EventJournal journal = EventJournal.open(directory, 16, 4)) {
+            assertEquals(1L, journal.getLastSequence());
+            assertEquals(2L, journal.append(3L, "sd", ExternalStorageState.MOUNTED, ExternalStorageState.ABSENT,
+                TransitionTrigger.POLL));
+        }
+    }
+
+    @Test
+    public void scan_filtersByTimestamp() throws IOException {
+        try (EventJournal journal = EventJournal.open(mFolder.newFolder("journal"), 4, 8)) {
+            for (int i = 0; i < 10; i++) {
+                journal.append(i * 100L, "sd", ExternalStorageState.UNMOUNTED, ExternalStorageState.MOUNTED,
+                    TransitionTrigger.POLL);
+            }
+
+            final List<Long> sequences = new ArrayList<>();
+            assertEquals(3, journal.scan(250L, 550L, record -> sequences.add(record.getSequence())));
+            assertEquals(List.of(4L, 5L, 6L), sequences);
+        }
+    }
+
+    @Test
+    public void findSequences_indexesRecordsInRange() throws IOException {
+        try (EventJournal journal = EventJournal.open(mFolder.newFolder("journal"), 4, 2)) {
+            for (int i = 0; i < 10; i++) {
+                journal.append(i * 100L, "sd", ExternalStorageState.UNMOUNTED, ExternalStorageState.MOUNTED,
+                    TransitionTrigger.POLL);
+            }
+
+            final long[] sequences = journal.findSequences(250L, Long.MAX_VALUE);
+            assertArrayEquals(new long[]{5L, 6L, 7L, 8L, 9L, 10L}, sequences);
+            final JournalRecord record = new JournalRecord();
+            assertTrue(journal.read(sequences[2], record));
+            assertEquals(600L, record.getTimestamp());
+            assertEquals(0, journal.findSequences(0L, 300L).length);
+
+            assertArrayEquals(new long[]{7L, 8L}, journal.findSequences(250L, Long.MAX_VALUE, 6L, 2));
+            assertArrayEquals(new long[]{5L, 6L, 7L}, journal.findSequences(250L, Long.MAX_VALUE, 1L, 3));
+            assertEquals(0, journal.findSequences(250L, Long.MAX_VALUE, 10L, 2).length);
+            assertEquals(0, journal.findSequences(250L, Long.MAX_VALUE, 0L, 0).length);
+        }
+    }
+
+    @Test
+    public void move_renamesDirectory() throws IOException {
+        final File source = appendTen(mFolder.newFolder("ce"));
+        final File target = new File(mFolder.newFolder("de"), "journal");
+
+        EventJournal.move(source, target);
+
+        assertFalse(source.exists());
+        assertMoved(target);
+    }
+
+    @Test
+    public void move_copiesSegmentsWhenRenameFails() throws IOException {
+        final File source = appendTen(mFolder.newFolder("ce"));
+        final File target = new File(mFolder.newFolder("de"), "journal");
+        // a stale copy of an interrupted move
+        assertTrue(new File(target.getPath() + ".tmp").mkdirs());
+
+        EventJournal.move(source, target, false);
+
+        assertFalse(source.exists());
+        assertFalse(new File(target.getPath() + ".tmp").exists());
+        assertMoved(target);
+    }
+
+    @Test
+    public void openReadOnly_readsWithoutChangingFiles() throws IOException {
+        final File directory = appendTen(mFolder.newFolder("journal"));
+        final String[] names = directory.list();
+
+        try (EventJournal journal = EventJournal.openReadOnly(directory)) {
+            assertEquals(10, journal.size());
+            assertArrayEquals(new long[]{4L, 5L}, journal.findSequences(300L, 500L));
+            final JournalRecord record = new JournalRecord();
+            assertTrue(journal.read(10L, record));
+            assertEquals(900L, record.getTimestamp());
+            try {
+                journal.append(1_000L, "sd", ExternalStorageState.MOUNTED, ExternalStorageState.UNMOUNTED,
+                    TransitionTrigger.POLL);
+                fail();
+            } catch (IOException e) {
+                // expected
+            }
+        }
+        assertArrayEquals(names, directory.list());
+    }
+
+    @Test(expected = IOException.class)
+    public void openReadOnly_failsWithoutDirectory() throws IOException {
+        EventJournal.openReadOnly(new File(mFolder.getRoot(), "missing"));
+    }
+
+    private static File appendTen(final File directory) throws IOException {
+        try (EventJournal journal = EventJournal.open(directory, 4, 8)) {
+            for (int i = 0; i < 10; i++) {
+                journal.append(i * 100L, "sd", ExternalStorageState.UNMOUNTED, ExternalStorageState.MOUNTED,
+                    TransitionTrigger.POLL);
+            }
+        }
+        return directory;
+    }
+
+    private static void assertMoved(final File target) throws IOException {
+        try (EventJournal journal = EventJournal.open(target, 4, 8)) {
+            assertEquals(10, journal.size());
+            assertEquals(11L, journal.append(1_000L, "sd", ExternalStorageState.MOUNTED,
+                ExternalStorageState.UNMOUNTED, TransitionTrigger.POLL));
+        }
+    }
+}
@@ -0,0 +1,43 @@
+package com.obby.android.externalstoragemonitor.core.metrics;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class LatencyHistogramTest {
+    @Test
+    public void buckets_coverValueWithBoundedError() {
+        for (long value = 0L; value < 1_000_000L; value += 997L) {
+            final long upperBound = LatencyHistogram.upperBoundOf(LatencyHistogram.indexOf(value));
+            assertTrue(value <= upperBound);
+            assertTrue(upperBound - value <= value / 8L + 1L);
+        }
+        assertTrue(LatencyHistogram.indexOf(Long.MAX_VALUE) >= 0);
+    }
+
+    @Test
+    public void percentiles_followRecordedDistribution() {
+        final LatencyHistogram histogram = new LatencyHistogram("test");
+        for (long i = 1L; i <= 1_000L; i++) {
+            histogram.record(i * 1_000L);
+        }
+
+        assertEquals(1_000L, histogram.getCount());
+        assertEquals(1_000_000L, histogram.getMaxNanos());
+        assertEquals(500_500L, histogram.getMeanNanos());
+        assertEquals(500_000.0, histogram.getPercentileNanos(50.0), 500_000.0 / 8.0);
+        assertEquals(990_000.0, histogram.getPercentileNanos(99.0), 990_000.0 / 8.0);
+        assertEquals(1_000_000L, histogram.getPercentileNanos(100.0));
+    }
+
+    @Test
+    public void reset_clearsEverything() {
+        final LatencyHistogram histogram = new LatencyHistogram("test");
+        histogram.record(42L);
+        histogram.reset();
+        assertEquals(0L, histogram.getCount());
+        assertEquals(0L, histogram.getMaxNanos());
+        assertEquals(0L, histogram.getPercentileNanos(50.0));
+    }
+}
@@ -0,0 +1,104 @@
+package com.obby.android.externalstoragemonitor.core.mount;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+
+public class MountInfoParserTest {
+    private static final String MOUNTINFO = ""
+        + "1 0 253:0 / / ro,relatime master:1 - ext4 /dev/root ro,seclabel\n"
+        + "garbage line\n"
+        + "30 1 0:5 / /dev rw,nosuid,relatime master:2 shared:3 - tmpfs tmpfs rw,seclabel,mode=755\n"
+        + "87 30 179:65 / /mnt/media_rw/1234-ABCD rw,nosuid,nodev,noexec,noatime - vfat "
+        + "/dev/block/vold/public:179,65 rw\n"
+        + "95 40 0:62 / /storage/1234-ABCD rw,nosuid,nodev,noexec,noatime - fuse /dev/fuse rw,user_id=0\n"
+        + "96 40 8:1 /data /mnt/my\\040card rw - exfat /dev/sda1 rw";
+
+    private static final byte[][] PREFIXES = {
+        "/storage/".getBytes(StandardCharsets.US_ASCII), "/mnt/media_rw/".getBytes(StandardCharsets.US_ASCII)
+    };
+
+    @Test
+    public void parsesFieldsAndSkipsMalformedLines() {
+        final byte[] bytes = MOUNTINFO.getBytes(StandardCharsets.UTF_8);
+        final MountInfoParser parser = new MountInfoParser();
+        parser.reset(bytes, bytes.length);
+
+        assertTrue(parser.next());
+        assertEquals(1, parser.getMountId());
+        assertEquals("/", parser.getMountPoint());
+        assertEquals("ext4", parser.getFsType());
+
+        assertTrue(parser.next());
+        assertEquals(30, parser.getMountId());
+        assertEquals(1, parser.getParentId());
+        assertEquals("tmpfs", parser.getSource());
+        assertEquals("rw,seclabel,mode=755", parser.getSuperOptions());
+
+        assertTrue(parser.next());
+        assertEquals(179, parser.getMajor());
+        assertEquals(65, parser.getMinor());
+        assertTrue(parser.mountPointStartsWith(PREFIXES[1]));
+        assertEquals("vfat", parser.getFsType());
+        assertEquals("rw,nosuid,nodev,noexec,noatime", parser.getOptions());
+
+        assertTrue(parser.next());
+        assertEquals("/storage/1234-ABCD", parser.getMountPoint());
+
+        assertTrue(parser.next());
+        assertEquals("/data", parser.getRoot());
+        assertEquals("/mnt/my card", parser.getMountPoint());
+        assertEquals("/dev/sda1", parser.getSource());
+
+        assertFalse(parser.next());
+    }
+
+    @Test
+    public void fingerprintOnlyCoversMatchingMounts() {
+        final MountInfoParser parser = new MountInfoParser();
+        final long base = fingerprint(parser, MOUNTINFO);
+        assertEquals(base, fingerprint(parser, MOUNTINFO.replace("/dev rw,nosuid", "/dev ro,nosuid")));
+        assertEquals(base, fingerprint(parser, MOUNTINFO + "\n97 1 0:70 / /apex/foo ro - ext4 /dev/loop1 ro"));
+        assertNotEquals(base, fingerprint(parser, MOUNTINFO.replace("95 40 0:62 / /storage/1234-ABCD", "")));
+        assertNotEquals(base, fingerprint(parser, MOUNTINFO.replace("95 40", "98 40")));
+    }
+
+    @Test
+    public void handlesLargeTables() {
+        final StringBuilder builder = new StringBuilder();
+        for (int i = 0; i < 20_000; i++) {
+            builder.append(i + 100).append(" 1 0:").append(i).append(" / /apex/com.example.m").append(i)
+                .append(" ro,nodev,relatime master:").append(i).append(" - ext4 /dev/block/loop").append(i)
+                .append(" ro,seclabel\n");
+        }
+        builder.append("87 30 179:65 / /storage/1234-ABCD rw - vfat /dev/block/vold/public:179,65 rw\n");
+        final byte[] bytes = builder.toString().getBytes(StandardCharsets.UTF_8);
+        final MountInfoParser parser = new MountInfoParser();
+        parser.reset(bytes, bytes.length);
+        int count = 0;
+        int matches = 0;
+        while (parser.next()) {
+            count++;
+            if (parser.mountPointStartsWith(PREFIXES[0])) {
+                matches++;
+            }
+        }
+        assertEquals(20_001, count);
+        assertEquals(1, matches);
+
+        // a partially filled buffer only parses the filled part
+        parser.reset(bytes, 10);
+        assertFalse(parser.next());
+    }
+
+    private static long fingerprint(final MountInfoParser parser, final String mountInfo) {
+        final byte[] bytes = mountInfo.getBytes(StandardCharsets.UTF_8);
+        parser.reset(bytes, bytes.length);
+        return parser.fingerprint(PREFIXES);
+    }
+}
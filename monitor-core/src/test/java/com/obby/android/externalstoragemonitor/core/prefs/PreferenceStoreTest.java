@@ -0,0 +1,161 @@
+package com.obby.android.externalstoragemonitor.core.prefs;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+
+public class PreferenceStoreTest {
+    @Rule
+    public TemporaryFolder mFolder = new TemporaryFolder();
+
+    private final Queue<Runnable> mTasks = new ArrayDeque<>();
+
+    private File mFile;
+
+    @Before
+    public void setUp() throws Exception {
+        mFile = new File(mFolder.getRoot(), "prefs");
+    }
+
+    @Test
+    public void applyUpdatesCacheBeforeWrite() {
+        final PreferenceStore store = PreferenceStore.open(mFile, mTasks::add);
+        store.edit().putBoolean("a", true).apply();
+
+        assertTrue(store.getBoolean("a", false));
+        assertTrue(store.isDirty());
+        assertFalse(mFile.exists());
+    }
+
+    @Test
+    public void burstIsWrittenOnce() {
+        final PreferenceStore store = PreferenceStore.open(mFile, mTasks::add);
+        runTasks();
+        store.edit().putBoolean("a", true).apply();
+        store.edit().putInt("b", 2).putLong("c", 3L).apply();
+        store.edit().putString("d", "four").apply();
+        assertEquals(1, mTasks.size());
+
+        runTasks();
+        assertEquals(1L, store.getWriteCount());
+        assertFalse(store.isDirty());
+
+        final PreferenceStore reopened = PreferenceStore.open(mFile, mTasks::add);
+        assertTrue(reopened.getBoolean("a", false));
+        assertEquals(2, reopened.getInt("b", 0));
+        assertEquals(3L, reopened.getLong("c", 0L));
+        assertEquals("four", reopened.getString("d", null));
+    }
+
+    @Test
+    public void unchangedValueNeitherNotifiesNorWrites() throws Exception {
+        final PreferenceStore store = PreferenceStore.open(mFile, mTasks::add);
+        store.edit().putBoolean("a", true).apply();
+        store.flush();
+        mTasks.clear();
+
+        final List<String> keys = new ArrayList<>();
+        store.addListener((s, key) -> keys.add(key));
+        store.edit().putBoolean("a", true).apply();
+        assertTrue(keys.isEmpty());
+        assertTrue(mTasks.isEmpty());
+
+        store.edit().putBoolean("a", false).putInt("b", 1).apply();
+        assertEquals(2, keys.size());
+        assertEquals("a", keys.get(0));
+        assertEquals("b", keys.get(1));
+    }
+
+    @Test
+    public void removeDeletesKey() throws Exception {
+        final PreferenceStore store = PreferenceStore.open(mFile, mTasks::add);
+        store.edit().putInt("a", 1).apply();
+        store.edit().remove("a").apply();
+        store.flush();
+
+        assertFalse(PreferenceStore.open(mFile, mTasks::add).contains("a"));
+    }
+
+    @Test
+    public void corruptedFileLoadsEmpty() throws Exception {
+        final PreferenceStore store = PreferenceStore.open(mFile, mTasks::add);
+        store.edit().putInt("a", 1).apply();
+        store.flush();
+
+        try (RandomAccessFile file = new RandomAccessFile(mFile, "rw")) {
+            file.seek(file.length() - 9);
+            file.write(0x7f);
+        }
+        assertFalse(PreferenceStore.open(mFile, mTasks::add).contains("a"));
+
+        try (FileOutputStream output = new FileOutputStream(mFile)) {
+            output.write(new byte[]{1, 2, 3});
+        }
+        assertFalse(PreferenceStore.open(mFile, mTasks::add).contains("a"));
+    }
+
+    @Test
+    public void failedWriteIsRetried() throws Exception {
+        final File directory = mFolder.newFolder("dir");
+        final File file = new File(directory, "prefs");
+        final PreferenceStore store = PreferenceStore.open(file, mTasks::add);
+        assertTrue(directory.delete());
+
+        store.edit().putInt("a", 1).apply();
+        runTasks();
+        assertTrue(store.isDirty());
+
+        assertTrue(directory.mkdir());
+        store.edit().putInt("b", 2).apply();
+        runTasks();
+        assertFalse(store.isDirty());
+        assertEquals(1, PreferenceStore.open(file, mTasks::add).getInt("a", 0));
+    }
+
+    @Test
+    public void openLoadsOnExecutorOrFirstAccess() throws Exception {
+        final PreferenceStore writer = PreferenceStore.open(mFile, Runnable::run);
+        writer.edit().putInt("a", 1).apply();
+
+        final PreferenceStore store = PreferenceStore.open(mFile, mTasks::add);
+        assertEquals(1, mTasks.size());
+        assertEquals(1, store.getInt("a", 0));
+        runTasks();
+        assertEquals(1, store.getInt("a", 0));
+        assertFalse(store.isDirty());
+    }
+
+    @Test
+    public void failedWriteIsReported() throws Exception {
+        final File directory = mFolder.newFolder("dir");
+        final PreferenceStore store = PreferenceStore.open(new File(directory, "prefs"), mTasks::add);
+        final List<IOException> errors = new ArrayList<>();
+        store.setErrorListener((failedStore, e) -> errors.add(e));
+        assertTrue(directory.delete());
+
+        store.edit().putInt("a", 1).apply();
+        runTasks();
+        assertEquals(1, errors.size());
+    }
+
+    private void runTasks() {
+        Runnable task;
+        while ((task = mTasks.poll()) != null) {
+            task.run();
+        }
+    }
+}
@@ -0,0 +1,42 @@
+package com.obby.android.externalstoragemonitor.core.probe;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class VolumeHealthTest {
+    private final VolumeHealth mHealth = new VolumeHealth("sd", 100L, 2, 3);
+
+    @Test
+    public void degradesAfterConsecutiveBadProbesAndRecoversWithHysteresis() {
+        assertFalse(mHealth.onResult(result(true, 50L)));
+        assertFalse(mHealth.onResult(result(true, 500L)));
+        assertFalse(mHealth.onResult(result(true, 50L)));
+        assertFalse(mHealth.isDegraded());
+
+        assertFalse(mHealth.onResult(result(true, 500L)));
+        assertTrue(mHealth.onResult(result(false, 10L)));
+        assertTrue(mHealth.isDegraded());
+        assertEquals(1L, mHealth.getFailureCount());
+        assertEquals("boom", mHealth.getLastError());
+
+        assertFalse(mHealth.onResult(result(true, 50L)));
+        assertFalse(mHealth.onResult(result(true, 50L)));
+        assertFalse(mHealth.onResult(result(true, 500L)));
+        assertFalse(mHealth.onResult(result(true, 50L)));
+        assertFalse(mHealth.onResult(result(true, 50L)));
+        assertTrue(mHealth.onResult(result(true, 50L)));
+        assertFalse(mHealth.isDegraded());
+        assertEquals(11L, mHealth.getProbeCount());
+    }
+
+    private static ProbeResult result(final boolean isSuccess, final long totalNanos) {
+        final ProbeResult result = new ProbeResult();
+        result.mIsSuccess = isSuccess;
+        result.mError = isSuccess ? null : "boom";
+        result.mTotalNanos = totalNanos;
+        return result;
+    }
+}
@@ -0,0 +1,39 @@
+package com.obby.android.externalstoragemonitor.core.probe;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+
+public class VolumeProbeTest {
+    @Rule
+    public TemporaryFolder mFolder = new TemporaryFolder();
+
+    @Test
+    public void probeWritesAndVerifiesFixedSizeFile() throws Exception {
+        final VolumeProbe probe = new VolumeProbe(1024);
+        final ProbeResult result = new ProbeResult();
+        for (int i = 0; i < 3; i++) {
+            probe.probe(mFolder.getRoot(), result);
+            assertTrue(result.getError(), result.isSuccess());
+            assertNull(result.getError());
+            assertTrue(result.getTotalNanos() >= result.getWriteNanos() + result.getSyncNanos());
+        }
+        assertEquals(1024L, new File(mFolder.getRoot(), VolumeProbe.FILE_NAME).length());
+    }
+
+    @Test
+    public void missingDirectoryFails() {
+        final ProbeResult result = new ProbeResult();
+        new VolumeProbe().probe(new File(mFolder.getRoot(), "missing"), result);
+        assertFalse(result.isSuccess());
+        assertNotNull(result.getError());
+    }
+}
@@ -0,0 +1,92 @@
+package com.obby.android.externalstoragemonitor.core.replay;
+
+import com.obby.android.externalstoragemonitor.core.ExternalStorageState;
+import com.obby.android.externalstoragemonitor.core.TransitionTrigger;
+import com.obby.android.externalstoragemonitor.core.journal.EventJournal;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.StringWriter;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+public class EventTraceTest {
+    @Rule
+    public final TemporaryFolder mFolder = new TemporaryFolder();
+
+    @Test
+    public void write_isReadBack() throws IOException {
+        final EventTrace trace = new EventTrace();
+        trace.add(0L, "1234-ABCD", ExternalStorageState.UNKNOWN, TransitionTrigger.MEDIA_CHECKING);
+        trace.add(250L, "SD card", ExternalStorageState.MOUNTED, TransitionTrigger.MOUNT_TABLE);
+        trace.add(250L, "1234-ABCD", ExternalStorageState.ABSENT, TransitionTrigger.POLL);
+
+        final StringWriter writer = new StringWriter();
+        trace.write(writer);
+        final EventTrace read = EventTrace.read(new BufferedReader(new StringReader("# recorded\n\n" + writer)));
+
+        assertEquals(3, read.size());
+        assertArrayEquals(new String[]{"1234-ABCD", "SD card"}, read.getVolumeIds());
+        assertEquals(250L, read.getTime(1));
+        assertEquals(1, read.getVolume(1));
+        assertEquals(ExternalStorageState.MOUNTED, read.getState(1));
+        assertEquals(TransitionTrigger.MOUNT_TABLE, read.getTrigger(1));
+        assertEquals(ExternalStorageState.ABSENT, read.getState(2));
+        assertEquals(TransitionTrigger.POLL, read.getTrigger(2));
+    }
+
+    @Test
+    public void read_rejectsUnorderedOrMalformedLines() {
+        for (final String text : new String[]{"10 A mounted media_mounted\n5 A absent media_removed",
+            "10 A mounted", "10 A mounting media_mounted", "x A mounted media_mounted"}) {
+            try {
+                EventTrace.read(new BufferedReader(new StringReader(text)));
+                fail("accepted: " + text);
+            } catch (IOException e) {
+                // expected
+            }
+        }
+    }
+
+    @Test
+    public void fromJournal_keepsDeviceEventsOfVolumes() throws IOException {
+        try (EventJournal journal = EventJournal.open(mFolder.newFolder("journal"), 16, 4)) {
+            journal.append(1_000L, "1234-ABCD", ExternalStorageState.ABSENT, ExternalStorageState.MOUNTED,
+                TransitionTrigger.START);
+            journal.append(5_000L, "1234-ABCD", ExternalStorageState.MOUNTED, ExternalStorageState.ABSENT,
+                TransitionTrigger.MEDIA_BAD_REMOVAL);
+            journal.append(5_000L, EventJournal.AGGREGATE_VOLUME_ID, ExternalStorageState.MOUNTED,
+                ExternalStorageState.UNMOUNTED, TransitionTrigger.MEDIA_BAD_REMOVAL);
+            journal.append(9_000L, "1234-ABCD", ExternalStorageState.ABSENT, ExternalStorageState.MOUNTED,
+                TransitionTrigger.FLAP_RECOVERY);
+            journal.append(12_000L, "1234-ABCD", ExternalStorageState.MOUNTED, ExternalStorageState.ABSENT,
+                TransitionTrigger.STOP);
+
+            final EventTrace trace = EventTrace.fromJournal(journal, 0L, Long.MAX_VALUE);
+            assertEquals(2, trace.size());
+            assertEquals(0L, trace.getTime(0));
+            assertEquals(TransitionTrigger.MEDIA_BAD_REMOVAL, trace.getTrigger(0));
+            assertEquals(4_000L, trace.getTime(1));
+            assertEquals(ExternalStorageState.MOUNTED, trace.getState(1));
+            assertEquals(TransitionTrigger.POLL, trace.getTrigger(1));
+        }
+    }
+
+    @Test
+    public void synthetic_isReproducible() throws IOException {
+        final StringWriter first = new StringWriter();
+        EventTrace.synthetic(42L, 3, 1_000, 500L).write(first);
+        final StringWriter second = new StringWriter();
+        EventTrace.synthetic(42L, 3, 1_000, 500L).write(second);
+
+        assertEquals(first.toString(), second.toString());
+        assertEquals(1_000, EventTrace.read(new BufferedReader(new StringReader(first.toString()))).size());
+    }
+}